@@ -0,0 +1,16 @@
+#!/bin/bash
+
+# Legend of Java Benchmark Script
+# Builds the game and the benchmarks, then runs the engine benchmark suite. Arguments go to the suite, e.g.
+#   ./bench.sh checkTile -p mapSize=50,2000 -rff results.json
+
+set -e
+
+echo "Building benchmarks..."
+
+rm -rf bench-build
+mkdir -p bench-build
+javac -d bench-build $(find src bench -name '*.java')
+
+# Headless AWT is enough for the offscreen drawing benchmarks
+java -Djava.awt.headless=true -cp bench-build:res:. Benchmark.EngineBenchmarks "$@"
@@ -0,0 +1,488 @@
+package Benchmark;
+
+import Entity.AnimationLibrary;
+import Entity.Direction;
+import Entity.EntityStore;
+import Entity.Player;
+import Entity.RenderSnapshot;
+import Main.Game;
+import Main.GameOptions;
+import Navigation.FlowField;
+import Navigation.GridPath;
+import Navigation.NavGraph;
+import Navigation.NavGrid;
+import Navigation.Pathfinder;
+import Tiles.CollisionLayer;
+import Tiles.CompiledMap;
+import Tiles.MapLayers;
+import Utility.SpriteSheet;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+// The engine's hot paths, run through Harness. mapSize is the side of a square map built by tiling the 50x50 CSV
+// map, entities the number of NPCs around the player. Run everything with ./bench.sh, or for example
+//   ./bench.sh checkTile -p mapSize=2000
+public class EngineBenchmarks {
+
+    static final Map<Integer, Path> compiledMaps = new HashMap<>();
+    static MapLayers baseMap;
+
+    public static void main(String[] args) throws Exception {
+        Harness harness = new Harness("Benchmark.EngineBenchmarks");
+        harness.param("mapSize", "50", "500", "2000");
+        harness.param("entities", "0", "1000", "10000");
+
+        harness.add("loadMap", new String[]{"mapSize"}, EngineBenchmarks::loadMap);
+        harness.add("loadCollisionMap", new String[]{"mapSize"}, EngineBenchmarks::loadCollisionMap);
+        harness.add("drawTiles", new String[]{"mapSize"}, EngineBenchmarks::drawTiles);
+        harness.add("drawEntities", new String[]{"entities"}, EngineBenchmarks::drawEntities);
+        harness.add("checkTile", new String[]{"mapSize"}, EngineBenchmarks::checkTile);
+        harness.add("playerUpdate", new String[]{"entities"}, EngineBenchmarks::playerUpdate);
+        harness.add("playerUpdateAnimation", new String[]{}, EngineBenchmarks::playerUpdateAnimation);
+        harness.add("getSprite", new String[]{}, EngineBenchmarks::getSprite);
+        harness.add("advanceAnimations", new String[]{"entities"}, EngineBenchmarks::advanceAnimations);
+        harness.add("animateCharacters", new String[]{"entities"}, EngineBenchmarks::animateCharacters);
+        harness.add("findPathJps", new String[]{"mapSize"}, EngineBenchmarks::findPathJps);
+        harness.add("findPathHierarchical", new String[]{"mapSize"}, EngineBenchmarks::findPathHierarchical);
+        harness.add("updateNavGraph", new String[]{"mapSize"}, EngineBenchmarks::updateNavGraph);
+        harness.add("chaseFlowField", new String[]{"entities"}, EngineBenchmarks::chaseFlowField);
+        harness.add("chasePathPerAgent", new String[]{"entities"}, EngineBenchmarks::chasePathPerAgent);
+        harness.add("repairFlowField", new String[]{}, EngineBenchmarks::repairFlowField);
+        harness.add("rebuildFlowField", new String[]{}, EngineBenchmarks::rebuildFlowField);
+
+        harness.parseArgs(args);
+        harness.run();
+    }
+
+    // Parses a whole mapSize x mapSize ground CSV per operation.
+    static LongSupplier loadMap(Map<String, String> params) throws IOException {
+        int mapSize = Integer.parseInt(params.get("mapSize"));
+        Game game = game(mapSize, 0, true);
+        String csv = csv(mapSize, false);
+        return () -> {
+            try {
+                game.tileManager.loadMap(new BufferedReader(new StringReader(csv)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return game.tileManager.getTile(mapSize - 1, mapSize - 1);
+        };
+    }
+
+    static LongSupplier loadCollisionMap(Map<String, String> params) throws IOException {
+        int mapSize = Integer.parseInt(params.get("mapSize"));
+        Game game = game(mapSize, 0, true);
+        String csv = csv(mapSize, true);
+        return () -> {
+            try {
+                game.tileManager.loadCollisionMap(new BufferedReader(new StringReader(csv)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return game.tileManager.isSolid(mapSize - 1, mapSize - 1) ? 1 : 0;
+        };
+    }
+
+    // One screen of tiles into an offscreen image, the camera panning diagonally so chunks are baked now and then.
+    static LongSupplier drawTiles(Map<String, String> params) throws IOException {
+        int mapSize = Integer.parseInt(params.get("mapSize"));
+        Game game = game(mapSize, 0, false);
+        BufferedImage frame = new BufferedImage(game.screenWidth, game.screenHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = frame.createGraphics();
+        int range = game.worldWidth - game.screenWidth;
+        int[] step = {0};
+        return () -> {
+            int offset = (step[0] += 3) % range;
+            game.cameraX = game.player.screenX + offset;
+            game.cameraY = game.player.screenY + offset % (game.worldHeight - game.screenHeight);
+            game.tileManager.draw(g2);
+            return game.tileManager.chunkCache.chunksBaked;
+        };
+    }
+
+    // The NPCs in view blitted from the texture atlas into an offscreen image.
+    static LongSupplier drawEntities(Map<String, String> params) throws IOException {
+        int entities = Integer.parseInt(params.get("entities"));
+        Game game = game(500, entities, false);
+        BufferedImage frame = new BufferedImage(game.screenWidth, game.screenHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = frame.createGraphics();
+        RenderSnapshot snapshot = new RenderSnapshot();
+        snapshot.capture(game.entities, game.player.index(), 0, 0);
+        int viewX = game.player.getWorldX() - game.player.screenX;
+        int viewY = game.player.getWorldY() - game.player.screenY;
+        return () -> {
+            game.entitySystem.draw(g2, snapshot, viewX, viewY, game.screenWidth, game.screenHeight, game.tileSize, 1);
+            return game.entitySystem.drawCalls;
+        };
+    }
+
+    // Random positions anywhere on the map, random directions.
+    static LongSupplier checkTile(Map<String, String> params) throws IOException {
+        int mapSize = Integer.parseInt(params.get("mapSize"));
+        Game game = game(mapSize, 0, true);
+        EntityStore store = game.entities;
+        int i = game.player.index();
+        Random random = new Random(1);
+        int[] xs = new int[4096], ys = new int[4096];
+        byte[] directions = new byte[4096];
+        for(int k = 0; k < xs.length; k++){
+            xs[k] = random.nextInt(game.worldWidth - game.tileSize);
+            ys[k] = random.nextInt(game.worldHeight - game.tileSize);
+            directions[k] = (byte) random.nextInt(Direction.COUNT);
+        }
+        int[] next = {0};
+        return () -> {
+            int k = next[0]++ & 4095;
+            store.worldX[i] = xs[k];
+            store.worldY[i] = ys[k];
+            store.direction[i] = directions[k];
+            store.flags[i] = 0;
+            game.collisionChecker.checkTile(store, i);
+            return store.flags[i];
+        };
+    }
+
+    // The player dropped at random spots among the NPCs, so the entity checks see realistic crowds.
+    static LongSupplier playerUpdate(Map<String, String> params) throws IOException {
+        int entities = Integer.parseInt(params.get("entities"));
+        Game game = game(500, entities, true);
+        Player player = game.player;
+        EntityStore store = game.entities;
+        game.collisionChecker.updateEntityHash(store);
+
+        int startX = player.getWorldX(), startY = player.getWorldY();
+        Random random = new Random(1);
+        int[] xs = new int[4096], ys = new int[4096];
+        byte[] directions = new byte[4096];
+        for(int k = 0; k < xs.length; k++){
+            xs[k] = startX + (random.nextInt(41) - 20) * game.tileSize;
+            ys[k] = startY + (random.nextInt(41) - 20) * game.tileSize;
+            directions[k] = (byte) random.nextInt(Direction.COUNT);
+        }
+        int[] next = {0};
+        return () -> {
+            int k = next[0]++ & 4095;
+            player.setPosition(xs[k], ys[k]);
+            store.direction[player.index()] = directions[k];
+            player.update();
+            return player.getWorldX() + player.getWorldY();
+        };
+    }
+
+    static LongSupplier playerUpdateAnimation(Map<String, String> params) throws IOException {
+        Game game = game(50, 0, false);
+        Player player = game.player;
+        return () -> {
+            player.updateAnimation();
+            return System.identityHashCode(player.sprite);
+        };
+    }
+
+    static LongSupplier getSprite(Map<String, String> params){
+        SpriteSheet sheet = new SpriteSheet("/res/characterSheet.png", 16, 16);
+        if(sheet.getSpriteSheet() == null){
+            throw new IllegalStateException("Sprite sheet not found, run from the project directory");
+        }
+        int[] next = {0};
+        return () -> {
+            int n = next[0]++;
+            return sheet.getSprite((n >> 2) % 5, n & 3).getWidth();
+        };
+    }
+
+    // One tick of animation for every entity, each on a random clip at a random point of it.
+    static LongSupplier advanceAnimations(Map<String, String> params){
+        int entities = Integer.parseInt(params.get("entities"));
+        AnimationLibrary animations = AnimationLibrary.load("/animations/character.anim");
+        EntityStore store = animatedStore(entities, animations);
+        return () -> {
+            animations.advanceAll(store);
+            return store.spriteNum[store.count - 1];
+        };
+    }
+
+    // Same, but each entity's clip is picked from its movement first, as EntitySystem.update() does.
+    static LongSupplier animateCharacters(Map<String, String> params){
+        int entities = Integer.parseInt(params.get("entities"));
+        AnimationLibrary animations = AnimationLibrary.load("/animations/character.anim");
+        EntityStore store = animatedStore(entities, animations);
+        Random random = new Random(1);
+        for(int i = 0; i < store.count; i++){
+            store.direction[i] = (byte) random.nextInt(Direction.COUNT);
+            store.flags[i] = random.nextBoolean() ? EntityStore.MOVING : 0;
+        }
+        return () -> {
+            for(int i = 0, n = store.count; i < n; i++){
+                animations.animateCharacter(store, i);
+            }
+            return store.spriteNum[store.count - 1];
+        };
+    }
+
+    // Paths between random free tiles anywhere on the map, Jump Point Search over the whole map.
+    static LongSupplier findPathJps(Map<String, String> params){
+        return findPath(Integer.parseInt(params.get("mapSize")), false);
+    }
+
+    // The same paths through the hierarchical graph.
+    static LongSupplier findPathHierarchical(Map<String, String> params){
+        return findPath(Integer.parseInt(params.get("mapSize")), true);
+    }
+
+    static LongSupplier findPath(int mapSize, boolean hierarchical){
+        NavGrid grid = NavGrid.of(navMap(mapSize));
+        NavGraph graph = null;
+        if(hierarchical){
+            graph = new NavGraph(grid);
+            graph.update();
+        }
+        Pathfinder pathfinder = new Pathfinder(grid, graph);
+        GridPath path = new GridPath();
+        int[] ends = freeTiles(grid, 1024, new Random(1));
+        int[] next = {0};
+        return () -> {
+            int k = (next[0]++ & 511) * 2;
+            pathfinder.find(ends[2 * k], ends[2 * k + 1], ends[2 * k + 2], ends[2 * k + 3], path);
+            return path.cost;
+        };
+    }
+
+    // One tile toggled and the graph brought up to date, as when a door opens or a wall is built.
+    static LongSupplier updateNavGraph(Map<String, String> params){
+        int mapSize = Integer.parseInt(params.get("mapSize"));
+        CollisionLayer collision = navMap(mapSize);
+        NavGraph graph = new NavGraph(NavGrid.of(collision));
+        graph.update();
+        Random random = new Random(1);
+        return () -> {
+            int col = random.nextInt(mapSize), row = random.nextInt(mapSize);
+            collision.set(col, row, !collision.get(col, row));
+            graph.collisionChanged(col, row, 1, 1);
+            graph.update();
+            return graph.clustersRebuilt;
+        };
+    }
+
+    // A crowd closing in on a goal that moves a tile per operation: the field is repaired, then every agent reads
+    // its next step from it.
+    static LongSupplier chaseFlowField(Map<String, String> params){
+        int entities = Integer.parseInt(params.get("entities"));
+        NavGrid grid = NavGrid.of(navMap(500));
+        int[] goals = goalWalk(grid, 1024);
+        int[] spawns = spawnsAround(grid, goals[0], goals[1], 40, Math.max(1, entities));
+        int[] agents = spawns.clone();
+        FlowField field = new FlowField(grid, 48, 8);
+        int[] next = {0};
+        return () -> {
+            int k = (next[0]++ & 1023) * 2;
+            field.setGoal(goals[k], goals[k + 1]);
+            long moved = 0;
+            for(int i = 0; i < entities; i++){
+                int d = field.direction(agents[2 * i], agents[2 * i + 1]);
+                if(d == FlowField.NONE){
+                    agents[2 * i] = spawns[2 * i];
+                    agents[2 * i + 1] = spawns[2 * i + 1];
+                } else {
+                    agents[2 * i] += FlowField.DX[d];
+                    agents[2 * i + 1] += FlowField.DY[d];
+                    moved++;
+                }
+            }
+            return moved;
+        };
+    }
+
+    // The same crowd and goal, one path search per agent per operation.
+    static LongSupplier chasePathPerAgent(Map<String, String> params){
+        int entities = Integer.parseInt(params.get("entities"));
+        NavGrid grid = NavGrid.of(navMap(500));
+        NavGraph graph = new NavGraph(grid);
+        graph.update();
+        Pathfinder pathfinder = new Pathfinder(grid, graph);
+        GridPath path = new GridPath();
+        int[] goals = goalWalk(grid, 1024);
+        int[] spawns = spawnsAround(grid, goals[0], goals[1], 40, Math.max(1, entities));
+        int[] agents = spawns.clone();
+        int[] next = {0};
+        return () -> {
+            int k = (next[0]++ & 1023) * 2;
+            long moved = 0;
+            for(int i = 0; i < entities; i++){
+                if(!pathfinder.find(agents[2 * i], agents[2 * i + 1], goals[k], goals[k + 1], path) || path.length() < 2){
+                    agents[2 * i] = spawns[2 * i];
+                    agents[2 * i + 1] = spawns[2 * i + 1];
+                } else {
+                    agents[2 * i] = path.col(1);
+                    agents[2 * i + 1] = path.row(1);
+                    moved++;
+                }
+            }
+            return moved;
+        };
+    }
+
+    // The goal stepping a tile, field repaired (and rebuilt every FlowField.REBUILD_AFTER steps).
+    static LongSupplier repairFlowField(Map<String, String> params){
+        return moveFlowFieldGoal(false);
+    }
+
+    // The goal stepping a tile, field rebuilt every time.
+    static LongSupplier rebuildFlowField(Map<String, String> params){
+        return moveFlowFieldGoal(true);
+    }
+
+    static LongSupplier moveFlowFieldGoal(boolean rebuild){
+        NavGrid grid = NavGrid.of(navMap(500));
+        int[] goals = goalWalk(grid, 1024);
+        FlowField field = new FlowField(grid, 48, 8);
+        int[] next = {0};
+        return () -> {
+            int k = (next[0]++ & 1023) * 2;
+            if(rebuild){
+                field.invalidate();
+            }
+            field.setGoal(goals[k], goals[k + 1]);
+            return field.tilesUpdated;
+        };
+    }
+
+    // A random walk of straight steps over free tiles from the middle of the map, there and back so it loops.
+    static int[] goalWalk(NavGrid grid, int length){
+        Random random = new Random(2);
+        int col = grid.width() / 2, row = grid.height() / 2;
+        while(grid.isSolid(col, row)){
+            col++;
+        }
+        int[] walk = new int[length * 2];
+        for(int k = 0; k < length / 2; k++){
+            walk[2 * k] = col;
+            walk[2 * k + 1] = row;
+            walk[2 * (length - 1 - k)] = col;
+            walk[2 * (length - 1 - k) + 1] = row;
+            int d = 2 * random.nextInt(4);
+            if(!grid.isSolid(col + FlowField.DX[d], row + FlowField.DY[d])){
+                col += FlowField.DX[d];
+                row += FlowField.DY[d];
+            }
+        }
+        return walk;
+    }
+
+    static int[] spawnsAround(NavGrid grid, int col, int row, int radius, int count){
+        Random random = new Random(3);
+        int[] tiles = new int[count * 2];
+        for(int k = 0; k < count; k++){
+            do {
+                tiles[2 * k] = col + random.nextInt(2 * radius + 1) - radius;
+                tiles[2 * k + 1] = row + random.nextInt(2 * radius + 1) - radius;
+            } while(grid.isSolid(tiles[2 * k], tiles[2 * k + 1]));
+        }
+        return tiles;
+    }
+
+    // Open ground with rectangular buildings scattered over it. (The tiled CSV map is islands in water, no good
+    // for long paths.)
+    static CollisionLayer navMap(int mapSize){
+        CollisionLayer collision = new CollisionLayer("nav", mapSize, mapSize);
+        Random random = new Random(mapSize);
+        for(int k = 0; k < mapSize * mapSize / 40; k++){
+            int col = random.nextInt(mapSize), row = random.nextInt(mapSize);
+            int w = 1 + random.nextInt(6), h = 1 + random.nextInt(6);
+            for(int r = row; r < Math.min(mapSize, row + h); r++){
+                for(int c = col; c < Math.min(mapSize, col + w); c++){
+                    collision.set(c, r, true);
+                }
+            }
+        }
+        return collision;
+    }
+
+    // count free tiles as col, row pairs
+    static int[] freeTiles(NavGrid grid, int count, Random random){
+        int[] tiles = new int[count * 2];
+        for(int k = 0; k < count; k++){
+            do {
+                tiles[2 * k] = random.nextInt(grid.width());
+                tiles[2 * k + 1] = random.nextInt(grid.height());
+            } while(grid.isSolid(tiles[2 * k], tiles[2 * k + 1]));
+        }
+        return tiles;
+    }
+
+    static EntityStore animatedStore(int entities, AnimationLibrary animations){
+        EntityStore store = new EntityStore(Math.max(1, entities));
+        Random random = new Random(1);
+        for(int k = 0; k < Math.max(1, entities); k++){
+            int i = store.indexOf(store.create(EntityStore.NPC, 0, 0));
+            animations.play(store, i, random.nextInt(animations.clipCount()));
+            store.animTime[i] = random.nextInt(animations.clip(store.animClip[i]).duration(0));
+        }
+        return store;
+    }
+
+    // A game on a mapSize x mapSize compiled map. Headless games skip loading images.
+    static Game game(int mapSize, int entities, boolean headless) throws IOException {
+        GameOptions options = new GameOptions();
+        options.headless = headless;
+        options.mapPath = compiledMap(mapSize);
+        options.npcCount = entities;
+        return new Game(options);
+    }
+
+    static Path compiledMap(int mapSize) throws IOException {
+        Path path = compiledMaps.get(mapSize);
+        if(path == null){
+            MapLayers base = baseMap();
+            MapLayers layers = MapLayers.create(mapSize, mapSize);
+            for(int row = 0; row < mapSize; row++){
+                for(int col = 0; col < mapSize; col++){
+                    layers.ground.set(col, row, base.ground.get(col % base.width, row % base.height));
+                    layers.collision.set(col, row, base.collision.get(col % base.width, row % base.height));
+                }
+            }
+            path = Files.createTempFile("bench-" + mapSize + "-", ".ljmap");
+            path.toFile().deleteOnExit();
+            CompiledMap.write(path, layers);
+            compiledMaps.put(mapSize, path);
+        }
+        return path;
+    }
+
+    // The CSV map the game ships with, tiled up to the benchmark sizes.
+    static MapLayers baseMap(){
+        if(baseMap == null){
+            GameOptions options = new GameOptions();
+            options.headless = true;
+            baseMap = new Game(options).tileManager.layers;
+        }
+        return baseMap;
+    }
+
+    static String csv(int mapSize, boolean collision){
+        MapLayers base = baseMap();
+        StringBuilder csv = new StringBuilder(mapSize * mapSize * 3);
+        for(int row = 0; row < mapSize; row++){
+            for(int col = 0; col < mapSize; col++){
+                if(col > 0){
+                    csv.append(',');
+                }
+                if(collision){
+                    csv.append(base.collision.get(col % base.width, row % base.height) ? 1 : 0);
+                } else {
+                    csv.append(base.ground.get(col % base.width, row % base.height));
+                }
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package Benchmark;
+
+import Main.Game;
+import Main.GameOptions;
+import java.util.Random;
+
+// Update throughput of the struct-of-arrays entity store with 1k, 10k and 100k wandering NPCs on the CSV map.
+// Needs res/ on the classpath for the map:
+//   java -cp build:bench-build:res Benchmark.EntityBenchmark
+public class EntityBenchmark {
+
+    public static void main(String[] args){
+        int[] counts = {1_000, 10_000, 100_000};
+
+        for(int count : counts){
+            GameOptions options = new GameOptions();
+            options.headless = true;
+            Game game = new Game(options);
+            game.entitySystem.spawnWanderers(count, game.tileManager, game.maxWorldCol / 2, game.maxWorldRow / 2, game.maxWorldCol / 2, game.tileSize, new Random(1));
+
+            int warmupTicks = 200;
+            int ticks = Math.max(50, 5_000_000 / count);
+            for(int t = 0; t < warmupTicks; t++){
+                game.collisionChecker.updateEntityHash(game.entities);
+                game.entitySystem.update();
+            }
+
+            long start = System.nanoTime();
+            for(int t = 0; t < ticks; t++){
+                game.collisionChecker.updateEntityHash(game.entities);
+                game.entitySystem.update();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double nanosPerTick = elapsed / (double) ticks;
+            double nanosPerEntity = nanosPerTick / game.entities.count;
+            System.out.printf("%7d entities: %9.1f us/tick, %6.1f ns/entity, %6.1f M entity updates/s%n",
+                    game.entities.count, nanosPerTick / 1000, nanosPerEntity, 1000 / nanosPerEntity);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+// A small in-tree stand-in for JMH (which we can't pull in with a bare javac build). Each benchmark runs a few
+// fixed-length warmup iterations and then measurement iterations, once per combination of its parameters, and
+// reports the average time per operation. Results are written in JMH's JSON format so the usual JMH tooling
+// can read and compare them.
+//
+// Command line, same flags as JMH where there is one:
+//   [regex]                only benchmarks whose name matches
+//   -p name=v1,v2          parameter values (default: whatever the suite registered)
+//   -wi n / -i n           warmup / measurement iterations
+//   -w ms / -r ms          warmup / measurement iteration length
+//   -rff file              JSON result file (default bench-results.json)
+public class Harness {
+
+    // A benchmark is created once per parameter combination and returns the operation to time.
+    // The operation's result is folded into a sink so the JIT can't throw the work away.
+    public interface Setup {
+        LongSupplier create(Map<String, String> params) throws Exception;
+    }
+
+    static class Entry {
+        final String name;
+        final String[] paramNames;
+        final Setup setup;
+
+        Entry(String name, String[] paramNames, Setup setup){
+            this.name = name;
+            this.paramNames = paramNames;
+            this.setup = setup;
+        }
+    }
+
+    static class Result {
+        final String benchmark;
+        final Map<String, String> params;
+        final double[] nanosPerOp;
+
+        Result(String benchmark, Map<String, String> params, double[] nanosPerOp){
+            this.benchmark = benchmark;
+            this.params = params;
+            this.nanosPerOp = nanosPerOp;
+        }
+    }
+
+    final String suite;
+    final List<Entry> entries = new ArrayList<>();
+    final Map<String, String[]> paramValues = new LinkedHashMap<>();
+    final List<Result> results = new ArrayList<>();
+
+    Pattern filter = Pattern.compile(".*");
+    int warmupIterations = 3;
+    int measurementIterations = 5;
+    long warmupNanos = 500_000_000L;
+    long measurementNanos = 500_000_000L;
+    Path resultFile = Path.of("bench-results.json");
+
+    static volatile long sink;
+
+    public Harness(String suite){
+        this.suite = suite;
+    }
+
+    public void param(String name, String... defaults){
+        paramValues.put(name, defaults);
+    }
+
+    public void add(String name, String[] paramNames, Setup setup){
+        entries.add(new Entry(name, paramNames, setup));
+    }
+
+    public void parseArgs(String[] args){
+        for(int i = 0; i < args.length; i++){
+            String arg = args[i];
+            switch(arg){
+                case "-p":
+                    String assignment = args[++i];
+                    int equals = assignment.indexOf('=');
+                    paramValues.put(assignment.substring(0, equals), assignment.substring(equals + 1).split(","));
+                    break;
+                case "-wi":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    measurementIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-w":
+                    warmupNanos = Long.parseLong(args[++i]) * 1_000_000L;
+                    break;
+                case "-r":
+                    measurementNanos = Long.parseLong(args[++i]) * 1_000_000L;
+                    break;
+                case "-rff":
+                    resultFile = Path.of(args[++i]);
+                    break;
+                default:
+                    if(arg.startsWith("-")){
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    filter = Pattern.compile(arg);
+            }
+        }
+    }
+
+    public void run() throws Exception {
+        for(Entry entry : entries){
+            if(!filter.matcher(entry.name).find()){
+                continue;
+            }
+            for(Map<String, String> params : combinations(entry.paramNames)){
+                LongSupplier op = entry.setup.create(params);
+
+                for(int i = 0; i < warmupIterations; i++){
+                    iteration(op, warmupNanos);
+                }
+                double[] nanosPerOp = new double[measurementIterations];
+                for(int i = 0; i < measurementIterations; i++){
+                    nanosPerOp[i] = iteration(op, measurementNanos);
+                }
+                Result result = new Result(entry.name, params, nanosPerOp);
+                results.add(result);
+                System.out.println(format(result));
+            }
+        }
+        writeJson();
+        System.out.println("Results written to " + resultFile.toAbsolutePath());
+    }
+
+    List<Map<String, String>> combinations(String[] names){
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for(String name : names){
+            String[] values = paramValues.get(name);
+            if(values == null){
+                throw new IllegalStateException("No values for parameter " + name);
+            }
+            List<Map<String, String>> next = new ArrayList<>();
+            for(Map<String, String> partial : combinations){
+                for(String value : values){
+                    Map<String, String> combination = new LinkedHashMap<>(partial);
+                    combination.put(name, value);
+                    next.add(combination);
+                }
+            }
+            combinations = next;
+        }
+        return combinations;
+    }
+
+    // Runs op in batches until the time is up. Batches grow until one takes about 10us, so timer reads
+    // don't dominate operations that only take nanoseconds.
+    static double iteration(LongSupplier op, long nanos){
+        long result = 0;
+        long ops = 0;
+        int batch = 1;
+        long start = System.nanoTime();
+        long end = start + nanos;
+        long now;
+        do {
+            long batchStart = System.nanoTime();
+            for(int k = 0; k < batch; k++){
+                result += op.getAsLong();
+            }
+            ops += batch;
+            now = System.nanoTime();
+            if(now - batchStart < 10_000 && batch < (1 << 20)){
+                batch <<= 1;
+            }
+        } while(now < end);
+        sink += result;
+        return (now - start) / (double) ops;
+    }
+
+    static double mean(double[] values){
+        double sum = 0;
+        for(double value : values) sum += value;
+        return sum / values.length;
+    }
+
+    // Half width of a 99.9% confidence interval, normal approximation (JMH uses Student's t, a bit wider for few iterations).
+    static double error(double[] values){
+        if(values.length < 2){
+            return Double.NaN;
+        }
+        double mean = mean(values);
+        double squares = 0;
+        for(double value : values) squares += (value - mean) * (value - mean);
+        return 3.29 * Math.sqrt(squares / (values.length - 1)) / Math.sqrt(values.length);
+    }
+
+    String format(Result result){
+        return String.format(Locale.ROOT, "%-28s %-32s %14.1f +- %10.1f ns/op",
+                result.benchmark, result.params, mean(result.nanosPerOp), error(result.nanosPerOp));
+    }
+
+    void writeJson() throws IOException {
+        StringBuilder json = new StringBuilder("[\n");
+        for(int r = 0; r < results.size(); r++){
+            Result result = results.get(r);
+            json.append("    {\n");
+            json.append("        \"jmhVersion\" : \"in-tree\",\n");
+            json.append("        \"benchmark\" : \"").append(suite).append('.').append(result.benchmark).append("\",\n");
+            json.append("        \"mode\" : \"avgt\",\n");
+            json.append("        \"threads\" : 1,\n");
+            json.append("        \"forks\" : 0,\n");
+            json.append("        \"jdkVersion\" : \"").append(System.getProperty("java.version")).append("\",\n");
+            json.append("        \"vmName\" : \"").append(System.getProperty("java.vm.name")).append("\",\n");
+            json.append("        \"warmupIterations\" : ").append(warmupIterations).append(",\n");
+            json.append("        \"warmupTime\" : \"").append(warmupNanos / 1_000_000).append(" ms\",\n");
+            json.append("        \"measurementIterations\" : ").append(measurementIterations).append(",\n");
+            json.append("        \"measurementTime\" : \"").append(measurementNanos / 1_000_000).append(" ms\",\n");
+            if(!result.params.isEmpty()){
+                json.append("        \"params\" : {\n");
+                int p = 0;
+                for(Map.Entry<String, String> param : result.params.entrySet()){
+                    json.append("            \"").append(param.getKey()).append("\" : \"").append(param.getValue()).append('"');
+                    json.append(++p < result.params.size() ? ",\n" : "\n");
+                }
+                json.append("        },\n");
+            }
+            json.append("        \"primaryMetric\" : {\n");
+            json.append("            \"score\" : ").append(number(mean(result.nanosPerOp))).append(",\n");
+            json.append("            \"scoreError\" : ").append(number(error(result.nanosPerOp))).append(",\n");
+            json.append("            \"scoreUnit\" : \"ns/op\",\n");
+            json.append("            \"rawData\" : [\n                [\n");
+            for(int i = 0; i < result.nanosPerOp.length; i++){
+                json.append("                    ").append(number(result.nanosPerOp[i]));
+                json.append(i + 1 < result.nanosPerOp.length ? ",\n" : "\n");
+            }
+            json.append("                ]\n            ]\n        },\n");
+            json.append("        \"secondaryMetrics\" : {\n        }\n");
+            json.append(r + 1 < results.size() ? "    },\n" : "    }\n");
+        }
+        json.append("]\n");
+        Files.writeString(resultFile, json, StandardCharsets.UTF_8);
+    }
+
+    static String number(double value){
+        return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", value);
+    }
+}
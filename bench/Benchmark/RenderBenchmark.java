@@ -0,0 +1,79 @@
+package Benchmark;
+
+import Main.GameOptions;
+import Main.GamePanel;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Frame times of GamePanel.drawFrame() into an offscreen image: the Java2D renderer against the software one (on
+// one thread and on [threads]), each at 48px and with --low-res, which draws at 256x192 and scales the frame up
+// once, at the normal window size and at bigger ones only it can fill. The camera pans diagonally back and forth
+// through a crowd of wandering NPCs, ten tiles either side of the start:
+//   java -Djava.awt.headless=true -cp bench-build:res:. Benchmark.RenderBenchmark [frames] [npcs] [threads]
+public class RenderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int npcs = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println();
+        System.out.println("renderer         path                   window      avg ms  p50 ms  p99 ms  vs Java2D 48px");
+        double base = run("java2d", 1, "48px", false, true, 768, 576, frames, npcs, 0);
+        run("software", 1, "48px", false, true, 768, 576, frames, npcs, base);
+        if(threads > 1){
+            run("software", threads, "48px", false, true, 768, 576, frames, npcs, base);
+        }
+        run("java2d", 1, "low-res integer", true, true, 768, 576, frames, npcs, base);
+        run("software", 1, "low-res integer", true, true, 768, 576, frames, npcs, base);
+        run("java2d", 1, "low-res integer", true, true, 1536, 1152, frames, npcs, base);
+        run("java2d", 1, "low-res fractional", true, false, 1000, 700, frames, npcs, base);
+        run("java2d", 1, "low-res fractional", true, false, 1920, 1080, frames, npcs, base);
+        System.exit(0);
+    }
+
+    static double run(String renderer, int threads, String name, boolean lowRes, boolean integerScaling, int width, int height, int frames, int npcs, double base) throws Exception {
+        GameOptions options = new GameOptions();
+        options.mapPath = EngineBenchmarks.compiledMap(500);
+        options.npcCount = npcs;
+        options.softwareRenderer = renderer.equals("software");
+        options.rasterThreads = threads;
+        options.lowRes = lowRes;
+        options.integerScaling = integerScaling;
+        GamePanel panel = new GamePanel(options);
+        BufferedImage window = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = window.createGraphics();
+
+        int startX = panel.game.player.getWorldX();
+        int startY = panel.game.player.getWorldY();
+        int range = 20 * panel.game.tileSize;
+        long[] times = new long[frames];
+        for(int frame = -frames / 2; frame < frames; frame++){
+            // one world pixel a frame, so --low-res moves a native pixel every third frame
+            int offset = Math.abs(Math.floorMod(frame, 2 * range) - range) - range / 2;
+            panel.game.player.setPosition(startX + offset, startY + offset);
+            panel.update();
+            long t = System.nanoTime();
+            panel.drawFrame(g2, width, height);
+            if(frame >= 0){
+                times[frame] = System.nanoTime() - t;
+            }
+        }
+        g2.dispose();
+        panel.game.paths.close();
+
+        long total = 0;
+        for(long time : times){
+            total += time;
+        }
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double avg = total / 1e6 / frames;
+        String label = renderer + (threads > 1 ? " x" + threads : "");
+        System.out.printf("%-16s %-22s %4dx%-5d %7.3f %7.3f %7.3f %15s%n", label, name, width, height, avg, sorted[frames / 2] / 1e6,
+                sorted[(int) (frames * 0.99)] / 1e6, base > 0 ? String.format("%.1fx", base / avg) : "");
+        return avg;
+    }
+}
@@ -0,0 +1,84 @@
+package Benchmark;
+
+import Main.Game;
+import Main.GameOptions;
+import java.awt.Canvas;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Records a scripted session through the real input path (key events into the KeyHandler), then replays the log
+// headless a few times. Each replay prints its tick times and must end on the recorded checksum; the exit status
+// is 1 if one didn't. The same log can be replayed against a later build with --replay to compare tick times:
+//   java -Djava.awt.headless=true -cp bench-build:res:. Benchmark.ReplayBenchmark [ticks] [npcs]
+public class ReplayBenchmark {
+
+    static final int[] KEYS = {KeyEvent.VK_W, KeyEvent.VK_S, KeyEvent.VK_A, KeyEvent.VK_D};
+
+    public static void main(String[] args) throws IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 3600;
+        int npcs = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Path log = Files.createTempFile("replay-", ".ljin");
+        log.toFile().deleteOnExit();
+
+        GameOptions options = new GameOptions();
+        options.headless = true;
+        options.mapPath = EngineBenchmarks.compiledMap(500);
+        options.npcCount = npcs;
+        options.recordPath = log;
+        Game game = new Game(options);
+        play(game, ticks, new Random(7));
+        game.finish();
+
+        boolean ok = true;
+        for(int run = 0; run < 3; run++){
+            GameOptions replayOptions = new GameOptions();
+            replayOptions.headless = true;
+            replayOptions.replayPath = log;
+            Game replay = new Game(replayOptions);
+            while(!replay.replay.isFinished()){
+                replay.update();
+            }
+            ok &= replay.finish();
+        }
+        if(!ok){
+            System.exit(1);
+        }
+    }
+
+    // Holds a random direction key (or none) for a quarter second to two seconds at a time, with the odd tap
+    // shorter than a tick.
+    static void play(Game game, int ticks, Random random){
+        Canvas source = new Canvas();
+        int held = -1;
+        int nextChange = 0;
+        for(int t = 0; t < ticks; t++){
+            if(--nextChange <= 0){
+                if(held >= 0){
+                    key(game, source, KEYS[held], false);
+                }
+                held = random.nextInt(KEYS.length + 1) - 1;
+                if(held >= 0){
+                    key(game, source, KEYS[held], true);
+                }
+                nextChange = 15 + random.nextInt(105);
+            } else if(random.nextInt(200) == 0){
+                int tap = KEYS[random.nextInt(KEYS.length)];
+                key(game, source, tap, true);
+                key(game, source, tap, false);
+            }
+            game.update();
+        }
+    }
+
+    static void key(Game game, Canvas source, int keyCode, boolean pressed){
+        KeyEvent event = new KeyEvent(source, pressed ? KeyEvent.KEY_PRESSED : KeyEvent.KEY_RELEASED, System.currentTimeMillis(), 0, keyCode, KeyEvent.CHAR_UNDEFINED);
+        if(pressed){
+            game.keyH.keyPressed(event);
+        } else {
+            game.keyH.keyReleased(event);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package Benchmark;
+
+import Main.Game;
+import Tiles.MapLayers;
+import Tiles.TileLayer;
+import World.SaveGame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Saves and loads a 1000x1000 map with 10000 wandering NPCs. Full saves: the copy on the game thread, then the
+// compress and write on the save writer, in MB of raw state a second. Loads into a freshly started game, which
+// must end up with the same checksum and layers. Then incremental saves after editing a few tiles between them,
+// which write only the edited chunks until the file gets compacted. The file is reloaded after every compaction,
+// and after the last save:
+//   java -Djava.awt.headless=true -cp bench-build:res:. Benchmark.SaveBenchmark [runs] [edits per save]
+public class SaveBenchmark {
+
+    static final int MAP_SIZE = 1000;
+    static final int NPCS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Path file = Files.createTempFile("save-", ".ljsv");
+        file.toFile().deleteOnExit();
+        Path.of(file + ".tmp").toFile().deleteOnExit();
+
+        Game game = EngineBenchmarks.game(MAP_SIZE, 0, true);
+        game.entitySystem.spawnWanderers(NPCS, game.tileManager, MAP_SIZE / 2, MAP_SIZE / 2, MAP_SIZE / 2, game.tileSize, new Random(1));
+        for(int t = 0; t < 60; t++){
+            game.update();
+        }
+
+        SaveGame.Result full = null;
+        long copy = 0, write = 0;
+        for(int run = 0; run < runs; run++){
+            SaveGame saves = new SaveGame(game, file);
+            full = saves.save().join();
+            saves.close();
+            copy += full.captureNanos;
+            write += full.writeNanos;
+        }
+        System.out.printf("%nFull save: %d KB raw -> %d KB file, game thread %.2f ms, writer %.1f ms (%.0f MB/s)%n",
+                full.rawBytes / 1024, full.fileBytes / 1024, copy / 1e6 / runs, write / 1e6 / runs, full.rawBytes / (write / 1e3 / runs));
+
+        long load = 0;
+        boolean same = true;
+        Game loaded = null;
+        for(int run = 0; run < runs; run++){
+            loaded = EngineBenchmarks.game(MAP_SIZE, 0, true);
+            SaveGame saves = new SaveGame(loaded, file);
+            long start = System.nanoTime();
+            saves.load();
+            load += System.nanoTime() - start;
+            saves.close();
+            same &= loaded.checksum() == game.checksum() && sameLayers(loaded.tileManager.layers, game.tileManager.layers);
+            loaded.paths.close();
+        }
+        System.out.printf("Load: %.1f ms (%.0f MB/s raw), state %s%n", load / 1e6 / runs, full.rawBytes / (load / 1e3 / runs),
+                same ? "matches" : "DIFFERS");
+
+        // Incremental saves from the last loaded game, which knows the file's layout
+        SaveGame saves = new SaveGame(loaded, file);
+        saves.load();
+        Random random = new Random(2);
+        System.out.println();
+        System.out.println("save  kind         chunks  written KB  file KB  game thread ms  writer ms");
+        boolean compactedOk = true;
+        for(int save = 0; save < 20; save++){
+            for(int k = 0; k < edits; k++){
+                int col = random.nextInt(MAP_SIZE), row = random.nextInt(MAP_SIZE);
+                loaded.tileManager.setTile(col, row, random.nextInt(37));
+                loaded.tileManager.setSolid(col, row, random.nextBoolean());
+            }
+            for(int t = 0; t < 10; t++){
+                loaded.update();
+            }
+            SaveGame.Result result = saves.save().join();
+            System.out.printf("%4d  %-11s %7d %11d %8d %15.2f %10.1f%n", save, result.full ? "full" : result.compacted ? "compacted" : "incremental",
+                    result.chunks, result.bytesWritten / 1024, result.fileBytes / 1024, result.captureNanos / 1e6, result.writeNanos / 1e6);
+            // A compacted file is laid out afresh, the saves after it must still point into it
+            if(result.compacted && !reloads(file, loaded)){
+                System.out.println("Reloaded after compaction: DIFFERS");
+                compactedOk = false;
+            }
+        }
+        saves.close();
+
+        boolean ok = reloads(file, loaded) && compactedOk;
+        System.out.println("Reloaded after incremental saves: " + (ok ? "matches" : "DIFFERS"));
+        if(!same || !ok){
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    // Whether the file loads into a fresh game with the same state as the game that saved it.
+    static boolean reloads(Path file, Game saved) throws Exception {
+        Game check = EngineBenchmarks.game(MAP_SIZE, 0, true);
+        SaveGame reload = new SaveGame(check, file);
+        try {
+            reload.load();
+        } catch (IOException e) {
+            System.out.println("Reload failed: " + e.getMessage());
+            return false;
+        } finally {
+            reload.close();
+            check.paths.close();
+        }
+        return check.checksum() == saved.checksum() && sameLayers(check.tileManager.layers, saved.tileManager.layers);
+    }
+
+    static boolean sameLayers(MapLayers a, MapLayers b){
+        for(TileLayer layer : a.getTileLayers()){
+            if(!layer.buffer().duplicate().clear().equals(b.getTileLayer(layer.name).buffer().duplicate().clear())){
+                return false;
+            }
+        }
+        return a.collision.buffer().duplicate().clear().equals(b.collision.buffer().duplicate().clear());
+    }
+}
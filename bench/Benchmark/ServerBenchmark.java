@@ -0,0 +1,141 @@
+package Benchmark;
+
+import Main.Game;
+import Main.TimingSamples;
+import Net.GameClient;
+import Net.GameServer;
+import Net.InterestGrid;
+import Net.Snapshot;
+import World.Chunk;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// A GameServer on localhost with 100 and 1000 bot clients, on a 500x500 map with 10000 wandering NPCs. Bots hold a
+// random direction (or nothing) for half a second to two seconds at a time. Measures the server's tick, split
+// into network in, game.update() and snapshots out, and the snapshot bytes per client per tick, with deltas and
+// with every snapshot sent whole. Afterwards every bot's view must match what the server would send it now.
+// Bots run on the same thread between ticks, only tick() is timed:
+//   java -Djava.awt.headless=true -cp bench-build:res:. Benchmark.ServerBenchmark [ticks]
+public class ServerBenchmark {
+
+    static final int MAP_SIZE = 500;
+    static final int NPCS = 10_000;
+    static final int WARMUP_TICKS = 300;
+
+    public static void main(String[] args) throws IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        System.out.println("clients deltas  tick avg ms  p99 ms   in ms  update ms  out ms  bytes/client/tick  in view  views ok");
+        for(int clients : new int[]{100, 1000}){
+            for(boolean deltas : new boolean[]{true, false}){
+                run(clients, deltas, ticks);
+            }
+        }
+    }
+
+    static void run(int clientCount, boolean deltas, int ticks) throws IOException {
+        Game game = EngineBenchmarks.game(MAP_SIZE, 0, true);
+        game.entitySystem.spawnWanderers(NPCS, game.tileManager, MAP_SIZE / 2, MAP_SIZE / 2, MAP_SIZE / 2, game.tileSize, new Random(1));
+        GameServer server = new GameServer(game, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+        server.deltas = deltas;
+        server.spawnCol = MAP_SIZE / 2;
+        server.spawnRow = MAP_SIZE / 2;
+        server.spawnRadius = MAP_SIZE / 2 - 10;
+
+        // Connect in batches the accept backlog can hold
+        List<GameClient> clients = new ArrayList<>();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        while(clients.size() < clientCount){
+            for(int k = 0; k < 100 && clients.size() < clientCount; k++){
+                clients.add(new GameClient(address));
+            }
+            while(server.clientCount() < clients.size()){
+                server.tick();
+            }
+        }
+
+        Random random = new Random(clientCount);
+        int[] nextChange = new int[clientCount];
+        TimingSamples tickTimes = new TimingSamples(ticks);
+        long in = 0, update = 0, out = 0, bytes = 0, inView = 0;
+        for(int t = 0; t < WARMUP_TICKS + ticks; t++){
+            for(int k = 0; k < clientCount; k++){
+                if(--nextChange[k] <= 0){
+                    nextChange[k] = 30 + random.nextInt(90);
+                    int action = random.nextInt(5);
+                    clients.get(k).sendInput(action == 4 ? 0 : 1 << action);
+                }
+            }
+            for(GameClient client : clients){
+                client.flush();
+            }
+            long start = System.nanoTime();
+            server.tick();
+            long elapsed = System.nanoTime() - start;
+            for(GameClient client : clients){
+                client.poll();
+            }
+            if(t >= WARMUP_TICKS){
+                tickTimes.record(elapsed);
+                in += server.receiveNanos;
+                update += server.updateNanos;
+                out += server.sendNanos;
+                bytes += server.tickBytesQueued;
+                for(GameClient client : clients){
+                    inView += client.view.count;
+                }
+            }
+        }
+
+        // Let every bot catch up with the last snapshot, then check its view against the game as it is now
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while(!caughtUp(clients, server.tick - 1) && System.nanoTime() < deadline){
+            server.flush();
+            for(GameClient client : clients){
+                client.poll();
+            }
+        }
+        int ok = countMatchingViews(game, clients, server.interestRadius);
+
+        double clientTicks = (double) clientCount * ticks;
+        System.out.printf("%7d %6s %12.3f %7.3f %7.3f %10.3f %7.3f %18.1f %8.1f %5d/%d%n", clientCount, deltas,
+                tickTimes.averageMillis(), tickTimes.percentileMillis(0.99), in / 1e6 / ticks, update / 1e6 / ticks,
+                out / 1e6 / ticks, bytes / clientTicks, inView / clientTicks, ok, clientCount);
+
+        for(GameClient client : clients){
+            client.close();
+        }
+        server.close();
+        game.paths.close();
+    }
+
+    static boolean caughtUp(List<GameClient> clients, long tick){
+        for(GameClient client : clients){
+            if(client.tick != tick){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int countMatchingViews(Game game, List<GameClient> clients, int radius){
+        InterestGrid interest = new InterestGrid(game.maxWorldCol, game.maxWorldRow, Chunk.SIZE, game.tileSize);
+        interest.build(game.entities, game.tileSize);
+        Snapshot expected = new Snapshot();
+        int ok = 0;
+        int half = game.tileSize / 2;
+        for(GameClient client : clients){
+            int i = game.entities.indexOf(client.playerHandle);
+            int count = interest.collect(game.entities.worldX[i] + half, game.entities.worldY[i] + half, radius);
+            expected.capture(game.entities, interest.found, count);
+            if(expected.sameAs(client.view) && client.playerIndex() >= 0){
+                ok++;
+            }
+        }
+        return ok;
+    }
+}
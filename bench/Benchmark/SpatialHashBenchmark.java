@@ -0,0 +1,110 @@
+package Benchmark;
+
+import Entity.EntityStore;
+import Main.SpatialHash;
+import java.util.Random;
+
+// Spatial hash broadphase against brute force at a few entity counts and densities (entities per tile).
+// Every row checks the hash finds exactly the pairs brute force finds before timing anything.
+//   java -cp build:bench-build Benchmark.SpatialHashBenchmark
+public class SpatialHashBenchmark {
+
+    static final int TILE_SIZE = 48;
+
+    public static void main(String[] args){
+        int[] counts = {1_000, 5_000, 20_000};
+        double[] densities = {0.01, 0.1, 0.5};
+
+        System.out.println("entities density    pairs   build us   pairs us   brute us  speedup   aabb ns nearest ns");
+        for(int count : counts){
+            for(double density : densities){
+                run(count, density);
+            }
+        }
+    }
+
+    static void run(int count, double density){
+        int worldPixels = (int) (Math.sqrt(count / density) * TILE_SIZE);
+        EntityStore store = new EntityStore();
+        Random random = new Random(count * 31L + (long) (density * 1000));
+        for(int n = 0; n < count; n++){
+            int i = store.indexOf(store.create(EntityStore.NPC, random.nextInt(worldPixels), random.nextInt(worldPixels)));
+            store.setHitbox(i, 8, 16, 32, 32);
+        }
+
+        SpatialHash hash = new SpatialHash(TILE_SIZE);
+        hash.build(store);
+        int pairs = hash.findCollidingPairs();
+        int brutePairs = bruteForcePairs(store);
+        if(pairs != brutePairs){
+            throw new IllegalStateException("Spatial hash found " + pairs + " pairs, brute force " + brutePairs);
+        }
+
+        int rounds = Math.max(5, 2_000_000 / count);
+        int bruteRounds = Math.max(1, 50_000_000 / count / count);
+
+        for(int r = 0; r < rounds; r++){
+            hash.build(store);
+            hash.findCollidingPairs();
+        }
+        long sink = 0;
+        long start = System.nanoTime();
+        for(int r = 0; r < rounds; r++){
+            hash.build(store);
+        }
+        double buildNanos = (System.nanoTime() - start) / (double) rounds;
+
+        start = System.nanoTime();
+        for(int r = 0; r < rounds; r++){
+            sink += hash.findCollidingPairs();
+        }
+        double pairNanos = (System.nanoTime() - start) / (double) rounds;
+
+        sink += bruteForcePairs(store);
+        start = System.nanoTime();
+        for(int r = 0; r < bruteRounds; r++){
+            sink += bruteForcePairs(store);
+        }
+        double bruteNanos = (System.nanoTime() - start) / (double) bruteRounds;
+
+        // Point queries: a hitbox sized box and a two tile radius around random points
+        int queries = 200_000;
+        int[] out = new int[64];
+        int[] xs = new int[1024], ys = new int[1024];
+        for(int q = 0; q < xs.length; q++){
+            xs[q] = random.nextInt(worldPixels);
+            ys[q] = random.nextInt(worldPixels);
+        }
+        start = System.nanoTime();
+        for(int q = 0; q < queries; q++){
+            sink += hash.queryAabb(xs[q & 1023], ys[q & 1023], 32, 32, out);
+        }
+        double aabbNanos = (System.nanoTime() - start) / (double) queries;
+        start = System.nanoTime();
+        for(int q = 0; q < queries; q++){
+            sink += hash.nearest(xs[q & 1023], ys[q & 1023], TILE_SIZE * 2, -1);
+        }
+        double nearestNanos = (System.nanoTime() - start) / (double) queries;
+
+        System.out.printf("%8d %7.2f %8d %10.1f %10.1f %10.1f %7.1fx %9.1f %10.1f%s%n",
+                count, density, pairs, buildNanos / 1000, pairNanos / 1000, bruteNanos / 1000,
+                bruteNanos / (buildNanos + pairNanos), aabbNanos, nearestNanos, sink == 42 ? " " : "");
+    }
+
+    static int bruteForcePairs(EntityStore s){
+        int pairs = 0;
+        int count = s.count;
+        for(int a = 0; a < count; a++){
+            int aLeft = s.worldX[a] + s.solidX[a], aRight = aLeft + s.solidWidth[a];
+            int aTop = s.worldY[a] + s.solidY[a], aBottom = aTop + s.solidHeight[a];
+            for(int b = a + 1; b < count; b++){
+                int bLeft = s.worldX[b] + s.solidX[b];
+                int bTop = s.worldY[b] + s.solidY[b];
+                if(aLeft < bLeft + s.solidWidth[b] && bLeft < aRight && aTop < bTop + s.solidHeight[b] && bTop < aBottom){
+                    pairs++;
+                }
+            }
+        }
+        return pairs;
+    }
+}
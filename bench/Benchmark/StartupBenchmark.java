@@ -0,0 +1,93 @@
+package Benchmark;
+
+import Main.Game;
+import Main.GameOptions;
+import Utility.AssetManager;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Cold and warm startup: time to build a windowed Game (images, atlas, map) in a fresh JVM, first with an empty
+// decoded image cache and then with the cache it left behind. For comparison, the cache off with one loader
+// thread (decoding one image after another, as startup used to) and with the default pool.
+// Each run is its own JVM so class loading and JIT are cold every time, like a real start:
+//   java -Djava.awt.headless=true -cp bench-build:res:. Benchmark.StartupBenchmark [runs]
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if(args.length == 3 && args[0].equals("--child")){
+            child(args[1], Integer.parseInt(args[2]));
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Path cache = Files.createTempDirectory("startup-cache");
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        List<String> sequential = new ArrayList<>(), none = new ArrayList<>(), cold = new ArrayList<>(), warm = new ArrayList<>();
+        for(int run = 0; run < runs; run++){
+            sequential.add(runChild("off", 1));
+            none.add(runChild("off", threads));
+            deleteContents(cache);
+            cold.add(runChild(cache.toString(), threads));
+            warm.add(runChild(cache.toString(), threads));
+        }
+        deleteContents(cache);
+        Files.delete(cache);
+
+        print("sequential", sequential);
+        print("no cache", none);
+        print("cold cache", cold);
+        print("warm cache", warm);
+    }
+
+    // Prints "<game ms> <image loading ms> <jvm uptime ms>"
+    static void child(String cache, int threads){
+        long start = System.nanoTime();
+        GameOptions options = new GameOptions();
+        options.assetCachePath = cache.equals("off") ? null : Path.of(cache);
+        AssetManager assets = new AssetManager(options.assetCachePath, threads);
+        new Game(options, assets);
+        long end = System.nanoTime();
+        System.out.printf("RESULT %.1f %.1f %d%n", (end - start) / 1e6, assets.getLoadMillis(), ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    static String runChild(String cache, int threads) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-Djava.awt.headless=true", "-cp", System.getProperty("java.class.path"),
+                StartupBenchmark.class.getName(), "--child", cache, String.valueOf(threads)).redirectErrorStream(true).start();
+        String result = null;
+        for(String line : new String(process.getInputStream().readAllBytes()).split("\n")){
+            if(line.startsWith("RESULT ")){
+                result = line.substring(7).trim();
+            }
+        }
+        if(process.waitFor() != 0 || result == null){
+            throw new IllegalStateException("Startup run failed");
+        }
+        return result;
+    }
+
+    static void print(String label, List<String> results){
+        double game = 0, images = 0, uptime = 0;
+        for(String result : results){
+            String[] fields = result.split(" ");
+            game += Double.parseDouble(fields[0]);
+            images += Double.parseDouble(fields[1]);
+            uptime += Double.parseDouble(fields[2]);
+        }
+        int n = results.size();
+        System.out.printf("%-11s game built in %6.1f ms (images %6.1f ms), ready %6.1f ms after JVM start, mean of %d%n",
+                label, game / n, images / n, uptime / n, n);
+    }
+
+    static void deleteContents(Path directory) throws IOException {
+        try(Stream<Path> files = Files.walk(directory)){
+            files.sorted(Comparator.reverseOrder()).filter(p -> !p.equals(directory)).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -7,8 +7,8 @@ echo "Building Legend of Java..."
 # Create build directory if it doesn't exist
 mkdir -p build
 
-# Compile all Java files and place .class files in build directory
-javac -d build -cp src src/Main/Main.java
+# Compile all Java files (the game and its tools) and place .class files in build directory
+javac -d build -cp src $(find src -name '*.java')
 
 # Copy resources to build directory
 cp -r res build/
@@ -0,0 +1,112 @@
+package Entity;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// One animation as it is described: sheet frames, how many ticks each is shown, and what happens at the end.
+// Immutable, so one clip is shared by every entity playing it.
+public final class AnimationClip {
+
+    public static final byte LOOP = 0;      // back to the first frame
+    public static final byte ONCE = 1;      // stays on the last frame
+    public static final byte PINGPONG = 2;  // plays backwards to the first frame, then forwards again
+
+    public final String name;
+    public final byte mode;
+    private final int[] frames;     // sheet frame indices
+    private final int[] durations;  // ticks per frame, at least 1
+
+    public AnimationClip(String name, byte mode, int[] frames, int[] durations){
+        if(frames.length == 0 || frames.length != durations.length){
+            throw new IllegalArgumentException("Clip '" + name + "' needs one duration per frame and at least one frame");
+        }
+        for(int ticks : durations){
+            if(ticks < 1){
+                throw new IllegalArgumentException("Clip '" + name + "' has a frame shorter than one tick");
+            }
+        }
+        this.name = name;
+        this.mode = mode;
+        this.frames = frames.clone();
+        this.durations = durations.clone();
+    }
+
+    // A clip from the words of a description line: words[first] is the mode, the rest <frame>:<ticks> (ticks
+    // default to 1). Shared by the sprite and tile animation files.
+    public static AnimationClip parse(String name, String[] words, int first, int lineNumber) throws IOException {
+        int n = words.length - first - 1;
+        if(n < 1){
+            throw new IOException("Line " + lineNumber + ": clip '" + name + "' has no frames");
+        }
+        int[] frames = new int[n];
+        int[] durations = new int[n];
+        try {
+            for(int k = 0; k < n; k++){
+                String[] frame = words[first + 1 + k].split(":");
+                frames[k] = Integer.parseInt(frame[0]);
+                durations[k] = frame.length > 1 ? Integer.parseInt(frame[1]) : 1;
+            }
+            return new AnimationClip(name, mode(words[first], lineNumber), frames, durations);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+        }
+    }
+
+    static byte mode(String word, int lineNumber) throws IOException {
+        switch(word){
+            case "loop": return LOOP;
+            case "once": return ONCE;
+            case "pingpong": return PINGPONG;
+        }
+        throw new IOException("Line " + lineNumber + ": unknown clip mode '" + word + "'");
+    }
+
+    public int frameCount(){
+        return frames.length;
+    }
+
+    public int frame(int i){
+        return frames[i];
+    }
+
+    public int duration(int i){
+        return durations[i];
+    }
+
+    // Sheet frame for every tick of one cycle. A ping-pong cycle is the frames forwards, then backwards without
+    // repeating either end.
+    public int[] bakeTicks(){
+        int[] order = frames.length > 2 && mode == PINGPONG ? pingPongOrder() : identityOrder();
+        int length = 0;
+        for(int k : order){
+            length += durations[k];
+        }
+        int[] ticks = new int[length];
+        int t = 0;
+        for(int k : order){
+            Arrays.fill(ticks, t, t + durations[k], frames[k]);
+            t += durations[k];
+        }
+        return ticks;
+    }
+
+    int[] identityOrder(){
+        int[] order = new int[frames.length];
+        for(int i = 0; i < order.length; i++){
+            order[i] = i;
+        }
+        return order;
+    }
+
+    int[] pingPongOrder(){
+        int n = frames.length;
+        int[] order = new int[n * 2 - 2];
+        for(int i = 0; i < n; i++){
+            order[i] = i;
+        }
+        for(int i = 1; i < n - 1; i++){
+            order[n - 1 + i] = n - 1 - i;
+        }
+        return order;
+    }
+}
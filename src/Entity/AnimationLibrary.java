@@ -0,0 +1,240 @@
+package Entity;
+
+import Utility.AssetManager;
+import Utility.SpriteSheet;
+import Utility.TextureAtlas;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+// The clips of one sprite sheet, loaded once from a description in res/animations and shared by every entity that
+// uses the sheet. An entity only stores which clip it plays and a tick cursor into it (EntityStore.animClip and
+// animTime), and spriteNum is the sheet frame to draw.
+//
+// Every clip is baked into one table with the sheet frame for each tick of its cycle, so advancing an entity is
+// an increment, a wrap and a table load: no allocation and no per-frame duration bookkeeping.
+public class AnimationLibrary {
+
+    // Character states, picked from an entity's movement: idle, or walking in one of the four directions.
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_COUNT = 1 + Direction.COUNT;
+
+    final List<AnimationClip> clips = new ArrayList<>();
+
+    // Baked clips: clip c runs from frameAtTick[clipStart[c]] for clipLength[c] ticks, and a cursor that reaches
+    // the end goes back to clipRestart[c] (0 for looping clips, the last tick for ones that play once).
+    int[] frameAtTick = new int[0];
+    int[] clipStart = new int[0];
+    int[] clipLength = new int[0];
+    int[] clipRestart = new int[0];
+
+    // Clip for each character state, from the clips named idle and walk_<direction>. Missing ones fall back to
+    // the first clip.
+    final int[] stateClips = new int[STATE_COUNT];
+
+    String sheetPath;
+    int frameWidth, frameHeight;
+    // Sheet frames by index, null until loadImages()
+    BufferedImage[] images;
+    // Where each sheet frame is in the atlas, set by packFrames()
+    TextureAtlas atlas;
+    int[] frameRegions;
+
+    // Reads a description from the classpath, e.g. "/animations/character.anim".
+    public static AnimationLibrary load(String path){
+        InputStream in = AnimationLibrary.class.getResourceAsStream(path);
+        if(in == null){
+            throw new RuntimeException("Animation description not found: " + path);
+        }
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(in))){
+            return parse(br);
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Failed to load animations: " + path, e);
+        }
+    }
+
+    //   sheet <path> <frame width> <frame height>
+    //   clip <name> <loop|once|pingpong> <frame>:<ticks> ...
+    // Blank lines and lines starting with # are skipped.
+    public static AnimationLibrary parse(BufferedReader br) throws IOException {
+        AnimationLibrary library = new AnimationLibrary();
+        String line;
+        int lineNumber = 0;
+        while((line = br.readLine()) != null){
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            if(words[0].equals("sheet") && words.length == 4){
+                library.sheetPath = words[1];
+                library.frameWidth = Integer.parseInt(words[2]);
+                library.frameHeight = Integer.parseInt(words[3]);
+            } else if(words[0].equals("clip") && words.length >= 4){
+                library.add(AnimationClip.parse(words[1], words, 2, lineNumber));
+            } else {
+                throw new IOException("Line " + lineNumber + ": expected 'sheet' or 'clip', got: " + line);
+            }
+        }
+        return library;
+    }
+
+    // Adds a clip and rebakes the tables. Returns its index.
+    public int add(AnimationClip clip){
+        clips.add(clip);
+        bake();
+        return clips.size() - 1;
+    }
+
+    void bake(){
+        int n = clips.size();
+        int[][] ticks = new int[n][];
+        int total = 0;
+        for(int c = 0; c < n; c++){
+            ticks[c] = clips.get(c).bakeTicks();
+            total += ticks[c].length;
+        }
+        int[] table = new int[total];
+        int[] start = new int[n], length = new int[n], restart = new int[n];
+        int offset = 0;
+        for(int c = 0; c < n; c++){
+            System.arraycopy(ticks[c], 0, table, offset, ticks[c].length);
+            start[c] = offset;
+            length[c] = ticks[c].length;
+            restart[c] = clips.get(c).mode == AnimationClip.ONCE ? length[c] - 1 : 0;
+            offset += length[c];
+        }
+        frameAtTick = table;
+        clipStart = start;
+        clipLength = length;
+        clipRestart = restart;
+
+        stateClips[STATE_IDLE] = Math.max(0, indexOf("idle"));
+        for(int d = 0; d < Direction.COUNT; d++){
+            stateClips[1 + d] = Math.max(0, indexOf("walk_" + Direction.name((byte) d)));
+        }
+    }
+
+    public int clipCount(){
+        return clips.size();
+    }
+
+    public AnimationClip clip(int index){
+        return clips.get(index);
+    }
+
+    // -1 if there is no clip with this name
+    public int indexOf(String name){
+        for(int c = 0; c < clips.size(); c++){
+            if(clips.get(c).name.equals(name)){
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    public static int characterState(boolean moving, byte direction){
+        return moving ? 1 + direction : STATE_IDLE;
+    }
+
+    // Starts clip on entity i from its first frame, unless it is already playing it.
+    public void play(EntityStore s, int i, int clip){
+        if(s.animClip[i] != clip){
+            s.animClip[i] = (short) clip;
+            s.animTime[i] = 0;
+            s.spriteNum[i] = frameAtTick[clipStart[clip]];
+        }
+    }
+
+    // Moves entity i one tick through its clip.
+    public void advance(EntityStore s, int i){
+        int clip = s.animClip[i];
+        int t = s.animTime[i] + 1;
+        t = t == clipLength[clip] ? clipRestart[clip] : t;
+        s.animTime[i] = t;
+        s.spriteNum[i] = frameAtTick[clipStart[clip] + t];
+    }
+
+    // Picks the clip for the entity's movement state and advances it. A change of state restarts the new clip.
+    public void animateCharacter(EntityStore s, int i){
+        int clip = stateClips[characterState(s.isMoving(i), s.direction[i])];
+        if(s.animClip[i] != clip){
+            s.animClip[i] = (short) clip;
+            s.animTime[i] = -1; // advance() below moves it to the first tick
+        }
+        advance(s, i);
+    }
+
+    // Advances every entity in the store, for entities whose clip is set elsewhere.
+    public void advanceAll(EntityStore s){
+        int[] table = frameAtTick, start = clipStart, length = clipLength, restart = clipRestart;
+        short[] clips = s.animClip;
+        int[] times = s.animTime;
+        int[] sprites = s.spriteNum;
+        for(int i = 0, n = s.count; i < n; i++){
+            int clip = clips[i];
+            int t = times[i] + 1;
+            t = t == length[clip] ? restart[clip] : t;
+            times[i] = t;
+            sprites[i] = table[start[clip] + t];
+        }
+    }
+
+    // Loads the sheet and cuts it into frames. Skipped by headless games, which only need the clip tables.
+    public void loadImages(AssetManager assets){
+        if(sheetPath == null){
+            return;
+        }
+        BufferedImage image;
+        try {
+            image = assets.image(sheetPath).join();
+        } catch (CompletionException e) {
+            System.err.println("Failed to load sprite sheet, using fallback graphics: " + e.getCause().getMessage());
+            return;
+        }
+        SpriteSheet sheet = new SpriteSheet(image, frameWidth, frameHeight);
+        int columns = image.getWidth() / frameWidth;
+        int rows = image.getHeight() / frameHeight;
+        BufferedImage[] frames = new BufferedImage[columns * rows];
+        for(int k = 0; k < frames.length; k++){
+            frames[k] = sheet.getSprite(k / columns, k % columns);
+        }
+        images = frames;
+    }
+
+    // Image of a sheet frame, or null when images aren't loaded
+    public BufferedImage image(int frame){
+        BufferedImage[] frames = images;
+        return frames == null || frame >= frames.length ? null : frames[frame];
+    }
+
+    // Adds every sheet frame to the atlas, for draw() once it is packed.
+    public void packFrames(TextureAtlas atlas){
+        if(images == null){
+            return;
+        }
+        int[] regions = new int[images.length];
+        for(int k = 0; k < images.length; k++){
+            regions[k] = atlas.add(images[k]);
+        }
+        this.atlas = atlas;
+        this.frameRegions = regions;
+    }
+
+    // Draws a sheet frame at the atlas' scale with its top left corner at (x, y). False when there is no image for it.
+    public boolean draw(Graphics2D g2, int frame, int x, int y){
+        int[] regions = frameRegions;
+        if(regions == null || frame >= regions.length){
+            return false;
+        }
+        atlas.draw(g2, regions[frame], x, y);
+        return true;
+    }
+}
@@ -0,0 +1,25 @@
+package Entity;
+
+// Directions as small numbers so they fit in a byte per entity and switch without string compares.
+public final class Direction {
+
+    public static final byte UP = 0;
+    public static final byte DOWN = 1;
+    public static final byte LEFT = 2;
+    public static final byte RIGHT = 3;
+
+    public static final int COUNT = 4;
+
+    // Unit step per direction, indexed by the direction value.
+    public static final int[] DX = {0, 0, -1, 1};
+    public static final int[] DY = {-1, 1, 0, 0};
+
+    static final String[] NAMES = {"up", "down", "left", "right"};
+
+    private Direction(){
+    }
+
+    public static String name(byte direction){
+        return NAMES[direction];
+    }
+}
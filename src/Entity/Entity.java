@@ -1,26 +1,67 @@
 package Entity;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 
+// An entity with its own object, for the few that need one (the player). Its simulation state lives in the
+// EntityStore like every other entity, this is just a handle with named accessors. NPCs and projectiles are
+// only rows in the store.
 public class Entity {
 
-    public int worldX,worldY;
-    public int speed;
-    
-    // Sprite and animation properties
+    public final EntityStore store;
+    public final int handle;
+
+    // Sprite for drawing, not part of the simulation
     public BufferedImage sprite;
-    public BufferedImage[] sprites;
-    public int spriteCounter = 0;
-    public int spriteNum = 0;
-    public int animationSpeed = 10; // Lower = faster animation
-    public int animationCounter = 0;
-    // Direction for animations
-    public String direction = "down"; // down, up, left, right
-    public boolean moving = false;
-
-    //Hitbox
-    public Rectangle solidArea;
-    public boolean collisionOn = false;
+
+    public Entity(EntityStore store, byte type, int worldX, int worldY){
+        this.store = store;
+        this.handle = store.create(type, worldX, worldY);
+    }
+
+    public int index(){
+        return store.indexOf(handle);
+    }
+
+    public int getWorldX(){
+        return store.worldX[index()];
+    }
+
+    public int getWorldY(){
+        return store.worldY[index()];
+    }
+
+    public void setPosition(int worldX, int worldY){
+        int i = index();
+        store.worldX[i] = worldX;
+        store.worldY[i] = worldY;
+        store.prevWorldX[i] = worldX;
+        store.prevWorldY[i] = worldY;
+    }
+
+    public int getSpeed(){
+        return store.speed[index()];
+    }
+
+    public byte getDirection(){
+        return store.direction[index()];
+    }
+
+    public boolean isMoving(){
+        return store.isMoving(index());
+    }
+
+    public boolean isCollisionOn(){
+        return store.isCollisionOn(index());
+    }
+
+    public int getRenderX(double alpha){
+        int i = index();
+        return (int) Math.round(store.prevWorldX[i] + (store.worldX[i] - store.prevWorldX[i]) * alpha);
+    }
+
+    public int getRenderY(double alpha){
+        int i = index();
+        return (int) Math.round(store.prevWorldY[i] + (store.worldY[i] - store.prevWorldY[i]) * alpha);
+    }
 
 }
@@ -0,0 +1,404 @@
+package Entity;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Every entity's simulation state, one primitive array per field (struct of arrays).
+//
+// Live entities are packed into indices 0..count-1 so systems loop over plain arrays. Removing an entity moves
+// the last one into its place, so indices change. Hold on to a handle instead: it stays valid until the entity
+// is destroyed, and a stale handle (slot reused since) is detected by its generation.
+public class EntityStore {
+
+    // handle = generation << SLOT_BITS | slot
+    static final int SLOT_BITS = 20;
+    static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    public static final int MAX_ENTITIES = 1 << SLOT_BITS;
+    public static final int NO_HANDLE = -1;
+
+    // types
+    public static final byte PLAYER = 0;
+    public static final byte NPC = 1;
+    public static final byte PROJECTILE = 2;
+
+    // flags
+    public static final byte MOVING = 1;
+    public static final byte COLLISION_ON = 2;
+
+    public int count = 0;
+
+    public int[] worldX, worldY;
+    public int[] prevWorldX, prevWorldY; // position at the start of the last tick, for render interpolation
+    public int[] velocityX, velocityY;   // pixels per tick
+    public int[] speed;
+    public byte[] direction;             // Direction.UP etc.
+    public byte[] flags;
+    public byte[] type;
+    // Hitbox relative to worldX/worldY
+    public short[] solidX, solidY, solidWidth, solidHeight;
+    // Animation state: the clip playing (an AnimationLibrary index), ticks into it, and the sheet frame it shows
+    public short[] animClip;
+    public int[] animTime;
+    public int[] spriteNum;
+    // Ticks left before a wandering NPC picks a new direction
+    public int[] thinkTimer;
+
+    int[] handles;          // index -> handle
+    int[] slotIndex;        // slot -> index, -1 when free
+    int[] slotGeneration;   // bumped every time a slot is freed
+    int[] freeSlots;        // stack of free slots
+    int freeCount = 0;
+    int nextSlot = 0;       // slots below this have been used at least once
+
+    public EntityStore(){
+        this(256);
+    }
+
+    public EntityStore(int initialCapacity){
+        allocate(initialCapacity);
+        slotIndex = new int[initialCapacity];
+        slotGeneration = new int[initialCapacity];
+        freeSlots = new int[initialCapacity];
+        Arrays.fill(slotIndex, -1);
+    }
+
+    void allocate(int capacity){
+        worldX = grow(worldX, capacity);
+        worldY = grow(worldY, capacity);
+        prevWorldX = grow(prevWorldX, capacity);
+        prevWorldY = grow(prevWorldY, capacity);
+        velocityX = grow(velocityX, capacity);
+        velocityY = grow(velocityY, capacity);
+        speed = grow(speed, capacity);
+        direction = grow(direction, capacity);
+        flags = grow(flags, capacity);
+        type = grow(type, capacity);
+        solidX = grow(solidX, capacity);
+        solidY = grow(solidY, capacity);
+        solidWidth = grow(solidWidth, capacity);
+        solidHeight = grow(solidHeight, capacity);
+        animClip = grow(animClip, capacity);
+        animTime = grow(animTime, capacity);
+        spriteNum = grow(spriteNum, capacity);
+        thinkTimer = grow(thinkTimer, capacity);
+        handles = grow(handles, capacity);
+    }
+
+    static int[] grow(int[] array, int capacity){
+        return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    static short[] grow(short[] array, int capacity){
+        return array == null ? new short[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    static byte[] grow(byte[] array, int capacity){
+        return array == null ? new byte[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    public int capacity(){
+        return worldX.length;
+    }
+
+    // Adds an entity and returns its handle. Everything but position and type starts at zero/defaults.
+    public int create(byte entityType, int x, int y){
+        if(count == MAX_ENTITIES){
+            throw new IllegalStateException("Entity store is full (" + MAX_ENTITIES + ")");
+        }
+        if(count == capacity()){
+            allocate(Math.min(MAX_ENTITIES, capacity() * 2));
+        }
+
+        int slot;
+        if(freeCount > 0){
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = nextSlot++;
+            if(slot == slotIndex.length){
+                int slots = Math.min(MAX_ENTITIES, slotIndex.length * 2);
+                int old = slotIndex.length;
+                slotIndex = Arrays.copyOf(slotIndex, slots);
+                Arrays.fill(slotIndex, old, slots, -1);
+                slotGeneration = Arrays.copyOf(slotGeneration, slots);
+                freeSlots = Arrays.copyOf(freeSlots, slots);
+            }
+        }
+
+        int i = count++;
+        slotIndex[slot] = i;
+        int handle = (slotGeneration[slot] << SLOT_BITS) | slot;
+        handles[i] = handle;
+
+        worldX[i] = x;
+        worldY[i] = y;
+        prevWorldX[i] = x;
+        prevWorldY[i] = y;
+        velocityX[i] = 0;
+        velocityY[i] = 0;
+        speed[i] = 0;
+        direction[i] = Direction.DOWN;
+        flags[i] = 0;
+        type[i] = entityType;
+        solidX[i] = 0;
+        solidY[i] = 0;
+        solidWidth[i] = 0;
+        solidHeight[i] = 0;
+        animClip[i] = 0;
+        animTime[i] = 0;
+        spriteNum[i] = 0;
+        thinkTimer[i] = 0;
+        return handle;
+    }
+
+    public void destroy(int handle){
+        int i = indexOf(handle);
+        if(i < 0){
+            return;
+        }
+        int slot = handle & SLOT_MASK;
+        int last = --count;
+        if(i != last){
+            move(last, i);
+        }
+        slotIndex[slot] = -1;
+        // Generations wrap after 2048 reuses of one slot, long enough for any handle to be forgotten.
+        slotGeneration[slot] = (slotGeneration[slot] + 1) & ((1 << (31 - SLOT_BITS)) - 1);
+        freeSlots[freeCount++] = slot;
+    }
+
+    // Moves entity data from one index to another and fixes up the slot table.
+    void move(int from, int to){
+        worldX[to] = worldX[from];
+        worldY[to] = worldY[from];
+        prevWorldX[to] = prevWorldX[from];
+        prevWorldY[to] = prevWorldY[from];
+        velocityX[to] = velocityX[from];
+        velocityY[to] = velocityY[from];
+        speed[to] = speed[from];
+        direction[to] = direction[from];
+        flags[to] = flags[from];
+        type[to] = type[from];
+        solidX[to] = solidX[from];
+        solidY[to] = solidY[from];
+        solidWidth[to] = solidWidth[from];
+        solidHeight[to] = solidHeight[from];
+        animClip[to] = animClip[from];
+        animTime[to] = animTime[from];
+        spriteNum[to] = spriteNum[from];
+        thinkTimer[to] = thinkTimer[from];
+        handles[to] = handles[from];
+        slotIndex[handles[to] & SLOT_MASK] = to;
+    }
+
+    // Current index of an entity, or -1 if the handle is stale.
+    public int indexOf(int handle){
+        if(handle < 0){
+            return -1;
+        }
+        int slot = handle & SLOT_MASK;
+        if(slot >= nextSlot || slotGeneration[slot] != handle >>> SLOT_BITS){
+            return -1;
+        }
+        return slotIndex[slot];
+    }
+
+    public boolean isAlive(int handle){
+        return indexOf(handle) >= 0;
+    }
+
+    public int handleAt(int index){
+        return handles[index];
+    }
+
+    public void setHitbox(int index, int x, int y, int width, int height){
+        solidX[index] = (short) x;
+        solidY[index] = (short) y;
+        solidWidth[index] = (short) width;
+        solidHeight[index] = (short) height;
+    }
+
+    public boolean isMoving(int index){
+        return (flags[index] & MOVING) != 0;
+    }
+
+    public boolean isCollisionOn(int index){
+        return (flags[index] & COLLISION_ON) != 0;
+    }
+
+    // Hash of every live entity's simulation state in index order, to tell whether two runs ended up the same.
+    public long checksum(){
+        long h = mix(0x9E3779B97F4A7C15L, count);
+        for(int i = 0; i < count; i++){
+            h = mix(h, handles[i]);
+            h = mix(h, worldX[i]);
+            h = mix(h, worldY[i]);
+            h = mix(h, prevWorldX[i]);
+            h = mix(h, prevWorldY[i]);
+            h = mix(h, velocityX[i]);
+            h = mix(h, velocityY[i]);
+            h = mix(h, speed[i]);
+            h = mix(h, direction[i] | flags[i] << 8 | type[i] << 16);
+            h = mix(h, solidX[i] | solidY[i] << 16);
+            h = mix(h, solidWidth[i] | solidHeight[i] << 16);
+            h = mix(h, animClip[i]);
+            h = mix(h, animTime[i]);
+            h = mix(h, spriteNum[i]);
+            h = mix(h, thinkTimer[i]);
+        }
+        return h;
+    }
+
+    public static long mix(long h, int value){
+        h = (h ^ value) * 0x100000001B3L;
+        return h ^ (h >>> 29);
+    }
+
+    // Makes this store an exact copy of another, handles and free slots included, so handles held elsewhere
+    // stay valid. Reuses this store's arrays when they are big enough.
+    public void copyFrom(EntityStore other){
+        if(capacity() < other.count){
+            allocate(other.capacity());
+        }
+        if(slotIndex.length < other.nextSlot){
+            slotIndex = new int[other.slotIndex.length];
+            slotGeneration = new int[other.slotIndex.length];
+            freeSlots = new int[other.slotIndex.length];
+        }
+        int n = other.count;
+        System.arraycopy(other.worldX, 0, worldX, 0, n);
+        System.arraycopy(other.worldY, 0, worldY, 0, n);
+        System.arraycopy(other.prevWorldX, 0, prevWorldX, 0, n);
+        System.arraycopy(other.prevWorldY, 0, prevWorldY, 0, n);
+        System.arraycopy(other.velocityX, 0, velocityX, 0, n);
+        System.arraycopy(other.velocityY, 0, velocityY, 0, n);
+        System.arraycopy(other.speed, 0, speed, 0, n);
+        System.arraycopy(other.direction, 0, direction, 0, n);
+        System.arraycopy(other.flags, 0, flags, 0, n);
+        System.arraycopy(other.type, 0, type, 0, n);
+        System.arraycopy(other.solidX, 0, solidX, 0, n);
+        System.arraycopy(other.solidY, 0, solidY, 0, n);
+        System.arraycopy(other.solidWidth, 0, solidWidth, 0, n);
+        System.arraycopy(other.solidHeight, 0, solidHeight, 0, n);
+        System.arraycopy(other.animClip, 0, animClip, 0, n);
+        System.arraycopy(other.animTime, 0, animTime, 0, n);
+        System.arraycopy(other.spriteNum, 0, spriteNum, 0, n);
+        System.arraycopy(other.thinkTimer, 0, thinkTimer, 0, n);
+        System.arraycopy(other.handles, 0, handles, 0, n);
+        System.arraycopy(other.slotIndex, 0, slotIndex, 0, other.nextSlot);
+        System.arraycopy(other.slotGeneration, 0, slotGeneration, 0, other.nextSlot);
+        System.arraycopy(other.freeSlots, 0, freeSlots, 0, other.freeCount);
+        Arrays.fill(slotIndex, other.nextSlot, slotIndex.length, -1);
+        Arrays.fill(slotGeneration, other.nextSlot, slotGeneration.length, 0);
+        count = n;
+        nextSlot = other.nextSlot;
+        freeCount = other.freeCount;
+    }
+
+    // Bytes write() needs.
+    public int serializedBytes(){
+        return 12 + count * 57 + nextSlot * 8 + freeCount * 4;
+    }
+
+    // Everything copyFrom() copies, field by field (so runs of similar values compress well), little endian if
+    // the buffer is.
+    public void write(ByteBuffer out){
+        int n = count;
+        out.putInt(n).putInt(nextSlot).putInt(freeCount);
+        putInts(out, worldX, n);
+        putInts(out, worldY, n);
+        putInts(out, prevWorldX, n);
+        putInts(out, prevWorldY, n);
+        putInts(out, velocityX, n);
+        putInts(out, velocityY, n);
+        putInts(out, speed, n);
+        out.put(direction, 0, n);
+        out.put(flags, 0, n);
+        out.put(type, 0, n);
+        putShorts(out, solidX, n);
+        putShorts(out, solidY, n);
+        putShorts(out, solidWidth, n);
+        putShorts(out, solidHeight, n);
+        putShorts(out, animClip, n);
+        putInts(out, animTime, n);
+        putInts(out, spriteNum, n);
+        putInts(out, thinkTimer, n);
+        putInts(out, handles, n);
+        putInts(out, slotIndex, nextSlot);
+        putInts(out, slotGeneration, nextSlot);
+        putInts(out, freeSlots, freeCount);
+    }
+
+    // Replaces everything with what write() wrote.
+    public void read(ByteBuffer in){
+        int n = in.getInt();
+        int slots = in.getInt();
+        int free = in.getInt();
+        if(n < 0 || slots < n || slots > MAX_ENTITIES || free != slots - n){
+            throw new IllegalArgumentException("Bad entity block: " + n + " entities in " + slots + " slots, " + free + " free");
+        }
+        if(capacity() < n){
+            allocate(Math.max(n, capacity() * 2));
+        }
+        if(slotIndex.length < slots){
+            int length = Math.max(slots, slotIndex.length * 2);
+            slotIndex = new int[length];
+            slotGeneration = new int[length];
+            freeSlots = new int[length];
+        }
+        getInts(in, worldX, n);
+        getInts(in, worldY, n);
+        getInts(in, prevWorldX, n);
+        getInts(in, prevWorldY, n);
+        getInts(in, velocityX, n);
+        getInts(in, velocityY, n);
+        getInts(in, speed, n);
+        in.get(direction, 0, n);
+        in.get(flags, 0, n);
+        in.get(type, 0, n);
+        getShorts(in, solidX, n);
+        getShorts(in, solidY, n);
+        getShorts(in, solidWidth, n);
+        getShorts(in, solidHeight, n);
+        getShorts(in, animClip, n);
+        getInts(in, animTime, n);
+        getInts(in, spriteNum, n);
+        getInts(in, thinkTimer, n);
+        getInts(in, handles, n);
+        getInts(in, slotIndex, slots);
+        getInts(in, slotGeneration, slots);
+        getInts(in, freeSlots, free);
+        Arrays.fill(slotIndex, slots, slotIndex.length, -1);
+        Arrays.fill(slotGeneration, slots, slotGeneration.length, 0);
+        count = n;
+        nextSlot = slots;
+        freeCount = free;
+    }
+
+    static void putInts(ByteBuffer out, int[] array, int n){
+        out.asIntBuffer().put(array, 0, n);
+        out.position(out.position() + n * 4);
+    }
+
+    static void putShorts(ByteBuffer out, short[] array, int n){
+        out.asShortBuffer().put(array, 0, n);
+        out.position(out.position() + n * 2);
+    }
+
+    static void getInts(ByteBuffer in, int[] array, int n){
+        in.asIntBuffer().get(array, 0, n);
+        in.position(in.position() + n * 4);
+    }
+
+    static void getShorts(ByteBuffer in, short[] array, int n){
+        in.asShortBuffer().get(array, 0, n);
+        in.position(in.position() + n * 2);
+    }
+
+    public void clear(){
+        count = 0;
+        freeCount = 0;
+        nextSlot = 0;
+        Arrays.fill(slotIndex, -1);
+        Arrays.fill(slotGeneration, 0);
+    }
+}
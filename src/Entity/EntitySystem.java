@@ -0,0 +1,138 @@
+package Entity;
+
+import Main.CollisionChecker;
+import Tiles.TileManager;
+import java.awt.*;
+import java.util.Random;
+
+// Updates and draws every entity that isn't the player, straight from the EntityStore arrays.
+public class EntitySystem {
+
+    final EntityStore store;
+    final CollisionChecker collisionChecker;
+    // Character clips every NPC plays
+    public final AnimationLibrary animations;
+    // Part of the simulation state, saved and loaded with the entities
+    public long randomState = 0x2545F4914F6CDD1DL;
+
+    // Counts for the last draw()
+    public int drawCalls = 0;
+    public int entitiesCulled = 0;
+
+    public EntitySystem(EntityStore store, CollisionChecker collisionChecker, AnimationLibrary animations){
+        this.store = store;
+        this.collisionChecker = collisionChecker;
+        this.animations = animations;
+    }
+
+    public void update(){
+        EntityStore s = store;
+        int count = s.count;
+
+        for(int i = 0; i < count; i++){
+            byte type = s.type[i];
+            if(type == EntityStore.PLAYER){
+                continue; // Player.update() handles input for this one
+            }
+            s.prevWorldX[i] = s.worldX[i];
+            s.prevWorldY[i] = s.worldY[i];
+
+            if(type == EntityStore.NPC){
+                think(s, i);
+            }
+
+            if(s.speed[i] == 0){
+                s.flags[i] &= ~EntityStore.MOVING;
+            } else {
+                s.flags[i] &= ~EntityStore.COLLISION_ON;
+                collisionChecker.checkTile(s, i);
+                collisionChecker.checkEntity(s, i);
+                if(s.isCollisionOn(i)){
+                    s.flags[i] &= ~EntityStore.MOVING;
+                    s.thinkTimer[i] = 0; // bumped into something, pick a new direction next tick
+                } else {
+                    byte direction = s.direction[i];
+                    s.worldX[i] += Direction.DX[direction] * s.speed[i];
+                    s.worldY[i] += Direction.DY[direction] * s.speed[i];
+                    s.flags[i] |= EntityStore.MOVING;
+                }
+            }
+            animations.animateCharacter(s, i);
+        }
+    }
+
+    // Wanderers walk in a random direction for a while, then stand still or turn.
+    void think(EntityStore s, int i){
+        if(--s.thinkTimer[i] > 0){
+            return;
+        }
+        int roll = nextInt();
+        s.thinkTimer[i] = 30 + (roll & 63);
+        int choice = (roll >>> 8) % (Direction.COUNT + 1);
+        if(choice == Direction.COUNT){
+            s.speed[i] = 0;
+        } else {
+            s.direction[i] = (byte) choice;
+            s.speed[i] = 2;
+        }
+    }
+
+    // xorshift, cheap and allocation free
+    int nextInt(){
+        long x = randomState;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        randomState = x;
+        return (int) (x >>> 33);
+    }
+
+    // Puts NPCs on random walkable tiles within radius tiles of (col, row).
+    public void spawnWanderers(int amount, TileManager tileManager, int col, int row, int radius, int tileSize, Random random){
+        int placed = 0;
+        int attempts = 0;
+        while(placed < amount && attempts < amount * 20){
+            attempts++;
+            int c = col + random.nextInt(radius * 2 + 1) - radius;
+            int r = row + random.nextInt(radius * 2 + 1) - radius;
+            if(tileManager.isSolid(c, r)){
+                continue;
+            }
+            int i = store.indexOf(store.create(EntityStore.NPC, c * tileSize, r * tileSize));
+            store.setHitbox(i, 8, 16, 32, 32);
+            store.thinkTimer[i] = random.nextInt(60);
+            placed++;
+        }
+    }
+
+    // Draws the NPCs and projectiles inside the view. viewX/viewY is the world position of the top left pixel.
+    // Reads a snapshot, not the store, so it can run on another thread while the next tick updates.
+    public void draw(Graphics2D g2, RenderSnapshot s, int viewX, int viewY, int viewWidth, int viewHeight, int tileSize, double alpha){
+        draw(g2, s, viewX, viewY, viewWidth, viewHeight, tileSize, alpha, 1);
+    }
+
+    // Same, drawn at 1/scale of the world's size: world positions are divided by the scale (rounding down, so
+    // every entity lands on the same pixel grid as the tiles) and the view is in those smaller pixels.
+    public void draw(Graphics2D g2, RenderSnapshot s, int viewX, int viewY, int viewWidth, int viewHeight, int tileSize, double alpha, int scale){
+        int drawn = 0;
+        int culled = 0;
+        for(int i = 0; i < s.count; i++){
+            if(s.type[i] == EntityStore.PLAYER){
+                continue;
+            }
+            int x = Math.floorDiv((int) (s.prevWorldX[i] + (s.worldX[i] - s.prevWorldX[i]) * alpha), scale) - viewX;
+            int y = Math.floorDiv((int) (s.prevWorldY[i] + (s.worldY[i] - s.prevWorldY[i]) * alpha), scale) - viewY;
+            if(x + tileSize <= 0 || y + tileSize <= 0 || x >= viewWidth || y >= viewHeight){
+                culled++;
+                continue;
+            }
+            drawn++;
+            if(!animations.draw(g2, s.spriteNum[i], x, y)){
+                g2.setColor(Color.ORANGE);
+                g2.fillRect(x, y, tileSize, tileSize);
+            }
+        }
+        drawCalls = drawn;
+        entitiesCulled = culled;
+    }
+}
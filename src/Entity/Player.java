@@ -1,211 +1,97 @@
 package Entity;
 
-import Main.GamePanel;
-import Main.KeyHandler;
-import Utility.SpriteSheet;
+import Main.Controls;
+import Main.Game;
+import Main.KeyBindings;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 
 public class Player extends Entity {
 
-    GamePanel gp;
-    KeyHandler keyH;
+    Game game;
+    Controls controls;
 
     public final int screenX;
     public final int screenY;
-    
-    // Animation arrays for different directions
-    private BufferedImage[] idleSprites;
-    private BufferedImage[] walkDownSprites;
-    private BufferedImage[] walkLeftSprites;
-    private BufferedImage[] walkRightSprites;
-    private BufferedImage[] walkUpSprites;
 
-    public Player(GamePanel gp, KeyHandler keyH){
-        this.gp = gp;
-        this.keyH = keyH;
+    public Player(Game game, Controls controls){
+        super(game.entities, EntityStore.PLAYER, 0, 0);
+        this.game = game;
+        this.controls = controls;
 
         //Halfway through the screen.
-        screenX = gp.screenWidth / 2 -(gp.tileSize/2);
-        screenY = gp.screenHeight / 2 -(gp.tileSize/2);
+        screenX = game.screenWidth / 2 -(game.tileSize/2);
+        screenY = game.screenHeight / 2 -(game.tileSize/2);
 
         //Colision hitbox
-        solidArea = new Rectangle(8, 16 , 32, 32);
+        store.setHitbox(index(), 8, 16, 32, 32);
 
         setDefaultValues();
-        loadSprites();
     }
     
     public void setDefaultValues(){
         //start pos
-        worldX = 1056;
-        worldY = 908;
-        speed = 4;
-        direction = "down";
-        moving = false;
-    }
-    
-    public void loadSprites() {
-        // Initialize sprite arrays first to prevent null pointer exceptions
-        idleSprites = new BufferedImage[4];
-        walkDownSprites = new BufferedImage[4];
-        walkLeftSprites = new BufferedImage[4];
-        walkRightSprites = new BufferedImage[4];
-        walkUpSprites = new BufferedImage[4];
-        
-        System.out.println("Sprite arrays initialized. idleSprites is null: " + (idleSprites == null));
-        
-        try {
-            // Load sprite sheet - adjust path and sprite size as needed
-            SpriteSheet spriteSheet = new SpriteSheet("/res/characterSheet.png", 16, 16);
-            
-            // Check if sprite sheet loaded successfully
-            if (spriteSheet.getSpriteSheet() == null) {
-                System.err.println("Failed to load sprite sheet, using fallback graphics");
-                return;
-            }
-
-            
-            // Load idle animations (row 0)
-            for (int i = 0; i < 4; i++) {
-                idleSprites[i] = spriteSheet.getSprite(0, i);
-            }
-            
-            // Load walk down animations (row 1)
-            for (int i = 0; i < 4; i++) {
-                walkDownSprites[i] = spriteSheet.getSprite(1, i);
-            }
-            
-            // Load walk left animations (row 2)
-            for (int i = 0; i < 4; i++) {
-                walkLeftSprites[i] = spriteSheet.getSprite(2, i);
-            }
-            
-            // Load walk right animations (row 3)
-            for (int i = 0; i < 4; i++) {
-                walkRightSprites[i] = spriteSheet.getSprite(3, i);
-            }
-            
-            // Load walk up animations (row 4)
-            for (int i = 0; i < 4; i++) {
-                walkUpSprites[i] = spriteSheet.getSprite(4, i);
-            }
-            
-            // Set initial sprite
-            if (idleSprites[0] != null) {
-                sprite = idleSprites[0];
-            }
-            
-        } catch (Exception e) {
-            System.err.println("Error loading player sprites: " + e.getMessage());
-            // Fallback to colored rectangle if sprites fail to load
-        }
+        setPosition(1056, 908);
+        int i = index();
+        store.speed[i] = 4;
+        store.direction[i] = Direction.DOWN;
+        store.flags[i] = 0;
     }
     
     public void update(){
-        moving = false;
+        int i = index();
+        store.prevWorldX[i] = store.worldX[i];
+        store.prevWorldY[i] = store.worldY[i];
         
-        if(keyH.upPressed == true){
-            direction = "up";
+        if(controls.isDown(KeyBindings.UP)){
+            store.direction[i] = Direction.UP;
         }
-        if(keyH.downPressed == true){
-            direction = "down";
+        if(controls.isDown(KeyBindings.DOWN)){
+            store.direction[i] = Direction.DOWN;
         }
-        if(keyH.leftPressed == true){
-            direction = "left";
+        if(controls.isDown(KeyBindings.LEFT)){
+            store.direction[i] = Direction.LEFT;
         }
-        if(keyH.rightPressed == true){
-            direction = "right";
+        if(controls.isDown(KeyBindings.RIGHT)){
+            store.direction[i] = Direction.RIGHT;
         }
 
-        //Check Tile Collisions
-        collisionOn = false;
-        gp.collisionChecker.checkTile(this);
+        //Check Tile and Entity Collisions
+        store.flags[i] &= ~EntityStore.COLLISION_ON;
+        game.collisionChecker.checkTile(store, i);
+        game.collisionChecker.checkEntity(store, i);
 
         //if collision is false, player can move
-        if(!collisionOn){
-            switch(direction){
-                case"up":
-                    moving = true;
-                    worldY -= speed;
-                    break;
-                case"down":
-                    moving = true;
-                    worldY += speed;
-                    break;
-                case"left":
-                    moving = true;
-                    worldX -= speed;
-                    break;
-                case"right":
-                    moving = true;
-                    worldX += speed;
-                    break;
-            }
+        if(!store.isCollisionOn(i)){
+            byte direction = store.direction[i];
+            store.worldX[i] += Direction.DX[direction] * store.speed[i];
+            store.worldY[i] += Direction.DY[direction] * store.speed[i];
+            store.flags[i] |= EntityStore.MOVING;
+        } else {
+            store.flags[i] &= ~EntityStore.MOVING;
         }
         
         // Update animation
         updateAnimation();
     }
     
+    // Same character clips as the NPCs, picked from direction and movement.
     public void updateAnimation() {
-        // Check if sprites are loaded
-        if (idleSprites == null || walkDownSprites == null || walkLeftSprites == null || 
-            walkRightSprites == null || walkUpSprites == null) {
-            return; // Use fallback graphics
-        }
-        
-        animationCounter++;
-        
-        if (animationCounter > animationSpeed) {
-            if (spriteNum < 3) {
-                spriteNum++;
-            } else {
-                spriteNum = 0;
-            }
-            animationCounter = 0;
-        }
-        
-        // Select appropriate sprite based on direction and movement
-        if (moving) {
-            switch (direction) {
-                case "down":
-                    if (walkDownSprites[spriteNum] != null) {
-                        sprite = walkDownSprites[spriteNum];
-                    }
-                    break;
-                case "up":
-                    if (walkUpSprites[spriteNum] != null) {
-                        sprite = walkUpSprites[spriteNum];
-                    }
-                    break;
-                case "left":
-                    if (walkLeftSprites[spriteNum] != null) {
-                        sprite = walkLeftSprites[spriteNum];
-                    }
-                    break;
-                case "right":
-                    if (walkRightSprites[spriteNum] != null) {
-                        sprite = walkRightSprites[spriteNum];
-                    }
-                    break;
-            }
-        } else {
-            // Idle animation
-            if (idleSprites[spriteNum] != null) {
-                sprite = idleSprites[spriteNum];
-            }
-        }
+        int i = index();
+        game.animations.animateCharacter(store, i);
+        sprite = game.animations.image(store.spriteNum[i]);
     }
-    
-    public void draw(Graphics2D g2){
-        if (sprite != null) {
-            // Draw the sprite scaled to tile size
-            g2.drawImage(sprite, screenX, screenY, gp.tileSize, gp.tileSize, null);
-        } else {
+
+    // Drawn from the snapshot like the NPCs, so the frame matches the position being drawn.
+    public void draw(Graphics2D g2, RenderSnapshot snapshot){
+        draw(g2, snapshot, screenX, screenY);
+    }
+
+    public void draw(Graphics2D g2, RenderSnapshot snapshot, int x, int y){
+        int p = snapshot.playerIndex;
+        if (!game.animations.draw(g2, snapshot.spriteNum[p], x, y)) {
             // Fallback to colored rectangle if sprite is null
             g2.setColor(Color.WHITE);
-            g2.fillRect(screenX, screenY, gp.tileSize, gp.tileSize);
+            g2.fillRect(x, y, game.drawTileSize, game.drawTileSize);
         }
     }
 }
@@ -0,0 +1,67 @@
+package Entity;
+
+// What the renderer needs from one tick of the EntityStore, copied so drawing never reads arrays the simulation
+// is writing. Each entity has its position before and after the tick, so the renderer interpolates between the
+// last two simulation states from one snapshot.
+//
+// Snapshots are pooled in a TripleBuffer and overwritten in place; the arrays only grow.
+public class RenderSnapshot {
+
+    public long tick = -1;          // -1 until the first capture
+    public long capturedNanos;      // System.nanoTime() when the tick finished
+    public int count = 0;
+    public int playerIndex = -1;
+
+    public int[] worldX = new int[0], worldY = new int[0];
+    public int[] prevWorldX = new int[0], prevWorldY = new int[0];
+    public int[] spriteNum = new int[0];
+    public byte[] direction = new byte[0];
+    public byte[] flags = new byte[0];
+    public byte[] type = new byte[0];
+
+    public void capture(EntityStore store, int playerIndex, long tick, long nanos){
+        int n = store.count;
+        if(worldX.length < n){
+            int capacity = Math.max(n, worldX.length * 2);
+            worldX = new int[capacity];
+            worldY = new int[capacity];
+            prevWorldX = new int[capacity];
+            prevWorldY = new int[capacity];
+            spriteNum = new int[capacity];
+            direction = new byte[capacity];
+            flags = new byte[capacity];
+            type = new byte[capacity];
+        }
+        System.arraycopy(store.worldX, 0, worldX, 0, n);
+        System.arraycopy(store.worldY, 0, worldY, 0, n);
+        System.arraycopy(store.prevWorldX, 0, prevWorldX, 0, n);
+        System.arraycopy(store.prevWorldY, 0, prevWorldY, 0, n);
+        System.arraycopy(store.spriteNum, 0, spriteNum, 0, n);
+        System.arraycopy(store.direction, 0, direction, 0, n);
+        System.arraycopy(store.flags, 0, flags, 0, n);
+        System.arraycopy(store.type, 0, type, 0, n);
+        this.count = n;
+        this.playerIndex = playerIndex;
+        this.tick = tick;
+        this.capturedNanos = nanos;
+    }
+
+    public boolean isMoving(int i){
+        return (flags[i] & EntityStore.MOVING) != 0;
+    }
+
+    // alpha 0 is the state before the tick, 1 the state after it
+    public int getRenderX(int i, double alpha){
+        return (int) Math.round(prevWorldX[i] + (worldX[i] - prevWorldX[i]) * alpha);
+    }
+
+    public int getRenderY(int i, double alpha){
+        return (int) Math.round(prevWorldY[i] + (worldY[i] - prevWorldY[i]) * alpha);
+    }
+
+    // How far the renderer is between this snapshot's two states at time now, for a tick of tickNanos.
+    public double alpha(long now, long tickNanos){
+        double alpha = (now - capturedNanos) / (double) tickNanos;
+        return Math.max(0, Math.min(1, alpha));
+    }
+}
@@ -1,62 +1,98 @@
 package Main;
 
+import Entity.Direction;
 import Entity.Entity;
+import Entity.EntityStore;
 
 public class CollisionChecker {
 
-    GamePanel gp;
+    Game game;
+    // Entity hitboxes bucketed by tile, rebuilt at the start of every tick
+    public final SpatialHash entityHash;
+    private int[] candidates = new int[32];
 
-    public CollisionChecker(GamePanel gp){
-        this.gp = gp;
+    public CollisionChecker(Game game){
+        this.game = game;
+        this.entityHash = new SpatialHash(game.tileSize);
+    }
 
+    // Called once per tick before anything moves, so every entity is checked against the same snapshot.
+    public void updateEntityHash(EntityStore entities){
+        entityHash.build(entities);
     }
     public void checkTile(Entity entity){
+        checkTile(entity.store, entity.index());
+    }
+
+    // Sets COLLISION_ON if the entity at index i would walk into a solid tile this tick.
+    public void checkTile(EntityStore entities, int i){
+
+        int entityLeftWorldX = entities.worldX[i] + entities.solidX[i];
+        int entityRightWorldX = entities.worldX[i] + entities.solidX[i] + entities.solidWidth[i];
+        int entityTopWorldY = entities.worldY[i] + entities.solidY[i];
+        int entityBottomWorldY = entities.worldY[i] + entities.solidY[i] + entities.solidHeight[i];
 
-        int entityLeftWorldX = entity.worldX + entity.solidArea.x;
-        int entityRightWorldX = entity.worldX + entity.solidArea.x + entity.solidArea.width;
-        int entityTopWorldY = entity.worldY + entity.solidArea.y;
-        int entityBottomWorldY = entity.worldY + entity.solidArea.y + entity.solidArea.height;
-
-        int entityLeftCol = entityLeftWorldX/gp.tileSize;
-        int entityRightCol = entityRightWorldX/gp.tileSize;
-        int entityTopRow = entityTopWorldY/gp.tileSize;
-        int entityBottomRow = entityBottomWorldY/gp.tileSize;
-
-        int tileNum1, tileNum2;
-
-        switch(entity.direction){
-            case"up":
-                entityTopRow = (entityTopWorldY - entity.speed)/gp.tileSize;
-                tileNum1 = gp.tileManager.mapTileNumber[entityLeftCol][entityTopRow];
-                tileNum2 = gp.tileManager.mapTileNumber[entityRightCol][entityTopRow];
-                if (gp.tileManager.collisionMap[entityLeftCol][entityTopRow] || gp.tileManager.collisionMap[entityRightCol][entityTopRow]){
-                    entity.collisionOn = true;
-                }
+        int entityLeftCol = entityLeftWorldX/game.tileSize;
+        int entityRightCol = entityRightWorldX/game.tileSize;
+        int entityTopRow = entityTopWorldY/game.tileSize;
+        int entityBottomRow = entityBottomWorldY/game.tileSize;
+
+        int speed = entities.speed[i];
+        boolean collision = false;
+
+        switch(entities.direction[i]){
+            case Direction.UP:
+                entityTopRow = (entityTopWorldY - speed)/game.tileSize;
+                collision = game.tileManager.isSolid(entityLeftCol, entityTopRow) || game.tileManager.isSolid(entityRightCol, entityTopRow);
                 break;
-            case"down":
-                entityBottomRow = (entityBottomWorldY + entity.speed)/gp.tileSize;
-                tileNum1 = gp.tileManager.mapTileNumber[entityLeftCol][entityBottomRow];
-                tileNum2 = gp.tileManager.mapTileNumber[entityRightCol][entityBottomRow];
-                if (gp.tileManager.collisionMap[entityLeftCol][entityBottomRow] || gp.tileManager.collisionMap[entityRightCol][entityBottomRow]){
-                    entity.collisionOn = true;
-                }
+            case Direction.DOWN:
+                entityBottomRow = (entityBottomWorldY + speed)/game.tileSize;
+                collision = game.tileManager.isSolid(entityLeftCol, entityBottomRow) || game.tileManager.isSolid(entityRightCol, entityBottomRow);
                 break;
-            case"left":
-                entityLeftCol = (entityLeftWorldX - entity.speed)/gp.tileSize;
-                tileNum1 = gp.tileManager.mapTileNumber[entityLeftCol][entityTopRow];
-                tileNum2 = gp.tileManager.mapTileNumber[entityLeftCol][entityBottomRow];
-                if (gp.tileManager.collisionMap[entityLeftCol][entityTopRow] || gp.tileManager.collisionMap[entityLeftCol][entityBottomRow]){
-                    entity.collisionOn = true;
-                }
+            case Direction.LEFT:
+                entityLeftCol = (entityLeftWorldX - speed)/game.tileSize;
+                collision = game.tileManager.isSolid(entityLeftCol, entityTopRow) || game.tileManager.isSolid(entityLeftCol, entityBottomRow);
                 break;
-            case"right":
-                entityRightCol = (entityRightWorldX + entity.speed)/gp.tileSize;
-                tileNum1 = gp.tileManager.mapTileNumber[entityRightCol][entityTopRow];
-                tileNum2 = gp.tileManager.mapTileNumber[entityRightCol][entityBottomRow];
-                if (gp.tileManager.collisionMap[entityRightCol][entityTopRow] || gp.tileManager.collisionMap[entityRightCol][entityBottomRow]){
-                    entity.collisionOn = true;
-                }
+            case Direction.RIGHT:
+                entityRightCol = (entityRightWorldX + speed)/game.tileSize;
+                collision = game.tileManager.isSolid(entityRightCol, entityTopRow) || game.tileManager.isSolid(entityRightCol, entityBottomRow);
                 break;
         }
+        if(collision){
+            entities.flags[i] |= EntityStore.COLLISION_ON;
+        }
+    }
+
+    // Sets COLLISION_ON if the entity at index i would walk into another entity this tick.
+    // Entities already overlapping it don't block, so two that spawned on top of each other can walk apart.
+    public void checkEntity(EntityStore entities, int i){
+
+        int left = entities.worldX[i] + entities.solidX[i];
+        int top = entities.worldY[i] + entities.solidY[i];
+        int width = entities.solidWidth[i];
+        int height = entities.solidHeight[i];
+        byte direction = entities.direction[i];
+        int nextLeft = left + Direction.DX[direction] * entities.speed[i];
+        int nextTop = top + Direction.DY[direction] * entities.speed[i];
+
+        int found = entityHash.queryAabb(nextLeft, nextTop, width, height, candidates);
+        if(found > candidates.length){
+            candidates = new int[Integer.highestOneBit(found) << 1];
+            entityHash.queryAabb(nextLeft, nextTop, width, height, candidates);
+        }
+        for(int k = 0; k < found; k++){
+            int j = candidates[k];
+            if(j == i){
+                continue;
+            }
+            int otherLeft = entities.worldX[j] + entities.solidX[j];
+            int otherTop = entities.worldY[j] + entities.solidY[j];
+            boolean alreadyOverlapping = left < otherLeft + entities.solidWidth[j] && otherLeft < left + width
+                    && top < otherTop + entities.solidHeight[j] && otherTop < top + height;
+            if(!alreadyOverlapping){
+                entities.flags[i] |= EntityStore.COLLISION_ON;
+                return;
+            }
+        }
     }
 }
@@ -0,0 +1,9 @@
+package Main;
+
+// The actions a Player reads each tick: held keys for the local player (KeyHandler), the latest input message
+// for one joined over the network (Net.GameServer).
+public interface Controls {
+
+    // Held now, or pressed at some point since the last tick
+    boolean isDown(int action);
+}
@@ -0,0 +1,102 @@
+package Main;
+
+// The screen rectangles that changed since the last frame. Overlapping or touching rectangles are merged as they
+// are added, so the ones left don't overlap and their areas add up to the pixels to redraw. Too many rectangles,
+// or too much of the screen, and it gives up and asks for a full redraw, which is cheaper at that point.
+public class DamageTracker {
+
+    static final int MAX_RECTS = 32;
+    static final double FULL_REDRAW_FRACTION = 0.6;
+
+    final int screenWidth, screenHeight;
+    final int[] x = new int[MAX_RECTS], y = new int[MAX_RECTS];
+    final int[] width = new int[MAX_RECTS], height = new int[MAX_RECTS];
+    int count = 0;
+    boolean full = false;
+
+    public DamageTracker(int screenWidth, int screenHeight){
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+    }
+
+    public void clear(){
+        count = 0;
+        full = false;
+    }
+
+    public void addFull(){
+        full = true;
+    }
+
+    // Screen coordinates, clipped to the screen.
+    public void add(int rx, int ry, int rw, int rh){
+        if(full){
+            return;
+        }
+        int x0 = Math.max(0, rx), y0 = Math.max(0, ry);
+        int x1 = Math.min(screenWidth, rx + rw), y1 = Math.min(screenHeight, ry + rh);
+        if(x0 >= x1 || y0 >= y1){
+            return;
+        }
+        // Grow the new rectangle over every one it touches, until it touches none.
+        for(int k = 0; k < count; ){
+            if(x0 <= x[k] + width[k] && x[k] <= x1 && y0 <= y[k] + height[k] && y[k] <= y1){
+                x0 = Math.min(x0, x[k]);
+                y0 = Math.min(y0, y[k]);
+                x1 = Math.max(x1, x[k] + width[k]);
+                y1 = Math.max(y1, y[k] + height[k]);
+                remove(k);
+                k = 0;
+            } else {
+                k++;
+            }
+        }
+        if(count == MAX_RECTS){
+            full = true;
+            return;
+        }
+        x[count] = x0;
+        y[count] = y0;
+        width[count] = x1 - x0;
+        height[count] = y1 - y0;
+        count++;
+        if(pixels() > FULL_REDRAW_FRACTION * screenWidth * screenHeight){
+            full = true;
+        }
+    }
+
+    void remove(int k){
+        count--;
+        x[k] = x[count];
+        y[k] = y[count];
+        width[k] = width[count];
+        height[k] = height[count];
+    }
+
+    public boolean isFull(){
+        return full;
+    }
+
+    public boolean isEmpty(){
+        return !full && count == 0;
+    }
+
+    public int getCount(){
+        return count;
+    }
+
+    public long pixels(){
+        if(full){
+            return (long) screenWidth * screenHeight;
+        }
+        long pixels = 0;
+        for(int k = 0; k < count; k++){
+            pixels += (long) width[k] * height[k];
+        }
+        return pixels;
+    }
+
+    public double fraction(){
+        return pixels() / (double) ((long) screenWidth * screenHeight);
+    }
+}
@@ -0,0 +1,176 @@
+package Main;
+
+import Entity.Player;
+import Entity.RenderSnapshot;
+import Tiles.TileChunkCache;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// --dirty-rects: keeps the last frame in an image and recomposites only the screen rectangles that changed since,
+// so an idle screen costs a blit instead of a full redraw. Damage comes from entities that moved or changed
+// sprite frame, animated tile frames and invalidated map chunks (tile edits, streaming). When the camera moves
+// everything moves, so it draws the whole frame.
+public class DirtyRectRenderer {
+
+    final Game game;
+    final DamageTracker damage;
+    BufferedImage frame;
+    private int lastViewX, lastViewY;
+    private int viewX, viewY;
+
+    // Where each snapshot entity was drawn in the last frame, by index. NO_RECT when it wasn't on screen.
+    static final int NO_RECT = Integer.MIN_VALUE;
+    private int[] drawnX = new int[0], drawnY = new int[0], drawnSprite = new int[0];
+    private int drawnCount = 0;
+
+    // The last render()
+    public double redrawnFraction = 1;
+    public int rectsDrawn = 0;
+    public int drawCalls = 0;
+    public long tileDrawNanos, entityDrawNanos;
+
+    public DirtyRectRenderer(Game game){
+        this.game = game;
+        this.damage = new DamageTracker(game.screenWidth, game.screenHeight);
+        TileChunkCache.DamageListener tileDamage = (worldX, worldY, width, height) -> damage.add(worldX - viewX, worldY - viewY, width, height);
+        game.tileManager.chunkCache.damageListener = tileDamage;
+        if(game.tileManager.overlayCache != null){
+            game.tileManager.overlayCache.damageListener = tileDamage;
+        }
+    }
+
+    // Brings the frame image up to date with the snapshot and returns it. game.cameraX/Y must already be set.
+    public BufferedImage render(RenderSnapshot snapshot, double alpha){
+        Player player = game.player;
+        viewX = game.cameraX - player.screenX;
+        viewY = game.cameraY - player.screenY;
+
+        damage.clear();
+        if(frame == null){
+            frame = createFrameImage();
+            damage.addFull();
+        } else if(viewX != lastViewX || viewY != lastViewY){
+            damage.addFull();
+        }
+        game.tileManager.chunkCache.prepare();
+        if(game.tileManager.overlayCache != null){
+            game.tileManager.overlayCache.prepare();
+        }
+        addEntityDamage(snapshot, alpha);
+
+        tileDrawNanos = 0;
+        entityDrawNanos = 0;
+        drawCalls = 0;
+        Graphics2D g2 = frame.createGraphics();
+        if(damage.isFull()){
+            compose(g2, snapshot, alpha, 0, 0, game.screenWidth, game.screenHeight);
+            rectsDrawn = 1;
+        } else {
+            for(int k = 0; k < damage.count; k++){
+                compose(g2, snapshot, alpha, damage.x[k], damage.y[k], damage.width[k], damage.height[k]);
+            }
+            rectsDrawn = damage.count;
+        }
+        g2.dispose();
+
+        redrawnFraction = damage.fraction();
+        lastViewX = viewX;
+        lastViewY = viewY;
+        return frame;
+    }
+
+    // Every entity whose on-screen rectangle or sprite frame differs from the last frame damages both where it
+    // was and where it is now. Positions are worked out exactly as EntitySystem.draw() does.
+    void addEntityDamage(RenderSnapshot s, double alpha){
+        int size = game.tileSize;
+        int n = s.count;
+        if(drawnX.length < n){
+            int capacity = Math.max(n, drawnX.length * 2);
+            drawnX = grow(drawnX, capacity);
+            drawnY = grow(drawnY, capacity);
+            drawnSprite = grow(drawnSprite, capacity);
+        }
+        for(int i = 0; i < n; i++){
+            int x, y;
+            if(i == s.playerIndex){
+                x = game.player.screenX;
+                y = game.player.screenY;
+            } else {
+                x = (int) (s.prevWorldX[i] + (s.worldX[i] - s.prevWorldX[i]) * alpha) - viewX;
+                y = (int) (s.prevWorldY[i] + (s.worldY[i] - s.prevWorldY[i]) * alpha) - viewY;
+                if(x + size <= 0 || y + size <= 0 || x >= game.screenWidth || y >= game.screenHeight){
+                    x = NO_RECT;
+                }
+            }
+            boolean same = i < drawnCount && drawnX[i] == x && drawnY[i] == y && drawnSprite[i] == s.spriteNum[i];
+            if(!same){
+                if(i < drawnCount && drawnX[i] != NO_RECT){
+                    damage.add(drawnX[i], drawnY[i], size, size);
+                }
+                if(x != NO_RECT){
+                    damage.add(x, y, size, size);
+                }
+            }
+            drawnX[i] = x;
+            drawnY[i] = y;
+            drawnSprite[i] = s.spriteNum[i];
+        }
+        // Entities that are gone leave a hole where they were.
+        for(int i = n; i < drawnCount; i++){
+            if(drawnX[i] != NO_RECT){
+                damage.add(drawnX[i], drawnY[i], size, size);
+            }
+        }
+        drawnCount = n;
+    }
+
+    static int[] grow(int[] array, int capacity){
+        int[] grown = Arrays.copyOf(array, capacity);
+        Arrays.fill(grown, array.length, capacity, NO_RECT);
+        return grown;
+    }
+
+    // Draws every layer of the frame, clipped to one screen rectangle. Tiles and NPCs are drawn through a view of
+    // just that rectangle so everything outside it is culled before any drawImage.
+    void compose(Graphics2D g2, RenderSnapshot snapshot, double alpha, int rx, int ry, int rw, int rh){
+        Game game = this.game;
+        long start = System.nanoTime();
+        g2.setClip(rx, ry, rw, rh);
+        g2.setColor(Color.BLACK);
+        g2.fillRect(rx, ry, rw, rh);
+
+        g2.translate(rx, ry);
+        game.tileManager.chunkCache.draw(g2, viewX + rx, viewY + ry, rw, rh);
+        drawCalls += 1 + game.tileManager.chunkCache.drawCalls;
+        long tilesDrawn = System.nanoTime();
+        game.entitySystem.draw(g2, snapshot, viewX + rx, viewY + ry, rw, rh, game.tileSize, alpha);
+        drawCalls += game.entitySystem.drawCalls;
+        g2.translate(-rx, -ry);
+
+        Player player = game.player;
+        if(player.screenX < rx + rw && rx < player.screenX + game.tileSize && player.screenY < ry + rh && ry < player.screenY + game.tileSize){
+            player.draw(g2, snapshot);
+            drawCalls++;
+        }
+        long entitiesDrawn = System.nanoTime();
+
+        TileChunkCache overlay = game.tileManager.overlayCache;
+        if(overlay != null){
+            g2.translate(rx, ry);
+            overlay.draw(g2, viewX + rx, viewY + ry, rw, rh);
+            drawCalls += overlay.drawCalls;
+            g2.translate(-rx, -ry);
+        }
+        tileDrawNanos += (tilesDrawn - start) + (System.nanoTime() - entitiesDrawn);
+        entityDrawNanos += entitiesDrawn - tilesDrawn;
+    }
+
+    BufferedImage createFrameImage(){
+        if(!GraphicsEnvironment.isHeadless()){
+            GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            return gc.createCompatibleImage(game.screenWidth, game.screenHeight, Transparency.OPAQUE);
+        }
+        return new BufferedImage(game.screenWidth, game.screenHeight, BufferedImage.TYPE_INT_RGB);
+    }
+}
@@ -0,0 +1,52 @@
+package Main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// One rendered frame, for JFR recordings. Committed once the frame is on screen.
+@Name("LegendOfJava.Frame")
+@Label("Frame")
+@Category("Legend of Java")
+@Description("Time spent in each phase of one rendered frame")
+@StackTrace(false)
+public class FrameEvent extends Event {
+
+    @Label("Frame")
+    @Description("Start of drawing to the frame being on screen")
+    @Timespan
+    public long frame;
+
+    @Label("Tile Draw")
+    @Timespan
+    public long tileDraw;
+
+    @Label("Entity Draw")
+    @Timespan
+    public long entityDraw;
+
+    @Label("Present")
+    @Timespan
+    public long present;
+
+    @Label("Input To Photon")
+    @Description("Key event to the end of the first frame presented after it, 0 if there was no input")
+    @Timespan
+    public long inputToPhoton;
+
+    @Label("Draw Calls")
+    public int drawCalls;
+
+    @Label("Tiles Culled")
+    public long tilesCulled;
+
+    @Label("Redrawn")
+    @Description("Share of the screen's pixels drawn again, below 1 only in --dirty-rects mode")
+    @Percentage
+    public float redrawn;
+}
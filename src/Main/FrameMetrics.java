@@ -0,0 +1,194 @@
+package Main;
+
+import java.awt.*;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+// Where a frame's time goes: rolling p50/p99/max per phase plus draw call and culling counts, shown in the
+// debug overlay (F3) and sent as FrameEvent/TickEvent to JFR recordings.
+//
+// Nothing is timed unless the overlay is up, --metrics was given or a JFR recording is running. Otherwise
+// every hook is one volatile read.
+public class FrameMetrics {
+
+    public static final int UPDATE = 0;
+    public static final int TILE_DRAW = 1;
+    public static final int ENTITY_DRAW = 2;
+    public static final int PRESENT = 3;
+    public static final int INPUT_TO_PHOTON = 4;
+    public static final int INPUT_TO_UPDATE = 5;
+    static final String[] PHASE_NAMES = {"update", "tile draw", "entity draw", "present", "input->photon", "input->update"};
+
+    // About four seconds of frames
+    static final int SAMPLE_COUNT = 256;
+    static final long OVERLAY_REFRESH_NANOS = 250_000_000L;
+    static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 160);
+
+    public final TimingSamples[] phases = new TimingSamples[PHASE_NAMES.length];
+
+    private volatile boolean overlayVisible = false;
+    private final boolean alwaysOn;
+    private volatile boolean jfrRecording = false;
+
+    // The frame being drawn. Only touched by whichever thread renders.
+    private long tileDrawNanos, entityDrawNanos;
+    public int drawCalls = 0;
+    public long tilesCulled = 0;
+    public int entitiesCulled = 0;
+    // Share of the screen's pixels drawn again, 1 unless --dirty-rects, and the rectangles they were drawn in
+    public double redrawnFraction = 1;
+    public int redrawnRects = 1;
+    private double redrawnSum = 0;
+    private int redrawnFrames = 0;
+
+    // Key event waiting for the next presented frame, 0 if none
+    private volatile long pendingInputNanos = 0;
+
+    private String[] overlayLines = new String[0];
+    private long overlayUpdated = 0;
+    private Font overlayFont;
+
+    // inputToUpdate is recorded by the KeyHandler when the game thread handles each key event.
+    public FrameMetrics(boolean alwaysOn, TimingSamples inputToUpdate){
+        this.alwaysOn = alwaysOn;
+        for(int i = 0; i < phases.length; i++){
+            phases[i] = i == INPUT_TO_UPDATE ? inputToUpdate : new TimingSamples(SAMPLE_COUNT);
+        }
+        watchRecordings();
+    }
+
+    // Collect while a recording runs, so a JFR file has the events without the overlay being up.
+    void watchRecordings(){
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                updateRecordingState();
+            }
+
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                updateRecordingState();
+            }
+        });
+    }
+
+    void updateRecordingState(){
+        boolean running = false;
+        for(Recording recording : FlightRecorder.getFlightRecorder().getRecordings()){
+            running |= recording.getState() == RecordingState.RUNNING;
+        }
+        jfrRecording = running;
+    }
+
+    public boolean isCollecting(){
+        return overlayVisible || alwaysOn || jfrRecording;
+    }
+
+    public boolean isOverlayVisible(){
+        return overlayVisible;
+    }
+
+    public void toggleOverlay(){
+        overlayVisible = !overlayVisible;
+        overlayUpdated = 0;
+    }
+
+    public void recordTick(long start, long end, int entities){
+        phases[UPDATE].record(end - start);
+        TickEvent event = new TickEvent();
+        if(event.shouldCommit()){
+            event.update = end - start;
+            event.entities = entities;
+            event.commit();
+        }
+    }
+
+    public void recordInput(long nanos){
+        if(isCollecting() && pendingInputNanos == 0){
+            pendingInputNanos = nanos;
+        }
+    }
+
+    public void recordDraw(long tileDrawNanos, long entityDrawNanos, int drawCalls, long tilesCulled, int entitiesCulled){
+        this.tileDrawNanos = tileDrawNanos;
+        this.entityDrawNanos = entityDrawNanos;
+        this.drawCalls = drawCalls;
+        this.tilesCulled = tilesCulled;
+        this.entitiesCulled = entitiesCulled;
+        phases[TILE_DRAW].record(tileDrawNanos);
+        phases[ENTITY_DRAW].record(entityDrawNanos);
+    }
+
+    public void recordRedraw(double fraction, int rects){
+        redrawnFraction = fraction;
+        redrawnRects = rects;
+        redrawnSum += fraction;
+        redrawnFrames++;
+    }
+
+    // Called once the frame is on screen. frameStart is when drawing began.
+    public void recordPresent(long frameStart, long presentNanos, long now){
+        phases[PRESENT].record(presentNanos);
+
+        long inputToPhoton = 0;
+        long input = pendingInputNanos;
+        if(input != 0){
+            pendingInputNanos = 0;
+            inputToPhoton = now - input;
+            phases[INPUT_TO_PHOTON].record(inputToPhoton);
+        }
+
+        FrameEvent event = new FrameEvent();
+        if(event.shouldCommit()){
+            event.frame = now - frameStart;
+            event.tileDraw = tileDrawNanos;
+            event.entityDraw = entityDrawNanos;
+            event.present = presentNanos;
+            event.inputToPhoton = inputToPhoton;
+            event.drawCalls = drawCalls;
+            event.tilesCulled = tilesCulled;
+            event.redrawn = (float) redrawnFraction;
+            event.commit();
+        }
+    }
+
+    // The numbers in the top left corner. The text is rebuilt a few times a second, not every frame.
+    public void drawOverlay(Graphics2D g2){
+        long now = System.nanoTime();
+        if(overlayUpdated == 0 || now - overlayUpdated >= OVERLAY_REFRESH_NANOS){
+            overlayLines = overlayText();
+            overlayUpdated = now;
+        }
+        if(overlayFont == null){
+            overlayFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+        }
+        g2.setFont(overlayFont);
+        int lineHeight = g2.getFontMetrics().getHeight();
+
+        g2.setColor(OVERLAY_BACKGROUND);
+        g2.fillRect(4, 4, 360, lineHeight * overlayLines.length + 8);
+        g2.setColor(Color.WHITE);
+        for(int i = 0; i < overlayLines.length; i++){
+            g2.drawString(overlayLines[i], 10, 4 + lineHeight * (i + 1));
+        }
+    }
+
+    String[] overlayText(){
+        String[] lines = new String[phases.length + 3];
+        lines[0] = String.format("%-13s %7s %7s %7s ms", "", "p50", "p99", "max");
+        for(int i = 0; i < phases.length; i++){
+            TimingSamples samples = phases[i];
+            lines[i + 1] = String.format("%-13s %7.3f %7.3f %7.3f", PHASE_NAMES[i],
+                    samples.percentileMillis(0.5), samples.percentileMillis(0.99), samples.maxMillis());
+        }
+        lines[phases.length + 1] = String.format("draw calls %d, culled %d tiles %d entities", drawCalls, tilesCulled, entitiesCulled);
+        // Averaged over the frames since the text was last rebuilt
+        double average = redrawnFrames == 0 ? redrawnFraction : redrawnSum / redrawnFrames;
+        redrawnSum = 0;
+        redrawnFrames = 0;
+        lines[phases.length + 2] = String.format("redrawn %5.1f%% of pixels (avg %5.1f%%) in %d rects", redrawnFraction * 100, average * 100, redrawnRects);
+        return lines;
+    }
+}
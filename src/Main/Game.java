@@ -0,0 +1,236 @@
+package Main;
+
+import Entity.AnimationLibrary;
+import Entity.EntityStore;
+import Entity.EntitySystem;
+import Entity.Player;
+import Navigation.NavGrid;
+import Navigation.PathService;
+import Tiles.TileManager;
+import Utility.AssetManager;
+import Utility.TextureAtlas;
+import World.SaveGame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Everything the simulation needs: map, collision and entities, and one update() per tick.
+// No Swing in here, so the same game runs in a window (GamePanel) or headless (HeadlessRunner).
+public class Game {
+
+    // SCREEN SETTINGS
+    final int originalTileSize = 16; //Tile Size
+    final int scale = 3;
+
+    public final int tileSize = originalTileSize * scale; // 16x16 * 3 = 48px
+    public final int maxScreenCol = 16;
+    public final int maxScreenRow = 12;
+    public final int screenWidth = tileSize * maxScreenCol; //768px
+    public final int screenHeight = tileSize * maxScreenRow; //576px
+
+    // Size tiles and sprites are drawn at: tileSize, or originalTileSize with --low-res, which draws the frame at
+    // the art's own resolution and scales it up once (see LowResRenderer). The simulation is always in tileSize.
+    public final int drawScale;
+    public final int drawTileSize;
+
+    //WORLD SETTINGS (50x50 for the CSV map, a streamed world sets its own size)
+    public int maxWorldCol = 50;
+    public int maxWorldRow = 50;
+    public int worldWidth = tileSize * maxWorldCol;
+    public int worldHeight = tileSize * maxWorldRow;
+
+    // Headless games never draw, so tile images and sprites aren't loaded.
+    public final boolean headless;
+
+    // Camera position for the frame being drawn, interpolated between the last two ticks.
+    public int cameraX, cameraY;
+
+    // Loads images in parallel, with the decoded image cache
+    public final AssetManager assets;
+    public TileManager tileManager;
+    public KeyHandler keyH;
+    public CollisionChecker collisionChecker = new CollisionChecker(this);
+    // Simulation state of every entity, the player included
+    public EntityStore entities = new EntityStore();
+    // Every tile and sprite frame at drawScale, null when headless
+    public TextureAtlas atlas;
+    // Character clips, shared by the player and the NPCs
+    public AnimationLibrary animations = AnimationLibrary.load("/animations/character.anim");
+    public EntitySystem entitySystem = new EntitySystem(entities, collisionChecker, animations);
+    public Player player;
+    // Players joined over the network (Net.GameServer), updated right after the local one
+    public final List<Player> remotePlayers = new ArrayList<>();
+    // Path requests, answered a tick later
+    public PathService paths;
+    // Recording the player's input (--record), or playing it back in place of the keyboard (--replay)
+    public InputRecorder recorder;
+    public InputReplay replay;
+    final Path tickTimesPath;
+    public long ticks = 0;
+    // Saving and loading (--save), and a save asked for from another thread, done after the current tick
+    public SaveGame saves;
+    public volatile boolean saveRequested = false;
+
+    public Game(){
+        this(new GameOptions());
+    }
+
+    public Game(GameOptions options){
+        this(options, new AssetManager(options.assetCachePath));
+    }
+
+    public Game(GameOptions options, AssetManager assets){
+
+        if(options.replayPath != null){
+            if(options.recordPath != null){
+                throw new IllegalArgumentException("Can't record and replay at the same time");
+            }
+            replay = loadReplay(options.replayPath);
+            replay.configure(options);
+        }
+        this.tickTimesPath = options.tickTimesPath;
+        this.headless = options.headless;
+        this.drawScale = options.lowRes ? 1 : scale;
+        this.drawTileSize = originalTileSize * drawScale;
+        this.assets = assets;
+        if(!headless){
+            animations.loadImages(assets);
+        }
+        keyH = new KeyHandler(loadKeyBindings(options.keyBindingsPath));
+        player = new Player(this, replay != null ? replay : keyH);
+
+        if(options.worldPath != null){
+            tileManager = new TileManager(this, options.worldPath, options.viewRadius);
+            tileManager.preloadAround(player.getWorldX(), player.getWorldY());
+        } else if(options.mapPath != null){
+            tileManager = new TileManager(this, options.mapPath, options.verifyMap);
+        } else {
+            tileManager = new TileManager(this);
+        }
+        maxWorldCol = tileManager.getMaxWorldCol();
+        maxWorldRow = tileManager.getMaxWorldRow();
+        worldWidth = tileSize * maxWorldCol;
+        worldHeight = tileSize * maxWorldRow;
+
+        if(tileManager.world != null && (replay != null || options.recordPath != null)){
+            tileManager.world.loadOnCallingThread = true;
+        }
+
+        paths = new PathService(NavGrid.of(tileManager), options.pathWorkers, options.pathsPerTick);
+        tileManager.addCollisionListener(paths.graph::collisionChanged);
+
+        if(!headless){
+            atlas = new TextureAtlas(drawScale);
+            tileManager.packTiles(atlas);
+            animations.packFrames(atlas);
+            atlas.pack();
+            System.out.print(assets.report());
+            System.out.print(atlas.report());
+        }
+
+        if(options.npcCount > 0){
+            entitySystem.spawnWanderers(options.npcCount, tileManager, player.getWorldX() / tileSize, player.getWorldY() / tileSize, 20, tileSize, new Random(1));
+        }
+
+        if(options.savePath != null){
+            if(replay != null || options.recordPath != null){
+                throw new IllegalArgumentException("Can't load a save while recording or replaying");
+            }
+            saves = new SaveGame(this, options.savePath);
+            if(Files.exists(options.savePath)){
+                long start = System.nanoTime();
+                try {
+                    saves.load();
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to load save: " + options.savePath, e);
+                }
+                System.out.printf("Loaded %s in %.1f ms: tick %d, %d entities%n", options.savePath, (System.nanoTime() - start) / 1e6, ticks, entities.count);
+            }
+        }
+
+        if(options.recordPath != null){
+            try {
+                recorder = new InputRecorder(options.recordPath, options);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to create input log: " + options.recordPath, e);
+            }
+        }
+    }
+
+    static InputReplay loadReplay(Path path){
+        try {
+            return new InputReplay(path);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load replay: " + path, e);
+        }
+    }
+
+    static KeyBindings loadKeyBindings(Path path){
+        if(path == null){
+            return KeyBindings.defaults();
+        }
+        try {
+            return KeyBindings.load(path);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load key bindings: " + path, e);
+        }
+    }
+
+    public void update(){
+        long start = replay != null ? System.nanoTime() : 0;
+        keyH.poll();
+        if(replay != null){
+            replay.advance();
+        } else if(recorder != null){
+            recorder.record(keyH);
+        }
+        paths.tick();
+        collisionChecker.updateEntityHash(entities);
+        player.update();
+        for(int k = 0; k < remotePlayers.size(); k++){
+            remotePlayers.get(k).update();
+        }
+        entitySystem.update();
+        tileManager.update();
+        ticks++;
+        if(replay != null){
+            replay.recordTick(System.nanoTime() - start);
+        }
+        if(saveRequested && saves != null){
+            saveRequested = false;
+            saves.save();
+        }
+    }
+
+    // Hash of the simulation state, the same after the same ticks with the same input
+    public long checksum(){
+        return EntityStore.mix(entities.checksum(), (int) ticks);
+    }
+
+    // The game thread has stopped: finish the recording, or check how the replay ended, and save. Returns false if
+    // the replay diverged from the recording.
+    public boolean finish(){
+        boolean ok = true;
+        if(recorder != null){
+            recorder.finish(checksum());
+            recorder = null;
+        }
+        if(replay != null){
+            ok = replay.report(checksum());
+            if(tickTimesPath != null){
+                replay.writeTickTimes(tickTimesPath);
+            }
+        }
+        if(saves != null){
+            saves.save();
+            saves.close();
+            saves = null;
+        }
+        paths.close();
+        return ok;
+    }
+}
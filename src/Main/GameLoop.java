@@ -0,0 +1,132 @@
+package Main;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleConsumer;
+
+// Fixed timestep loop. update() always runs at the tick rate, render gets how far we are into the next tick (0..1).
+// render can be null when another thread draws (see GamePanel), then the loop only ticks.
+public class GameLoop {
+
+    // Park until this close to the deadline, then spin the rest for precision.
+    static final long SPIN_NANOS = 1_000_000;
+    static final long REPORT_INTERVAL_NANOS = 5_000_000_000L;
+
+    final long tickNanos;
+    final int maxCatchUpTicks;
+
+    public final LoopStats stats = new LoopStats();
+    public boolean reportStats = true;
+    // Tick back to back without waiting for real time, for replays
+    public boolean unpaced = false;
+
+    private volatile boolean running = false;
+
+    public GameLoop(int ticksPerSecond){
+        this(ticksPerSecond, 5);
+    }
+
+    public GameLoop(int ticksPerSecond, int maxCatchUpTicks){
+        this.tickNanos = 1_000_000_000L / ticksPerSecond;
+        this.maxCatchUpTicks = maxCatchUpTicks;
+    }
+
+    public void run(Runnable update, DoubleConsumer render){
+
+        running = true;
+        if(unpaced){
+            runUnpaced(update, render);
+            return;
+        }
+
+        long previousTime = System.nanoTime();
+        long lastReport = previousTime;
+        long accumulator = 0;
+
+        while(running){
+
+            long currentTime = System.nanoTime();
+            accumulator += currentTime - previousTime;
+            previousTime = currentTime;
+
+            //Update
+            int ticksThisFrame = 0;
+            while(accumulator >= tickNanos){
+                if(ticksThisFrame == maxCatchUpTicks){
+                    // Too far behind (debugger, window drag, GC). Drop the backlog instead of spiralling.
+                    stats.droppedTicks += accumulator / tickNanos;
+                    accumulator %= tickNanos;
+                    break;
+                }
+                update.run();
+                accumulator -= tickNanos;
+                ticksThisFrame++;
+                stats.ticks++;
+            }
+            if(ticksThisFrame > 1){
+                stats.caughtUpTicks += ticksThisFrame - 1;
+            }
+
+            //Draw, unless another thread renders
+            if(render != null){
+                render.accept(accumulator / (double) tickNanos);
+                stats.frames++;
+            }
+
+            if(reportStats && currentTime - lastReport >= REPORT_INTERVAL_NANOS){
+                System.out.println(stats.report((currentTime - lastReport) / 1_000_000_000.0));
+                stats.reset();
+                lastReport = currentTime;
+            }
+
+            //Wait for the next tick
+            long deadline = currentTime + (tickNanos - accumulator);
+            waitUntil(deadline);
+            stats.recordJitter(System.nanoTime() - deadline);
+        }
+    }
+
+    // One tick per frame, as fast as they go. Frames show each tick as it finished.
+    void runUnpaced(Runnable update, DoubleConsumer render){
+        long lastReport = System.nanoTime();
+        while(running){
+            update.run();
+            stats.ticks++;
+            if(render != null){
+                render.accept(0);
+                stats.frames++;
+            }
+            long now = System.nanoTime();
+            if(reportStats && now - lastReport >= REPORT_INTERVAL_NANOS){
+                System.out.println(stats.report((now - lastReport) / 1_000_000_000.0));
+                stats.reset();
+                lastReport = now;
+            }
+        }
+    }
+
+    public long getTickNanos(){
+        return tickNanos;
+    }
+
+    public void stop(){
+        running = false;
+    }
+
+    public boolean isRunning(){
+        return running;
+    }
+
+    static void waitUntil(long deadline){
+        while(true){
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0){
+                return;
+            }
+            if(remaining > SPIN_NANOS){
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
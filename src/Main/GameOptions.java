@@ -0,0 +1,113 @@
+package Main;
+
+import Net.GameServer;
+
+import java.nio.file.Path;
+
+// Startup options, parsed from the command line. Example: java Main.Main --render=active
+public class GameOptions {
+
+    public RenderMode renderMode = RenderMode.PASSIVE;
+    public Path mapPath;        // memory-map this compiled .ljmap instead of parsing the CSV map
+    public boolean verifyMap = false; // check the compiled map's checksum on load (reads the whole file)
+    public Path worldPath;      // stream this .world file instead of loading the CSV map
+    public int viewRadius = 2;  // chunks kept loaded around the player when streaming
+    public int npcCount = 0;    // wandering NPCs spawned around the player
+    public Path keyBindingsPath; // remapped keys, see KeyBindings
+    public Path assetCachePath = Path.of(".cache", "images"); // decoded images, null to always decode
+    public boolean renderThread = true; // draw on its own thread, in parallel with the simulation
+    public int maxFramesPerSecond = 60; // render thread frame cap, frames between ticks are interpolated
+    public boolean dirtyRects = false; // redraw only what changed while the camera stands still (DirtyRectRenderer)
+    public boolean lowRes = false; // draw at 256x192 and scale the frame up to the window (LowResRenderer)
+    public boolean integerScaling = true; // low-res: scale by whole multiples only, false fills as much of the window as fits
+    public boolean softwareRenderer = false; // compose frames in plain Java into an int[] raster (SoftwareRenderer)
+    public int rasterThreads = Runtime.getRuntime().availableProcessors(); // software renderer: threads drawing bands of the frame
+    public int pathWorkers = Math.min(2, Runtime.getRuntime().availableProcessors() - 1); // 0 searches on the game thread
+    public int pathsPerTick = 64; // path requests started per tick, the rest wait
+    public boolean metrics = false; // time every frame phase from the start, not just while the F3 overlay is up
+    public boolean headless = false; // no window, no images: just run update() (see HeadlessRunner)
+    public long ticks = 0;      // headless: stop after this many ticks, 0 runs until killed
+    public double speed = 0;    // headless: multiple of real time, 0 runs as fast as possible
+    public Path recordPath;     // record every tick's input to this file (see InputRecorder)
+    public Path replayPath;     // play this recorded input instead of the keyboard, then check the final state
+    public Path tickTimesPath;  // replay: write every tick's time here as CSV
+    public int serverPort = 0;  // host the game for network players on this port (headless, see Net.GameServer), 0 = don't
+    public int interestRadius = 1; // server: chunks around a player's own that its client is sent
+    public Path savePath;       // load this save at startup if it exists, save to it with F5 and on exit (see World.SaveGame)
+
+    public static GameOptions parse(String[] args){
+        GameOptions options = new GameOptions();
+
+        for(String arg : args){
+            if(arg.startsWith("--render=")){
+                options.renderMode = RenderMode.parse(value(arg));
+            } else if(arg.startsWith("--map=")){
+                options.mapPath = Path.of(value(arg));
+            } else if(arg.equals("--verify-map")){
+                options.verifyMap = true;
+            } else if(arg.startsWith("--world=")){
+                options.worldPath = Path.of(value(arg));
+            } else if(arg.startsWith("--view-radius=")){
+                options.viewRadius = Integer.parseInt(value(arg));
+            } else if(arg.startsWith("--npcs=")){
+                options.npcCount = Integer.parseInt(value(arg));
+            } else if(arg.startsWith("--keys=")){
+                options.keyBindingsPath = Path.of(value(arg));
+            } else if(arg.startsWith("--asset-cache=")){
+                options.assetCachePath = Path.of(value(arg));
+            } else if(arg.equals("--no-asset-cache")){
+                options.assetCachePath = null;
+            } else if(arg.equals("--single-thread")){
+                options.renderThread = false;
+            } else if(arg.startsWith("--fps=")){
+                options.maxFramesPerSecond = Integer.parseInt(value(arg));
+            } else if(arg.equals("--dirty-rects")){
+                options.dirtyRects = true;
+            } else if(arg.equals("--low-res")){
+                options.lowRes = true;
+            } else if(arg.equals("--low-res=integer") || arg.equals("--low-res=fractional")){
+                options.lowRes = true;
+                options.integerScaling = value(arg).equals("integer");
+            } else if(arg.equals("--renderer=java2d") || arg.equals("--renderer=software")){
+                options.softwareRenderer = value(arg).equals("software");
+            } else if(arg.startsWith("--raster-threads=")){
+                options.rasterThreads = Integer.parseInt(value(arg));
+            } else if(arg.startsWith("--path-workers=")){
+                options.pathWorkers = Integer.parseInt(value(arg));
+            } else if(arg.startsWith("--paths-per-tick=")){
+                options.pathsPerTick = Integer.parseInt(value(arg));
+            } else if(arg.equals("--metrics")){
+                options.metrics = true;
+            } else if(arg.equals("--headless")){
+                options.headless = true;
+            } else if(arg.startsWith("--ticks=")){
+                options.ticks = Long.parseLong(value(arg));
+            } else if(arg.startsWith("--speed=")){
+                options.speed = Double.parseDouble(value(arg));
+            } else if(arg.startsWith("--record=")){
+                options.recordPath = Path.of(value(arg));
+            } else if(arg.startsWith("--replay=")){
+                options.replayPath = Path.of(value(arg));
+            } else if(arg.startsWith("--tick-times=")){
+                options.tickTimesPath = Path.of(value(arg));
+            } else if(arg.equals("--server")){
+                options.serverPort = GameServer.DEFAULT_PORT;
+                options.headless = true;
+            } else if(arg.startsWith("--server=")){
+                options.serverPort = Integer.parseInt(value(arg));
+                options.headless = true;
+            } else if(arg.startsWith("--interest-radius=")){
+                options.interestRadius = Integer.parseInt(value(arg));
+            } else if(arg.startsWith("--save=")){
+                options.savePath = Path.of(value(arg));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return options;
+    }
+
+    static String value(String arg){
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+}
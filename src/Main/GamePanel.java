@@ -1,92 +1,295 @@
 package Main;
 
 import Entity.Player;
-import Tiles.TileManager;
+import Entity.RenderSnapshot;
+import Utility.AssetManager;
+import Utility.TripleBuffer;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
 
 public class GamePanel extends JPanel implements Runnable {
 
-    // SCREEN SETTINGS
-    final int originalTileSize = 16; //Tile Size
-    final int scale = 3;
+    // The simulation. This panel only feeds it keys and draws it.
+    public final Game game;
 
-    public final int tileSize = originalTileSize * scale; // 16x16 * 3 = 48px
-    public final int maxScreenCol = 16;
-    public final int maxScreenRow = 12;
-    public final int screenWidth = tileSize * maxScreenCol; //768px
-    public final int screenHeight = tileSize * maxScreenRow; //576px
+    int FPS = 60;
+    GameLoop gameLoop = new GameLoop(FPS);
 
-    //WORLD SETTINGS
-    public final int maxWorldCol = 50;
-    public final int maxWorldRow = 50;
-    public final int worldWidth = tileSize * maxWorldCol;
-    public final int worldHeight = tileSize * maxWorldRow;
+    // Every tick the game thread copies what drawing needs into a snapshot. The renderer draws the latest one,
+    // so simulation and drawing can run at the same time without sharing any arrays.
+    final TripleBuffer<RenderSnapshot> snapshots = new TripleBuffer<>(RenderSnapshot::new);
+    long tick = 0;
 
+    // Draw on a separate render thread (default) or on the game thread between ticks.
+    final boolean renderThread;
+    final int maxFramesPerSecond;
 
-    int FPS = 60;
+    // Only with --dirty-rects: composes frames into its own image, redrawing just the damaged parts
+    final DirtyRectRenderer dirtyRenderer;
+    // Java2D blits, or with --renderer=software the frame composed in an int[]
+    final Renderer renderer;
+    // Only with --low-res: draws at native resolution, then scales the frame to whatever size the window is
+    final LowResRenderer lowResRenderer;
+
+    // Per-phase timings and the F3 debug overlay
+    public final FrameMetrics metrics;
+    // When the last repaint() was requested, for the EDT's repaint latency in PASSIVE mode
+    private volatile long repaintRequested = 0;
 
-    TileManager tileManager = new TileManager(this);
-    KeyHandler keyH = new KeyHandler();
     Thread gameThread;
-    public CollisionChecker collisionChecker = new CollisionChecker(this);
-    public Player player = new Player(this,keyH);
+    Thread renderingThread;
+
+    final RenderMode renderMode;
+    // Only used in ACTIVE mode: the render thread draws into this canvas' buffer strategy itself.
+    Canvas canvas;
+    BufferStrategy bufferStrategy;
 
 
     public GamePanel(){
+        this(new GameOptions());
+    }
+
+    public GamePanel(GameOptions options){
+        this(options, new AssetManager(options.assetCachePath));
+    }
+
+    public GamePanel(GameOptions options, AssetManager assets){
+
+        this.renderMode = options.renderMode;
+        this.renderThread = options.renderThread;
+        this.maxFramesPerSecond = options.maxFramesPerSecond;
+        this.game = new Game(options, assets);
+        gameLoop.unpaced = game.replay != null;
+        if(options.dirtyRects && (options.lowRes || options.softwareRenderer)){
+            throw new IllegalArgumentException("--dirty-rects only works with the full size Java2D renderer");
+        }
+        this.dirtyRenderer = options.dirtyRects ? new DirtyRectRenderer(game) : null;
+        this.renderer = options.softwareRenderer ? new SoftwareRenderer(game, options.rasterThreads) : new Java2DRenderer(game);
+        this.lowResRenderer = options.lowRes ? new LowResRenderer(game, renderer, options.integerScaling) : null;
+        publishSnapshot(); // so the first frame has something to draw
+        this.metrics = new FrameMetrics(options.metrics, game.keyH.inputToUpdate);
+        KeyHandler keyH = game.keyH;
+        KeyListener metricsKeys = new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                metrics.recordInput(System.nanoTime());
+                if(e.getKeyCode() == KeyEvent.VK_F3){
+                    metrics.toggleOverlay();
+                } else if(e.getKeyCode() == KeyEvent.VK_F5){
+                    game.saveRequested = true;
+                }
+            }
+        };
+        int screenWidth = game.screenWidth;
+        int screenHeight = game.screenHeight;
 
         this.setPreferredSize(new Dimension(screenWidth,screenHeight));
         this.setBackground(Color.BLACK);
         this.setDoubleBuffered(true);
         this.addKeyListener(keyH);
+        this.addKeyListener(metricsKeys);
         this.setFocusable(true);
+
+        if(renderMode == RenderMode.ACTIVE){
+            canvas = new Canvas();
+            canvas.setPreferredSize(new Dimension(screenWidth,screenHeight));
+            canvas.setBackground(Color.BLACK);
+            canvas.setIgnoreRepaint(true);
+            canvas.addKeyListener(keyH);
+            canvas.addKeyListener(metricsKeys);
+            canvas.setFocusable(true);
+            this.setLayout(new BorderLayout());
+            this.add(canvas, BorderLayout.CENTER);
+        }
+        System.out.println("Render mode: " + renderMode + (renderThread ? ", separate render thread" : ", rendering on the game thread")
+                + (options.softwareRenderer ? ", software renderer on " + options.rasterThreads + " thread(s)" : ""));
     }
 
     public void startGameThread(){
 
-        gameThread = new Thread(this);
+        if(renderMode == RenderMode.ACTIVE){
+            // The canvas has to be displayable (window visible) before it can get a buffer strategy.
+            canvas.createBufferStrategy(2);
+            bufferStrategy = canvas.getBufferStrategy();
+            canvas.requestFocus();
+        }
+        gameThread = new Thread(this, "Game");
         gameThread.start();
+        if(renderThread){
+            renderingThread = new Thread(this::renderLoop, "Render");
+            renderingThread.setDaemon(true);
+            renderingThread.start();
+        }
     }
 
     @Override
     public void run() {
 
-        double drawInterval = 1000000000/FPS;
-        double delta = 0;
-        long lastTime = System.nanoTime();
-        long currentTime;
+        if(renderThread){
+            gameLoop.run(this::update, null);
+        } else {
+            gameLoop.run(this::update, alpha -> render());
+        }
+        if(game.replay != null && game.replay.isFinished()){
+            System.exit(game.finish() ? 0 : 1);
+        }
+    }
 
-        while(gameThread != null){
+    // Stops the game thread after the tick it is in, and waits for it.
+    public void stopGameThread(){
+        gameLoop.stop();
+        if(gameThread != null && gameThread != Thread.currentThread()){
+            try {
+                gameThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-            currentTime = System.nanoTime();
+    // Draws the latest snapshot as often as maxFramesPerSecond allows, independent of the tick rate.
+    void renderLoop(){
+        long frameNanos = 1_000_000_000L / maxFramesPerSecond;
+        long deadline = System.nanoTime();
+        while(!Thread.currentThread().isInterrupted()){
+            render();
+            gameLoop.stats.frames++;
 
-            delta += (currentTime - lastTime) / drawInterval;
+            deadline += frameNanos;
+            long now = System.nanoTime();
+            if(now - deadline > frameNanos){
+                deadline = now; // fell behind, don't try to catch up with a burst of frames
+            }
+            GameLoop.waitUntil(deadline);
+        }
+    }
 
-            lastTime = currentTime;
+    public void update(){
+        if(metrics.isCollecting()){
+            long start = System.nanoTime();
+            game.update();
+            metrics.recordTick(start, System.nanoTime(), game.entities.count);
+        } else {
+            game.update();
+        }
+        publishSnapshot();
+        if(game.replay != null && game.replay.isFinished()){
+            gameLoop.stop();
+        }
+    }
 
-            if(delta >= 1){
-                //Update
-                update();
-                //Draw
-                repaint();
-                delta --;
+    void publishSnapshot(){
+        snapshots.back().capture(game.entities, game.player.index(), ++tick, System.nanoTime());
+        snapshots.publish();
+    }
+
+    public void render(){
+        if(renderMode == RenderMode.ACTIVE){
+            renderActive();
+        } else {
+            if(metrics.isCollecting() && repaintRequested == 0){
+                repaintRequested = System.nanoTime();
             }
+            repaint();
+        }
+    }
+
+    void renderActive(){
+        long start = System.nanoTime();
+        long presentStart = start;
 
+        // Contents can be lost at any time (display mode change, window minimized), so redraw until they stick.
+        do {
+            do {
+                Graphics2D g2 = (Graphics2D) bufferStrategy.getDrawGraphics();
+                try {
+                    drawFrame(g2, canvas.getWidth(), canvas.getHeight());
+                } finally {
+                    g2.dispose();
+                }
+            } while(bufferStrategy.contentsRestored());
+            presentStart = System.nanoTime();
+            bufferStrategy.show();
+        } while(bufferStrategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
 
+        long end = System.nanoTime();
+        gameLoop.stats.frameTimes.record(end - start);
+        if(metrics.isCollecting()){
+            metrics.recordPresent(start, end - presentStart, end);
         }
     }
-    public void update(){
-        player.update();
+
+    // Only ever called from one thread at a time: the render thread in ACTIVE mode, the EDT in PASSIVE mode.
+    // The window is only resizable with --low-res, the other paths draw screenWidth x screenHeight.
+    public void drawFrame(Graphics2D g2, int width, int height){
+        Game game = this.game;
+        Player player = game.player;
+        boolean timed = metrics.isCollecting();
+
+        // Interpolate between the snapshot's two states by how long ago its tick finished.
+        RenderSnapshot snapshot = snapshots.acquire();
+        double alpha = snapshot.alpha(System.nanoTime(), gameLoop.getTickNanos());
+        game.cameraX = snapshot.getRenderX(snapshot.playerIndex, alpha);
+        game.cameraY = snapshot.getRenderY(snapshot.playerIndex, alpha);
+
+        if(dirtyRenderer != null){
+            g2.drawImage(dirtyRenderer.render(snapshot, alpha), 0, 0, null);
+            if(timed){
+                metrics.recordDraw(dirtyRenderer.tileDrawNanos, dirtyRenderer.entityDrawNanos, dirtyRenderer.drawCalls + 1,
+                        game.tileManager.chunkCache.tilesCulled, game.entitySystem.entitiesCulled);
+                metrics.recordRedraw(dirtyRenderer.redrawnFraction, dirtyRenderer.rectsDrawn);
+            }
+            if(metrics.isOverlayVisible()){
+                metrics.drawOverlay(g2);
+            }
+            return;
+        }
+
+        int drawCalls;
+        if(lowResRenderer != null){
+            lowResRenderer.render(snapshot, alpha);
+            lowResRenderer.present(g2, width, height);
+            drawCalls = renderer.getDrawCalls() + 1; // and the upscale
+        } else {
+            renderer.draw(g2, snapshot, alpha, game.cameraX - player.screenX, game.cameraY - player.screenY, game.screenWidth, game.screenHeight);
+            drawCalls = renderer.getDrawCalls();
+        }
+
+        if(timed){
+            metrics.recordDraw(renderer.getTileDrawNanos(), renderer.getEntityDrawNanos(), drawCalls, renderer.getTilesCulled(), renderer.getEntitiesCulled());
+            metrics.recordRedraw(1, 1);
+        }
+        if(metrics.isOverlayVisible()){
+            metrics.drawOverlay(g2);
+        }
     }
+
     public void paintComponent(Graphics g){
         super.paintComponent(g);
+        if(renderMode == RenderMode.ACTIVE){
+            return;
+        }
+        long start = System.nanoTime();
+        long requested = repaintRequested;
+        repaintRequested = 0;
 
         Graphics2D g2 = (Graphics2D)g;
 
-        tileManager.draw(g2);
-        player.draw(g2);
+        drawFrame(g2, getWidth(), getHeight());
 
         g2.dispose();
+
+        long end = System.nanoTime();
+        gameLoop.stats.frameTimes.record(end - start);
+        // Swing flips its back buffer after we return, so PASSIVE mode's present is the wait for the EDT to paint.
+        if(metrics.isCollecting() && requested != 0){
+            metrics.recordPresent(start, start - requested, end);
+        }
     }
 }
@@ -0,0 +1,112 @@
+package Main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.Supplier;
+
+// Runs a Game without a window: soak tests, bot simulations, servers. update() runs either flat out or paced at a
+// multiple of real time, and every few seconds it prints ticks/s, tick times and how much the game thread allocated.
+//   java -Djava.awt.headless=true -cp build Main.Main --headless --npcs=1000 --ticks=100000
+// A server runs its own tick (network in, update, snapshots out) in place of game.update(), see Net.GameServer.
+public class HeadlessRunner {
+
+    static final long REPORT_INTERVAL_NANOS = 5_000_000_000L;
+
+    final Game game;
+    final Runnable step;
+    final long maxTicks;   // 0 = until stop()
+    final double speed;    // 0 = as fast as possible, otherwise a multiple of real time
+    final int ticksPerSecond = 60;
+
+    public final TimingSamples tickTimes = new TimingSamples(LoopStats.SAMPLE_COUNT);
+    public long ticks = 0;
+    // Printed after every report line when set
+    public Supplier<String> status;
+
+    private final com.sun.management.ThreadMXBean allocationBean;
+    private volatile boolean running = false;
+
+    public HeadlessRunner(Game game, long maxTicks, double speed){
+        this(game, game::update, maxTicks, speed);
+    }
+
+    public HeadlessRunner(Game game, Runnable step, long maxTicks, double speed){
+        this.game = game;
+        this.step = step;
+        this.maxTicks = maxTicks;
+        this.speed = speed;
+
+        // Per-thread allocation counters are a HotSpot extension, report without them elsewhere.
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()){
+            allocationBean = (com.sun.management.ThreadMXBean) threads;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            allocationBean = null;
+        }
+    }
+
+    public void run(){
+        running = true;
+
+        long tickNanos = speed > 0 ? (long) (1_000_000_000L / (ticksPerSecond * speed)) : 0;
+        long start = System.nanoTime();
+        long allocatedAtStart = allocatedBytes();
+        long lastReport = start;
+        long ticksAtReport = 0;
+        long allocatedAtReport = allocatedAtStart;
+        long deadline = start;
+
+        while(running && (maxTicks == 0 || ticks < maxTicks)){
+
+            long tickStart = System.nanoTime();
+            step.run();
+            long now = System.nanoTime();
+            tickTimes.record(now - tickStart);
+            ticks++;
+
+            if(now - lastReport >= REPORT_INTERVAL_NANOS){
+                long allocated = allocatedBytes();
+                System.out.println(report("Headless", ticks - ticksAtReport, now - lastReport, allocated - allocatedAtReport));
+                if(status != null){
+                    System.out.println(status.get());
+                }
+                tickTimes.clear();
+                lastReport = now;
+                ticksAtReport = ticks;
+                allocatedAtReport = allocated;
+            }
+
+            if(tickNanos > 0){
+                deadline += tickNanos;
+                if(now - deadline > tickNanos * 5){
+                    deadline = now; // far behind, don't try to make it all up at once
+                }
+                GameLoop.waitUntil(deadline);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        System.out.println(report("Headless total", ticks, elapsed, allocatedBytes() - allocatedAtStart));
+        running = false;
+    }
+
+    public void stop(){
+        running = false;
+    }
+
+    String report(String label, long ticks, long nanos, long allocated){
+        double seconds = nanos / 1_000_000_000.0;
+        String report = String.format("%s: %d ticks in %.2f s, %.1f ticks/s (%.1fx real time), tick avg %.3f ms p99 %.3f ms",
+                label, ticks, seconds, ticks / seconds, ticks / seconds / ticksPerSecond, tickTimes.averageMillis(), tickTimes.percentileMillis(0.99));
+        if(allocated >= 0 && ticks > 0){
+            report += String.format(", allocated %.1f bytes/tick %.2f MB/s", allocated / (double) ticks, allocated / seconds / (1024 * 1024));
+        }
+        return report + ", entities " + game.entities.count;
+    }
+
+    // Bytes allocated by the calling (game) thread so far, or -1 if the JVM can't tell.
+    long allocatedBytes(){
+        return allocationBean == null ? -1 : allocationBean.getCurrentThreadAllocatedBytes();
+    }
+}
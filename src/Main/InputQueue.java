@@ -0,0 +1,59 @@
+package Main;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single producer, single consumer ring of input events: the EDT offers, the game thread drains once per tick.
+// Lock free and allocation free. Each event is an action, pressed or released, and the System.nanoTime() it
+// happened at.
+public class InputQueue {
+
+    public interface Sink {
+        void event(int action, boolean pressed, long nanos);
+    }
+
+    final int mask;
+    final long[] times;
+    final int[] actions;    // action, with PRESSED_BIT set for a press
+    static final int PRESSED_BIT = 1 << 30;
+
+    // Next slot to write (producer) and next slot to read (consumer). Each is only written by its own thread,
+    // the release/acquire pair makes the event data visible before the index moves.
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    public long dropped = 0; // producer side: events thrown away because the game thread fell far behind
+
+    public InputQueue(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        times = new long[size];
+        actions = new int[size];
+    }
+
+    // Producer. Returns false (and drops the event) when the queue is full.
+    public boolean offer(int action, boolean pressed, long nanos){
+        long t = tail.get();
+        if(t - head.getAcquire() > mask){
+            dropped++;
+            return false;
+        }
+        int slot = (int) t & mask;
+        times[slot] = nanos;
+        actions[slot] = pressed ? action | PRESSED_BIT : action;
+        tail.setRelease(t + 1);
+        return true;
+    }
+
+    // Consumer. Hands every queued event to sink in order and returns how many there were.
+    public int drain(Sink sink){
+        long h = head.get();
+        long t = tail.getAcquire();
+        for(long i = h; i < t; i++){
+            int slot = (int) i & mask;
+            int action = actions[slot];
+            sink.event(action & ~PRESSED_BIT, (action & PRESSED_BIT) != 0, times[slot]);
+        }
+        head.setRelease(t);
+        return (int) (t - h);
+    }
+}
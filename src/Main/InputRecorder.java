@@ -0,0 +1,110 @@
+package Main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Records what the player's controls read on every tick, to play the same game again with InputReplay.
+//
+// File layout, little endian:
+//   magic "LJIN", version, tick count (long), state checksum after the last tick (long): the two longs are
+//   written by finish(), a log that was never finished has 0 ticks and replays without a check
+//   NPC count, view radius, map kind (CSV, COMPILED or WORLD), then the map path as a length-prefixed UTF-8
+//   string (empty for the CSV map): everything besides input that decides how the simulation goes
+//   runs to the end of the file: varint tick count, then the action bits (bit n = KeyBindings action n) held
+//   for that many ticks
+// Input changes a few times a second at most, so a minute of play is a few hundred bytes.
+public class InputRecorder {
+
+    public static final int MAGIC = 0x4C4A494E; // "LJIN"
+    public static final int VERSION = 1;
+    static final int TICKS_OFFSET = 8;
+    public static final int CSV = 0, COMPILED = 1, WORLD = 2;
+
+    final Path path;
+    final FileChannel channel;
+    final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    int runActions = -1;
+    int runTicks = 0;
+    public long ticks = 0;
+
+    public InputRecorder(Path path, GameOptions options) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        Path map = options.worldPath != null ? options.worldPath : options.mapPath;
+        byte[] mapPath = map == null ? new byte[0] : map.toString().getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(0);
+        buffer.putLong(0);
+        buffer.putInt(options.npcCount);
+        buffer.putInt(options.viewRadius);
+        buffer.putInt(options.worldPath != null ? WORLD : options.mapPath != null ? COMPILED : CSV);
+        buffer.putShort((short) mapPath.length);
+        buffer.put(mapPath);
+    }
+
+    // Game thread, once per tick with the actions the player is about to read.
+    public void record(Controls controls){
+        int actions = 0;
+        for(int action = 0; action < KeyBindings.ACTION_COUNT; action++){
+            if(controls.isDown(action)){
+                actions |= 1 << action;
+            }
+        }
+        if(actions != runActions){
+            endRun();
+            runActions = actions;
+        }
+        runTicks++;
+        ticks++;
+    }
+
+    void endRun(){
+        if(runTicks == 0){
+            return;
+        }
+        if(buffer.remaining() < 6){
+            write();
+        }
+        int value = runTicks;
+        while((value & ~0x7F) != 0){
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        buffer.put((byte) runActions);
+        runTicks = 0;
+    }
+
+    void write(){
+        buffer.flip();
+        try {
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write input log: " + path, e);
+        }
+        buffer.clear();
+    }
+
+    // Writes the last run and the checksum of the state the recorded ticks led to, and closes the file.
+    public void finish(long checksum){
+        endRun();
+        write();
+        ByteBuffer footer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        footer.putLong(ticks).putLong(checksum).flip();
+        try {
+            channel.write(footer, TICKS_OFFSET);
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write input log: " + path, e);
+        }
+        System.out.printf("Recorded %d ticks to %s (%d bytes), checksum %016x%n", ticks, path, path.toFile().length(), checksum);
+    }
+}
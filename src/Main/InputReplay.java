@@ -0,0 +1,166 @@
+package Main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Plays back an InputRecorder log as the player's controls, one recorded tick per Game.update(), and times every
+// tick. The game has to start the way the recording did: configure() sets the options the log records (NPCs,
+// map, view radius) before the Game is built. After the last tick, report() compares the state checksum with the
+// recorded one, so a replay is a regression test for the simulation as well as a repeatable benchmark workload.
+public class InputReplay implements Controls {
+
+    final Path path;
+    public final long ticks;            // recorded ticks, counted from the runs
+    public final long expectedChecksum;
+    public final boolean checked;       // false when the log was never finished
+    final int npcCount, viewRadius, mapKind;
+    final String mapPath;
+
+    // Runs of ticks with the same actions
+    final int[] runTicks, runActions;
+    final int runCount;
+    int run = -1;
+    int ticksLeftInRun = 0;
+    int actions = 0;
+
+    public long tick = 0;
+    // Time for every replayed tick
+    public final long[] tickNanos;
+
+    public InputReplay(Path path) throws IOException {
+        this.path = path;
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if(in.remaining() < 38 || in.getInt() != InputRecorder.MAGIC){
+            throw new IOException("Not an input log: " + path);
+        }
+        int version = in.getInt();
+        if(version != InputRecorder.VERSION){
+            throw new IOException("Unsupported input log version " + version + ": " + path);
+        }
+        long recordedTicks = in.getLong();
+        expectedChecksum = in.getLong();
+        checked = recordedTicks != 0;
+        npcCount = in.getInt();
+        viewRadius = in.getInt();
+        mapKind = in.getInt();
+        byte[] map = new byte[in.getShort() & 0xFFFF];
+        in.get(map);
+        mapPath = new String(map, StandardCharsets.UTF_8);
+
+        int[] counts = new int[256], bits = new int[256];
+        int n = 0;
+        long total = 0;
+        while(in.hasRemaining()){
+            if(n == counts.length){
+                counts = Arrays.copyOf(counts, n * 2);
+                bits = Arrays.copyOf(bits, n * 2);
+            }
+            int value = 0;
+            for(int shift = 0; ; shift += 7){
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if(b >= 0){
+                    break;
+                }
+            }
+            counts[n] = value;
+            bits[n] = in.get();
+            total += value;
+            n++;
+        }
+        if(recordedTicks != 0 && recordedTicks != total){
+            throw new IOException("Input log says " + recordedTicks + " ticks but holds " + total + ": " + path);
+        }
+        runTicks = counts;
+        runActions = bits;
+        runCount = n;
+        ticks = total;
+        tickNanos = new long[(int) Math.min(Integer.MAX_VALUE - 8, total)];
+        if(!checked){
+            System.out.println("Input log " + path + " was not finished, the replay can't be checked");
+        }
+    }
+
+    // Sets up the options the recording was made with.
+    public void configure(GameOptions options){
+        options.npcCount = npcCount;
+        options.viewRadius = viewRadius;
+        options.mapPath = mapKind == InputRecorder.COMPILED ? Path.of(mapPath) : null;
+        options.worldPath = mapKind == InputRecorder.WORLD ? Path.of(mapPath) : null;
+    }
+
+    public boolean isFinished(){
+        return tick >= ticks;
+    }
+
+    // Game thread, at the start of every tick: the next recorded tick's actions.
+    public void advance(){
+        while(ticksLeftInRun == 0 && run + 1 < runCount){
+            run++;
+            ticksLeftInRun = runTicks[run];
+            actions = runActions[run];
+        }
+        if(ticksLeftInRun == 0){
+            actions = 0; // past the end
+        } else {
+            ticksLeftInRun--;
+        }
+    }
+
+    public void recordTick(long nanos){
+        if(tick < tickNanos.length){
+            tickNanos[(int) tick] = nanos;
+        }
+        tick++;
+    }
+
+    @Override
+    public boolean isDown(int action){
+        return (actions & (1 << action)) != 0;
+    }
+
+    // Whether the replay ended in the recorded state. Prints tick times and the verdict.
+    public boolean report(long checksum){
+        int n = (int) Math.min(tick, tickNanos.length);
+        long[] sorted = Arrays.copyOf(tickNanos, n);
+        Arrays.sort(sorted);
+        long total = 0;
+        int slowest = 0;
+        for(int k = 0; k < n; k++){
+            total += tickNanos[k];
+            if(tickNanos[k] > tickNanos[slowest]){
+                slowest = k;
+            }
+        }
+        if(n > 0){
+            System.out.printf("Replay: %d ticks in %.1f ms, tick avg %.3f ms p50 %.3f ms p99 %.3f ms max %.3f ms (tick %d)%n",
+                    n, total / 1e6, total / 1e6 / n, sorted[n / 2] / 1e6, sorted[(int) (n * 0.99)] / 1e6, sorted[n - 1] / 1e6, slowest);
+        }
+        if(!checked){
+            System.out.printf("Replay checksum %016x, nothing recorded to compare with%n", checksum);
+            return true;
+        }
+        boolean same = tick == ticks && checksum == expectedChecksum;
+        System.out.printf("Replay %s: checksum %016x after %d ticks, recorded %016x after %d%n",
+                same ? "matches" : "DIVERGED", checksum, tick, expectedChecksum, ticks);
+        return same;
+    }
+
+    // Tick number and nanoseconds for every replayed tick, as CSV.
+    public void writeTickTimes(Path csv){
+        try(Writer writer = Files.newBufferedWriter(csv)){
+            writer.write("tick,nanos\n");
+            for(int k = 0; k < Math.min(tick, tickNanos.length); k++){
+                writer.write(k + "," + tickNanos[k] + "\n");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write tick times: " + csv, e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package Main;
+
+import Entity.RenderSnapshot;
+import Tiles.TileChunkCache;
+import java.awt.*;
+
+// The default backend: map chunks baked by the tile caches and sprites from the texture atlas, every one a
+// drawImage blit, so how fast it is depends on the Java2D pipeline underneath (software loops, X11, XRender, D3D).
+public class Java2DRenderer implements Renderer {
+
+    final Game game;
+    final int scale;
+
+    long tileDrawNanos, entityDrawNanos;
+    int drawCalls;
+
+    public Java2DRenderer(Game game){
+        this.game = game;
+        this.scale = game.tileSize / game.drawTileSize;
+    }
+
+    @Override
+    public void draw(Graphics2D g2, RenderSnapshot snapshot, double alpha, int viewX, int viewY, int width, int height){
+        Game game = this.game;
+        long start = System.nanoTime();
+        g2.setColor(Color.BLACK);
+        g2.fillRect(0, 0, width, height);
+        game.tileManager.chunkCache.draw(g2, viewX, viewY, width, height);
+        long tilesDrawn = System.nanoTime();
+
+        game.entitySystem.draw(g2, snapshot, viewX, viewY, width, height, game.drawTileSize, alpha, scale);
+        game.player.draw(g2, snapshot, Math.floorDiv(game.cameraX, scale) - viewX, Math.floorDiv(game.cameraY, scale) - viewY);
+        long entitiesDrawn = System.nanoTime();
+
+        TileChunkCache overlay = game.tileManager.overlayCache;
+        if(overlay != null){
+            overlay.draw(g2, viewX, viewY, width, height);
+        }
+        tileDrawNanos = (tilesDrawn - start) + (System.nanoTime() - entitiesDrawn);
+        entityDrawNanos = entitiesDrawn - tilesDrawn;
+        // fill + chunk blits + NPCs + player
+        drawCalls = 1 + game.tileManager.getDrawCalls() + game.entitySystem.drawCalls + 1;
+    }
+
+    @Override
+    public long getTileDrawNanos(){
+        return tileDrawNanos;
+    }
+
+    @Override
+    public long getEntityDrawNanos(){
+        return entityDrawNanos;
+    }
+
+    @Override
+    public int getDrawCalls(){
+        return drawCalls;
+    }
+
+    @Override
+    public long getTilesCulled(){
+        return game.tileManager.chunkCache.tilesCulled;
+    }
+
+    @Override
+    public int getEntitiesCulled(){
+        return game.entitySystem.entitiesCulled;
+    }
+}
@@ -0,0 +1,88 @@
+package Main;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Which key triggers which action. Defaults to WASD, remapped from a properties file given with --keys, e.g.
+//   up=W,UP
+//   left=A,LEFT
+// Key names are the KeyEvent.VK_ constants without the prefix.
+public class KeyBindings {
+
+    // Actions have the same numbers as Entity.Direction for the four moves.
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+    public static final int ACTION_COUNT = 4;
+
+    static final String[] ACTION_NAMES = {"up", "down", "left", "right"};
+
+    private final Map<Integer, Integer> actionsByKey = new HashMap<>();
+
+    public static KeyBindings defaults(){
+        KeyBindings bindings = new KeyBindings();
+        bindings.bind(KeyEvent.VK_W, UP);
+        bindings.bind(KeyEvent.VK_S, DOWN);
+        bindings.bind(KeyEvent.VK_A, LEFT);
+        bindings.bind(KeyEvent.VK_D, RIGHT);
+        return bindings;
+    }
+
+    // Actions not mentioned in the file keep their default keys.
+    public static KeyBindings load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try(Reader reader = Files.newBufferedReader(path)){
+            properties.load(reader);
+        }
+        KeyBindings bindings = defaults();
+        for(String name : properties.stringPropertyNames()){
+            int action = actionNamed(name);
+            if(action < 0){
+                throw new IOException("Unknown action '" + name + "' in " + path);
+            }
+            bindings.unbindAction(action);
+            for(String key : properties.getProperty(name).split(",")){
+                bindings.bind(keyCode(key.trim(), path), action);
+            }
+        }
+        return bindings;
+    }
+
+    static int actionNamed(String name){
+        for(int i = 0; i < ACTION_NAMES.length; i++){
+            if(ACTION_NAMES[i].equalsIgnoreCase(name.trim())){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int keyCode(String key, Path path) throws IOException {
+        try {
+            return KeyEvent.class.getField("VK_" + key.toUpperCase()).getInt(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unknown key '" + key + "' in " + path);
+        }
+    }
+
+    public void bind(int keyCode, int action){
+        actionsByKey.put(keyCode, action);
+    }
+
+    public void unbindAction(int action){
+        actionsByKey.values().removeIf(bound -> bound == action);
+    }
+
+    // -1 if the key isn't bound
+    public int actionFor(int keyCode){
+        Integer action = actionsByKey.get(keyCode);
+        return action == null ? -1 : action;
+    }
+}
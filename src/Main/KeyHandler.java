@@ -2,9 +2,36 @@ package Main;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.BitSet;
+
+// Turns key events into timestamped actions on an InputQueue. The EDT only enqueues; the game thread calls
+// poll() once per tick and reads isDown(), so input state is only ever touched by the thread that uses it.
+public class KeyHandler implements KeyListener, Controls {
+
+    public final KeyBindings bindings;
+    final InputQueue queue = new InputQueue(256);
+
+    // EDT: key codes currently down, to drop the key repeat events the OS sends while a key is held, and how many
+    // of each action's keys are down, since several keys can be bound to one action
+    private final BitSet keysDownOnEdt = new BitSet();
+    private final int[] keysHeldOnEdt = new int[KeyBindings.ACTION_COUNT];
+
+    // Game thread
+    private final boolean[] held = new boolean[KeyBindings.ACTION_COUNT];
+    private final boolean[] pressedThisTick = new boolean[KeyBindings.ACTION_COUNT];
+    // Key event to the tick that handled it
+    public final TimingSamples inputToUpdate = new TimingSamples(LoopStats.SAMPLE_COUNT);
+    private long pollNanos;
+    private final InputQueue.Sink apply = this::apply;
+
+    public KeyHandler(){
+        this(KeyBindings.defaults());
+    }
+
+    public KeyHandler(KeyBindings bindings){
+        this.bindings = bindings;
+    }
 
-public class KeyHandler implements KeyListener {
-    public boolean upPressed, downPressed,leftPressed, rightPressed;
     @Override
     public void keyTyped(KeyEvent e) {
 
@@ -13,37 +40,49 @@ public class KeyHandler implements KeyListener {
     @Override
     public void keyPressed(KeyEvent e) {
 
-        int code = e.getKeyCode();
-
-        if(code == KeyEvent.VK_W){
-            upPressed = true;
-        }
-        if(code == KeyEvent.VK_S){
-            downPressed = true;
-        }
-        if(code == KeyEvent.VK_A){
-            leftPressed = true;
-        }
-        if(code == KeyEvent.VK_D){
-            rightPressed = true;
+        int keyCode = e.getKeyCode();
+        int action = bindings.actionFor(keyCode);
+        if(action >= 0 && !keysDownOnEdt.get(keyCode)){
+            keysDownOnEdt.set(keyCode);
+            if(keysHeldOnEdt[action]++ == 0){
+                queue.offer(action, true, System.nanoTime());
+            }
         }
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
 
-        int code = e.getKeyCode();
-        if(code == KeyEvent.VK_W){
-            upPressed = false;
-        }
-        if(code == KeyEvent.VK_S){
-            downPressed = false;
+        int keyCode = e.getKeyCode();
+        int action = bindings.actionFor(keyCode);
+        if(action >= 0 && keysDownOnEdt.get(keyCode)){
+            keysDownOnEdt.clear(keyCode);
+            if(--keysHeldOnEdt[action] == 0){
+                queue.offer(action, false, System.nanoTime());
+            }
         }
-        if(code == KeyEvent.VK_A){
-            leftPressed = false;
+    }
+
+    // Game thread, once at the start of every tick.
+    public void poll(){
+        for(int i = 0; i < pressedThisTick.length; i++){
+            pressedThisTick[i] = false;
         }
-        if(code == KeyEvent.VK_D){
-            rightPressed = false;
+        pollNanos = System.nanoTime();
+        queue.drain(apply);
+    }
+
+    void apply(int action, boolean pressed, long nanos){
+        held[action] = pressed;
+        if(pressed){
+            pressedThisTick[action] = true;
         }
+        inputToUpdate.record(pollNanos - nanos);
+    }
+
+    // Held now, or pressed at some point since the last tick. A tap shorter than a tick still counts once.
+    @Override
+    public boolean isDown(int action){
+        return held[action] || pressedThisTick[action];
     }
 }
@@ -0,0 +1,38 @@
+package Main;
+
+// Timing numbers for the game loop. Jitter is how late a tick woke up compared to its deadline.
+public class LoopStats {
+
+    static final int SAMPLE_COUNT = 1024;
+
+    public final TimingSamples jitter = new TimingSamples(SAMPLE_COUNT);
+    // Time to draw and present one frame. Recorded by whichever thread renders (game thread or EDT).
+    public final TimingSamples frameTimes = new TimingSamples(SAMPLE_COUNT);
+
+    public long ticks = 0;
+    public long frames = 0;
+    public long caughtUpTicks = 0; // extra ticks run in one frame to catch up with real time
+    public long droppedTicks = 0;  // ticks thrown away because we were too far behind
+
+    public void recordJitter(long nanos){
+        jitter.record(Math.abs(nanos));
+    }
+
+    public String report(double seconds){
+        String report = String.format("Loop: %.1f ticks/s, %.1f fps, jitter avg %.3f ms p99 %.3f ms, caught up %d, dropped %d",
+                ticks / seconds, frames / seconds, jitter.averageMillis(), jitter.percentileMillis(0.99), caughtUpTicks, droppedTicks);
+        if(frameTimes.size() > 0){
+            report += String.format(", frame avg %.3f ms p99 %.3f ms", frameTimes.averageMillis(), frameTimes.percentileMillis(0.99));
+        }
+        return report;
+    }
+
+    public void reset(){
+        ticks = 0;
+        frames = 0;
+        caughtUpTicks = 0;
+        droppedTicks = 0;
+        jitter.clear();
+        frameTimes.clear();
+    }
+}
@@ -0,0 +1,86 @@
+package Main;
+
+import Entity.Player;
+import Entity.RenderSnapshot;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// --low-res: draws the whole frame at the art's own resolution, 256x192 with 16px tiles, into one small image,
+// then scales that to the window with a single nearest neighbour drawImage. The game packs its atlas and bakes its
+// chunks at scale 1 in this mode, so every tile and sprite blit (with either Renderer) is 1:1 and fills a ninth of
+// the pixels it does at 48px. The simulation still runs in 48px world pixels; positions are divided by the scale,
+// and the view is snapped so the player stays on the same native pixel while everything else moves in whole
+// native pixels.
+public class LowResRenderer {
+
+    final Game game;
+    final Renderer renderer;
+    final int scale;
+    public final int width, height;
+    // Scale by whole multiples only (sharp, even pixels), or fill as much of the window as the aspect ratio allows
+    public final boolean integerScaling;
+    BufferedImage frame;
+
+    // Where the last present() put the frame in the window
+    public int presentX, presentY, presentWidth, presentHeight;
+
+    public LowResRenderer(Game game, Renderer renderer, boolean integerScaling){
+        this.game = game;
+        this.renderer = renderer;
+        this.scale = game.tileSize / game.drawTileSize;
+        this.width = game.screenWidth / scale;
+        this.height = game.screenHeight / scale;
+        this.integerScaling = integerScaling;
+    }
+
+    // Draws the snapshot into the native frame and returns it. game.cameraX/Y must already be set.
+    public BufferedImage render(RenderSnapshot snapshot, double alpha){
+        if(frame == null){
+            frame = createFrameImage();
+        }
+        Player player = game.player;
+        int viewX = Math.floorDiv(game.cameraX, scale) - player.screenX / scale;
+        int viewY = Math.floorDiv(game.cameraY, scale) - player.screenY / scale;
+        Graphics2D g2 = frame.createGraphics();
+        renderer.draw(g2, snapshot, alpha, viewX, viewY, width, height);
+        g2.dispose();
+        return frame;
+    }
+
+    // Scales the last rendered frame to a window of the given size, centred, with black bars where the aspect
+    // ratio (or a whole multiple) leaves space.
+    public void present(Graphics2D g2, int windowWidth, int windowHeight){
+        if(integerScaling){
+            int factor = Math.max(1, Math.min(windowWidth / width, windowHeight / height));
+            presentWidth = width * factor;
+            presentHeight = height * factor;
+        } else {
+            double factor = Math.min((double) windowWidth / width, (double) windowHeight / height);
+            presentWidth = Math.max(1, (int) Math.round(width * factor));
+            presentHeight = Math.max(1, (int) Math.round(height * factor));
+        }
+        presentX = (windowWidth - presentWidth) / 2;
+        presentY = (windowHeight - presentHeight) / 2;
+
+        // Only the bars, the frame covers the rest
+        g2.setColor(Color.BLACK);
+        if(presentY > 0){
+            g2.fillRect(0, 0, windowWidth, presentY);
+            g2.fillRect(0, presentY + presentHeight, windowWidth, windowHeight - presentY - presentHeight);
+        }
+        if(presentX > 0){
+            g2.fillRect(0, presentY, presentX, presentHeight);
+            g2.fillRect(presentX + presentWidth, presentY, windowWidth - presentX - presentWidth, presentHeight);
+        }
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.drawImage(frame, presentX, presentY, presentWidth, presentHeight, null);
+    }
+
+    BufferedImage createFrameImage(){
+        if(!GraphicsEnvironment.isHeadless()){
+            GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            return gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+}
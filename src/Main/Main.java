@@ -1,26 +1,98 @@
 package Main;
 
+import Net.GameServer;
+import Utility.AssetManager;
+
 import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 
 //TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
 // click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
 public class Main {
     public static void main(String[] args) {
+        GameOptions options = GameOptions.parse(args);
+
+        if(options.serverPort > 0){
+            serve(options);
+            return;
+        }
+        if(options.headless){
+            Game game = new Game(options);
+            if(game.replay == null || game.replay.ticks > 0){
+                long ticks = game.replay != null ? game.replay.ticks : options.ticks;
+                new HeadlessRunner(game, ticks, options.speed).run();
+            }
+            if(!game.finish()){
+                System.exit(1);
+            }
+            return;
+        }
+
         JFrame window = new JFrame();
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        window.setResizable(false);
+        // Only the low resolution path scales the frame to the window
+        window.setResizable(options.lowRes);
         window.setTitle("Legend of Java");
 
-        GamePanel gamePanel = new GamePanel();
-        window.add(gamePanel);
-
+        // The window is up with a progress bar while the images load in the background.
+        long startNanos = System.nanoTime();
+        JProgressBar progress = new JProgressBar();
+        progress.setStringPainted(true);
+        progress.setString("Loading...");
+        window.add(progress);
         window.pack();
-
-
         window.setLocationRelativeTo(null);
         window.setVisible(true);
 
-        gamePanel.startGameThread();
+        AssetManager assets = new AssetManager(options.assetCachePath);
+        assets.setProgressListener((loaded, requested) -> SwingUtilities.invokeLater(() -> {
+            progress.setMaximum(requested);
+            progress.setValue(loaded);
+            progress.setString("Loading " + loaded + "/" + requested);
+        }));
+        GamePanel gamePanel = new GamePanel(options, assets);
+        // Let the last tick finish before exiting, so a recording ends on the state it checksums
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                gamePanel.stopGameThread();
+                gamePanel.game.finish();
+            }
+        });
+        System.out.printf("Startup: game built in %.1f ms, %d ms after JVM start%n",
+                (System.nanoTime() - startNanos) / 1e6, ManagementFactory.getRuntimeMXBean().getUptime());
+
+        SwingUtilities.invokeLater(() -> {
+            window.remove(progress);
+            window.add(gamePanel);
+            window.pack();
+            window.setLocationRelativeTo(null);
+            gamePanel.requestFocusInWindow();
+            gamePanel.startGameThread();
+        });
+    }
 
+    // Dedicated server: headless, paced at real time unless --speed says otherwise.
+    static void serve(GameOptions options){
+        Game game = new Game(options);
+        GameServer server;
+        try {
+            server = new GameServer(game, new InetSocketAddress(options.serverPort), options.interestRadius);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to listen on port " + options.serverPort, e);
+        }
+        System.out.println("Serving on port " + server.getPort());
+        HeadlessRunner runner = new HeadlessRunner(game, server::tick, options.ticks, options.speed > 0 ? options.speed : 1);
+        runner.status = server::report;
+        try {
+            runner.run();
+        } finally {
+            server.close();
+            game.finish();
+        }
     }
-}
\ No newline at end of file
+}
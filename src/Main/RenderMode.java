@@ -0,0 +1,11 @@
+package Main;
+
+public enum RenderMode {
+
+    PASSIVE, // repaint() and let the EDT call paintComponent
+    ACTIVE;  // the game thread draws into a Canvas BufferStrategy and shows it itself
+
+    public static RenderMode parse(String name){
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,25 @@
+package Main;
+
+import Entity.RenderSnapshot;
+import java.awt.*;
+
+// Draws one view of the game: black, the map layers under the entities, the NPCs and the player, then the layers
+// above them. Java2DRenderer blits from the texture atlas and the chunk caches, SoftwareRenderer writes the pixels
+// itself (--renderer=software). Both draw at game.drawTileSize, so either can fill LowResRenderer's native frame.
+public interface Renderer {
+
+    // Draws into the top left width x height of g2. viewX/viewY is the world position of the top left pixel in
+    // drawn pixels (world pixels divided by the draw scale). game.cameraX/Y must already be set.
+    void draw(Graphics2D g2, RenderSnapshot snapshot, double alpha, int viewX, int viewY, int width, int height);
+
+    // Counts and times for the last draw()
+    long getTileDrawNanos();
+
+    long getEntityDrawNanos();
+
+    int getDrawCalls();
+
+    long getTilesCulled();
+
+    int getEntitiesCulled();
+}
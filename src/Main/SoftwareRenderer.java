@@ -0,0 +1,449 @@
+package Main;
+
+import Entity.EntityStore;
+import Entity.RenderSnapshot;
+import Tiles.MapLayers;
+import Tiles.TileAnimations;
+import Tiles.TileLayer;
+import Tiles.TileManager;
+import World.Chunk;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// --renderer=software: composes the frame in plain Java, straight into the int[] behind a BufferedImage, and gives
+// Java2D only the finished frame to blit. Tiles and sprite frames are unpacked at draw scale into ARGB arrays at
+// startup. Rows of an opaque image are copied with System.arraycopy. Other images carry a mask of spans per row,
+// so transparent pixels are skipped without being read, opaque runs are still copied, and only the pixels in
+// between are blended.
+//
+// Tiles are drawn one by one every frame, nothing is baked. The frame is cut into horizontal bands that are drawn
+// in parallel on a ForkJoinPool, each band with every layer and sprite clipped to its rows, so no two threads
+// ever write the same pixel.
+public class SoftwareRenderer implements Renderer {
+
+    static final int BANDS_PER_THREAD = 4;
+    static final int BLACK = 0;
+    static final int NPC_FALLBACK = Color.ORANGE.getRGB();
+    static final int PLAYER_FALLBACK = Color.WHITE.getRGB();
+
+    final Game game;
+    final int scale;
+    final int tileSize;
+    final ForkJoinPool pool;
+    final int bandCount;
+
+    // Per tile type and per sheet frame, null when there is no image
+    final Bitmap[] tiles;
+    final Bitmap[] frames;
+    // Tile drawn for each tile type: itself, or the current frame for animated ones
+    final int[] shownTile;
+
+    BufferedImage frame;
+    int[] pixels;
+    int width, height;
+    int viewX, viewY;
+
+    // Sprites in view for this frame, in drawing order, the player last
+    int[] spriteX = new int[0], spriteY = new int[0], spriteFrame = new int[0], spriteFallback = new int[0];
+    int spriteCount = 0;
+
+    final long[] bandTileNanos, bandEntityNanos;
+    final int[] bandDrawCalls;
+
+    long tileDrawNanos, entityDrawNanos;
+    int drawCalls;
+    long tilesCulled;
+    int entitiesCulled;
+
+    // An image unpacked for copying: ARGB pixels, not premultiplied, and for every row the spans of pixels that
+    // aren't fully transparent. A span is x << 16 | length << 1, plus 1 when all of its pixels are opaque.
+    static final class Bitmap {
+        final int width, height;
+        final int[] pixels;
+        final boolean opaque;
+        final int[] spans;
+        // Row r's spans are spans[rowSpans[r]] to spans[rowSpans[r + 1] - 1]
+        final int[] rowSpans;
+
+        Bitmap(BufferedImage image, int scale){
+            int sourceWidth = image.getWidth();
+            int[] source = image.getRGB(0, 0, sourceWidth, image.getHeight(), null, 0, sourceWidth);
+            width = sourceWidth * scale;
+            height = image.getHeight() * scale;
+            pixels = new int[width * height];
+            for(int y = 0; y < height; y++){
+                for(int x = 0; x < width; x++){
+                    pixels[y * width + x] = source[(y / scale) * sourceWidth + x / scale];
+                }
+            }
+
+            int[] found = new int[height * 2];
+            int n = 0;
+            rowSpans = new int[height + 1];
+            boolean allOpaque = true;
+            for(int y = 0; y < height; y++){
+                rowSpans[y] = n;
+                int x = 0;
+                while(x < width){
+                    while(x < width && pixels[y * width + x] >>> 24 == 0){
+                        x++;
+                    }
+                    int start = x;
+                    boolean spanOpaque = true;
+                    while(x < width && pixels[y * width + x] >>> 24 != 0){
+                        spanOpaque &= pixels[y * width + x] >>> 24 == 255;
+                        x++;
+                    }
+                    if(x > start){
+                        if(n == found.length){
+                            found = Arrays.copyOf(found, n * 2);
+                        }
+                        found[n++] = start << 16 | (x - start) << 1 | (spanOpaque ? 1 : 0);
+                    }
+                }
+                allOpaque &= n - rowSpans[y] == 1 && found[n - 1] == (width << 1 | 1);
+            }
+            rowSpans[height] = n;
+            spans = Arrays.copyOf(found, n);
+            opaque = allOpaque;
+        }
+    }
+
+    public SoftwareRenderer(Game game, int threads){
+        this.game = game;
+        this.scale = game.tileSize / game.drawTileSize;
+        this.tileSize = game.drawTileSize;
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.bandCount = threads > 1 ? threads * BANDS_PER_THREAD : 1;
+        bandTileNanos = new long[bandCount];
+        bandEntityNanos = new long[bandCount];
+        bandDrawCalls = new int[bandCount];
+
+        TileManager tileManager = game.tileManager;
+        tiles = new Bitmap[tileManager.tile.length];
+        shownTile = new int[tiles.length];
+        for(int i = 0; i < tiles.length; i++){
+            if(tileManager.tile[i] != null && tileManager.tile[i].image != null){
+                tiles[i] = new Bitmap(tileManager.tile[i].image, game.drawScale);
+            }
+            shownTile[i] = i;
+        }
+        int frameCount = 0;
+        while(game.animations.image(frameCount) != null){
+            frameCount++;
+        }
+        frames = new Bitmap[frameCount];
+        for(int k = 0; k < frameCount; k++){
+            frames[k] = new Bitmap(game.animations.image(k), game.drawScale);
+        }
+    }
+
+    @Override
+    public void draw(Graphics2D g2, RenderSnapshot snapshot, double alpha, int viewX, int viewY, int width, int height){
+        if(frame == null || frame.getWidth() != width || frame.getHeight() != height){
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        }
+        this.width = width;
+        this.height = height;
+        this.viewX = viewX;
+        this.viewY = viewY;
+
+        long start = System.nanoTime();
+        updateAnimations();
+        collectSprites(snapshot, alpha);
+        long collected = System.nanoTime();
+
+        if(pool == null){
+            drawBand(0);
+        } else {
+            pool.invoke(new Bands(0, bandCount));
+        }
+
+        // Per band times add up to more than the frame took when bands run in parallel
+        tileDrawNanos = 0;
+        entityDrawNanos = collected - start;
+        drawCalls = 1; // the blit of the frame
+        for(int band = 0; band < bandCount; band++){
+            tileDrawNanos += bandTileNanos[band];
+            entityDrawNanos += bandEntityNanos[band];
+            drawCalls += bandDrawCalls[band];
+        }
+        TileManager tileManager = game.tileManager;
+        int cols = Math.max(0, Math.min(tileManager.getMaxWorldCol(), Math.floorDiv(viewX + width - 1, tileSize) + 1) - Math.max(0, Math.floorDiv(viewX, tileSize)));
+        int rows = Math.max(0, Math.min(tileManager.getMaxWorldRow(), Math.floorDiv(viewY + height - 1, tileSize) + 1) - Math.max(0, Math.floorDiv(viewY, tileSize)));
+        tilesCulled = (long) tileManager.getMaxWorldCol() * tileManager.getMaxWorldRow() - (long) cols * rows;
+
+        g2.drawImage(frame, 0, 0, null);
+    }
+
+    // Runs a range of bands, split in halves down to one band per task.
+    final class Bands extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int first, last;
+
+        Bands(int first, int last){
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute(){
+            if(last - first == 1){
+                drawBand(first);
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new Bands(first, middle), new Bands(middle, last));
+        }
+    }
+
+    void updateAnimations(){
+        TileManager tileManager = game.tileManager;
+        TileAnimations animations = tileManager.tileAnimations;
+        long tick = tileManager.animationTick;
+        for(int a = 0; a < animations.count(); a++){
+            shownTile[animations.animatedTile(a)] = animations.frameAt(a, tick);
+        }
+    }
+
+    // Screen positions of every NPC and projectile in view, worked out like EntitySystem.draw(), then the player.
+    void collectSprites(RenderSnapshot s, double alpha){
+        if(spriteX.length < s.count + 1){
+            int capacity = Math.max(s.count + 1, spriteX.length * 2);
+            spriteX = new int[capacity];
+            spriteY = new int[capacity];
+            spriteFrame = new int[capacity];
+            spriteFallback = new int[capacity];
+        }
+        int n = 0;
+        int culled = 0;
+        for(int i = 0; i < s.count; i++){
+            if(s.type[i] == EntityStore.PLAYER){
+                continue;
+            }
+            int x = Math.floorDiv((int) (s.prevWorldX[i] + (s.worldX[i] - s.prevWorldX[i]) * alpha), scale) - viewX;
+            int y = Math.floorDiv((int) (s.prevWorldY[i] + (s.worldY[i] - s.prevWorldY[i]) * alpha), scale) - viewY;
+            if(x + tileSize <= 0 || y + tileSize <= 0 || x >= width || y >= height){
+                culled++;
+                continue;
+            }
+            spriteX[n] = x;
+            spriteY[n] = y;
+            spriteFrame[n] = s.spriteNum[i];
+            spriteFallback[n] = NPC_FALLBACK;
+            n++;
+        }
+        spriteX[n] = Math.floorDiv(game.cameraX, scale) - viewX;
+        spriteY[n] = Math.floorDiv(game.cameraY, scale) - viewY;
+        spriteFrame[n] = s.spriteNum[s.playerIndex];
+        spriteFallback[n] = PLAYER_FALLBACK;
+        spriteCount = n + 1;
+        entitiesCulled = culled;
+    }
+
+    // Everything in the band's rows: the layers under the entities, the sprites, the layers above.
+    void drawBand(int band){
+        int top = band * height / bandCount;
+        int bottom = (band + 1) * height / bandCount;
+        long start = System.nanoTime();
+        int calls = drawLayers(false, top, bottom);
+        long tilesDrawn = System.nanoTime();
+
+        for(int k = 0; k < spriteCount; k++){
+            int y = spriteY[k];
+            int f = spriteFrame[k];
+            Bitmap bitmap = f < frames.length ? frames[f] : null;
+            if(y >= bottom || y + (bitmap != null ? bitmap.height : tileSize) <= top){
+                continue;
+            }
+            if(bitmap != null){
+                blit(bitmap, spriteX[k], y, top, bottom);
+            } else {
+                fill(spriteX[k], y, tileSize, tileSize, spriteFallback[k], top, bottom);
+            }
+            calls++;
+        }
+        long entitiesDrawn = System.nanoTime();
+
+        calls += drawLayers(true, top, bottom);
+        bandTileNanos[band] = (tilesDrawn - start) + (System.nanoTime() - entitiesDrawn);
+        bandEntityNanos[band] = entitiesDrawn - tilesDrawn;
+        bandDrawCalls[band] = calls;
+    }
+
+    // Every map cell that overlaps the band, with the layers above or under the entities. Under the entities the
+    // first layer with a tile covers the cell (black first only if that tile has see-through pixels), and cells
+    // with nothing, outside the map or in a chunk still streaming in are black. Returns the tiles and fills drawn.
+    int drawLayers(boolean above, int top, int bottom){
+        TileManager tileManager = game.tileManager;
+        int size = tileSize;
+        int firstCol = Math.max(0, Math.floorDiv(viewX, size));
+        int lastCol = Math.min(tileManager.getMaxWorldCol() - 1, Math.floorDiv(viewX + width - 1, size));
+        int firstRow = Math.max(0, Math.floorDiv(viewY + top, size));
+        int lastRow = Math.min(tileManager.getMaxWorldRow() - 1, Math.floorDiv(viewY + bottom - 1, size));
+        int calls = 0;
+        if(!above){
+            // Outside the map
+            calls += fillOutside(firstCol * size - viewX, firstRow * size - viewY, (lastCol + 1) * size - viewX, (lastRow + 1) * size - viewY, top, bottom);
+        }
+
+        for(int row = firstRow; row <= lastRow; row++){
+            int y = row * size - viewY;
+            for(int col = firstCol; col <= lastCol; col++){
+                int x = col * size - viewX;
+
+                // A streamed chunk has its own layers, a whole map is read at the cell itself.
+                MapLayers layers = tileManager.layers;
+                int layerCol = col;
+                int layerRow = row;
+                if(tileManager.world != null){
+                    Chunk chunk = tileManager.world.getChunk(col / Chunk.SIZE, row / Chunk.SIZE);
+                    layers = chunk != null ? chunk.layers : null;
+                    layerCol = col % Chunk.SIZE;
+                    layerRow = row % Chunk.SIZE;
+                }
+
+                boolean covered = above;
+                if(layers != null){
+                    List<TileLayer> list = layers.getTileLayers();
+                    for(int l = 0; l < list.size(); l++){
+                        TileLayer layer = list.get(l);
+                        if(layer.aboveEntities != above){
+                            continue;
+                        }
+                        int tileNum = layer.get(layerCol, layerRow);
+                        if(tileNum == TileLayer.EMPTY || tiles[shownTile[tileNum]] == null){
+                            continue;
+                        }
+                        Bitmap bitmap = tiles[shownTile[tileNum]];
+                        if(!covered && !bitmap.opaque){
+                            fill(x, y, size, size, BLACK, top, bottom);
+                        }
+                        blit(bitmap, x, y, top, bottom);
+                        covered = true;
+                        calls++;
+                    }
+                }
+                if(!covered){
+                    fill(x, y, size, size, BLACK, top, bottom);
+                    calls++;
+                }
+            }
+        }
+        return calls;
+    }
+
+    // Black around the map's cells in view, from (left, top) to (right, bottom) in frame pixels.
+    int fillOutside(int left, int mapTop, int right, int mapBottom, int top, int bottom){
+        if(left >= right || mapTop >= mapBottom){
+            fill(0, 0, width, height, BLACK, top, bottom);
+            return 1;
+        }
+        fill(0, 0, width, mapTop, BLACK, top, bottom);
+        fill(0, mapBottom, width, height - mapBottom, BLACK, top, bottom);
+        fill(0, mapTop, left, mapBottom - mapTop, BLACK, top, bottom);
+        fill(right, mapTop, width - right, mapBottom - mapTop, BLACK, top, bottom);
+        return 4;
+    }
+
+    // Copies an image with its top left corner at (dx, dy), clipped to the frame's width and the band's rows.
+    void blit(Bitmap bitmap, int dx, int dy, int top, int bottom){
+        int firstRow = Math.max(top - dy, 0);
+        int lastRow = Math.min(bottom - dy, bitmap.height);
+        int left = Math.max(-dx, 0);
+        int right = Math.min(width - dx, bitmap.width);
+        if(firstRow >= lastRow || left >= right){
+            return;
+        }
+        int[] source = bitmap.pixels;
+        int[] target = pixels;
+        int sourceWidth = bitmap.width;
+        int stride = width;
+        if(bitmap.opaque){
+            for(int y = firstRow; y < lastRow; y++){
+                System.arraycopy(source, y * sourceWidth + left, target, (dy + y) * stride + dx + left, right - left);
+            }
+            return;
+        }
+        int[] spans = bitmap.spans;
+        int[] rowSpans = bitmap.rowSpans;
+        for(int y = firstRow; y < lastRow; y++){
+            int sourceRow = y * sourceWidth;
+            int targetRow = (dy + y) * stride + dx;
+            for(int k = rowSpans[y]; k < rowSpans[y + 1]; k++){
+                int span = spans[k];
+                int spanStart = span >>> 16;
+                int start = Math.max(spanStart, left);
+                int end = Math.min(spanStart + ((span >>> 1) & 0x7FFF), right);
+                if(start >= end){
+                    continue;
+                }
+                if((span & 1) != 0){
+                    System.arraycopy(source, sourceRow + start, target, targetRow + start, end - start);
+                } else {
+                    for(int x = start; x < end; x++){
+                        target[targetRow + x] = blend(source[sourceRow + x], target[targetRow + x]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Source over, with alpha taken as 0-256 so fully opaque and fully transparent pixels come out exact.
+    // Red and blue are blended together in one int, green on its own.
+    static int blend(int source, int target){
+        int a = source >>> 24;
+        a += a >>> 7;
+        int inverse = 256 - a;
+        int redBlue = (((source & 0xFF00FF) * a + (target & 0xFF00FF) * inverse) >>> 8) & 0xFF00FF;
+        int green = (((source & 0x00FF00) * a + (target & 0x00FF00) * inverse) >>> 8) & 0x00FF00;
+        return redBlue | green;
+    }
+
+    void fill(int x, int y, int w, int h, int color, int top, int bottom){
+        int firstRow = Math.max(y, top);
+        int lastRow = Math.min(y + h, bottom);
+        int left = Math.max(x, 0);
+        int right = Math.min(x + w, width);
+        if(left >= right){
+            return;
+        }
+        int[] target = pixels;
+        for(int row = firstRow; row < lastRow; row++){
+            Arrays.fill(target, row * width + left, row * width + right, color);
+        }
+    }
+
+    @Override
+    public long getTileDrawNanos(){
+        return tileDrawNanos;
+    }
+
+    @Override
+    public long getEntityDrawNanos(){
+        return entityDrawNanos;
+    }
+
+    @Override
+    public int getDrawCalls(){
+        return drawCalls;
+    }
+
+    @Override
+    public long getTilesCulled(){
+        return tilesCulled;
+    }
+
+    @Override
+    public int getEntitiesCulled(){
+        return entitiesCulled;
+    }
+}
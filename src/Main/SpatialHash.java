@@ -0,0 +1,224 @@
+package Main;
+
+import Entity.EntityStore;
+import java.util.Arrays;
+
+// Broadphase for entity-entity collision: a uniform grid of cellSize pixel cells, hashed into a table so it
+// doesn't matter how big the world is. Rebuilt from the EntityStore every tick with a counting sort, which is
+// linear in the number of entities and allocates nothing once the arrays have grown to fit.
+//
+// An entity is entered in every cell its hitbox touches. Queries check real hitboxes, so entities that share a
+// bucket only by hash collision are filtered out.
+public class SpatialHash {
+
+    final int cellSize;
+
+    int tableMask = 0;
+    int[] bucketStart = new int[2];   // entries of bucket b are bucketStart[b] .. bucketStart[b + 1] - 1
+    int[] entryIndex = new int[0];    // entity index
+    int[] entryCellX = new int[0];
+    int[] entryCellY = new int[0];
+    int entryCount = 0;
+
+    // Every entity's hitbox at build time, so queries don't chase back into the store
+    int[] left = new int[0], top = new int[0], right = new int[0], bottom = new int[0];
+    int entityCount = 0;
+
+    // Per entity "seen in this query" marks, so an entity in several cells is reported once
+    int[] seen = new int[0];
+    int queryStamp = 0;
+
+    // Result of findCollidingPairs: pair k is (pairs[2k], pairs[2k + 1]), entity indices
+    public int[] pairs = new int[256];
+    public int pairCount = 0;
+
+    public SpatialHash(int cellSize){
+        this.cellSize = cellSize;
+    }
+
+    static int hash(int cellX, int cellY){
+        return cellX * 73856093 ^ cellY * 19349663;
+    }
+
+    public void build(EntityStore s){
+        int count = s.count;
+        entityCount = count;
+        if(left.length < count){
+            int capacity = Math.max(count, left.length * 2);
+            left = new int[capacity];
+            top = new int[capacity];
+            right = new int[capacity];
+            bottom = new int[capacity];
+            seen = new int[capacity];
+            queryStamp = 0;
+        }
+
+        // Table about twice the entity count, power of two
+        int tableSize = Integer.highestOneBit(Math.max(16, count * 2) - 1) << 1;
+        if(bucketStart.length != tableSize + 1){
+            bucketStart = new int[tableSize + 1];
+        } else {
+            Arrays.fill(bucketStart, 0);
+        }
+        tableMask = tableSize - 1;
+
+        // Pass 1: hitboxes and how many entries land in each bucket
+        int entries = 0;
+        for(int i = 0; i < count; i++){
+            int l = s.worldX[i] + s.solidX[i];
+            int t = s.worldY[i] + s.solidY[i];
+            left[i] = l;
+            top[i] = t;
+            right[i] = l + s.solidWidth[i];
+            bottom[i] = t + s.solidHeight[i];
+
+            int firstCellX = Math.floorDiv(l, cellSize), lastCellX = lastCell(right[i], l);
+            int firstCellY = Math.floorDiv(t, cellSize), lastCellY = lastCell(bottom[i], t);
+            for(int cy = firstCellY; cy <= lastCellY; cy++){
+                for(int cx = firstCellX; cx <= lastCellX; cx++){
+                    bucketStart[(hash(cx, cy) & tableMask) + 1]++;
+                    entries++;
+                }
+            }
+        }
+        for(int b = 0; b < tableSize; b++){
+            bucketStart[b + 1] += bucketStart[b];
+        }
+
+        if(entryIndex.length < entries){
+            int capacity = Math.max(entries, entryIndex.length * 2);
+            entryIndex = new int[capacity];
+            entryCellX = new int[capacity];
+            entryCellY = new int[capacity];
+        }
+        entryCount = entries;
+
+        // Pass 2: scatter. bucketStart[b] is used as the write cursor and ends up at the start of bucket b + 1,
+        // so shift it back afterwards.
+        for(int i = 0; i < count; i++){
+            int firstCellX = Math.floorDiv(left[i], cellSize), lastCellX = lastCell(right[i], left[i]);
+            int firstCellY = Math.floorDiv(top[i], cellSize), lastCellY = lastCell(bottom[i], top[i]);
+            for(int cy = firstCellY; cy <= lastCellY; cy++){
+                for(int cx = firstCellX; cx <= lastCellX; cx++){
+                    int e = bucketStart[hash(cx, cy) & tableMask]++;
+                    entryIndex[e] = i;
+                    entryCellX[e] = cx;
+                    entryCellY[e] = cy;
+                }
+            }
+        }
+        System.arraycopy(bucketStart, 0, bucketStart, 1, tableSize);
+        bucketStart[0] = 0;
+    }
+
+    // Last cell an edge touches. The right/bottom edge is exclusive, a zero-size hitbox is a point.
+    int lastCell(int end, int start){
+        return Math.floorDiv(Math.max(start, end - 1), cellSize);
+    }
+
+    int nextStamp(){
+        if(++queryStamp == 0){
+            Arrays.fill(seen, 0);
+            queryStamp = 1;
+        }
+        return queryStamp;
+    }
+
+    // Entities whose hitbox overlaps the box. Writes their indices to out and returns how many there were
+    // (can be more than out.length, the rest are dropped).
+    public int queryAabb(int x, int y, int width, int height, int[] out){
+        int stamp = nextStamp();
+        int found = 0;
+        int boxRight = x + width;
+        int boxBottom = y + height;
+
+        int firstCellX = Math.floorDiv(x, cellSize), lastCellX = lastCell(boxRight, x);
+        int firstCellY = Math.floorDiv(y, cellSize), lastCellY = lastCell(boxBottom, y);
+        for(int cy = firstCellY; cy <= lastCellY; cy++){
+            for(int cx = firstCellX; cx <= lastCellX; cx++){
+                int bucket = hash(cx, cy) & tableMask;
+                for(int e = bucketStart[bucket]; e < bucketStart[bucket + 1]; e++){
+                    int i = entryIndex[e];
+                    if(seen[i] == stamp){
+                        continue;
+                    }
+                    seen[i] = stamp;
+                    if(left[i] < boxRight && x < right[i] && top[i] < boxBottom && y < bottom[i]){
+                        if(found < out.length){
+                            out[found] = i;
+                        }
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Closest entity (hitbox centre to the point) within radius pixels, or -1. exclude is skipped, pass -1 for none.
+    public int nearest(int x, int y, int radius, int exclude){
+        int stamp = nextStamp();
+        int best = -1;
+        long bestDistance = (long) radius * radius;
+
+        int firstCellX = Math.floorDiv(x - radius, cellSize), lastCellX = Math.floorDiv(x + radius, cellSize);
+        int firstCellY = Math.floorDiv(y - radius, cellSize), lastCellY = Math.floorDiv(y + radius, cellSize);
+        for(int cy = firstCellY; cy <= lastCellY; cy++){
+            for(int cx = firstCellX; cx <= lastCellX; cx++){
+                int bucket = hash(cx, cy) & tableMask;
+                for(int e = bucketStart[bucket]; e < bucketStart[bucket + 1]; e++){
+                    int i = entryIndex[e];
+                    if(seen[i] == stamp || i == exclude){
+                        continue;
+                    }
+                    seen[i] = stamp;
+                    long dx = (left[i] + right[i]) / 2 - x;
+                    long dy = (top[i] + bottom[i]) / 2 - y;
+                    long distance = dx * dx + dy * dy;
+                    if(distance <= bestDistance){
+                        bestDistance = distance;
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // Every pair of overlapping hitboxes, into pairs/pairCount. Two entities can share several cells, so a pair
+    // is only reported from the cell holding the top left corner of their overlap.
+    public int findCollidingPairs(){
+        pairCount = 0;
+        for(int bucket = 0; bucket < tableMask + 1; bucket++){
+            int end = bucketStart[bucket + 1];
+            for(int e1 = bucketStart[bucket]; e1 < end; e1++){
+                int a = entryIndex[e1];
+                int cellX = entryCellX[e1];
+                int cellY = entryCellY[e1];
+                for(int e2 = e1 + 1; e2 < end; e2++){
+                    if(entryCellX[e2] != cellX || entryCellY[e2] != cellY){
+                        continue; // same bucket, different cell
+                    }
+                    int b = entryIndex[e2];
+                    if(left[a] < right[b] && left[b] < right[a] && top[a] < bottom[b] && top[b] < bottom[a]){
+                        int overlapLeft = Math.max(left[a], left[b]);
+                        int overlapTop = Math.max(top[a], top[b]);
+                        if(Math.floorDiv(overlapLeft, cellSize) == cellX && Math.floorDiv(overlapTop, cellSize) == cellY){
+                            addPair(a, b);
+                        }
+                    }
+                }
+            }
+        }
+        return pairCount;
+    }
+
+    void addPair(int a, int b){
+        if(pairCount * 2 + 2 > pairs.length){
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[pairCount * 2] = a;
+        pairs[pairCount * 2 + 1] = b;
+        pairCount++;
+    }
+}
@@ -0,0 +1,23 @@
+package Main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// One simulation tick (Game.update), for JFR recordings.
+@Name("LegendOfJava.Tick")
+@Label("Tick")
+@Category("Legend of Java")
+@StackTrace(false)
+public class TickEvent extends Event {
+
+    @Label("Update")
+    @Timespan
+    public long update;
+
+    @Label("Entities")
+    public int entities;
+}
@@ -0,0 +1,60 @@
+package Main;
+
+import java.util.Arrays;
+
+// Fixed-size ring of the most recent timing samples in nanoseconds, for averages and percentiles.
+public class TimingSamples {
+
+    private final long[] samples;
+    private final long[] sortScratch;
+    private int index = 0;
+    private int size = 0;
+
+    public TimingSamples(int capacity){
+        samples = new long[capacity];
+        sortScratch = new long[capacity];
+    }
+
+    public synchronized void record(long nanos){
+        samples[index] = nanos;
+        index = (index + 1) % samples.length;
+        if(size < samples.length){
+            size++;
+        }
+    }
+
+    public synchronized double averageMillis(){
+        if(size == 0) return 0;
+        long total = 0;
+        for(int i = 0; i < size; i++){
+            total += samples[i];
+        }
+        return total / (double) size / 1_000_000.0;
+    }
+
+    // p is 0..1, for example 0.99 for p99
+    public synchronized double percentileMillis(double p){
+        if(size == 0) return 0;
+        System.arraycopy(samples, 0, sortScratch, 0, size);
+        Arrays.sort(sortScratch, 0, size);
+        int i = Math.max(0, Math.min(size - 1, (int) Math.ceil(size * p) - 1));
+        return sortScratch[i] / 1_000_000.0;
+    }
+
+    public synchronized double maxMillis(){
+        long max = 0;
+        for(int i = 0; i < size; i++){
+            max = Math.max(max, samples[i]);
+        }
+        return max / 1_000_000.0;
+    }
+
+    public synchronized int size(){
+        return size;
+    }
+
+    public synchronized void clear(){
+        index = 0;
+        size = 0;
+    }
+}
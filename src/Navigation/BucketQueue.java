@@ -0,0 +1,54 @@
+package Navigation;
+
+import java.util.Arrays;
+
+// Dial's priority queue for Dijkstra with small integer step costs: one bucket per key, in a ring just big enough
+// for every key in the queue (they all lie within one step of the lowest). Push and pop are O(1). There is no
+// decrease-key; push the node again and skip the stale copy when it comes out (its key is no longer its cost).
+final class BucketQueue {
+
+    private final int[][] buckets;
+    private final int[] sizes;
+    private int count = 0;
+    private int current = 0;
+
+    BucketQueue(int maxStep){
+        buckets = new int[maxStep + 1][64];
+        sizes = new int[maxStep + 1];
+    }
+
+    void clear(int startKey){
+        Arrays.fill(sizes, 0);
+        count = 0;
+        current = startKey;
+    }
+
+    boolean isEmpty(){
+        return count == 0;
+    }
+
+    // key must be between the last popped key and that plus maxStep
+    void push(int node, int key){
+        int b = Math.floorMod(key, buckets.length);
+        if(sizes[b] == buckets[b].length){
+            buckets[b] = Arrays.copyOf(buckets[b], sizes[b] * 2);
+        }
+        buckets[b][sizes[b]++] = node;
+        count++;
+    }
+
+    int pop(){
+        int b = Math.floorMod(current, buckets.length);
+        while(sizes[b] == 0){
+            current++;
+            b = b + 1 == buckets.length ? 0 : b + 1;
+        }
+        count--;
+        return buckets[b][--sizes[b]];
+    }
+
+    // Key of the node pop() returned last
+    int key(){
+        return current;
+    }
+}
@@ -0,0 +1,270 @@
+package Navigation;
+
+import java.util.Arrays;
+
+// Which way to step from every tile near a goal, for crowds all heading to the same place. One Dijkstra from the
+// goal over a square region around it gives every tile its cost to the goal, and each tile keeps the direction
+// of its cheapest neighbour, so an agent's next step is one array read however many agents there are. Agents
+// outside the region (or cut off from the goal inside it) get NONE and need a path of their own.
+//
+// When the goal steps to a neighbouring tile the field is repaired instead of rebuilt. Costs via the old goal are
+// still true costs of a real path once the step between the goals is added (free: it's one offset), so only the
+// tiles near the new goal, within REPAIR_RADIUS, are lowered by a Dijkstra from it. Further out agents head for
+// where the goal was and then follow its steps, at most REBUILD_AFTER steps behind; costs only ever go down between
+// rebuilds, so every direction still leads to the goal. A rebuild makes it exact again, after REBUILD_AFTER
+// repairs or when the goal wanders more than slack tiles from the region's centre.
+public class FlowField {
+
+    public static final int NONE = -1;
+    // Directions clockwise from up; even ones are straight
+    public static final int[] DX = {0, 1, 1, 1, 0, -1, -1, -1};
+    public static final int[] DY = {-1, -1, 0, 1, 1, 1, 0, -1};
+    static final int[] STEP = {GridSearch.STRAIGHT, GridSearch.DIAGONAL, GridSearch.STRAIGHT, GridSearch.DIAGONAL,
+            GridSearch.STRAIGHT, GridSearch.DIAGONAL, GridSearch.STRAIGHT, GridSearch.DIAGONAL};
+    static final int UNREACHED = Integer.MAX_VALUE;
+    static final int MAX_OFFSET = 1 << 29;
+    public static final int REPAIR_RADIUS = 12;
+    public static final int REBUILD_AFTER = 8;
+
+    final NavGrid grid;
+    public final int radius, slack;
+
+    // The region, clipped to the map, and the tile it was centred on
+    int x0, y0, w, h;
+    int centerCol, centerRow;
+    int goalCol = -1, goalRow = -1;
+    boolean valid = false;
+    // Collision changed inside the region since it was built
+    boolean dirty = false;
+
+    // Per region tile: cost to the goal minus offset, the direction to step, and whether it's free
+    final int[] cost;
+    int offset = 0;
+    int repairs = 0;
+    final byte[] direction;
+    final boolean[] free;
+
+    final BucketQueue open = new BucketQueue(GridSearch.DIAGONAL);
+    final int[] queued, redone;
+    int generation = 0;
+    int[] changed = new int[256];
+    int changedCount = 0;
+
+    // The last setGoal() that did any work
+    public boolean incremental = false;
+    public int tilesUpdated = 0;
+    public long updateNanos = 0;
+
+    public FlowField(NavGrid grid, int radius, int slack){
+        this.grid = grid;
+        this.radius = radius;
+        this.slack = slack;
+        int side = 2 * (radius + slack) + 1;
+        cost = new int[side * side];
+        direction = new byte[side * side];
+        free = new boolean[side * side];
+        queued = new int[side * side];
+        redone = new int[side * side];
+    }
+
+    public int getGoalCol(){
+        return goalCol;
+    }
+
+    public int getGoalRow(){
+        return goalRow;
+    }
+
+    // Moves the goal, repairing the field if it moved one tile and rebuilding it otherwise.
+    public void setGoal(int col, int row){
+        if(valid && !dirty && col == goalCol && row == goalRow){
+            return;
+        }
+        long start = System.nanoTime();
+        int dx = col - goalCol, dy = row - goalRow;
+        boolean step = valid && !dirty && Math.abs(dx) <= 1 && Math.abs(dy) <= 1
+                && Math.abs(col - centerCol) <= slack && Math.abs(row - centerRow) <= slack
+                && repairs < REBUILD_AFTER && offset < MAX_OFFSET && canStep(goalCol, goalRow, dx, dy);
+        goalCol = col;
+        goalRow = row;
+        if(grid.isSolid(col, row)){
+            valid = false;
+        } else if(step){
+            repair(dx != 0 && dy != 0 ? GridSearch.DIAGONAL : GridSearch.STRAIGHT);
+        } else {
+            rebuild();
+        }
+        incremental = step;
+        updateNanos = System.nanoTime() - start;
+    }
+
+    // The next setGoal() rebuilds the field, even for the same goal.
+    public void invalidate(){
+        dirty = true;
+    }
+
+    // Tiles in a rectangle changed solidity: the next setGoal() rebuilds if they are in the region.
+    public void collisionChanged(int col, int row, int width, int height){
+        if(col < x0 + w && x0 < col + width && row < y0 + h && y0 < row + height){
+            dirty = true;
+        }
+    }
+
+    void rebuild(){
+        centerCol = goalCol;
+        centerRow = goalRow;
+        int extent = radius + slack;
+        x0 = Math.max(0, goalCol - extent);
+        y0 = Math.max(0, goalRow - extent);
+        w = Math.min(grid.width(), goalCol + extent + 1) - x0;
+        h = Math.min(grid.height(), goalRow + extent + 1) - y0;
+        int cells = w * h;
+        for(int r = 0; r < h; r++){
+            for(int c = 0; c < w; c++){
+                free[r * w + c] = !grid.isSolid(x0 + c, y0 + r);
+            }
+        }
+        Arrays.fill(cost, 0, cells, UNREACHED);
+        offset = 0;
+        repairs = 0;
+        spread(index(goalCol, goalRow), 0, 0, 0, w - 1, h - 1);
+        for(int i = 0; i < cells; i++){
+            direction[i] = (byte) downhill(i);
+        }
+        tilesUpdated = cells;
+        valid = true;
+        dirty = false;
+    }
+
+    // Every cost goes up by the step from the new goal to the old one, which keeps them true for "via the old
+    // goal", then the new goal lowers the costs around it.
+    void repair(int stepCost){
+        offset += stepCost;
+        repairs++;
+        int gx = goalCol - x0, gy = goalRow - y0;
+        spread(index(goalCol, goalRow), -offset, Math.max(0, gx - REPAIR_RADIUS), Math.max(0, gy - REPAIR_RADIUS),
+                Math.min(w - 1, gx + REPAIR_RADIUS), Math.min(h - 1, gy + REPAIR_RADIUS));
+        // A tile's direction depends on its neighbours' costs, so those of the lowered tiles' neighbours are
+        // redone too, each once. queued[] still marks the lowered tiles with this generation.
+        for(int k = 0; k < changedCount; k++){
+            int i = changed[k];
+            direction[i] = (byte) downhill(i);
+            int x = i % w, y = i / w;
+            for(int d = 0; d < 8; d++){
+                int nx = x + DX[d], ny = y + DY[d];
+                if(nx >= 0 && ny >= 0 && nx < w && ny < h){
+                    int m = ny * w + nx;
+                    if(queued[m] != generation && redone[m] != generation){
+                        redone[m] = generation;
+                        direction[m] = (byte) downhill(m);
+                    }
+                }
+            }
+        }
+        tilesUpdated = changedCount;
+    }
+
+    // Dijkstra from one tile, lowering costs only, within a rectangle of the region. The tiles it lowered are left
+    // in changed.
+    void spread(int source, int sourceCost, int minX, int minY, int maxX, int maxY){
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(queued, 0);
+            Arrays.fill(redone, 0);
+            generation = 1;
+        }
+        open.clear(sourceCost);
+        changedCount = 0;
+        lower(source, sourceCost);
+        while(!open.isEmpty()){
+            int n = open.pop();
+            int base = cost[n];
+            if(base != open.key()){
+                continue; // lowered again since it was queued
+            }
+            int x = n % w, y = n / w;
+            for(int d = 0; d < 8; d++){
+                int nx = x + DX[d], ny = y + DY[d];
+                if(nx >= minX && ny >= minY && nx <= maxX && ny <= maxY && move(x, y, d)){
+                    int m = n + DY[d] * w + DX[d];
+                    int c = base + STEP[d];
+                    if(c < cost[m]){
+                        lower(m, c);
+                    }
+                }
+            }
+        }
+    }
+
+    void lower(int n, int c){
+        cost[n] = c;
+        open.push(n, c);
+        if(queued[n] != generation){
+            queued[n] = generation;
+            if(changedCount == changed.length){
+                changed = Arrays.copyOf(changed, changedCount * 2);
+            }
+            changed[changedCount++] = n;
+        }
+    }
+
+    // Whether a step from region tile (x, y) in direction d stays on free tiles without cutting a corner.
+    boolean move(int x, int y, int d){
+        int nx = x + DX[d], ny = y + DY[d];
+        if(!isFree(nx, ny)){
+            return false;
+        }
+        return (d & 1) == 0 || (isFree(nx, y) && isFree(x, ny));
+    }
+
+    boolean isFree(int x, int y){
+        return x >= 0 && y >= 0 && x < w && y < h && free[y * w + x];
+    }
+
+    boolean canStep(int col, int row, int dx, int dy){
+        return !grid.isSolid(col + dx, row + dy) && (dx == 0 || dy == 0 || (!grid.isSolid(col + dx, row) && !grid.isSolid(col, row + dy)));
+    }
+
+    // The neighbour the cheapest way to the goal goes through, straight steps winning ties. NONE at the goal and
+    // where it can't be reached.
+    int downhill(int i){
+        if(cost[i] == UNREACHED || !free[i] || i == index(goalCol, goalRow)){
+            return NONE;
+        }
+        int x = i % w, y = i / w;
+        int best = NONE;
+        long bestCost = Long.MAX_VALUE;
+        for(int k = 0; k < 8; k++){
+            int d = k < 4 ? k * 2 : (k - 4) * 2 + 1;
+            if(move(x, y, d)){
+                int m = i + DY[d] * w + DX[d];
+                if(cost[m] != UNREACHED && cost[m] + STEP[d] < bestCost){
+                    best = d;
+                    bestCost = cost[m] + STEP[d];
+                }
+            }
+        }
+        return best;
+    }
+
+    int index(int col, int row){
+        return (row - y0) * w + (col - x0);
+    }
+
+    public boolean covers(int col, int row){
+        return valid && col >= x0 && row >= y0 && col < x0 + w && row < y0 + h;
+    }
+
+    // Direction to step from a tile (index into DX/DY), NONE at the goal, outside the region, or with no way there.
+    public int direction(int col, int row){
+        return covers(col, row) ? direction[index(col, row)] : NONE;
+    }
+
+    // Cost to the goal in GridSearch units, -1 where direction() is NONE for lack of a way.
+    public int distance(int col, int row){
+        if(!covers(col, row)){
+            return -1;
+        }
+        int c = cost[index(col, row)];
+        return c == UNREACHED ? -1 : c + offset;
+    }
+}
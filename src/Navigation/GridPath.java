@@ -0,0 +1,57 @@
+package Navigation;
+
+import java.util.Arrays;
+
+// A path as the tiles walked through, start and goal included. Consecutive tiles are neighbours, diagonal ones
+// only where both tiles beside the corner are free, so a 4-way mover can always take the diagonal as two steps.
+// Reused between searches: it only allocates when a path is longer than any before it.
+public class GridPath {
+
+    int[] cols = new int[64], rows = new int[64];
+    int length = 0;
+    // In search units, STRAIGHT per straight step and DIAGONAL per diagonal one
+    public int cost = 0;
+
+    public void clear(){
+        length = 0;
+        cost = 0;
+    }
+
+    public int length(){
+        return length;
+    }
+
+    public boolean isEmpty(){
+        return length == 0;
+    }
+
+    public int col(int i){
+        return cols[i];
+    }
+
+    public int row(int i){
+        return rows[i];
+    }
+
+    // Skips a tile that is already the last one, so segments can be joined end to start.
+    void add(int col, int row){
+        if(length > 0 && cols[length - 1] == col && rows[length - 1] == row){
+            return;
+        }
+        if(length == cols.length){
+            cols = Arrays.copyOf(cols, length * 2);
+            rows = Arrays.copyOf(rows, length * 2);
+        }
+        cols[length] = col;
+        rows[length] = row;
+        length++;
+    }
+
+    public void copyFrom(GridPath other){
+        clear();
+        for(int i = 0; i < other.length; i++){
+            add(other.cols[i], other.rows[i]);
+        }
+        cost = other.cost;
+    }
+}
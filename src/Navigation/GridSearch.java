@@ -0,0 +1,298 @@
+package Navigation;
+
+import java.util.Arrays;
+
+// Searches on a rectangular window of the grid: Jump Point Search between two tiles, or Dijkstra from one tile to
+// everything it can reach. Moves are the 8 neighbours, diagonals only when both tiles beside the corner are free.
+// Tiles outside the window count as solid.
+//
+// All per-tile state lives in arrays sized to the largest window searched so far and stamped with a generation
+// number, so starting a search doesn't clear anything and searching doesn't allocate. One GridSearch per thread.
+public class GridSearch {
+
+    public static final int STRAIGHT = 10, DIAGONAL = 14;
+
+    final NavGrid grid;
+    int x0, y0, w, h;
+    int goalX, goalY;
+
+    // Per window tile: cost from the start, the tile (or jump point) it was reached from, generation stamps
+    int[] g = new int[0], parent = new int[0], seen = new int[0], closed = new int[0];
+    int generation = 0;
+    final IntHeap open = new IntHeap();
+    int[] trail = new int[64];
+    boolean[] free = new boolean[0];
+
+    // Tiles taken off the open list by the last search
+    public int expanded = 0;
+
+    public GridSearch(NavGrid grid){
+        this.grid = grid;
+    }
+
+    void begin(int wx, int wy, int ww, int wh){
+        x0 = wx;
+        y0 = wy;
+        w = ww;
+        h = wh;
+        int cells = ww * wh;
+        if(g.length < cells){
+            g = new int[cells];
+            parent = new int[cells];
+            seen = new int[cells];
+            closed = new int[cells];
+            open.ensureNodes(cells);
+            generation = 0;
+        }
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+        open.clear();
+        expanded = 0;
+    }
+
+    boolean walkable(int x, int y){
+        return x >= x0 && y >= y0 && x < x0 + w && y < y0 + h && !grid.isSolid(x, y);
+    }
+
+    int index(int x, int y){
+        return (y - y0) * w + (x - x0);
+    }
+
+    static int octile(int dx, int dy){
+        dx = Math.abs(dx);
+        dy = Math.abs(dy);
+        return STRAIGHT * Math.max(dx, dy) + (DIAGONAL - STRAIGHT) * Math.min(dx, dy);
+    }
+
+    // Jump Point Search from (sx, sy) to (gx, gy) inside the window. On success the tiles are appended to out
+    // (joined onto its last tile if that is the start) and the cost added to out.cost.
+    public boolean findPath(int wx, int wy, int ww, int wh, int sx, int sy, int gx, int gy, GridPath out){
+        begin(wx, wy, ww, wh);
+        if(!walkable(sx, sy) || !walkable(gx, gy)){
+            return false;
+        }
+        goalX = gx;
+        goalY = gy;
+        int start = index(sx, sy), goal = index(gx, gy);
+        reach(start, -1, 0, octile(gx - sx, gy - sy));
+        while(!open.isEmpty()){
+            int n = open.pop();
+            closed[n] = generation;
+            expanded++;
+            if(n == goal){
+                trace(goal, out);
+                return true;
+            }
+            int x = x0 + n % w, y = y0 + n / w;
+            int p = parent[n];
+            if(p < 0){
+                for(int dy = -1; dy <= 1; dy++){
+                    for(int dx = -1; dx <= 1; dx++){
+                        if((dx != 0 || dy != 0) && (dx == 0 || dy == 0 || (walkable(x + dx, y) && walkable(x, y + dy)))){
+                            jumpFrom(n, x, y, dx, dy);
+                        }
+                    }
+                }
+                continue;
+            }
+            int dx = Integer.signum(x - (x0 + p % w)), dy = Integer.signum(y - (y0 + p / w));
+            if(dx != 0 && dy != 0){
+                boolean across = walkable(x + dx, y), down = walkable(x, y + dy);
+                if(down){
+                    jumpFrom(n, x, y, 0, dy);
+                }
+                if(across){
+                    jumpFrom(n, x, y, dx, 0);
+                }
+                if(across && down){
+                    jumpFrom(n, x, y, dx, dy);
+                }
+            } else if(dx != 0){
+                boolean next = walkable(x + dx, y), up = walkable(x, y - 1), down = walkable(x, y + 1);
+                if(next){
+                    jumpFrom(n, x, y, dx, 0);
+                    if(up){
+                        jumpFrom(n, x, y, dx, -1);
+                    }
+                    if(down){
+                        jumpFrom(n, x, y, dx, 1);
+                    }
+                }
+                if(up){
+                    jumpFrom(n, x, y, 0, -1);
+                }
+                if(down){
+                    jumpFrom(n, x, y, 0, 1);
+                }
+            } else {
+                boolean next = walkable(x, y + dy), left = walkable(x - 1, y), right = walkable(x + 1, y);
+                if(next){
+                    jumpFrom(n, x, y, 0, dy);
+                    if(left){
+                        jumpFrom(n, x, y, -1, dy);
+                    }
+                    if(right){
+                        jumpFrom(n, x, y, 1, dy);
+                    }
+                }
+                if(left){
+                    jumpFrom(n, x, y, -1, 0);
+                }
+                if(right){
+                    jumpFrom(n, x, y, 1, 0);
+                }
+            }
+        }
+        return false;
+    }
+
+    void jumpFrom(int n, int x, int y, int dx, int dy){
+        int jp = jump(x + dx, y + dy, dx, dy);
+        if(jp >= 0 && closed[jp] != generation){
+            int jx = x0 + jp % w, jy = y0 + jp / w;
+            reach(jp, n, g[n] + octile(jx - x, jy - y), octile(goalX - jx, goalY - jy));
+        }
+    }
+
+    // Walks from (x, y) in one direction until something interesting: the goal, a tile where a wall ends beside
+    // the way (a forced neighbour), or for diagonals a tile from which a straight jump finds one. -1 if it hits
+    // a wall first.
+    int jump(int x, int y, int dx, int dy){
+        while(true){
+            if(!walkable(x, y)){
+                return -1;
+            }
+            if(x == goalX && y == goalY){
+                return index(x, y);
+            }
+            if(dx != 0 && dy != 0){
+                if(jump(x + dx, y, dx, 0) >= 0 || jump(x, y + dy, 0, dy) >= 0){
+                    return index(x, y);
+                }
+            } else if(dx != 0){
+                if((walkable(x, y - 1) && !walkable(x - dx, y - 1)) || (walkable(x, y + 1) && !walkable(x - dx, y + 1))){
+                    return index(x, y);
+                }
+            } else {
+                if((walkable(x - 1, y) && !walkable(x - 1, y - dy)) || (walkable(x + 1, y) && !walkable(x + 1, y - dy))){
+                    return index(x, y);
+                }
+            }
+            if(!walkable(x + dx, y) || !walkable(x, y + dy)){
+                return -1;
+            }
+            x += dx;
+            y += dy;
+        }
+    }
+
+    void reach(int n, int from, int cost, int heuristic){
+        if(seen[n] != generation){
+            seen[n] = generation;
+            g[n] = cost;
+            parent[n] = from;
+            open.push(n, cost + heuristic);
+        } else if(cost < g[n]){
+            g[n] = cost;
+            parent[n] = from;
+            open.decrease(n, cost + heuristic);
+        }
+    }
+
+    // Jump points back to the start, then every tile between them.
+    void trace(int goal, GridPath out){
+        int count = 0;
+        for(int n = goal; n >= 0; n = parent[n]){
+            if(count == trail.length){
+                trail = Arrays.copyOf(trail, count * 2);
+            }
+            trail[count++] = n;
+        }
+        int x = x0 + trail[count - 1] % w, y = y0 + trail[count - 1] / w;
+        out.add(x, y);
+        for(int k = count - 2; k >= 0; k--){
+            int tx = x0 + trail[k] % w, ty = y0 + trail[k] / w;
+            int dx = Integer.signum(tx - x), dy = Integer.signum(ty - y);
+            while(x != tx || y != ty){
+                x += dx;
+                y += dy;
+                out.add(x, y);
+            }
+        }
+        out.cost += g[goal];
+    }
+
+    // Dijkstra from (sx, sy) over the whole window. Read the costs back with distance() before the next search.
+    // It visits every tile anyway, so the window's collision is read once up front instead of per neighbour.
+    public void distancesFrom(int wx, int wy, int ww, int wh, int sx, int sy){
+        begin(wx, wy, ww, wh);
+        if(!walkable(sx, sy)){
+            return;
+        }
+        int cells = ww * wh;
+        if(free.length < cells){
+            free = new boolean[cells];
+        }
+        for(int r = 0; r < wh; r++){
+            for(int c = 0; c < ww; c++){
+                free[r * ww + c] = !grid.isSolid(wx + c, wy + r);
+            }
+        }
+        reach(index(sx, sy), -1, 0, 0);
+        while(!open.isEmpty()){
+            int n = open.pop();
+            closed[n] = generation;
+            expanded++;
+            int x = n % w, y = n / w;
+            boolean left = free(x - 1, y), right = free(x + 1, y), up = free(x, y - 1), down = free(x, y + 1);
+            int cost = g[n];
+            if(left){
+                relaxFree(n - 1, n, cost + STRAIGHT);
+            }
+            if(right){
+                relaxFree(n + 1, n, cost + STRAIGHT);
+            }
+            if(up){
+                relaxFree(n - w, n, cost + STRAIGHT);
+                if(left && free(x - 1, y - 1)){
+                    relaxFree(n - w - 1, n, cost + DIAGONAL);
+                }
+                if(right && free(x + 1, y - 1)){
+                    relaxFree(n - w + 1, n, cost + DIAGONAL);
+                }
+            }
+            if(down){
+                relaxFree(n + w, n, cost + STRAIGHT);
+                if(left && free(x - 1, y + 1)){
+                    relaxFree(n + w - 1, n, cost + DIAGONAL);
+                }
+                if(right && free(x + 1, y + 1)){
+                    relaxFree(n + w + 1, n, cost + DIAGONAL);
+                }
+            }
+        }
+    }
+
+    private void relaxFree(int m, int from, int cost){
+        if(closed[m] != generation){
+            reach(m, from, cost, 0);
+        }
+    }
+
+    // Window-relative, from the collision read by distancesFrom()
+    private boolean free(int x, int y){
+        return x >= 0 && y >= 0 && x < w && y < h && free[y * w + x];
+    }
+
+    // Cost from the last distancesFrom() start, -1 if it can't be reached inside the window.
+    public int distance(int col, int row){
+        if(col < x0 || row < y0 || col >= x0 + w || row >= y0 + h){
+            return -1;
+        }
+        int n = index(col, row);
+        return closed[n] == generation ? g[n] : -1;
+    }
+}
@@ -0,0 +1,88 @@
+package Navigation;
+
+import java.util.Arrays;
+
+// Binary min-heap of node ids keyed by an int, with decrease-key. Each node remembers its slot, so the arrays are
+// sized by node count and kept between searches; clear() is O(1) because slots of nodes no longer in the heap are
+// never read (the searches know what is open from their own stamps).
+final class IntHeap {
+
+    private int[] heap = new int[256];
+    private int[] keys = new int[0];
+    private int[] slot = new int[0];
+    private int size = 0;
+
+    void ensureNodes(int nodes){
+        if(keys.length < nodes){
+            keys = Arrays.copyOf(keys, nodes);
+            slot = Arrays.copyOf(slot, nodes);
+        }
+    }
+
+    void clear(){
+        size = 0;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    void push(int node, int key){
+        if(size == heap.length){
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        keys[node] = key;
+        up(size++, node);
+    }
+
+    // The node must be in the heap, and key no larger than before.
+    void decrease(int node, int key){
+        keys[node] = key;
+        up(slot[node], node);
+    }
+
+    int pop(){
+        int top = heap[0];
+        int last = heap[--size];
+        if(size > 0){
+            down(0, last);
+        }
+        return top;
+    }
+
+    private void up(int i, int node){
+        int key = keys[node];
+        while(i > 0){
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if(keys[p] <= key){
+                break;
+            }
+            heap[i] = p;
+            slot[p] = i;
+            i = parent;
+        }
+        heap[i] = node;
+        slot[node] = i;
+    }
+
+    private void down(int i, int node){
+        int key = keys[node];
+        int half = size >>> 1;
+        while(i < half){
+            int child = 2 * i + 1;
+            int c = heap[child];
+            if(child + 1 < size && keys[heap[child + 1]] < keys[c]){
+                c = heap[++child];
+            }
+            if(key <= keys[c]){
+                break;
+            }
+            heap[i] = c;
+            slot[c] = i;
+            i = child;
+        }
+        heap[i] = node;
+        slot[node] = i;
+    }
+}
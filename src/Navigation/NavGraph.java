@@ -0,0 +1,372 @@
+package Navigation;
+
+import World.Chunk;
+import java.util.Arrays;
+
+// The abstract graph for hierarchical pathfinding (HPA*). The map is cut into clusters, one per world chunk. Where
+// two neighbouring clusters touch through free tiles there are entrances: pairs of tiles facing each other across
+// the border, one or two per open stretch of border. Entrance tiles are the graph's nodes; nodes in one cluster are
+// joined by the cost of the best path between them inside that cluster, and each node to its partner across the
+// border by one straight step. A long search then runs over a few nodes per chunk instead of every tile.
+//
+// Collision edits mark their clusters dirty; update() rebuilds the borders of those clusters and the costs inside
+// them and their neighbours, so an edit costs a handful of 16x16 searches whatever the map size.
+public class NavGraph {
+
+    public static final int CLUSTER = Chunk.SIZE;
+    // A stretch of open border at least this long gets an entrance at each end rather than one in the middle
+    static final int LONG_ENTRANCE = 6;
+
+    final NavGrid grid;
+    public final int clustersAcross, clustersDown;
+    final GridSearch search;
+
+    // Per cluster: its nodes, and the cost between every pair of them, -1 when they don't connect inside it
+    final int[][] clusterNodes;
+    final int[] clusterNodeCount;
+    final int[][] clusterCosts;
+    // Per cluster, the entrances on its east and south borders: node on this side, node across, ...
+    final int[][] eastEntrances, southEntrances;
+    final int[] eastCount, southCount;
+
+    // Per node. Ids of removed nodes are reused.
+    int[] nodeCol = new int[0], nodeRow = new int[0], nodeCluster = new int[0], nodeSlot = new int[0], nodePartner = new int[0];
+    int nodeCapacity = 0;
+    int[] freeNodes = new int[64];
+    int freeCount = 0;
+
+    // Clusters with collision changes since the last update()
+    final boolean[] dirty;
+    int[] dirtyList = new int[64];
+    int dirtyCount = 0;
+    final int[] rebuildStamp;
+    int rebuildGeneration = 0;
+    int[] rebuildList = new int[64];
+    boolean built = false;
+    // Entrance offsets along the border being built
+    final int[] spans = new int[CLUSTER + 1];
+    int spanCount = 0;
+
+    // The last update()
+    public int clustersRebuilt = 0;
+    public long updateNanos = 0;
+
+    public NavGraph(NavGrid grid){
+        this.grid = grid;
+        this.clustersAcross = (grid.width() + CLUSTER - 1) / CLUSTER;
+        this.clustersDown = (grid.height() + CLUSTER - 1) / CLUSTER;
+        int clusters = clustersAcross * clustersDown;
+        this.search = new GridSearch(grid);
+        clusterNodes = new int[clusters][];
+        clusterNodeCount = new int[clusters];
+        clusterCosts = new int[clusters][];
+        eastEntrances = new int[clusters][];
+        southEntrances = new int[clusters][];
+        eastCount = new int[clusters];
+        southCount = new int[clusters];
+        dirty = new boolean[clusters];
+        rebuildStamp = new int[clusters];
+    }
+
+    public boolean isBuilt(){
+        return built;
+    }
+
+    // Number of node ids in use or free; searches size their per-node arrays by it.
+    public int nodeCapacity(){
+        return nodeCapacity;
+    }
+
+    public int nodeCount(){
+        return nodeCapacity - freeCount;
+    }
+
+    public int clusterOf(int col, int row){
+        return (row / CLUSTER) * clustersAcross + col / CLUSTER;
+    }
+
+    // Tiles in a rectangle changed solidity. Call from the thread that calls update().
+    public void collisionChanged(int col, int row, int width, int height){
+        if(!built){
+            return;
+        }
+        int cx0 = Math.max(0, col / CLUSTER), cy0 = Math.max(0, row / CLUSTER);
+        int cx1 = Math.min(clustersAcross - 1, (col + width - 1) / CLUSTER);
+        int cy1 = Math.min(clustersDown - 1, (row + height - 1) / CLUSTER);
+        for(int cy = cy0; cy <= cy1; cy++){
+            for(int cx = cx0; cx <= cx1; cx++){
+                int c = cy * clustersAcross + cx;
+                if(!dirty[c]){
+                    dirty[c] = true;
+                    if(dirtyCount == dirtyList.length){
+                        dirtyList = Arrays.copyOf(dirtyList, dirtyCount * 2);
+                    }
+                    dirtyList[dirtyCount++] = c;
+                }
+            }
+        }
+    }
+
+    // Builds the whole graph the first time, then only what collision changes touched. Must not run while a
+    // search is reading the graph.
+    public void update(){
+        long start = System.nanoTime();
+        if(!built){
+            int clusters = clustersAcross * clustersDown;
+            for(int c = 0; c < clusters; c++){
+                buildEast(c);
+                buildSouth(c);
+            }
+            for(int c = 0; c < clusters; c++){
+                gather(c);
+                connect(c);
+            }
+            built = true;
+            clustersRebuilt = clusters;
+        } else if(dirtyCount > 0){
+            if(++rebuildGeneration == Integer.MAX_VALUE){
+                Arrays.fill(rebuildStamp, 0);
+                rebuildGeneration = 1;
+            }
+            int rebuildCount = 0;
+            for(int k = 0; k < dirtyCount; k++){
+                int c = dirtyList[k];
+                dirty[c] = false;
+                int cx = c % clustersAcross, cy = c / clustersAcross;
+                // The cluster itself always, its neighbours only if their shared border changed
+                boolean east = buildEast(c), south = buildSouth(c);
+                boolean west = cx > 0 && buildEast(c - 1), north = cy > 0 && buildSouth(c - clustersAcross);
+                for(int n = 0; n < 5; n++){
+                    int nx = cx + (n == 1 ? -1 : n == 2 ? 1 : 0), ny = cy + (n == 3 ? -1 : n == 4 ? 1 : 0);
+                    boolean changed = n == 0 || (n == 1 && west) || (n == 2 && east) || (n == 3 && north) || (n == 4 && south);
+                    if(!changed || nx < 0 || ny < 0 || nx >= clustersAcross || ny >= clustersDown){
+                        continue;
+                    }
+                    int neighbour = ny * clustersAcross + nx;
+                    if(rebuildStamp[neighbour] != rebuildGeneration){
+                        rebuildStamp[neighbour] = rebuildGeneration;
+                        if(rebuildCount == rebuildList.length){
+                            rebuildList = Arrays.copyOf(rebuildList, rebuildCount * 2);
+                        }
+                        rebuildList[rebuildCount++] = neighbour;
+                    }
+                }
+            }
+            for(int k = 0; k < rebuildCount; k++){
+                gather(rebuildList[k]);
+                connect(rebuildList[k]);
+            }
+            dirtyCount = 0;
+            clustersRebuilt = rebuildCount;
+        } else {
+            clustersRebuilt = 0;
+        }
+        updateNanos = System.nanoTime() - start;
+    }
+
+    int clusterX(int c){
+        return (c % clustersAcross) * CLUSTER;
+    }
+
+    int clusterY(int c){
+        return (c / clustersAcross) * CLUSTER;
+    }
+
+    int clusterWidth(int c){
+        return Math.min(CLUSTER, grid.width() - clusterX(c));
+    }
+
+    int clusterHeight(int c){
+        return Math.min(CLUSTER, grid.height() - clusterY(c));
+    }
+
+    // Entrances between cluster c and the one east of it, across the columns x and x + 1. Returns false if they
+    // are where they were, in which case the nodes are kept.
+    boolean buildEast(int c){
+        if(c % clustersAcross == clustersAcross - 1){
+            return false;
+        }
+        int x = clusterX(c) + CLUSTER - 1, y = clusterY(c);
+        int count = findEntrances(x, y, 1, 0, clusterHeight(c));
+        if(sameEntrances(eastEntrances[c], eastCount[c], nodeRow, y)){
+            return false;
+        }
+        releaseEntrances(eastEntrances[c], eastCount[c]);
+        eastCount[c] = 0;
+        for(int k = 0; k < count; k++){
+            eastEntrances[c] = addEntrance(eastEntrances[c], eastCount[c]++, c, x, y + spans[k], c + 1, x + 1, y + spans[k]);
+        }
+        return true;
+    }
+
+    // Entrances between cluster c and the one south of it, across the rows y and y + 1.
+    boolean buildSouth(int c){
+        if(c / clustersAcross == clustersDown - 1){
+            return false;
+        }
+        int x = clusterX(c), y = clusterY(c) + CLUSTER - 1;
+        int count = findEntrances(x, y, 0, 1, clusterWidth(c));
+        if(sameEntrances(southEntrances[c], southCount[c], nodeCol, x)){
+            return false;
+        }
+        releaseEntrances(southEntrances[c], southCount[c]);
+        southCount[c] = 0;
+        int below = c + clustersAcross;
+        for(int k = 0; k < count; k++){
+            southEntrances[c] = addEntrance(southEntrances[c], southCount[c]++, c, x + spans[k], y, below, x + spans[k], y + 1);
+        }
+        return true;
+    }
+
+    // Offsets along a border starting at (x, y), crossing in direction (acrossX, acrossY), where entrances go:
+    // the middle of each open stretch, or both ends of a long one. Left in spans, returns how many.
+    int findEntrances(int x, int y, int acrossX, int acrossY, int length){
+        int count = 0;
+        int runStart = -1;
+        for(int k = 0; k <= length; k++){
+            int col = x + k * acrossY, row = y + k * acrossX;
+            boolean open = k < length && !grid.isSolid(col, row) && !grid.isSolid(col + acrossX, row + acrossY);
+            if(open && runStart < 0){
+                runStart = k;
+            } else if(!open && runStart >= 0){
+                int runEnd = k - 1;
+                if(runEnd - runStart + 1 >= LONG_ENTRANCE){
+                    spans[count++] = runStart;
+                    spans[count++] = runEnd;
+                } else {
+                    spans[count++] = (runStart + runEnd) / 2;
+                }
+                runStart = -1;
+            }
+        }
+        spanCount = count;
+        return count;
+    }
+
+    boolean sameEntrances(int[] entrances, int count, int[] position, int origin){
+        if(count != spanCount){
+            return false;
+        }
+        for(int k = 0; k < count; k++){
+            if(position[entrances[2 * k]] - origin != spans[k]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int[] addEntrance(int[] entrances, int k, int cluster, int col, int row, int acrossCluster, int acrossCol, int acrossRow){
+        if(entrances == null){
+            entrances = new int[8];
+        } else if(2 * k + 2 > entrances.length){
+            entrances = Arrays.copyOf(entrances, entrances.length * 2);
+        }
+        int a = newNode(cluster, col, row), b = newNode(acrossCluster, acrossCol, acrossRow);
+        nodePartner[a] = b;
+        nodePartner[b] = a;
+        entrances[2 * k] = a;
+        entrances[2 * k + 1] = b;
+        return entrances;
+    }
+
+    void releaseEntrances(int[] entrances, int count){
+        for(int k = 0; k < 2 * count; k++){
+            if(freeCount == freeNodes.length){
+                freeNodes = Arrays.copyOf(freeNodes, freeCount * 2);
+            }
+            freeNodes[freeCount++] = entrances[k];
+        }
+    }
+
+    int newNode(int cluster, int col, int row){
+        int id;
+        if(freeCount > 0){
+            id = freeNodes[--freeCount];
+        } else {
+            id = nodeCapacity++;
+            if(id == nodeCol.length){
+                int capacity = Math.max(256, id * 2);
+                nodeCol = Arrays.copyOf(nodeCol, capacity);
+                nodeRow = Arrays.copyOf(nodeRow, capacity);
+                nodeCluster = Arrays.copyOf(nodeCluster, capacity);
+                nodeSlot = Arrays.copyOf(nodeSlot, capacity);
+                nodePartner = Arrays.copyOf(nodePartner, capacity);
+            }
+        }
+        nodeCol[id] = col;
+        nodeRow[id] = row;
+        nodeCluster[id] = cluster;
+        return id;
+    }
+
+    // Collects the nodes on a cluster's side of its four borders.
+    void gather(int c){
+        int count = 0;
+        int[] nodes = clusterNodes[c];
+        int west = c % clustersAcross > 0 ? c - 1 : -1, north = c >= clustersAcross ? c - clustersAcross : -1;
+        int needed = 2 * (eastCount[c] + southCount[c]) + (west >= 0 ? eastCount[west] : 0) + (north >= 0 ? southCount[north] : 0);
+        if(nodes == null || nodes.length < needed){
+            nodes = new int[Math.max(8, needed)];
+            clusterNodes[c] = nodes;
+        }
+        for(int k = 0; k < eastCount[c]; k++){
+            nodes[count++] = eastEntrances[c][2 * k];
+        }
+        for(int k = 0; k < southCount[c]; k++){
+            nodes[count++] = southEntrances[c][2 * k];
+        }
+        if(west >= 0){
+            for(int k = 0; k < eastCount[west]; k++){
+                nodes[count++] = eastEntrances[west][2 * k + 1];
+            }
+        }
+        if(north >= 0){
+            for(int k = 0; k < southCount[north]; k++){
+                nodes[count++] = southEntrances[north][2 * k + 1];
+            }
+        }
+        for(int k = 0; k < count; k++){
+            nodeSlot[nodes[k]] = k;
+        }
+        clusterNodeCount[c] = count;
+    }
+
+    // Costs between every pair of the cluster's nodes, by a Dijkstra inside the cluster from each.
+    void connect(int c){
+        int k = clusterNodeCount[c];
+        int[] costs = clusterCosts[c];
+        if(costs == null || costs.length < k * k){
+            costs = new int[Math.max(16, k * k)];
+            clusterCosts[c] = costs;
+        }
+        int[] nodes = clusterNodes[c];
+        int x = clusterX(c), y = clusterY(c), w = clusterWidth(c), h = clusterHeight(c);
+        for(int i = 0; i < k; i++){
+            costs[i * k + i] = 0;
+            if(i == k - 1){
+                break;
+            }
+            search.distancesFrom(x, y, w, h, nodeCol[nodes[i]], nodeRow[nodes[i]]);
+            for(int j = i + 1; j < k; j++){
+                int cost = search.distance(nodeCol[nodes[j]], nodeRow[nodes[j]]);
+                costs[i * k + j] = cost;
+                costs[j * k + i] = cost;
+            }
+        }
+    }
+
+    public String report(){
+        int clusters = clustersAcross * clustersDown;
+        long edges = 0;
+        for(int c = 0; c < clusters; c++){
+            int k = clusterNodeCount[c];
+            for(int i = 0; i < k * k; i++){
+                if(clusterCosts[c] != null && clusterCosts[c][i] > 0){
+                    edges++;
+                }
+            }
+        }
+        return String.format("Nav graph: %d clusters, %d nodes, %d edges, last update %d clusters in %.2f ms%n",
+                clusters, nodeCount(), edges / 2 + nodeCount() / 2, clustersRebuilt, updateNanos / 1e6);
+    }
+}
@@ -0,0 +1,34 @@
+package Navigation;
+
+import Tiles.CollisionLayer;
+import Tiles.TileManager;
+
+// The walkable grid the searches run on. Outside the grid must read as solid, the searches don't bounds check.
+public interface NavGrid {
+
+    int width();
+
+    int height();
+
+    boolean isSolid(int col, int row);
+
+    // The game's map, whole or streamed (chunks that aren't loaded are solid).
+    static NavGrid of(TileManager tileManager){
+        return new NavGrid() {
+            public int width(){ return tileManager.getMaxWorldCol(); }
+            public int height(){ return tileManager.getMaxWorldRow(); }
+            public boolean isSolid(int col, int row){ return tileManager.isSolid(col, row); }
+        };
+    }
+
+    // Straight off the collision bits, for tools and benchmarks.
+    static NavGrid of(CollisionLayer collision){
+        return new NavGrid() {
+            public int width(){ return collision.width; }
+            public int height(){ return collision.height; }
+            public boolean isSolid(int col, int row){
+                return col < 0 || row < 0 || col >= collision.width || row >= collision.height || collision.get(col, row);
+            }
+        };
+    }
+}
@@ -0,0 +1,147 @@
+package Navigation;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Path requests from the simulation, answered in batches. Each tick() hands out the results of the batch started
+// on the tick before, brings the NavGraph up to date with collision changes, then starts the next batch of at most
+// maxPerTick requests: on the worker threads, which search while the rest of the tick runs, or right away on the
+// calling thread when there are no workers. Requests over the budget wait for later ticks.
+//
+// A result always arrives exactly one tick after its request was dispatched, in request order, however the threads
+// were scheduled, so runs stay deterministic. Workers read the collision bits while the game thread may be editing
+// them; a path searched across an edit can be stale, the same as one that an edit lands on a tick later.
+public class PathService {
+
+    public interface Listener {
+        // path is null when there is none. It is reused for other requests after the call, copy it to keep it.
+        void pathFound(int requestId, GridPath path);
+    }
+
+    static final class Request {
+        int id;
+        int startCol, startRow, goalCol, goalRow;
+        Listener listener;
+        boolean found;
+        final GridPath path = new GridPath();
+    }
+
+    public final NavGrid grid;
+    public final NavGraph graph;
+    final int maxPerTick;
+    final Pathfinder local;
+    final Thread[] workers;
+    final ArrayBlockingQueue<Request> work, done;
+
+    final ArrayDeque<Request> queued = new ArrayDeque<>();
+    final ArrayDeque<Request> spare = new ArrayDeque<>();
+    final Request[] batch;
+    int batchCount = 0;
+    int nextId = 1;
+
+    public long requested = 0, found = 0, failed = 0;
+    // The last tick(): requests started, time waiting for the workers, and the whole call
+    public int dispatched = 0;
+    public long waitNanos = 0, tickNanos = 0;
+
+    public PathService(NavGrid grid, int workerCount, int maxPerTick){
+        this.grid = grid;
+        this.graph = new NavGraph(grid);
+        this.maxPerTick = maxPerTick;
+        this.local = new Pathfinder(grid, graph);
+        this.batch = new Request[maxPerTick];
+        this.work = new ArrayBlockingQueue<>(maxPerTick);
+        this.done = new ArrayBlockingQueue<>(maxPerTick);
+        this.workers = new Thread[workerCount];
+        for(int k = 0; k < workerCount; k++){
+            Pathfinder pathfinder = new Pathfinder(grid, graph);
+            workers[k] = new Thread(() -> work(pathfinder), "Pathfinder " + k);
+            workers[k].setDaemon(true);
+            workers[k].start();
+        }
+    }
+
+    // Returns the request id the result will carry.
+    public int request(int startCol, int startRow, int goalCol, int goalRow, Listener listener){
+        Request r = spare.isEmpty() ? new Request() : spare.poll();
+        r.id = nextId++;
+        r.startCol = startCol;
+        r.startRow = startRow;
+        r.goalCol = goalCol;
+        r.goalRow = goalRow;
+        r.listener = listener;
+        queued.add(r);
+        requested++;
+        return r.id;
+    }
+
+    // Requests not answered yet
+    public int pending(){
+        return queued.size() + batchCount;
+    }
+
+    public void tick(){
+        long start = System.nanoTime();
+        waitNanos = 0;
+        if(workers.length > 0 && batchCount > 0){
+            try {
+                for(int k = 0; k < batchCount; k++){
+                    done.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            waitNanos = System.nanoTime() - start;
+        }
+        for(int k = 0; k < batchCount; k++){
+            Request r = batch[k];
+            batch[k] = null;
+            if(r.found){
+                found++;
+            } else {
+                failed++;
+            }
+            Listener listener = r.listener;
+            r.listener = null;
+            listener.pathFound(r.id, r.found ? r.path : null);
+            spare.add(r);
+        }
+        batchCount = 0;
+
+        // Nothing searches between here and the next batch, so the graph can change. It is built on first use.
+        if(graph.isBuilt() || !queued.isEmpty()){
+            graph.update();
+        }
+
+        while(batchCount < maxPerTick && !queued.isEmpty()){
+            Request r = queued.poll();
+            batch[batchCount++] = r;
+            if(workers.length > 0){
+                work.add(r);
+            } else {
+                r.found = local.find(r.startCol, r.startRow, r.goalCol, r.goalRow, r.path);
+            }
+        }
+        dispatched = batchCount;
+        tickNanos = System.nanoTime() - start;
+    }
+
+    void work(Pathfinder pathfinder){
+        try {
+            while(true){
+                Request r = work.take();
+                r.found = pathfinder.find(r.startCol, r.startRow, r.goalCol, r.goalRow, r.path);
+                done.put(r);
+            }
+        } catch (InterruptedException e) {
+            // close()
+        }
+    }
+
+    public void close(){
+        for(Thread worker : workers){
+            worker.interrupt();
+        }
+    }
+}
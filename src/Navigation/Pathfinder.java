@@ -0,0 +1,207 @@
+package Navigation;
+
+import java.util.Arrays;
+
+// Answers path queries. Short ones are a Jump Point Search in a window around both ends, falling back to the graph
+// when the way round something leaves the window; longer ones an A* over the NavGraph, whose steps are then filled
+// in with searches inside one cluster each. Paths are close to the shortest but not always the shortest: the
+// window can cut off a better way round, and graph paths go through entrance tiles.
+//
+// Keeps all its search state between queries, so a query allocates nothing once the pools have grown to the map.
+// Not thread safe: one Pathfinder per thread, sharing the NavGraph (which must not update during a query).
+public class Pathfinder {
+
+    // Both ends within this many tiles of each other: search the tiles directly
+    public static final int DIRECT_RANGE = 24;
+    // Extra tiles around the two ends for the direct search to go round things
+    static final int DIRECT_MARGIN = 8;
+
+    final NavGrid grid;
+    final NavGraph graph;
+    final GridSearch search;
+
+    // Abstract A* over graph node ids, plus two more for the start and the goal
+    int[] g = new int[0], parent = new int[0], seen = new int[0], closed = new int[0];
+    int generation = 0;
+    final IntHeap open = new IntHeap();
+    int[] startCost = new int[4 * NavGraph.CLUSTER], goalCost = new int[4 * NavGraph.CLUSTER];
+    int[] trail = new int[64];
+
+    // The last query
+    public int nodesExpanded = 0;
+    public boolean usedGraph = false;
+
+    public Pathfinder(NavGrid grid, NavGraph graph){
+        this.grid = grid;
+        this.graph = graph;
+        this.search = new GridSearch(grid);
+    }
+
+    // Fills out with a path from start to goal, false (and out empty) if there is none.
+    public boolean find(int startCol, int startRow, int goalCol, int goalRow, GridPath out){
+        out.clear();
+        nodesExpanded = 0;
+        usedGraph = false;
+        if(grid.isSolid(startCol, startRow) || grid.isSolid(goalCol, goalRow)){
+            return false;
+        }
+        if(Math.abs(goalCol - startCol) <= DIRECT_RANGE && Math.abs(goalRow - startRow) <= DIRECT_RANGE){
+            int x = Math.max(0, Math.min(startCol, goalCol) - DIRECT_MARGIN);
+            int y = Math.max(0, Math.min(startRow, goalRow) - DIRECT_MARGIN);
+            int w = Math.min(grid.width(), Math.max(startCol, goalCol) + DIRECT_MARGIN + 1) - x;
+            int h = Math.min(grid.height(), Math.max(startRow, goalRow) + DIRECT_MARGIN + 1) - y;
+            boolean found = search.findPath(x, y, w, h, startCol, startRow, goalCol, goalRow, out);
+            nodesExpanded = search.expanded;
+            if(found){
+                return true;
+            }
+        }
+        if(graph == null){
+            // No graph: the whole map is the window
+            boolean found = search.findPath(0, 0, grid.width(), grid.height(), startCol, startRow, goalCol, goalRow, out);
+            nodesExpanded = search.expanded;
+            return found;
+        }
+        if(!graph.isBuilt()){
+            throw new IllegalStateException("Nav graph not built, call update() first");
+        }
+        usedGraph = true;
+        return findAbstract(startCol, startRow, goalCol, goalRow, out);
+    }
+
+    boolean findAbstract(int startCol, int startRow, int goalCol, int goalRow, GridPath out){
+        NavGraph graph = this.graph;
+        int startNode = graph.nodeCapacity, goalNode = startNode + 1;
+        begin(goalNode + 1);
+
+        // The start and the goal join the graph through the nodes of their clusters
+        int startCluster = graph.clusterOf(startCol, startRow), goalCluster = graph.clusterOf(goalCol, goalRow);
+        int direct = costsInCluster(startCluster, startCol, startRow, startCost, goalCluster == startCluster ? goalCol : -1, goalRow);
+        costsInCluster(goalCluster, goalCol, goalRow, goalCost, -1, 0);
+
+        reach(startNode, -1, 0, octile(goalCol - startCol, goalRow - startRow));
+        while(!open.isEmpty()){
+            int n = open.pop();
+            closed[n] = generation;
+            nodesExpanded++;
+            if(n == goalNode){
+                return refine(startNode, goalNode, startCol, startRow, goalCol, goalRow, out);
+            }
+            if(n == startNode){
+                if(direct >= 0){
+                    reach(goalNode, n, direct, 0);
+                }
+                int[] nodes = graph.clusterNodes[startCluster];
+                for(int j = 0; j < graph.clusterNodeCount[startCluster]; j++){
+                    if(startCost[j] >= 0){
+                        relax(n, nodes[j], startCost[j], goalCol, goalRow);
+                    }
+                }
+                continue;
+            }
+            int c = graph.nodeCluster[n], i = graph.nodeSlot[n], k = graph.clusterNodeCount[c];
+            int[] nodes = graph.clusterNodes[c], costs = graph.clusterCosts[c];
+            for(int j = 0; j < k; j++){
+                int cost = costs[i * k + j];
+                if(j != i && cost >= 0){
+                    relax(n, nodes[j], cost, goalCol, goalRow);
+                }
+            }
+            relax(n, graph.nodePartner[n], GridSearch.STRAIGHT, goalCol, goalRow);
+            if(c == goalCluster && goalCost[i] >= 0){
+                relax(n, goalNode, goalCost[i], goalCol, goalRow);
+            }
+        }
+        return false;
+    }
+
+    // Costs from a tile to each node of its cluster into costs (by node slot), -1 where not connected. Returns the
+    // cost to (toCol, toRow) if that is given, -1 otherwise.
+    int costsInCluster(int c, int col, int row, int[] costs, int toCol, int toRow){
+        NavGraph graph = this.graph;
+        search.distancesFrom(graph.clusterX(c), graph.clusterY(c), graph.clusterWidth(c), graph.clusterHeight(c), col, row);
+        nodesExpanded += search.expanded;
+        int[] nodes = graph.clusterNodes[c];
+        for(int j = 0; j < graph.clusterNodeCount[c]; j++){
+            costs[j] = search.distance(graph.nodeCol[nodes[j]], graph.nodeRow[nodes[j]]);
+        }
+        return toCol >= 0 ? search.distance(toCol, toRow) : -1;
+    }
+
+    void relax(int n, int m, int cost, int goalCol, int goalRow){
+        if(closed[m] != generation){
+            int heuristic = m < graph.nodeCapacity ? octile(goalCol - graph.nodeCol[m], goalRow - graph.nodeRow[m]) : 0;
+            reach(m, n, g[n] + cost, heuristic);
+        }
+    }
+
+    // Every step of the abstract path is inside one cluster or one step across a border. The ones inside a
+    // cluster are searched again on their own to get the tiles.
+    boolean refine(int startNode, int goalNode, int startCol, int startRow, int goalCol, int goalRow, GridPath out){
+        int count = 0;
+        for(int n = goalNode; n >= 0; n = parent[n]){
+            if(count == trail.length){
+                trail = Arrays.copyOf(trail, count * 2);
+            }
+            trail[count++] = n;
+        }
+        NavGraph graph = this.graph;
+        int fromCol = startCol, fromRow = startRow;
+        int cluster = graph.clusterOf(startCol, startRow);
+        out.add(startCol, startRow);
+        for(int k = count - 2; k >= 0; k--){
+            int n = trail[k];
+            int toCol = n == goalNode ? goalCol : graph.nodeCol[n];
+            int toRow = n == goalNode ? goalRow : graph.nodeRow[n];
+            int toCluster = graph.clusterOf(toCol, toRow);
+            if(toCluster != cluster){
+                out.add(toCol, toRow);
+                out.cost += GridSearch.STRAIGHT;
+            } else if(!search.findPath(graph.clusterX(cluster), graph.clusterY(cluster), graph.clusterWidth(cluster), graph.clusterHeight(cluster),
+                    fromCol, fromRow, toCol, toRow, out)){
+                // Only when the grid changed under a graph that hasn't been updated yet
+                out.clear();
+                return false;
+            }
+            fromCol = toCol;
+            fromRow = toRow;
+            cluster = toCluster;
+        }
+        return true;
+    }
+
+    void begin(int nodes){
+        if(g.length < nodes){
+            int capacity = Math.max(nodes, g.length * 2);
+            g = new int[capacity];
+            parent = new int[capacity];
+            seen = new int[capacity];
+            closed = new int[capacity];
+            open.ensureNodes(capacity);
+            generation = 0;
+        }
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+        open.clear();
+    }
+
+    void reach(int n, int from, int cost, int heuristic){
+        if(seen[n] != generation){
+            seen[n] = generation;
+            g[n] = cost;
+            parent[n] = from;
+            open.push(n, cost + heuristic);
+        } else if(cost < g[n]){
+            g[n] = cost;
+            parent[n] = from;
+            open.decrease(n, cost + heuristic);
+        }
+    }
+
+    static int octile(int dx, int dy){
+        return GridSearch.octile(dx, dy);
+    }
+}
@@ -0,0 +1,112 @@
+package Net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+// One connection to a GameServer, non-blocking: poll() reads whatever has arrived and applies it, sendInput()
+// queues the held actions. view is the world as the server last described it. Headless, for bots and load
+// tests; a windowed client would draw view instead of simulating a Game of its own.
+public class GameClient {
+
+    final SocketChannel channel;
+    ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+    ByteBuffer out = ByteBuffer.allocate(256);
+    Snapshot spare = new Snapshot();
+
+    public Snapshot view = new Snapshot();
+    // From the WELCOME, -1 until it arrives
+    public int playerHandle = -1;
+    public int tileSize, mapColumns, mapRows;
+    public long tick = -1;
+    public long snapshotsReceived = 0, bytesReceived = 0;
+
+    public GameClient(InetSocketAddress server) throws IOException {
+        channel = SocketChannel.open(server);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+    }
+
+    public boolean isWelcomed(){
+        return playerHandle >= 0;
+    }
+
+    // Reads and applies everything that has arrived. Returns false once the server has closed the connection.
+    public boolean poll() throws IOException {
+        while(true){
+            in = Protocol.ensureRemaining(in, 1);
+            int read = channel.read(in);
+            if(read < 0){
+                return false;
+            }
+            bytesReceived += read;
+            in.flip();
+            int length;
+            while((length = Protocol.frameLength(in)) >= 0){
+                int end = in.position() + Protocol.HEADER_BYTES + length;
+                in.position(in.position() + Protocol.HEADER_BYTES);
+                handle(in.get(), end);
+                in.position(end);
+            }
+            in.compact();
+            if(read == 0){
+                flush();
+                return true;
+            }
+        }
+    }
+
+    void handle(byte type, int end){
+        if(type == Protocol.WELCOME){
+            int version = Protocol.getVarint(in);
+            if(version != Protocol.VERSION){
+                throw new IllegalStateException("Server speaks protocol " + version + ", this client " + Protocol.VERSION);
+            }
+            playerHandle = Protocol.getVarint(in);
+            tick = Protocol.getVarint(in);
+            tileSize = Protocol.getVarint(in);
+            mapColumns = Protocol.getVarint(in);
+            mapRows = Protocol.getVarint(in);
+        } else if(type == Protocol.SNAPSHOT){
+            tick = Protocol.getVarint(in);
+            if(in.get() != 0){
+                view.clear();
+            }
+            spare.readDelta(view, in, end);
+            Snapshot applied = spare;
+            spare = view;
+            view = applied;
+            snapshotsReceived++;
+        } else {
+            throw new IllegalStateException("Unexpected message " + type + " from the server");
+        }
+    }
+
+    // Actions held, bit n = KeyBindings action n. Sent on the next poll() or flush().
+    public void sendInput(int held){
+        out = Protocol.ensureRemaining(out, 16);
+        int frame = Protocol.beginFrame(out, Protocol.INPUT);
+        out.put((byte) held);
+        Protocol.endFrame(out, frame);
+    }
+
+    public void flush() throws IOException {
+        if(out.position() == 0){
+            return;
+        }
+        out.flip();
+        channel.write(out);
+        out.compact();
+    }
+
+    // Index into view of the client's own player, -1 if not in it yet
+    public int playerIndex(){
+        return playerHandle < 0 ? -1 : view.indexOf(playerHandle);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
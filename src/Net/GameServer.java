@@ -0,0 +1,347 @@
+package Net;
+
+import Entity.Player;
+import Main.Controls;
+import Main.Game;
+import World.Chunk;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+// Hosts a Game for players on other machines. Run tick() in place of game.update() (HeadlessRunner does with
+// --server); everything happens on that one thread with non-blocking sockets, so the simulation never waits on
+// the network and never needs a lock:
+//   1. accept new connections, each gets a Player of its own, and read every client's latest input
+//   2. game.update()
+//   3. send each client a snapshot of the entities in the chunks around its player, as a delta against the last
+//      snapshot it was sent (TCP delivers everything in order, so that is what the client holds)
+// Sockets are only written as far as the kernel takes without blocking. A client that falls more than
+// MAX_BACKLOG bytes behind is skipped until it catches up; its next delta is against what it was last sent.
+//
+// Collision streams around the one Game.player, so only fully loaded maps can be served. That player stays in
+// the world, idle, as a dedicated server has nobody at its keyboard.
+public class GameServer {
+
+    public static final int DEFAULT_PORT = 7777;
+    static final int MAX_BACKLOG = 1 << 20;
+    static final int ACCEPT_BACKLOG = 1024;
+    static final int MAX_INPUT_FRAME = 64;
+
+    static final class Client implements Controls {
+        final SocketChannel channel;
+        Player player;
+        int held;
+        ByteBuffer in = ByteBuffer.allocate(256);
+        ByteBuffer out = ByteBuffer.allocate(16 * 1024);
+        // Last snapshot written to out, and the one being built
+        Snapshot sent = new Snapshot(), next = new Snapshot();
+        boolean closed = false;
+
+        Client(SocketChannel channel){
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean isDown(int action){
+            return (held & (1 << action)) != 0;
+        }
+    }
+
+    final Game game;
+    final ServerSocketChannel listener;
+    final Selector selector;
+    final ArrayList<Client> clients = new ArrayList<>();
+    final InterestGrid interest;
+    final Snapshot empty = new Snapshot();
+    final Random spawnRandom = new Random(1);
+
+    // Chunks around a player's own that its client hears about
+    public final int interestRadius;
+    // Joining players are put on a free tile within spawnRadius of this one, the Game's spawn point by default
+    public int spawnCol, spawnRow;
+    public int spawnRadius = 20;
+    // False sends every snapshot whole (a delta against nothing), to measure what the deltas save
+    public boolean deltas = true;
+    public long tick = 0;
+
+    public long connections = 0, disconnections = 0;
+    public long snapshotsSent = 0, snapshotsSkipped = 0;
+    // Snapshot bytes queued and bytes the sockets took, ever and on the last tick
+    public long bytesQueued = 0, bytesWritten = 0;
+    public int tickBytesQueued = 0;
+    // The last tick(): reading the network, game.update(), building and sending snapshots
+    public long receiveNanos = 0, updateNanos = 0, sendNanos = 0;
+
+    private long ticksAtReport = 0, bytesAtReport = 0, clientTicksAtReport = 0;
+    private long clientTicks = 0;
+
+    public GameServer(Game game, InetSocketAddress address, int interestRadius) throws IOException {
+        if(game.tileManager.world != null){
+            throw new IllegalArgumentException("Streamed worlds can't be served, collision only streams around one player");
+        }
+        this.game = game;
+        this.interestRadius = interestRadius;
+        this.interest = new InterestGrid(game.maxWorldCol, game.maxWorldRow, Chunk.SIZE, game.tileSize);
+        this.spawnCol = game.player.getWorldX() / game.tileSize;
+        this.spawnRow = game.player.getWorldY() / game.tileSize;
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.configureBlocking(false);
+        listener.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        listener.bind(address, ACCEPT_BACKLOG);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort(){
+        return ((InetSocketAddress) listener.socket().getLocalSocketAddress()).getPort();
+    }
+
+    public int clientCount(){
+        return clients.size();
+    }
+
+    public void tick(){
+        long start = System.nanoTime();
+        receive();
+        long updateStart = System.nanoTime();
+        game.update();
+        long sendStart = System.nanoTime();
+        sendSnapshots();
+        sweep();
+        tick++;
+        long end = System.nanoTime();
+        receiveNanos = updateStart - start;
+        updateNanos = sendStart - updateStart;
+        sendNanos = end - sendStart;
+    }
+
+    void receive(){
+        try {
+            selector.selectNow();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to poll the server sockets", e);
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while(keys.hasNext()){
+            SelectionKey key = keys.next();
+            keys.remove();
+            if(!key.isValid()){
+                continue;
+            }
+            if(key.isAcceptable()){
+                acceptAll();
+            } else if(key.isReadable()){
+                read((Client) key.attachment());
+            }
+        }
+    }
+
+    void acceptAll(){
+        while(true){
+            SocketChannel channel;
+            try {
+                channel = listener.accept();
+            } catch (IOException e) {
+                System.err.println("Accept failed: " + e.getMessage());
+                return;
+            }
+            if(channel == null){
+                return;
+            }
+            Client client = new Client(channel);
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.register(selector, SelectionKey.OP_READ, client);
+            } catch (IOException e) {
+                System.err.println("Accept failed: " + e.getMessage());
+                closeQuietly(channel);
+                continue;
+            }
+            join(client);
+        }
+    }
+
+    void join(Client client){
+        client.player = new Player(game, client);
+        int col = spawnCol, row = spawnRow;
+        for(int attempt = 0; attempt < 100; attempt++){
+            int c = spawnCol + spawnRandom.nextInt(spawnRadius * 2 + 1) - spawnRadius;
+            int r = spawnRow + spawnRandom.nextInt(spawnRadius * 2 + 1) - spawnRadius;
+            if(!game.tileManager.isSolid(c, r)){
+                col = c;
+                row = r;
+                break;
+            }
+        }
+        client.player.setPosition(col * game.tileSize, row * game.tileSize);
+        game.remotePlayers.add(client.player);
+        clients.add(client);
+        connections++;
+
+        ByteBuffer out = client.out;
+        int frame = Protocol.beginFrame(out, Protocol.WELCOME);
+        Protocol.putVarint(out, Protocol.VERSION);
+        Protocol.putVarint(out, client.player.handle);
+        Protocol.putVarint(out, (int) tick);
+        Protocol.putVarint(out, game.tileSize);
+        Protocol.putVarint(out, game.maxWorldCol);
+        Protocol.putVarint(out, game.maxWorldRow);
+        Protocol.endFrame(out, frame);
+    }
+
+    void read(Client client){
+        try {
+            while(true){
+                client.in = Protocol.ensureRemaining(client.in, 1);
+                int read = client.channel.read(client.in);
+                if(read < 0){
+                    client.closed = true;
+                    return;
+                }
+                ByteBuffer in = client.in;
+                in.flip();
+                while(in.remaining() >= Protocol.HEADER_BYTES){
+                    int length = in.getInt(in.position());
+                    if(length < 1 || length > MAX_INPUT_FRAME){
+                        throw new IllegalStateException("Frame of " + length + " bytes from a client");
+                    }
+                    if(in.remaining() - Protocol.HEADER_BYTES < length){
+                        break;
+                    }
+                    int end = in.position() + Protocol.HEADER_BYTES + length;
+                    in.position(in.position() + Protocol.HEADER_BYTES);
+                    byte type = in.get();
+                    if(type != Protocol.INPUT){
+                        throw new IllegalStateException("Unexpected message " + type + " from a client");
+                    }
+                    client.held = in.get() & 0xFF;
+                    in.position(end);
+                }
+                in.compact();
+                if(read == 0){
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Reset connections and garbage both end the client, not the server
+            client.closed = true;
+        }
+    }
+
+    void sendSnapshots(){
+        interest.build(game.entities, game.tileSize);
+        int half = game.tileSize / 2;
+        int queued = 0;
+        for(int k = 0; k < clients.size(); k++){
+            Client client = clients.get(k);
+            if(client.closed){
+                continue;
+            }
+            int i = client.player.index();
+            int count = interest.collect(game.entities.worldX[i] + half, game.entities.worldY[i] + half, interestRadius);
+            Snapshot next = client.next;
+            next.capture(game.entities, interest.found, count);
+            Snapshot base = deltas ? client.sent : empty;
+
+            int needed = Protocol.HEADER_BYTES + 2 + Protocol.MAX_VARINT_BYTES + next.maxDeltaBytes(base);
+            if(client.out.position() + needed > MAX_BACKLOG){
+                snapshotsSkipped++;
+            } else {
+                client.out = Protocol.ensureRemaining(client.out, needed);
+                ByteBuffer out = client.out;
+                int before = out.position();
+                int frame = Protocol.beginFrame(out, Protocol.SNAPSHOT);
+                Protocol.putVarint(out, (int) tick);
+                out.put((byte) (base == empty ? 1 : 0));
+                next.writeDelta(base, out);
+                Protocol.endFrame(out, frame);
+                queued += out.position() - before;
+                client.next = client.sent;
+                client.sent = next;
+                snapshotsSent++;
+            }
+            flush(client);
+        }
+        tickBytesQueued = queued;
+        bytesQueued += queued;
+        clientTicks += clients.size();
+    }
+
+    // Writes what the sockets didn't take on earlier ticks, without ticking.
+    public void flush(){
+        for(int k = 0; k < clients.size(); k++){
+            flush(clients.get(k));
+        }
+    }
+
+    void flush(Client client){
+        ByteBuffer out = client.out;
+        if(out.position() == 0){
+            return;
+        }
+        out.flip();
+        try {
+            bytesWritten += client.channel.write(out);
+        } catch (IOException e) {
+            client.closed = true;
+        }
+        out.compact();
+    }
+
+    // Drops the clients that disconnected or broke the protocol, and their players.
+    void sweep(){
+        for(int k = clients.size() - 1; k >= 0; k--){
+            Client client = clients.get(k);
+            if(client.closed){
+                clients.remove(k);
+                game.remotePlayers.remove(client.player);
+                game.entities.destroy(client.player.handle);
+                closeQuietly(client.channel);
+                disconnections++;
+            }
+        }
+    }
+
+    static void closeQuietly(SocketChannel channel){
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // going away anyway
+        }
+    }
+
+    public void close(){
+        for(Client client : clients){
+            closeQuietly(client.channel);
+        }
+        try {
+            listener.close();
+            selector.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close the server socket", e);
+        }
+    }
+
+    // Traffic since the last report, for HeadlessRunner's periodic line.
+    public String report(){
+        long ticks = tick - ticksAtReport;
+        long bytes = bytesQueued - bytesAtReport;
+        long perClient = clientTicks - clientTicksAtReport;
+        ticksAtReport = tick;
+        bytesAtReport = bytesQueued;
+        clientTicksAtReport = clientTicks;
+        return String.format("Server: %d clients, %.1f bytes/client/tick, %.1f KB/tick in all, snapshots skipped %d, joined %d left %d",
+                clients.size(), perClient == 0 ? 0.0 : bytes / (double) perClient, ticks == 0 ? 0.0 : bytes / (double) ticks / 1024,
+                snapshotsSkipped, connections, disconnections);
+    }
+}
@@ -0,0 +1,77 @@
+package Net;
+
+import Entity.EntityStore;
+import java.util.Arrays;
+
+// Entities bucketed by the map chunk their centre is in, rebuilt once per tick with a counting sort (like
+// Main.SpatialHash, but chunks are few enough for a flat array). A client is interested in the chunks within
+// radius of its player's, so its snapshot is a handful of bucket reads instead of a pass over every entity.
+public class InterestGrid {
+
+    final int chunkPixels;
+    final int columns, rows;
+    final int[] bucketStart;          // entries of chunk c are bucketStart[c] .. bucketStart[c + 1] - 1
+    int[] entryHandle = new int[0];
+    int[] entityChunk = new int[0];   // per entity index, from the last build
+    // Result of collect()
+    public int[] found = new int[256];
+
+    public InterestGrid(int mapColumns, int mapRows, int chunkTiles, int tileSize){
+        this.chunkPixels = chunkTiles * tileSize;
+        this.columns = (mapColumns + chunkTiles - 1) / chunkTiles;
+        this.rows = (mapRows + chunkTiles - 1) / chunkTiles;
+        this.bucketStart = new int[columns * rows + 1];
+    }
+
+    public void build(EntityStore s, int tileSize){
+        int count = s.count;
+        if(entryHandle.length < count){
+            entryHandle = new int[s.capacity()];
+            entityChunk = new int[s.capacity()];
+        }
+        Arrays.fill(bucketStart, 0);
+        int half = tileSize / 2;
+        for(int i = 0; i < count; i++){
+            int chunk = chunkAt(s.worldX[i] + half, s.worldY[i] + half);
+            entityChunk[i] = chunk;
+            bucketStart[chunk + 1]++;
+        }
+        for(int c = 0; c < columns * rows; c++){
+            bucketStart[c + 1] += bucketStart[c];
+        }
+        // bucketStart[c] is chunk c's write cursor and ends up at the start of chunk c + 1, so shift it back afterwards
+        for(int i = 0; i < count; i++){
+            entryHandle[bucketStart[entityChunk[i]]++] = s.handleAt(i);
+        }
+        for(int c = columns * rows; c > 0; c--){
+            bucketStart[c] = bucketStart[c - 1];
+        }
+        bucketStart[0] = 0;
+    }
+
+    // Entities off the map count as being in the nearest chunk.
+    int chunkAt(int x, int y){
+        int col = Math.max(0, Math.min(columns - 1, Math.floorDiv(x, chunkPixels)));
+        int row = Math.max(0, Math.min(rows - 1, Math.floorDiv(y, chunkPixels)));
+        return row * columns + col;
+    }
+
+    // Handles of the entities in the chunks within radius of the one holding pixel (x, y), into found. Returns how
+    // many there are.
+    public int collect(int x, int y, int radius){
+        int chunk = chunkAt(x, y);
+        int col = chunk % columns, row = chunk / columns;
+        int n = 0;
+        for(int r = Math.max(0, row - radius); r <= Math.min(rows - 1, row + radius); r++){
+            // The chunks of one row are consecutive buckets
+            int from = bucketStart[r * columns + Math.max(0, col - radius)];
+            int to = bucketStart[r * columns + Math.min(columns - 1, col + radius) + 1];
+            if(found.length < n + to - from){
+                found = Arrays.copyOf(found, Math.max(found.length * 2, n + to - from));
+            }
+            System.arraycopy(entryHandle, from, found, n, to - from);
+            n += to - from;
+        }
+        return n;
+    }
+}
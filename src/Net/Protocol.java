@@ -0,0 +1,97 @@
+package Net;
+
+import java.nio.ByteBuffer;
+
+// Wire format between GameServer and GameClient, over TCP. Every message is a frame: a 4 byte big endian length
+// (of what follows), a type byte and the payload. Numbers that are usually small are varints, 7 bits a byte low
+// bits first, and signed ones are zigzag encoded first so -1 is one byte too.
+//
+//   WELCOME   server -> client once: varint version, varint player handle, varint tick, varint tile size,
+//             varint map columns, varint map rows
+//   SNAPSHOT  server -> client every tick: varint tick, a byte that is 1 when the entries are against nothing
+//             (drop the old view) and 0 when against the last snapshot, then Snapshot entries to the end of the frame
+//   INPUT     client -> server: one byte of actions held or pressed since the last INPUT, bit n = action n
+public final class Protocol {
+
+    public static final int VERSION = 1;
+
+    public static final byte WELCOME = 1;
+    public static final byte SNAPSHOT = 2;
+    public static final byte INPUT = 3;
+
+    public static final int HEADER_BYTES = 4;
+    // Nothing legitimate comes near this, a bigger length means the stream is garbage
+    public static final int MAX_FRAME = 1 << 24;
+    public static final int MAX_VARINT_BYTES = 5;
+
+    private Protocol(){
+    }
+
+    // Reserves the length of a frame and writes its type. Returns the position to hand to endFrame().
+    public static int beginFrame(ByteBuffer out, byte type){
+        int start = out.position();
+        out.putInt(0);
+        out.put(type);
+        return start;
+    }
+
+    public static void endFrame(ByteBuffer out, int start){
+        out.putInt(start, out.position() - start - HEADER_BYTES);
+    }
+
+    // Length of the complete frame at the buffer's position, or -1 if it hasn't all arrived yet.
+    public static int frameLength(ByteBuffer in){
+        if(in.remaining() < HEADER_BYTES){
+            return -1;
+        }
+        int length = in.getInt(in.position());
+        if(length < 1 || length > MAX_FRAME){
+            throw new IllegalStateException("Bad frame length " + length);
+        }
+        return in.remaining() - HEADER_BYTES >= length ? length : -1;
+    }
+
+    public static void putVarint(ByteBuffer out, int value){
+        while((value & ~0x7F) != 0){
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static int getVarint(ByteBuffer in){
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IllegalStateException("Varint longer than " + MAX_VARINT_BYTES + " bytes");
+    }
+
+    public static void putSignedVarint(ByteBuffer out, int value){
+        putVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    public static int getSignedVarint(ByteBuffer in){
+        int zigzag = getVarint(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    // Room for a buffer to take at least needed more bytes, keeping what it holds. Returns it or a bigger copy.
+    static ByteBuffer ensureRemaining(ByteBuffer buffer, int needed){
+        if(buffer.remaining() >= needed){
+            return buffer;
+        }
+        int capacity = buffer.capacity();
+        while(capacity - buffer.position() < needed){
+            capacity *= 2;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+}
@@ -0,0 +1,192 @@
+package Net;
+
+import Entity.EntityStore;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// What one client sees of the world on one tick: the entities near its player, sorted by handle, with the fields
+// a client needs to draw them. The server keeps the last one it sent each client and the client keeps the last
+// one it received, so a tick only has to carry the difference (writeDelta / readDelta).
+//
+// A delta is a list of entries in handle order, each the handle's gap from the previous entry and a header byte:
+// REMOVED (out of view or destroyed), ADDED (followed by every field and the type), or the mask of the fields
+// that changed followed by those fields. Positions are zigzag varints relative to the old ones, so an entity
+// walking 2 pixels a tick costs 3 bytes. Entities that didn't change aren't mentioned at all.
+public class Snapshot {
+
+    static final int X = 1, Y = 2, DIRECTION = 4, SPRITE = 8, ALL_FIELDS = 15;
+    static final int ADDED = 16, REMOVED = 32;
+    // Gap, header, x, y, direction, sprite, type
+    static final int MAX_ENTRY_BYTES = Protocol.MAX_VARINT_BYTES * 4 + 3;
+
+    public int count = 0;
+    public int[] handle = new int[64];
+    public int[] worldX = new int[64], worldY = new int[64];
+    public byte[] direction = new byte[64];
+    public int[] spriteNum = new int[64];
+    public byte[] type = new byte[64];
+
+    void ensureCapacity(int capacity){
+        if(handle.length < capacity){
+            int size = Math.max(capacity, handle.length * 2);
+            handle = Arrays.copyOf(handle, size);
+            worldX = Arrays.copyOf(worldX, size);
+            worldY = Arrays.copyOf(worldY, size);
+            direction = Arrays.copyOf(direction, size);
+            spriteNum = Arrays.copyOf(spriteNum, size);
+            type = Arrays.copyOf(type, size);
+        }
+    }
+
+    // Fills this from the entities with the given handles. Sorts handles in place.
+    public void capture(EntityStore store, int[] handles, int handleCount){
+        Arrays.sort(handles, 0, handleCount);
+        ensureCapacity(handleCount);
+        for(int k = 0; k < handleCount; k++){
+            int i = store.indexOf(handles[k]);
+            handle[k] = handles[k];
+            worldX[k] = store.worldX[i];
+            worldY[k] = store.worldY[i];
+            direction[k] = store.direction[i];
+            spriteNum[k] = store.spriteNum[i];
+            type[k] = store.type[i];
+        }
+        count = handleCount;
+    }
+
+    public void copyFrom(Snapshot other){
+        ensureCapacity(other.count);
+        System.arraycopy(other.handle, 0, handle, 0, other.count);
+        System.arraycopy(other.worldX, 0, worldX, 0, other.count);
+        System.arraycopy(other.worldY, 0, worldY, 0, other.count);
+        System.arraycopy(other.direction, 0, direction, 0, other.count);
+        System.arraycopy(other.spriteNum, 0, spriteNum, 0, other.count);
+        System.arraycopy(other.type, 0, type, 0, other.count);
+        count = other.count;
+    }
+
+    public void clear(){
+        count = 0;
+    }
+
+    // Index of an entity by handle, or -1 if it isn't in view.
+    public int indexOf(int entityHandle){
+        int k = Arrays.binarySearch(handle, 0, count, entityHandle);
+        return k >= 0 ? k : -1;
+    }
+
+    public boolean sameAs(Snapshot other){
+        return count == other.count
+                && Arrays.equals(handle, 0, count, other.handle, 0, count)
+                && Arrays.equals(worldX, 0, count, other.worldX, 0, count)
+                && Arrays.equals(worldY, 0, count, other.worldY, 0, count)
+                && Arrays.equals(direction, 0, count, other.direction, 0, count)
+                && Arrays.equals(spriteNum, 0, count, other.spriteNum, 0, count)
+                && Arrays.equals(type, 0, count, other.type, 0, count);
+    }
+
+    // Most bytes writeDelta() can write going from base to this
+    public int maxDeltaBytes(Snapshot base){
+        return (count + base.count) * MAX_ENTRY_BYTES;
+    }
+
+    // Writes what changed going from base to this.
+    public void writeDelta(Snapshot base, ByteBuffer out){
+        int i = 0, j = 0;
+        int last = 0;
+        while(i < base.count || j < count){
+            int oldHandle = i < base.count ? base.handle[i] : Integer.MAX_VALUE;
+            int newHandle = j < count ? handle[j] : Integer.MAX_VALUE;
+            if(oldHandle < newHandle){
+                Protocol.putVarint(out, oldHandle - last);
+                out.put((byte) REMOVED);
+                last = oldHandle;
+                i++;
+            } else if(newHandle < oldHandle){
+                Protocol.putVarint(out, newHandle - last);
+                out.put((byte) (ADDED | ALL_FIELDS));
+                out.put(type[j]);
+                Protocol.putSignedVarint(out, worldX[j]);
+                Protocol.putSignedVarint(out, worldY[j]);
+                out.put(direction[j]);
+                Protocol.putVarint(out, spriteNum[j]);
+                last = newHandle;
+                j++;
+            } else {
+                int mask = (worldX[j] != base.worldX[i] ? X : 0) | (worldY[j] != base.worldY[i] ? Y : 0)
+                        | (direction[j] != base.direction[i] ? DIRECTION : 0) | (spriteNum[j] != base.spriteNum[i] ? SPRITE : 0);
+                if(mask != 0){
+                    Protocol.putVarint(out, newHandle - last);
+                    out.put((byte) mask);
+                    if((mask & X) != 0){
+                        Protocol.putSignedVarint(out, worldX[j] - base.worldX[i]);
+                    }
+                    if((mask & Y) != 0){
+                        Protocol.putSignedVarint(out, worldY[j] - base.worldY[i]);
+                    }
+                    if((mask & DIRECTION) != 0){
+                        out.put(direction[j]);
+                    }
+                    if((mask & SPRITE) != 0){
+                        Protocol.putVarint(out, spriteNum[j]);
+                    }
+                    last = newHandle;
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    // Sets this to base with the delta up to end applied. this and base must be different objects.
+    public void readDelta(Snapshot base, ByteBuffer in, int end){
+        ensureCapacity(base.count);
+        int i = 0;
+        int n = 0;
+        int last = 0;
+        while(in.position() < end){
+            int entityHandle = last + Protocol.getVarint(in);
+            last = entityHandle;
+            int header = in.get();
+            while(i < base.count && base.handle[i] < entityHandle){
+                n = copyEntry(base, i++, n);
+            }
+            if((header & REMOVED) != 0){
+                i++;
+                continue;
+            }
+            ensureCapacity(n + 1);
+            handle[n] = entityHandle;
+            if((header & ADDED) != 0){
+                type[n] = in.get();
+                worldX[n] = Protocol.getSignedVarint(in);
+                worldY[n] = Protocol.getSignedVarint(in);
+                direction[n] = in.get();
+                spriteNum[n] = Protocol.getVarint(in);
+            } else {
+                type[n] = base.type[i];
+                worldX[n] = (header & X) != 0 ? base.worldX[i] + Protocol.getSignedVarint(in) : base.worldX[i];
+                worldY[n] = (header & Y) != 0 ? base.worldY[i] + Protocol.getSignedVarint(in) : base.worldY[i];
+                direction[n] = (header & DIRECTION) != 0 ? in.get() : base.direction[i];
+                spriteNum[n] = (header & SPRITE) != 0 ? Protocol.getVarint(in) : base.spriteNum[i];
+                i++;
+            }
+            n++;
+        }
+        while(i < base.count){
+            n = copyEntry(base, i++, n);
+        }
+        count = n;
+    }
+
+    int copyEntry(Snapshot base, int i, int n){
+        ensureCapacity(n + 1);
+        handle[n] = base.handle[i];
+        worldX[n] = base.worldX[i];
+        worldY[n] = base.worldY[i];
+        direction[n] = base.direction[i];
+        spriteNum[n] = base.spriteNum[i];
+        type[n] = base.type[i];
+        return n + 1;
+    }
+}
@@ -0,0 +1,112 @@
+package Tiles;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+// Solid/walkable for every tile, one bit each, packed row-major into 64 bit words.
+public class CollisionLayer {
+
+    public final String name;
+    public final int width, height;
+    final LongBuffer words;
+
+    public CollisionLayer(String name, int width, int height){
+        this(name, width, height, LongBuffer.wrap(new long[wordCount(width, height)]));
+    }
+
+    public CollisionLayer(String name, int width, int height, LongBuffer words){
+        if(words.capacity() < wordCount(width, height)){
+            throw new IllegalArgumentException("Layer " + name + " needs " + wordCount(width, height) + " words, buffer has " + words.capacity());
+        }
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.words = words;
+    }
+
+    public static int wordCount(int width, int height){
+        return (int) (((long) width * height + 63) / 64);
+    }
+
+    public boolean get(int col, int row){
+        int bit = row * width + col;
+        return (words.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    public void set(int col, int row, boolean solid){
+        int bit = row * width + col;
+        long word = words.get(bit >>> 6);
+        words.put(bit >>> 6, solid ? word | (1L << bit) : word & ~(1L << bit));
+    }
+
+    // Copies a w x h block starting at (col, row) into out, row-major.
+    public void getRegion(int col, int row, int w, int h, boolean[] out){
+        for(int r = 0; r < h; r++){
+            int bit = (row + r) * width + col;
+            for(int c = 0; c < w; c++, bit++){
+                out[r * w + c] = (words.get(bit >>> 6) & (1L << bit)) != 0;
+            }
+        }
+    }
+
+    // getRegion() packed into words: bit i of the block (row-major) is bit i & 63 of out[i >>> 6]. Copies up to
+    // a word at a time.
+    public void getRegionBits(int col, int row, int w, int h, long[] out){
+        Arrays.fill(out, 0, wordCount(w, h), 0);
+        for(int r = 0; r < h; r++){
+            int from = (row + r) * width + col, to = r * w;
+            for(int done = 0; done < w; ){
+                int s = from + done, d = to + done;
+                int n = Math.min(w - done, Math.min(64 - (s & 63), 64 - (d & 63)));
+                long mask = n == 64 ? -1L : (1L << n) - 1;
+                out[d >>> 6] |= ((words.get(s >>> 6) >>> s) & mask) << d;
+                done += n;
+            }
+        }
+    }
+
+    // Writes a block packed like getRegionBits() gives it.
+    public void setRegionBits(int col, int row, int w, int h, long[] in){
+        for(int r = 0; r < h; r++){
+            int from = r * w, to = (row + r) * width + col;
+            for(int done = 0; done < w; ){
+                int s = from + done, d = to + done;
+                int n = Math.min(w - done, Math.min(64 - (s & 63), 64 - (d & 63)));
+                long mask = n == 64 ? -1L : (1L << n) - 1;
+                long word = words.get(d >>> 6);
+                words.put(d >>> 6, (word & ~(mask << d)) | (((in[s >>> 6] >>> s) & mask) << d));
+                done += n;
+            }
+        }
+    }
+
+    // True if any tile in the block is solid. Checks whole words where the block covers them.
+    public boolean anySolid(int col, int row, int w, int h){
+        for(int r = 0; r < h; r++){
+            int bit = (row + r) * width + col;
+            int end = bit + w;
+            while(bit < end){
+                int inWord = bit & 63;
+                int count = Math.min(64 - inWord, end - bit);
+                long mask = count == 64 ? -1L : ((1L << count) - 1) << inWord;
+                if((words.get(bit >>> 6) & mask) != 0){
+                    return true;
+                }
+                bit += count;
+            }
+        }
+        return false;
+    }
+
+    public LongBuffer buffer(){
+        return words;
+    }
+
+    public long footprintBytes(){
+        return (long) wordCount(width, height) * 8;
+    }
+
+    public boolean isMapped(){
+        return words.isDirect();
+    }
+}
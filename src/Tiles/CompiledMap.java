@@ -0,0 +1,197 @@
+package Tiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Maps compiled by MapCompiler. The file is memory-mapped and the layers read it in place, so opening a map
+// only reads the header and layer table and load time doesn't grow with the map size.
+//
+// Version 2, little endian:
+//   header (32 bytes): magic "LJMP", version, width, height, layer count, payload offset, payload CRC32, reserved
+//   layer table, 32 bytes per layer: name (16 bytes ASCII, zero padded), type, offset, length, reserved
+//     type 0 = tiles under entities, 1 = tiles above entities (u16 row-major), 2 = collision bits (64 bit words)
+//   payload: the layers, each 8 byte aligned
+// The payload CRC covers everything from the payload offset to the end of the file.
+//
+// Version 1 (ground and collision only) is still read:
+//   header: magic, version, width, height, tile offset, collision offset, payload CRC32, reserved
+public class CompiledMap {
+
+    public static final int MAGIC = 0x504D4A4C; // "LJMP" read as a little endian int
+    public static final int VERSION = 2;
+    static final int HEADER_BYTES = 32;
+    static final int LAYER_ENTRY_BYTES = 32;
+    static final int NAME_BYTES = 16;
+
+    static final int TYPE_TILES = 0;
+    static final int TYPE_TILES_ABOVE = 1;
+    static final int TYPE_COLLISION = 2;
+
+    // The mapping is private (copy on write), so edits work but never change the file.
+    // A file we can't open for writing is mapped read-only instead, and edits throw.
+    public static MapLayers open(Path path) throws IOException {
+        MappedByteBuffer mapped = map(path);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if(mapped.capacity() < HEADER_BYTES || mapped.getInt(0) != MAGIC){
+            throw new IOException("Not a compiled map: " + path);
+        }
+        int version = mapped.getInt(4);
+        int width = mapped.getInt(8);
+        int height = mapped.getInt(12);
+        long cells = (long) width * height;
+
+        MapLayers layers = new MapLayers(width, height);
+
+        if(version == 1){
+            int tileOffset = mapped.getInt(16);
+            int collisionOffset = mapped.getInt(20);
+            checkBounds(mapped, tileOffset, cells * 2, path);
+            checkBounds(mapped, collisionOffset, CollisionLayer.wordCount(width, height) * 8L, path);
+            layers.addTileLayer(new TileLayer(MapLayers.GROUND, width, height, false, view(mapped, tileOffset, cells * 2).asCharBuffer()));
+            layers.collision = new CollisionLayer(MapLayers.COLLISION, width, height, view(mapped, collisionOffset, CollisionLayer.wordCount(width, height) * 8L).asLongBuffer());
+            return layers;
+        }
+        if(version != VERSION){
+            throw new IOException("Unsupported compiled map version " + version + ": " + path);
+        }
+
+        int layerCount = mapped.getInt(16);
+        checkBounds(mapped, HEADER_BYTES, (long) layerCount * LAYER_ENTRY_BYTES, path);
+        for(int i = 0; i < layerCount; i++){
+            int entry = HEADER_BYTES + i * LAYER_ENTRY_BYTES;
+            byte[] nameBytes = new byte[NAME_BYTES];
+            mapped.get(entry, nameBytes);
+            int nameLength = 0;
+            while(nameLength < NAME_BYTES && nameBytes[nameLength] != 0) nameLength++;
+            String name = new String(nameBytes, 0, nameLength, StandardCharsets.US_ASCII);
+
+            int type = mapped.getInt(entry + 16);
+            int offset = mapped.getInt(entry + 20);
+            int length = mapped.getInt(entry + 24);
+            checkBounds(mapped, offset, length, path);
+
+            // Views into the mapping, nothing is copied.
+            ByteBuffer data = view(mapped, offset, length);
+            if(type == TYPE_COLLISION){
+                layers.collision = new CollisionLayer(name, width, height, data.asLongBuffer());
+            } else if(type == TYPE_TILES || type == TYPE_TILES_ABOVE){
+                layers.addTileLayer(new TileLayer(name, width, height, type == TYPE_TILES_ABOVE, data.asCharBuffer()));
+            } else {
+                throw new IOException("Unknown layer type " + type + " for layer " + name + ": " + path);
+            }
+        }
+        if(layers.ground == null || layers.collision == null){
+            throw new IOException("Compiled map needs at least a tile layer and a collision layer: " + path);
+        }
+        return layers;
+    }
+
+    static MappedByteBuffer map(Path path) throws IOException {
+        if(Files.isWritable(path)){
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+                return channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+            }
+        }
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    static void checkBounds(ByteBuffer mapped, long offset, long length, Path path) throws IOException {
+        if(offset < 0 || length < 0 || offset + length > mapped.capacity()){
+            throw new IOException("Compiled map is truncated: " + path);
+        }
+    }
+
+    static ByteBuffer view(ByteBuffer mapped, int offset, long length){
+        return mapped.slice(offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Reads the whole payload, so only call it when the file might be damaged (the compiler does after writing).
+    public static boolean verifyChecksum(Path path) throws IOException {
+        MappedByteBuffer mapped = map(path);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        int payloadOffset = mapped.getInt(4) == 1 ? mapped.getInt(16) : mapped.getInt(20);
+        int expected = mapped.getInt(24);
+
+        CRC32 crc = new CRC32();
+        crc.update(mapped.slice(payloadOffset, mapped.capacity() - payloadOffset));
+        return (int) crc.getValue() == expected;
+    }
+
+    public static void write(Path path, MapLayers layers) throws IOException {
+        List<TileLayer> tileLayers = layers.getTileLayers();
+        int layerCount = tileLayers.size() + 1;
+        int payloadOffset = align(HEADER_BYTES + layerCount * LAYER_ENTRY_BYTES);
+
+        long size = payloadOffset;
+        for(TileLayer layer : tileLayers){
+            size = align(size + layer.footprintBytes());
+        }
+        size += layers.collision.footprintBytes();
+        if(size > Integer.MAX_VALUE){
+            throw new IOException("Map too large for one compiled file: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = payloadOffset;
+        int entry = HEADER_BYTES;
+        for(TileLayer layer : tileLayers){
+            buffer.position(offset);
+            buffer.asCharBuffer().put(layer.buffer().duplicate().position(0).limit(layer.width * layer.height));
+            writeEntry(buffer, entry, layer.name, layer.aboveEntities ? TYPE_TILES_ABOVE : TYPE_TILES, offset, (int) layer.footprintBytes());
+            offset = (int) align(offset + layer.footprintBytes());
+            entry += LAYER_ENTRY_BYTES;
+        }
+        buffer.position(offset);
+        buffer.asLongBuffer().put(layers.collision.buffer().duplicate().position(0).limit(CollisionLayer.wordCount(layers.width, layers.height)));
+        writeEntry(buffer, entry, layers.collision.name, TYPE_COLLISION, offset, (int) layers.collision.footprintBytes());
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(payloadOffset, (int) size - payloadOffset));
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, layers.width);
+        buffer.putInt(12, layers.height);
+        buffer.putInt(16, layerCount);
+        buffer.putInt(20, payloadOffset);
+        buffer.putInt(24, (int) crc.getValue());
+
+        try(FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            buffer.position(0);
+            while(buffer.hasRemaining()){
+                out.write(buffer);
+            }
+        }
+    }
+
+    static void writeEntry(ByteBuffer buffer, int entry, String name, int type, int offset, int length) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        if(nameBytes.length > NAME_BYTES){
+            throw new IOException("Layer name longer than " + NAME_BYTES + " characters: " + name);
+        }
+        buffer.put(entry, nameBytes);
+        buffer.putInt(entry + 16, type);
+        buffer.putInt(entry + 20, offset);
+        buffer.putInt(entry + 24, length);
+    }
+
+    static int align(int offset){
+        return (offset + 7) & ~7;
+    }
+
+    static long align(long offset){
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,85 @@
+package Tiles;
+
+import Utility.CsvReader;
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Compiles the CSV maps (still the source format) into one binary .ljmap file that the game memory-maps.
+// Extra tile layers can be added as name=file.csv. Layers named overlay... are drawn above entities,
+// and -1 in their CSV means no tile.
+//
+//   java Tiles.MapCompiler res/maps/bigmap.csv res/maps/bigmapCollisions.csv res/maps/bigmap.ljmap [decoration=deco.csv overlay=top.csv]
+//   java Tiles.MapCompiler verify res/maps/bigmap.ljmap
+public class MapCompiler {
+
+    public static void main(String[] args) throws IOException {
+        if(args.length == 2 && args[0].equals("verify")){
+            MapLayers layers = CompiledMap.open(Path.of(args[1]));
+            boolean ok = CompiledMap.verifyChecksum(Path.of(args[1]));
+            System.out.print(layers.memoryReport());
+            System.out.println(args[1] + ": checksum " + (ok ? "OK" : "MISMATCH"));
+            System.exit(ok ? 0 : 1);
+        } else if(args.length >= 3){
+            String[] extraLayers = new String[args.length - 3];
+            System.arraycopy(args, 3, extraLayers, 0, extraLayers.length);
+            compile(Path.of(args[0]), Path.of(args[1]), Path.of(args[2]), extraLayers);
+        } else {
+            System.err.println("Usage: MapCompiler <map.csv> <collisions.csv> <out.ljmap> [name=layer.csv ...]");
+            System.err.println("       MapCompiler verify <map.ljmap>");
+            System.exit(1);
+        }
+    }
+
+    public static void compile(Path mapCsv, Path collisionCsv, Path out, String... extraLayers) throws IOException {
+        int[][] tiles = CsvReader.readGrid(mapCsv);
+        int[][] collisions = CsvReader.readGrid(collisionCsv);
+        int height = tiles.length;
+        int width = tiles[0].length;
+        checkSize(collisionCsv, collisions, width, height);
+
+        MapLayers layers = MapLayers.create(width, height);
+        fill(layers.ground, tiles);
+        for(int row = 0; row < height; row++){
+            for(int col = 0; col < width; col++){
+                layers.collision.set(col, row, collisions[row][col] == 1);
+            }
+        }
+
+        for(String extra : extraLayers){
+            int split = extra.indexOf('=');
+            if(split <= 0){
+                throw new IOException("Expected name=file.csv, got " + extra);
+            }
+            String name = extra.substring(0, split);
+            Path csv = Path.of(extra.substring(split + 1));
+            int[][] grid = CsvReader.readGrid(csv);
+            checkSize(csv, grid, width, height);
+            fill(layers.addTileLayer(new TileLayer(name, width, height, name.startsWith(MapLayers.OVERLAY))), grid);
+        }
+
+        CompiledMap.write(out, layers);
+        if(!CompiledMap.verifyChecksum(out)){
+            throw new IOException("Checksum mismatch after writing " + out);
+        }
+        System.out.print(layers.memoryReport());
+        System.out.println("Compiled to " + out);
+    }
+
+    static void fill(TileLayer layer, int[][] grid) throws IOException {
+        for(int row = 0; row < layer.height; row++){
+            for(int col = 0; col < layer.width; col++){
+                int tileNum = grid[row][col];
+                if(tileNum < -1 || tileNum >= TileLayer.EMPTY){
+                    throw new IOException("Tile number out of range in layer " + layer.name + " at " + col + "," + row + ": " + tileNum);
+                }
+                layer.set(col, row, tileNum == -1 ? TileLayer.EMPTY : tileNum);
+            }
+        }
+    }
+
+    static void checkSize(Path csv, int[][] grid, int width, int height) throws IOException {
+        if(grid.length != height || grid[0].length != width){
+            throw new IOException(csv + " is " + grid[0].length + "x" + grid.length + ", map is " + width + "x" + height);
+        }
+    }
+}
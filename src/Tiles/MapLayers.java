@@ -0,0 +1,88 @@
+package Tiles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// All the layers of a map: tile layers in draw order (ground first) plus the collision layer.
+public class MapLayers {
+
+    public static final String GROUND = "ground";
+    public static final String DECORATION = "decoration";
+    public static final String OVERLAY = "overlay";
+    public static final String COLLISION = "collision";
+
+    public final int width, height;
+    private final List<TileLayer> tileLayers = new ArrayList<>();
+    public TileLayer ground;
+    public CollisionLayer collision;
+
+    public MapLayers(int width, int height){
+        this.width = width;
+        this.height = height;
+    }
+
+    // Ground and collision on the heap, the minimum every map has.
+    public static MapLayers create(int width, int height){
+        MapLayers layers = new MapLayers(width, height);
+        layers.addTileLayer(new TileLayer(GROUND, width, height, false));
+        layers.collision = new CollisionLayer(COLLISION, width, height);
+        return layers;
+    }
+
+    public TileLayer addTileLayer(TileLayer layer){
+        if(layer.width != width || layer.height != height){
+            throw new IllegalArgumentException("Layer " + layer.name + " is " + layer.width + "x" + layer.height + ", map is " + width + "x" + height);
+        }
+        if(getTileLayer(layer.name) != null){
+            throw new IllegalArgumentException("Duplicate layer " + layer.name);
+        }
+        tileLayers.add(layer);
+        if(ground == null){
+            ground = layer;
+        }
+        return layer;
+    }
+
+    public TileLayer getTileLayer(String name){
+        for(TileLayer layer : tileLayers){
+            if(layer.name.equals(name)){
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    public List<TileLayer> getTileLayers(){
+        return Collections.unmodifiableList(tileLayers);
+    }
+
+    public boolean hasLayersAboveEntities(){
+        for(TileLayer layer : tileLayers){
+            if(layer.aboveEntities){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long footprintBytes(){
+        long total = collision == null ? 0 : collision.footprintBytes();
+        for(TileLayer layer : tileLayers){
+            total += layer.footprintBytes();
+        }
+        return total;
+    }
+
+    public String memoryReport(){
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Map %dx%d, %d KB in %d layers:%n", width, height, footprintBytes() / 1024, tileLayers.size() + 1));
+        for(TileLayer layer : tileLayers){
+            report.append(String.format("  %-12s tiles %8d KB %s%n", layer.name, layer.footprintBytes() / 1024, layer.isMapped() ? "(mapped)" : ""));
+        }
+        if(collision != null){
+            report.append(String.format("  %-12s bits  %8d KB %s%n", collision.name, collision.footprintBytes() / 1024, collision.isMapped() ? "(mapped)" : ""));
+        }
+        return report.toString();
+    }
+}
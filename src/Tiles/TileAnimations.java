@@ -0,0 +1,128 @@
+package Tiles;
+
+import Entity.AnimationClip;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Animated map tiles, from res/animations/tiles.anim. An animated tile type cycles through other tile numbers,
+// and every tile of that type on the map shows the same frame: the phase is the global tick, so there is no
+// per-tile state and finding the frame to show is one table load per type.
+public class TileAnimations {
+
+    // Per animation: the tile type it animates, and its clip baked to the tile shown on every tick of a cycle
+    int[] animatedTile = new int[0];
+    int[] frameAtTick = new int[0];
+    int[] clipStart = new int[0];
+    int[] clipLength = new int[0];
+    boolean[] once = new boolean[0];
+
+    // Tile type -> animation, -1 when the type doesn't animate
+    int[] animationOf = new int[0];
+
+    public static TileAnimations load(String path){
+        InputStream in = TileAnimations.class.getResourceAsStream(path);
+        if(in == null){
+            throw new RuntimeException("Tile animations not found: " + path);
+        }
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(in))){
+            return parse(br);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load tile animations: " + path, e);
+        }
+    }
+
+    //   tile <tile number> <loop|once|pingpong> <frame tile>:<ticks> ...
+    // Blank lines and lines starting with # are skipped.
+    public static TileAnimations parse(BufferedReader br) throws IOException {
+        List<Integer> tiles = new ArrayList<>();
+        List<AnimationClip> clips = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while((line = br.readLine()) != null){
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            if(!words[0].equals("tile") || words.length < 4){
+                throw new IOException("Line " + lineNumber + ": expected 'tile', got: " + line);
+            }
+            int tileNum = Integer.parseInt(words[1]);
+            if(tiles.contains(tileNum)){
+                throw new IOException("Line " + lineNumber + ": tile " + tileNum + " is animated twice");
+            }
+            tiles.add(tileNum);
+            clips.add(AnimationClip.parse("tile " + tileNum, words, 2, lineNumber));
+        }
+        TileAnimations animations = new TileAnimations();
+        animations.bake(tiles, clips);
+        return animations;
+    }
+
+    void bake(List<Integer> tiles, List<AnimationClip> clips){
+        int n = clips.size();
+        int[][] ticks = new int[n][];
+        int total = 0;
+        int maxTile = -1;
+        for(int a = 0; a < n; a++){
+            ticks[a] = clips.get(a).bakeTicks();
+            total += ticks[a].length;
+            maxTile = Math.max(maxTile, tiles.get(a));
+        }
+        animatedTile = new int[n];
+        frameAtTick = new int[total];
+        clipStart = new int[n];
+        clipLength = new int[n];
+        once = new boolean[n];
+        animationOf = new int[maxTile + 1];
+        Arrays.fill(animationOf, -1);
+        int offset = 0;
+        for(int a = 0; a < n; a++){
+            animatedTile[a] = tiles.get(a);
+            animationOf[tiles.get(a)] = a;
+            System.arraycopy(ticks[a], 0, frameAtTick, offset, ticks[a].length);
+            clipStart[a] = offset;
+            clipLength[a] = ticks[a].length;
+            once[a] = clips.get(a).mode == AnimationClip.ONCE;
+            offset += ticks[a].length;
+        }
+    }
+
+    // Throws if a frame isn't a tile the game has.
+    void check(int numberOfTiles){
+        for(int a = 0; a < animatedTile.length; a++){
+            for(int t = 0; t < clipLength[a]; t++){
+                int frame = frameAtTick[clipStart[a] + t];
+                if(animatedTile[a] >= numberOfTiles || frame < 0 || frame >= numberOfTiles){
+                    throw new IllegalStateException("Tile animation " + animatedTile[a] + " uses tile " + frame + ", there are " + numberOfTiles);
+                }
+            }
+        }
+    }
+
+    public int count(){
+        return animatedTile.length;
+    }
+
+    public int animatedTile(int animation){
+        return animatedTile[animation];
+    }
+
+    // -1 when the tile type doesn't animate
+    public int animationOf(int tileNum){
+        return tileNum < animationOf.length ? animationOf[tileNum] : -1;
+    }
+
+    // Tile number shown for an animation at a global tick
+    public int frameAt(int animation, long tick){
+        int length = clipLength[animation];
+        long t = once[animation] ? Math.min(tick, length - 1) : tick % length;
+        return frameAtTick[clipStart[animation] + (int) t];
+    }
+}
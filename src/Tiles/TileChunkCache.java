@@ -0,0 +1,369 @@
+package Tiles;
+
+import World.Chunk;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Pre-rendered map chunks. Each chunk is CHUNK_SIZE x CHUNK_SIZE tiles baked into one image at screen scale,
+// so a frame is 1-4 blits instead of one drawImage per visible tile. Baking blits tiles from the texture atlas.
+// One cache holds the layers under the entities (opaque), another the layers above them (transparent).
+//
+// Animated tiles are baked with their current frame. Each chunk remembers which of its cells hold animated tiles,
+// and when an animation's frame changes only those cells are painted again, not the whole chunk.
+public class TileChunkCache {
+
+    // Same as the streaming world's chunks, so a loaded or evicted world chunk maps to exactly one image.
+    public static final int CHUNK_SIZE = Chunk.SIZE;
+
+    final TileManager tileManager;
+    final int tileSize;
+    final int chunkPixels;
+    final int maxChunks;
+    final boolean aboveEntities;
+    private final char[] regionScratch = new char[CHUNK_SIZE * CHUNK_SIZE];
+
+    // Told about every part of the map whose pixels change in the cache: a repainted animated cell, or a chunk
+    // that is invalidated and will be baked again. World pixel coordinates.
+    public interface DamageListener {
+        void damaged(int worldX, int worldY, int width, int height);
+    }
+
+    public DamageListener damageListener;
+
+    static final class CachedChunk {
+        BufferedImage image;
+        int chunkCol, chunkRow;
+        // cell << 16 | animation, for every layer's animated tile in the chunk
+        int[] animatedCells = new int[16];
+        int animatedCount = 0;
+    }
+
+    // Access ordered, so iteration starts at the least recently drawn chunk.
+    private final LinkedHashMap<Long, CachedChunk> chunks = new LinkedHashMap<>(16, 0.75f, true);
+    // Evicted chunks, whose images are reused for the next bake instead of allocating.
+    private final ArrayDeque<CachedChunk> spareChunks = new ArrayDeque<>();
+    static final int MAX_SPARE_IMAGES = 4;
+
+    // Tile drawn for each tile type: itself, or the current frame for animated ones. Only touched by the thread
+    // that draws.
+    private int[] shownTile;
+    private boolean[] animationChanged;
+    private GraphicsConfiguration graphicsConfiguration;
+    // Invalidations can come from the game thread while the render thread draws, so they are queued
+    // and applied at the start of the next draw.
+    private final ConcurrentLinkedQueue<Long> invalidated = new ConcurrentLinkedQueue<>();
+    private volatile boolean invalidateAllRequested = false;
+
+    public long chunksBaked = 0;
+    public long chunksEvicted = 0;
+    // Counts for the last draw(): blits and fills issued, and map tiles skipped because their chunk was off screen.
+    public int drawCalls = 0;
+    public long tilesCulled = 0;
+    // Cells painted again because their animated tile changed frame
+    public long tilesRepainted = 0;
+
+    public TileChunkCache(TileManager tileManager, int tileSize, int maxChunks, boolean aboveEntities){
+        this.tileManager = tileManager;
+        this.tileSize = tileSize;
+        this.chunkPixels = CHUNK_SIZE * tileSize;
+        this.maxChunks = maxChunks;
+        this.aboveEntities = aboveEntities;
+        shownTile = new int[tileManager.numberOfTiles];
+        for(int i = 0; i < shownTile.length; i++){
+            shownTile[i] = i;
+        }
+        animationChanged = new boolean[tileManager.tileAnimations.count()];
+    }
+
+    static long key(int chunkCol, int chunkRow){
+        return ((long) chunkCol << 32) | (chunkRow & 0xffffffffL);
+    }
+
+    // Draws the part of the map that is inside the view. viewX/viewY is the world position of the top left pixel.
+    public void draw(Graphics2D g2, int viewX, int viewY, int viewWidth, int viewHeight){
+
+        prepare();
+        drawCalls = 0;
+        long tilesDrawn = 0;
+
+        int firstChunkCol = Math.floorDiv(viewX, chunkPixels);
+        int firstChunkRow = Math.floorDiv(viewY, chunkPixels);
+        int lastChunkCol = Math.floorDiv(viewX + viewWidth - 1, chunkPixels);
+        int lastChunkRow = Math.floorDiv(viewY + viewHeight - 1, chunkPixels);
+
+        int maxChunkCol = (tileManager.getMaxWorldCol() - 1) / CHUNK_SIZE;
+        int maxChunkRow = (tileManager.getMaxWorldRow() - 1) / CHUNK_SIZE;
+
+        for(int chunkRow = Math.max(0, firstChunkRow); chunkRow <= Math.min(lastChunkRow, maxChunkRow); chunkRow++){
+            for(int chunkCol = Math.max(0, firstChunkCol); chunkCol <= Math.min(lastChunkCol, maxChunkCol); chunkCol++){
+                int x = chunkCol * chunkPixels - viewX;
+                int y = chunkRow * chunkPixels - viewY;
+                tilesDrawn += (long) Math.min(CHUNK_SIZE, tileManager.getMaxWorldCol() - chunkCol * CHUNK_SIZE)
+                        * Math.min(CHUNK_SIZE, tileManager.getMaxWorldRow() - chunkRow * CHUNK_SIZE);
+                drawCalls++;
+                // Looked up once: the game thread can evict the chunk at any time while this draws.
+                Chunk worldChunk = tileManager.world != null ? tileManager.world.getChunk(chunkCol, chunkRow) : null;
+                if(tileManager.world != null && worldChunk == null){
+                    // Still streaming in. Leave it black and don't cache anything for it yet.
+                    if(!aboveEntities){
+                        g2.setColor(Color.BLACK);
+                        g2.fillRect(x, y, chunkPixels, chunkPixels);
+                    }
+                    continue;
+                }
+                g2.drawImage(getChunk(chunkCol, chunkRow, worldChunk), x, y, null);
+            }
+        }
+        tilesCulled = (long) tileManager.getMaxWorldCol() * tileManager.getMaxWorldRow() - tilesDrawn;
+    }
+
+    // Applies queued invalidations and moves animated tiles to the current frame. draw() does this itself; call it
+    // first to find out what changed (through damageListener) before deciding what to draw.
+    public void prepare(){
+        applyInvalidations();
+        updateAnimations();
+    }
+
+    // worldChunk is the streamed chunk to bake from, null for a whole map.
+    BufferedImage getChunk(int chunkCol, int chunkRow, Chunk worldChunk){
+        long key = key(chunkCol, chunkRow);
+        CachedChunk chunk = chunks.get(key);
+        if(chunk == null){
+            chunk = bake(chunkCol, chunkRow, worldChunk);
+            chunks.put(key, chunk);
+            evictOverCapacity();
+        }
+        return chunk.image;
+    }
+
+    CachedChunk bake(int chunkCol, int chunkRow, Chunk worldChunk){
+        CachedChunk chunk = spareChunks.poll();
+        if(chunk == null){
+            chunk = new CachedChunk();
+            chunk.image = createChunkImage();
+        }
+        chunk.chunkCol = chunkCol;
+        chunk.chunkRow = chunkRow;
+        chunk.animatedCount = 0;
+        TileAnimations animations = tileManager.tileAnimations;
+
+        Graphics2D g2 = chunk.image.createGraphics();
+        if(aboveEntities){
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, chunkPixels, chunkPixels);
+            g2.setComposite(AlphaComposite.SrcOver);
+        } else {
+            g2.setColor(Color.BLACK);
+            g2.fillRect(0, 0, chunkPixels, chunkPixels);
+        }
+
+        int firstCol = chunkCol * CHUNK_SIZE;
+        int firstRow = chunkRow * CHUNK_SIZE;
+        int cols = Math.min(CHUNK_SIZE, tileManager.getMaxWorldCol() - firstCol);
+        int rows = Math.min(CHUNK_SIZE, tileManager.getMaxWorldRow() - firstRow);
+
+        // A streamed chunk has its own layers, a whole map is read at the chunk's offset.
+        MapLayers layers = tileManager.layers;
+        int layerCol = firstCol;
+        int layerRow = firstRow;
+        if(worldChunk != null){
+            layers = worldChunk.layers;
+            layerCol = 0;
+            layerRow = 0;
+        }
+
+        for(TileLayer layer : layers.getTileLayers()){
+            if(layer.aboveEntities != aboveEntities){
+                continue;
+            }
+            // Row-major bulk copy of the chunk's tiles, then walk it in memory order.
+            layer.getRegion(layerCol, layerRow, cols, rows, regionScratch);
+            for(int row = 0; row < rows; row++){
+                for(int col = 0; col < cols; col++){
+                    int tileNum = regionScratch[row * cols + col];
+                    if(tileNum == TileLayer.EMPTY){
+                        continue;
+                    }
+                    int animation = animations.animationOf(tileNum);
+                    if(animation >= 0){
+                        addAnimatedCell(chunk, (row * CHUNK_SIZE + col) << 16 | animation);
+                    }
+                    tileManager.drawTile(g2, shownTile[tileNum], col * tileSize, row * tileSize);
+                }
+            }
+        }
+        g2.dispose();
+
+        chunksBaked++;
+        return chunk;
+    }
+
+    static void addAnimatedCell(CachedChunk chunk, int cell){
+        if(chunk.animatedCount == chunk.animatedCells.length){
+            chunk.animatedCells = Arrays.copyOf(chunk.animatedCells, chunk.animatedCount * 2);
+        }
+        chunk.animatedCells[chunk.animatedCount++] = cell;
+    }
+
+    // Moves animated tiles to the frame for the current tick, painting again only the cells of animations whose
+    // frame changed.
+    void updateAnimations(){
+        TileAnimations animations = tileManager.tileAnimations;
+        long tick = tileManager.animationTick;
+        boolean changed = false;
+        for(int a = 0; a < animationChanged.length; a++){
+            int tileNum = animations.animatedTile(a);
+            int frame = animations.frameAt(a, tick);
+            animationChanged[a] = shownTile[tileNum] != frame;
+            if(animationChanged[a]){
+                shownTile[tileNum] = frame;
+                changed = true;
+            }
+        }
+        if(!changed){
+            return;
+        }
+        for(CachedChunk chunk : chunks.values()){
+            // Looked up once: the game thread can evict the chunk at any time while this draws.
+            Chunk worldChunk = tileManager.world != null ? tileManager.world.getChunk(chunk.chunkCol, chunk.chunkRow) : null;
+            if(tileManager.world == null || worldChunk != null){
+                repaintAnimatedCells(chunk, worldChunk);
+            }
+        }
+    }
+
+    // worldChunk is the streamed chunk the cached one was baked from, null for a whole map.
+    void repaintAnimatedCells(CachedChunk chunk, Chunk worldChunk){
+        Graphics2D g2 = null;
+        for(int k = 0; k < chunk.animatedCount; k++){
+            int cell = chunk.animatedCells[k];
+            if(!animationChanged[cell & 0xFFFF]){
+                continue;
+            }
+            if(g2 == null){
+                g2 = chunk.image.createGraphics();
+            }
+            repaintCell(g2, chunk, worldChunk, cell >>> 16);
+        }
+        if(g2 != null){
+            g2.dispose();
+        }
+    }
+
+    // Clears one cell and draws every one of this cache's layers at it again.
+    void repaintCell(Graphics2D g2, CachedChunk chunk, Chunk worldChunk, int cell){
+        int col = cell % CHUNK_SIZE;
+        int row = cell / CHUNK_SIZE;
+        int x = col * tileSize;
+        int y = row * tileSize;
+        if(aboveEntities){
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(x, y, tileSize, tileSize);
+            g2.setComposite(AlphaComposite.SrcOver);
+        } else {
+            g2.setColor(Color.BLACK);
+            g2.fillRect(x, y, tileSize, tileSize);
+        }
+
+        MapLayers layers = tileManager.layers;
+        int layerCol = chunk.chunkCol * CHUNK_SIZE + col;
+        int layerRow = chunk.chunkRow * CHUNK_SIZE + row;
+        if(worldChunk != null){
+            layers = worldChunk.layers;
+            layerCol = col;
+            layerRow = row;
+        }
+        for(TileLayer layer : layers.getTileLayers()){
+            if(layer.aboveEntities != aboveEntities){
+                continue;
+            }
+            int tileNum = layer.get(layerCol, layerRow);
+            if(tileNum != TileLayer.EMPTY){
+                tileManager.drawTile(g2, shownTile[tileNum], x, y);
+            }
+        }
+        tilesRepainted++;
+        if(damageListener != null){
+            damageListener.damaged(chunk.chunkCol * chunkPixels + x, chunk.chunkRow * chunkPixels + y, tileSize, tileSize);
+        }
+    }
+
+    BufferedImage createChunkImage(){
+        if(graphicsConfiguration == null && !GraphicsEnvironment.isHeadless()){
+            graphicsConfiguration = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        }
+        // A compatible image is a managed image: Java2D keeps a copy in video memory after a few blits.
+        if(graphicsConfiguration != null){
+            return graphicsConfiguration.createCompatibleImage(chunkPixels, chunkPixels, aboveEntities ? Transparency.TRANSLUCENT : Transparency.OPAQUE);
+        }
+        return new BufferedImage(chunkPixels, chunkPixels, aboveEntities ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    }
+
+    void evictOverCapacity(){
+        Iterator<Map.Entry<Long, CachedChunk>> it = chunks.entrySet().iterator();
+        while(chunks.size() > maxChunks && it.hasNext()){
+            CachedChunk chunk = it.next().getValue();
+            it.remove();
+            recycle(chunk);
+            chunksEvicted++;
+        }
+    }
+
+    // Called when a tile changes. Only the chunk holding it is baked again, the next time it is drawn.
+    public void invalidateTile(int col, int row){
+        invalidateChunk(Math.floorDiv(col, CHUNK_SIZE), Math.floorDiv(row, CHUNK_SIZE));
+    }
+
+    public void invalidateChunk(int chunkCol, int chunkRow){
+        invalidated.add(key(chunkCol, chunkRow));
+    }
+
+    public void invalidateAll(){
+        invalidateAllRequested = true;
+    }
+
+    void applyInvalidations(){
+        if(invalidateAllRequested){
+            invalidateAllRequested = false;
+            invalidated.clear();
+            for(CachedChunk chunk : chunks.values()){
+                recycle(chunk);
+            }
+            chunks.clear();
+            if(damageListener != null){
+                damageListener.damaged(0, 0, tileManager.getMaxWorldCol() * tileSize, tileManager.getMaxWorldRow() * tileSize);
+            }
+            return;
+        }
+        Long key;
+        while((key = invalidated.poll()) != null){
+            CachedChunk chunk = chunks.remove(key);
+            if(chunk != null){
+                recycle(chunk);
+            }
+            if(damageListener != null){
+                damageListener.damaged((int) (key >> 32) * chunkPixels, (int) (long) key * chunkPixels, chunkPixels, chunkPixels);
+            }
+        }
+    }
+
+    void recycle(CachedChunk chunk){
+        if(spareChunks.size() < MAX_SPARE_IMAGES){
+            spareChunks.push(chunk);
+        }
+    }
+
+    public int getResidentChunks(){
+        return chunks.size();
+    }
+
+    public long getResidentBytes(){
+        return (long) chunks.size() * chunkPixels * chunkPixels * 4;
+    }
+}
@@ -0,0 +1,71 @@
+package Tiles;
+
+import java.nio.CharBuffer;
+
+// One layer of tile numbers, flat and row-major: tile (col, row) is at row * width + col.
+// Backed by a CharBuffer so the same code reads a heap array or a memory-mapped compiled map.
+public class TileLayer {
+
+    // No tile here. Used by decoration and overlay layers, the ground layer is always filled.
+    public static final char EMPTY = 0xFFFF;
+
+    public final String name;
+    public final int width, height;
+    // Drawn after the entities (tree tops, roofs), everything else is drawn under them.
+    public final boolean aboveEntities;
+    final CharBuffer ids;
+
+    public TileLayer(String name, int width, int height, boolean aboveEntities){
+        this(name, width, height, aboveEntities, CharBuffer.wrap(new char[width * height]));
+    }
+
+    public TileLayer(String name, int width, int height, boolean aboveEntities, CharBuffer ids){
+        if(ids.capacity() < width * height){
+            throw new IllegalArgumentException("Layer " + name + " needs " + width * height + " tiles, buffer has " + ids.capacity());
+        }
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.aboveEntities = aboveEntities;
+        this.ids = ids;
+    }
+
+    public int get(int col, int row){
+        return ids.get(row * width + col);
+    }
+
+    public void set(int col, int row, int tileNum){
+        ids.put(row * width + col, (char) tileNum);
+    }
+
+    public void fill(int tileNum){
+        for(int i = 0; i < width * height; i++){
+            ids.put(i, (char) tileNum);
+        }
+    }
+
+    // Copies a w x h block starting at (col, row) into out, row-major. One bulk copy per row.
+    public void getRegion(int col, int row, int w, int h, char[] out){
+        for(int r = 0; r < h; r++){
+            ids.get((row + r) * width + col, out, r * w, w);
+        }
+    }
+
+    public void setRegion(int col, int row, int w, int h, char[] in){
+        for(int r = 0; r < h; r++){
+            ids.put((row + r) * width + col, in, r * w, w);
+        }
+    }
+
+    public CharBuffer buffer(){
+        return ids;
+    }
+
+    public long footprintBytes(){
+        return (long) width * height * 2;
+    }
+
+    public boolean isMapped(){
+        return ids.isDirect();
+    }
+}
@@ -1,79 +1,202 @@
 package Tiles;
 
-import Main.GamePanel;
+import Main.Game;
+import World.Chunk;
+import World.ChunkedWorld;
+import World.WorldFile;
+import Utility.TextureAtlas;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import javax.imageio.ImageIO;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class TileManager {
 
-    GamePanel gp;
+    Game game;
     public Tile[] tile;
-    public int mapTileNumber[][];
-    public boolean[][] collisionMap;
-
+    // Flat row-major tile layers plus the collision bits, from the CSV maps or a memory-mapped .ljmap.
+    public MapLayers layers;
+    public TileChunkCache chunkCache;
+    // Only when there are layers drawn above the entities.
+    public TileChunkCache overlayCache;
+    // Set instead of layers when playing a streamed .world file.
+    public ChunkedWorld world;
 
+    int maxWorldCol, maxWorldRow;
 
     int numberOfTiles = 37; // CHANGE THIS IF ADDING OR REMOVING ANY TILES IN TILE FOLDER
 
-    public TileManager(GamePanel gp){
+    // Animated tile types, all advanced by one global tick
+    public final TileAnimations tileAnimations = loadTileAnimations();
+    public volatile long animationTick = 0;
+
+    // Where each tile's image is in the atlas, set by packTiles()
+    TextureAtlas atlas;
+    int[] tileRegions;
+
+    // Told about every change to what is solid: collision edits, and chunks streaming in and out
+    public interface CollisionListener {
+        void collisionChanged(int col, int row, int width, int height);
+    }
+
+    final List<CollisionListener> collisionListeners = new ArrayList<>();
+
+    // Told about every edit to the layers (tile or collision), not about streamed chunks
+    public interface EditListener {
+        void tileEdited(int col, int row);
+    }
+
+    final List<EditListener> editListeners = new ArrayList<>();
+
+    public TileManager(Game game){
 
-        this.gp = gp;
+        this.game = game;
 
         tile = new Tile[numberOfTiles];
-        mapTileNumber = new int[gp.maxWorldCol][gp.maxWorldRow];
-        collisionMap = new boolean[gp.maxWorldCol][gp.maxWorldRow];
+        maxWorldCol = game.maxWorldCol;
+        maxWorldRow = game.maxWorldRow;
+        layers = MapLayers.create(maxWorldCol, maxWorldRow);
+        createChunkCaches();
 
-        getTileImage();
+        if(!game.headless){
+            getTileImage();
+        }
         loadMap("/maps/bigmap.csv");
         loadCollisionMap("/maps/bigmapCollisions.csv");
+        System.out.print(layers.memoryReport());
+    }
+
+    // Reads the map in place from a compiled .ljmap file instead of parsing the CSV maps.
+    public TileManager(Game game, Path compiledMapPath, boolean verifyChecksum){
+
+        this.game = game;
+
+        tile = new Tile[numberOfTiles];
+        try {
+            layers = CompiledMap.open(compiledMapPath);
+            if(verifyChecksum && !CompiledMap.verifyChecksum(compiledMapPath)){
+                throw new RuntimeException("Compiled map checksum mismatch: " + compiledMapPath);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open compiled map: " + compiledMapPath, e);
+        }
+        maxWorldCol = layers.width;
+        maxWorldRow = layers.height;
+        createChunkCaches();
+
+        if(!game.headless){
+            getTileImage();
+        }
+        System.out.print(layers.memoryReport());
+    }
+
+    // Streams the map from a .world file (see World.WorldBuilder) instead of loading the CSV maps.
+    public TileManager(Game game, Path worldPath, int viewRadius){
+
+        this.game = game;
+
+        tile = new Tile[numberOfTiles];
+        try {
+            world = new ChunkedWorld(new WorldFile(worldPath, true), viewRadius);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open world: " + worldPath, e);
+        }
+        maxWorldCol = world.width;
+        maxWorldRow = world.height;
+        createChunkCaches();
+
+        world.addListener(new ChunkedWorld.Listener() {
+            @Override
+            public void chunkLoaded(Chunk chunk) {
+                chunkCache.invalidateChunk(chunk.chunkCol, chunk.chunkRow);
+                collisionChanged(chunk.chunkCol * Chunk.SIZE, chunk.chunkRow * Chunk.SIZE, Chunk.SIZE, Chunk.SIZE);
+            }
+
+            @Override
+            public void chunkEvicted(Chunk chunk) {
+                chunkCache.invalidateChunk(chunk.chunkCol, chunk.chunkRow);
+                collisionChanged(chunk.chunkCol * Chunk.SIZE, chunk.chunkRow * Chunk.SIZE, Chunk.SIZE, Chunk.SIZE);
+            }
+        });
+
+        if(!game.headless){
+            getTileImage();
+        }
+    }
+
+    void createChunkCaches(){
+        // 24 chunks of 16x16 tiles at 48px is about 56MB of images at most, a ninth of that with --low-res.
+        chunkCache = new TileChunkCache(this, game.drawTileSize, 24, false);
+        if(layers != null && layers.hasLayersAboveEntities()){
+            overlayCache = new TileChunkCache(this, game.drawTileSize, 8, true);
+        }
     }
 
     //Tile loader || Add tiles to tile folder, update length of array.
     // This function automatically loads all textures and stores them in an array.
+    // All tiles are asked for first so they decode in parallel, then collected in order.
     public void getTileImage(){
 
-        try{
-           for(int i = 0; i < numberOfTiles; i++){
-               tile[i] = new Tile();
-               String fileName = String.format("%03d.png", i); // "001.png", "002.png", etc.
-               String pathToTile = "/tiles/" + fileName;
-               tile[i].image = ImageIO.read(getClass().getResourceAsStream(pathToTile));
-           }
+        List<CompletableFuture<BufferedImage>> images = new ArrayList<>(numberOfTiles);
+        for(int i = 0; i < numberOfTiles; i++){
+            String fileName = String.format("%03d.png", i); // "001.png", "002.png", etc.
+            images.add(game.assets.image("/tiles/" + fileName));
+        }
+        for(int i = 0; i < numberOfTiles; i++){
+            tile[i] = new Tile();
+            try {
+                tile[i].image = images.get(i).join();
+            } catch (CompletionException e) {
+                System.err.println(e.getCause().getMessage());
+            }
+        }
+    }
+    // Adds every tile image to the atlas. Chunks are baked from the atlas once it is packed.
+    public void packTiles(TextureAtlas atlas){
+        int[] regions = new int[numberOfTiles];
+        for(int i = 0; i < numberOfTiles; i++){
+            regions[i] = tile[i] != null && tile[i].image != null ? atlas.add(tile[i].image) : -1;
+        }
+        this.atlas = atlas;
+        this.tileRegions = regions;
+    }
 
-        }catch(IOException e){
-            e.printStackTrace();
+    // One tile at the atlas' scale, top left corner at (x, y).
+    public void drawTile(Graphics2D g2, int tileNum, int x, int y){
+        int region = tileRegions[tileNum];
+        if(region >= 0){
+            atlas.draw(g2, region, x, y);
         }
     }
-    public void loadMap(String path){
-        try{
-            InputStream is = getClass().getResourceAsStream(path);
-            BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-            int col = 0;
-            int row = 0;
-
-            while(col < gp.maxWorldCol && row < gp.maxWorldRow){
-                String line = br.readLine();
-
-                while(col < gp.maxWorldCol){
-                    String numbers[] = line.split(",");
-                    int num = Integer.parseInt(numbers[col]);
-                    mapTileNumber[col][row] = num;
-                    col++;
-                }
-                if(col == gp.maxWorldCol){
-                    col = 0;
-                    row++;
-                }
-            }
-            br.close();
 
+    public void loadMap(String path){
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(path)))){
+            loadMap(br);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException("Failed to load map: " + path, e);
+        }
+    }
+
+    // One CSV line per row of ground tiles. Rows or columns past the map size are ignored.
+    public void loadMap(BufferedReader br) throws IOException {
+        int row = 0;
+
+        while(row < maxWorldRow){
+            String line = br.readLine();
+            if(line == null) break;
+
+            // Split once per row, not once per column.
+            String numbers[] = line.split(",");
+            for(int col = 0; col < maxWorldCol; col++){
+                layers.ground.set(col, row, Integer.parseInt(numbers[col].trim()));
+            }
+            row++;
         }
     }
 
@@ -81,57 +204,157 @@ public class TileManager {
     public void loadCollisionMap(String path) {
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(getClass().getResourceAsStream(path)))) {
+            loadCollisionMap(br);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load collision map: " + path, e);
+        }
+    }
 
-            int row = 0;
-            while (row < gp.maxWorldRow) {
-                String line = br.readLine();
-                if (line == null) break;
-
-                String[] numbers = line.split(",");
-                for (int col = 0; col < gp.maxWorldCol; col++) {
-                    int num = Integer.parseInt(numbers[col].trim());
-                    collisionMap[col][row] = (num == 1); // 1 = solid
-                }
+    public void loadCollisionMap(BufferedReader br) throws IOException {
+        int row = 0;
+        while (row < maxWorldRow) {
+            String line = br.readLine();
+            if (line == null) break;
 
-                row++;
+            String[] numbers = line.split(",");
+            for (int col = 0; col < maxWorldCol; col++) {
+                int num = Integer.parseInt(numbers[col].trim());
+                layers.collision.set(col, row, num == 1); // 1 = solid
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to load collision map: " + path, e);
+
+            row++;
         }
     }
 
 
 
-    public void draw(Graphics2D g2){
+    // Which tile types animate and their frames, checked against the tiles there are.
+    TileAnimations loadTileAnimations(){
+        TileAnimations animations = TileAnimations.load("/animations/tiles.anim");
+        animations.check(numberOfTiles);
+        return animations;
+    }
 
-        int worldCol = 0;
-        int worldRow = 0;
+    // Streaming: keep the chunks around the player loaded. Does nothing for a fully loaded map.
+    public void update(){
+        animationTick++; // only the game thread writes it
+        if(world != null){
+            int col = (game.player.getWorldX() + game.tileSize / 2) / game.tileSize;
+            int row = (game.player.getWorldY() + game.tileSize / 2) / game.tileSize;
+            world.update(col, row);
+        }
+    }
 
+    public void preloadAround(int worldX, int worldY){
+        if(world != null){
+            world.preload(worldX / game.tileSize, worldY / game.tileSize);
+        }
+    }
 
-        while(worldCol < gp.maxWorldCol && worldRow < gp.maxWorldRow){
-            int tileNum = mapTileNumber[worldCol][worldRow];
+    public int getTile(int col, int row){
+        if(world != null){
+            return world.getTile(col, row);
+        }
+        return layers.ground.get(col, row);
+    }
 
-            int worldX = worldCol * gp.tileSize;
-            int worldY = worldRow * gp.tileSize;
-            int screenX = worldX - gp.player.worldX + gp.player.screenX;
-            int screenY = worldY - gp.player.worldY + gp.player.screenY;
+    // Out of the map counts as solid.
+    public boolean isSolid(int col, int row){
+        if(world != null){
+            return world.isSolid(col, row);
+        }
+        if(col < 0 || row < 0 || col >= maxWorldCol || row >= maxWorldRow){
+            return true;
+        }
+        return layers.collision.get(col, row);
+    }
 
-            //RENDER ONLY WHATS ON SCREEN
-            if(worldX + gp.tileSize > gp.player.worldX - gp.player.screenX &&
-            worldX - gp.tileSize < gp.player.worldX + gp.player.screenX &&
-            worldY +gp.tileSize > gp.player.worldY - gp.player.screenY &&
-            worldY - gp.tileSize < gp.player.worldY +gp.player.screenY){
+    public void setTile(int col, int row, int tileNum){
+        if(world != null){
+            if(world.setTile(col, row, tileNum)){
+                chunkCache.invalidateTile(col, row);
+            }
+            return;
+        }
+        layers.ground.set(col, row, tileNum);
+        chunkCache.invalidateTile(col, row);
+        tileEdited(col, row);
+    }
 
-                g2.drawImage(tile[tileNum].image,screenX,screenY,gp.tileSize,gp.tileSize,null);
+    // Only tiles in resident chunks can be changed when streaming.
+    public void setSolid(int col, int row, boolean solid){
+        if(world != null){
+            if(!world.setSolid(col, row, solid)){
+                return;
             }
+        } else if(col < 0 || row < 0 || col >= maxWorldCol || row >= maxWorldRow){
+            return;
+        } else {
+            layers.collision.set(col, row, solid);
+            tileEdited(col, row);
+        }
+        collisionChanged(col, row, 1, 1);
+    }
 
-            worldCol++;
+    // The layers were overwritten as a whole (a save was loaded): redraw everything and tell the collision
+    // listeners the whole map changed.
+    public void layersReplaced(){
+        chunkCache.invalidateAll();
+        if(overlayCache != null){
+            overlayCache.invalidateAll();
+        }
+        collisionChanged(0, 0, maxWorldCol, maxWorldRow);
+    }
+
+    public void addCollisionListener(CollisionListener listener){
+        collisionListeners.add(listener);
+    }
 
-            if(worldCol == gp.maxWorldCol){
-                worldCol = 0;
-                worldRow++;
+    public void addEditListener(EditListener listener){
+        editListeners.add(listener);
+    }
 
-            }
+    void tileEdited(int col, int row){
+        for(EditListener listener : editListeners){
+            listener.tileEdited(col, row);
+        }
+    }
+
+    void collisionChanged(int col, int row, int width, int height){
+        for(CollisionListener listener : collisionListeners){
+            listener.collisionChanged(col, row, width, height);
+        }
+    }
+
+    public boolean isChunkResident(int chunkCol, int chunkRow){
+        return world == null || world.getChunk(chunkCol, chunkRow) != null;
+    }
+
+    public int getMaxWorldCol(){
+        return maxWorldCol;
+    }
+
+    public int getMaxWorldRow(){
+        return maxWorldRow;
+    }
+
+    public void draw(Graphics2D g2){
+
+        //RENDER ONLY WHATS ON SCREEN, from the pre-rendered chunks
+        int viewX = game.cameraX - game.player.screenX;
+        int viewY = game.cameraY - game.player.screenY;
+        chunkCache.draw(g2, viewX, viewY, game.screenWidth, game.screenHeight);
+    }
+
+    // Blits and fills issued by the last draw() and drawOverlay().
+    public int getDrawCalls(){
+        return chunkCache.drawCalls + (overlayCache != null ? overlayCache.drawCalls : 0);
+    }
+
+    // Layers above the entities, drawn after them.
+    public void drawOverlay(Graphics2D g2){
+        if(overlayCache != null){
+            overlayCache.draw(g2, game.cameraX - game.player.screenX, game.cameraY - game.player.screenY, game.screenWidth, game.screenHeight);
         }
     }
 }
@@ -0,0 +1,154 @@
+package Utility;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+// Loads images in parallel on a small pool of daemon threads. image() returns at once with a future; asking for
+// the same path twice returns the same future. With a cache directory, decoded pixels are kept on disk by content
+// hash (see ImageCache) and a warm start skips PNG decoding.
+//
+// Every image comes back as TYPE_INT_ARGB, whichever format the file had.
+public class AssetManager {
+
+    public interface ProgressListener {
+        // Called on a loader thread after every image, with the images finished and asked for so far.
+        void progress(int loaded, int requested);
+    }
+
+    final ThreadPoolExecutor executor;
+    final ImageCache cache; // null: always decode
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> images = new ConcurrentHashMap<>();
+    private volatile ProgressListener progressListener;
+
+    private final AtomicInteger requested = new AtomicInteger();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong firstRequestNanos = new AtomicLong();
+    private volatile long lastLoadedNanos;
+
+    public AssetManager(Path cacheDirectory){
+        this(cacheDirectory, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    }
+
+    public AssetManager(Path cacheDirectory, int threads){
+        this.cache = cacheDirectory == null ? null : new ImageCache(cacheDirectory);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 2, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Asset loader " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Loading is a burst at startup, don't keep the threads around after it.
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setProgressListener(ProgressListener listener){
+        this.progressListener = listener;
+    }
+
+    // path is a classpath resource ("/tiles/000.png") or, failing that, a file relative to the working directory
+    // with or without res/ in front, the way SpriteSheet looks for sheets.
+    public CompletableFuture<BufferedImage> image(String path){
+        return images.computeIfAbsent(path, p -> {
+            firstRequestNanos.compareAndSet(0, System.nanoTime());
+            requested.incrementAndGet();
+            return CompletableFuture.supplyAsync(() -> load(p), executor);
+        });
+    }
+
+    BufferedImage load(String path){
+        try {
+            byte[] encoded = read(path);
+            String key = cache == null ? null : ImageCache.key(encoded);
+            BufferedImage image = key == null ? null : cache.get(key);
+            if(image != null){
+                cacheHits.incrementAndGet();
+            } else {
+                image = toArgb(ImageIO.read(new ByteArrayInputStream(encoded)), path);
+                if(key != null){
+                    try {
+                        cache.put(key, image);
+                    } catch (IOException e) {
+                        System.err.println("Could not cache " + path + ": " + e.getMessage());
+                    }
+                }
+            }
+            return image;
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            throw new RuntimeException("Failed to load image: " + path, e);
+        } finally {
+            lastLoadedNanos = System.nanoTime();
+            int done = loaded.incrementAndGet();
+            ProgressListener listener = progressListener;
+            if(listener != null){
+                listener.progress(done, requested.get());
+            }
+        }
+    }
+
+    static byte[] read(String path) throws IOException {
+        try(InputStream in = AssetManager.class.getResourceAsStream(path)){
+            if(in != null){
+                return in.readAllBytes();
+            }
+        }
+        String relative = path.startsWith("/") ? path.substring(1) : path;
+        for(Path file : new Path[]{Path.of(relative), Path.of("res", relative)}){
+            if(Files.isRegularFile(file)){
+                return Files.readAllBytes(file);
+            }
+        }
+        throw new IOException("Not found on the classpath or on disk: " + path);
+    }
+
+    static BufferedImage toArgb(BufferedImage image, String path) throws IOException {
+        if(image == null){
+            throw new IOException("Not a readable image: " + path);
+        }
+        if(image.getType() == BufferedImage.TYPE_INT_ARGB){
+            return image;
+        }
+        BufferedImage argb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = argb.createGraphics();
+        g2.drawImage(image, 0, 0, null);
+        g2.dispose();
+        return argb;
+    }
+
+    public int getRequested(){
+        return requested.get();
+    }
+
+    public int getLoaded(){
+        return loaded.get();
+    }
+
+    public int getCacheHits(){
+        return cacheHits.get();
+    }
+
+    // From the first image asked for to the last one finished
+    public double getLoadMillis(){
+        return loaded.get() == 0 ? 0 : (lastLoadedNanos - firstRequestNanos.get()) / 1e6;
+    }
+
+    public String report(){
+        return String.format("Assets: %d images in %.1f ms on %d threads, %d from cache, %d decoded, %d failed%n",
+                loaded.get(), getLoadMillis(), executor.getMaximumPoolSize(), cacheHits.get(), loaded.get() - cacheHits.get() - failed.get(), failed.get());
+    }
+}
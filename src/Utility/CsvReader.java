@@ -0,0 +1,35 @@
+package Utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CsvReader {
+
+    // Rows of comma separated numbers as [row][col]. Every row must be the same length.
+    public static int[][] readGrid(Path path) throws IOException {
+        List<int[]> rows = new ArrayList<>();
+        try(BufferedReader br = Files.newBufferedReader(path)){
+            String line;
+            while((line = br.readLine()) != null){
+                if(line.isBlank()) continue;
+                String[] numbers = line.split(",");
+                if(!rows.isEmpty() && numbers.length != rows.get(0).length){
+                    throw new IOException(path + " row " + rows.size() + " has " + numbers.length + " columns, expected " + rows.get(0).length);
+                }
+                int[] row = new int[numbers.length];
+                for(int col = 0; col < numbers.length; col++){
+                    row[col] = Integer.parseInt(numbers[col].trim());
+                }
+                rows.add(row);
+            }
+        }
+        if(rows.isEmpty()){
+            throw new IOException("Empty map: " + path);
+        }
+        return rows.toArray(new int[0][]);
+    }
+}
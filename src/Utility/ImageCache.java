@@ -0,0 +1,106 @@
+package Utility;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// Decoded images on disk, keyed by a hash of the encoded file, so a warm start reads raw pixels instead of
+// decoding PNGs. A changed image has a different hash and simply misses; old entries are never read again.
+//
+// Entry file, big endian: "LJPX", version, width, height, then width * height ARGB ints.
+public class ImageCache {
+
+    static final int MAGIC = 0x4C4A5058; // "LJPX"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    final Path directory;
+
+    public ImageCache(Path directory){
+        this.directory = directory;
+    }
+
+    // CRC-32C and 64-bit FNV-1a of the file plus its length, about 100 bits. MessageDigest would be the obvious
+    // choice, but setting up the security providers costs more at startup than the whole cache saves.
+    public static String key(byte[] encoded){
+        CRC32C crc = new CRC32C();
+        crc.update(encoded);
+        long fnv = 0xcbf29ce484222325L;
+        for(byte b : encoded){
+            fnv = (fnv ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return String.format("%08x%016x%x", crc.getValue(), fnv, encoded.length);
+    }
+
+    Path entry(String key){
+        return directory.resolve(key + ".px");
+    }
+
+    // The cached image as TYPE_INT_ARGB, or null if there is no usable entry.
+    public BufferedImage get(String key){
+        Path path = entry(key);
+        if(!Files.isRegularFile(path)){
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header);
+            header.flip();
+            if(header.getInt() != MAGIC || header.getInt() != VERSION){
+                return null;
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            if(width <= 0 || height <= 0 || channel.size() != HEADER_BYTES + (long) width * height * 4){
+                return null;
+            }
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            ByteBuffer data = ByteBuffer.allocate(pixels.length * 4);
+            readFully(channel, data);
+            data.flip();
+            data.asIntBuffer().get(pixels);
+            return image;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Writes to a temporary file and moves it into place, so a crash or a concurrent reader never sees half an
+    // entry. image must be TYPE_INT_ARGB.
+    public void put(String key, BufferedImage image) throws IOException {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES + pixels.length * 4);
+        data.putInt(MAGIC).putInt(VERSION).putInt(image.getWidth()).putInt(image.getHeight());
+        data.asIntBuffer().put(pixels);
+        data.position(0);
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)){
+                while(data.hasRemaining()){
+                    channel.write(data);
+                }
+            }
+            Files.move(temp, entry(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer) < 0){
+                throw new IOException("Truncated cache entry");
+            }
+        }
+    }
+}
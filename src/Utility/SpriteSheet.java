@@ -16,6 +16,13 @@ public class SpriteSheet {
         loadSpriteSheet(path);
     }
     
+    // A sheet that is already loaded, e.g. by AssetManager
+    public SpriteSheet(BufferedImage spriteSheet, int spriteWidth, int spriteHeight) {
+        this.spriteSheet = spriteSheet;
+        this.spriteWidth = spriteWidth;
+        this.spriteHeight = spriteHeight;
+    }
+    
     private void loadSpriteSheet(String path) {
         try {
             // Try loading from file system first
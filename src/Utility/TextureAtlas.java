@@ -0,0 +1,147 @@
+package Utility;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Tile and sprite images packed into a few big images at screen scale, so drawing one is an unscaled blit of a
+// rectangle from a single managed image instead of a scaled drawImage of its own small one.
+//
+// add() every source image, then pack() once. Each image gets a region number; draw(g2, region, x, y) blits it.
+public class TextureAtlas {
+
+    public static final int PAGE_SIZE = 1024;
+
+    final int scale;
+    private List<BufferedImage> sources = new ArrayList<>();
+
+    // Per region: page and rectangle, in scaled pixels
+    int[] page = new int[0];
+    int[] x = new int[0], y = new int[0];
+    int[] width = new int[0], height = new int[0];
+    BufferedImage[] pages = new BufferedImage[0];
+
+    public TextureAtlas(int scale){
+        this.scale = scale;
+    }
+
+    // Returns the region the image will be drawn from once packed.
+    public int add(BufferedImage image){
+        if(sources == null){
+            throw new IllegalStateException("Atlas is already packed");
+        }
+        if(image.getWidth() * scale > PAGE_SIZE || image.getHeight() * scale > PAGE_SIZE){
+            throw new IllegalArgumentException("Image of " + image.getWidth() + "x" + image.getHeight() + " doesn't fit a page at scale " + scale);
+        }
+        sources.add(image);
+        return sources.size() - 1;
+    }
+
+    // Shelf packing: tallest images first, left to right along a shelf, a new shelf when a row is full and a new
+    // page when a page is. The pixel art is scaled with nearest neighbour and never filtered when drawn, so
+    // regions need no padding between them.
+    public void pack(){
+        int n = sources.size();
+        page = new int[n];
+        x = new int[n];
+        y = new int[n];
+        width = new int[n];
+        height = new int[n];
+
+        Integer[] order = new Integer[n];
+        for(int i = 0; i < n; i++){
+            order[i] = i;
+            width[i] = sources.get(i).getWidth() * scale;
+            height[i] = sources.get(i).getHeight() * scale;
+        }
+        Arrays.sort(order, (a, b) -> height[b] - height[a]);
+
+        List<Integer> pageHeights = new ArrayList<>();
+        int currentPage = 0, shelfX = 0, shelfY = 0, shelfHeight = 0;
+        for(int i : order){
+            if(shelfX + width[i] > PAGE_SIZE){
+                shelfY += shelfHeight;
+                shelfX = 0;
+                shelfHeight = 0;
+            }
+            if(shelfY + height[i] > PAGE_SIZE){
+                pageHeights.add(shelfY);
+                currentPage++;
+                shelfY = 0;
+                shelfX = 0;
+                shelfHeight = 0;
+            }
+            page[i] = currentPage;
+            x[i] = shelfX;
+            y[i] = shelfY;
+            shelfX += width[i];
+            shelfHeight = Math.max(shelfHeight, height[i]);
+        }
+        pageHeights.add(shelfY + shelfHeight);
+
+        pages = new BufferedImage[pageHeights.size()];
+        Graphics2D[] graphics = new Graphics2D[pages.length];
+        for(int p = 0; p < pages.length; p++){
+            // Pages are only as tall as their shelves, and a single page only as wide as its widest shelf.
+            int pageWidth = pages.length == 1 && n > 0 ? usedWidth(p) : PAGE_SIZE;
+            pages[p] = createCompatibleImage(pageWidth, Math.max(1, pageHeights.get(p)));
+            graphics[p] = pages[p].createGraphics();
+            graphics[p].setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            graphics[p].setComposite(AlphaComposite.Src);
+        }
+        for(int i = 0; i < n; i++){
+            graphics[page[i]].drawImage(sources.get(i), x[i], y[i], width[i], height[i], null);
+        }
+        for(Graphics2D g2 : graphics){
+            g2.dispose();
+        }
+        sources = null;
+    }
+
+    int usedWidth(int p){
+        int used = 1;
+        for(int i = 0; i < page.length; i++){
+            if(page[i] == p){
+                used = Math.max(used, x[i] + width[i]);
+            }
+        }
+        return used;
+    }
+
+    // Translucent so tiles and sprites with transparent pixels can share pages. A compatible image is a managed
+    // image: Java2D keeps a copy in video memory after a few blits.
+    static BufferedImage createCompatibleImage(int width, int height){
+        if(!GraphicsEnvironment.isHeadless()){
+            GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            return gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    // Blits a region with its top left corner at (dx, dy), at the size it was packed at.
+    public void draw(Graphics2D g2, int region, int dx, int dy){
+        int sx = x[region], sy = y[region];
+        int w = width[region], h = height[region];
+        g2.drawImage(pages[page[region]], dx, dy, dx + w, dy + h, sx, sy, sx + w, sy + h, null);
+    }
+
+    public int getRegionCount(){
+        return page.length;
+    }
+
+    public int getPageCount(){
+        return pages.length;
+    }
+
+    public String report(){
+        long bytes = 0;
+        StringBuilder sizes = new StringBuilder();
+        for(BufferedImage p : pages){
+            bytes += (long) p.getWidth() * p.getHeight() * 4;
+            sizes.append(sizes.length() == 0 ? "" : ", ").append(p.getWidth()).append('x').append(p.getHeight());
+        }
+        return String.format("Texture atlas: %d images at %dx in %d page(s) (%s), %d KB%n", page.length, scale, pages.length, sizes, bytes / 1024);
+    }
+}
@@ -0,0 +1,49 @@
+package Utility;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Hands objects from one writer thread to one reader thread without locks or allocation.
+//
+// Three preallocated slots: the writer fills back(), publish() swaps it with the middle slot, and the reader's
+// acquire() swaps the middle slot with its front slot if something new was published. The writer never waits
+// for the reader and the reader always gets the latest complete object; objects the reader was too slow to see
+// are simply overwritten.
+public class TripleBuffer<T> {
+
+    // middle holds the middle slot's index, plus FRESH while it has something the reader hasn't taken yet
+    static final int INDEX_MASK = 3;
+    static final int FRESH = 4;
+
+    private final Object[] slots = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int back = 0;   // writer only
+    private int front = 1;  // reader only
+
+    public TripleBuffer(Supplier<T> factory){
+        for(int i = 0; i < slots.length; i++){
+            slots[i] = factory.get();
+        }
+    }
+
+    // Writer: the slot to fill next. Whatever it held before is stale, overwrite all of it.
+    @SuppressWarnings("unchecked")
+    public T back(){
+        return (T) slots[back];
+    }
+
+    // Writer: makes back() visible to the reader and hands the writer a free slot.
+    public void publish(){
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    // Reader: the latest published object, or the same one as last time if nothing new was published.
+    // It stays untouched by the writer until the next acquire().
+    @SuppressWarnings("unchecked")
+    public T acquire(){
+        if((middle.get() & FRESH) != 0){
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) slots[front];
+    }
+}
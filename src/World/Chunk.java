@@ -0,0 +1,47 @@
+package World;
+
+import Tiles.MapLayers;
+
+// One SIZE x SIZE block of the world, stored in the same flat row-major layers as a whole map.
+public class Chunk {
+
+    public static final int SIZE = 16;
+
+    public final int chunkCol, chunkRow;
+    public final MapLayers layers = MapLayers.create(SIZE, SIZE);
+
+    // Set when a tile is edited, so the chunk is written back before it is evicted.
+    public volatile boolean modified = false;
+
+    public Chunk(int chunkCol, int chunkRow){
+        this.chunkCol = chunkCol;
+        this.chunkRow = chunkRow;
+    }
+
+    // The tiles and collision as they are now, to be written back on another thread while this one keeps being
+    // edited.
+    public Chunk copy(){
+        Chunk copy = new Chunk(chunkCol, chunkRow);
+        copy.layers.ground.buffer().duplicate().clear().put(layers.ground.buffer().duplicate().clear());
+        copy.layers.collision.buffer().duplicate().clear().put(layers.collision.buffer().duplicate().clear());
+        return copy;
+    }
+
+    public int getTile(int localCol, int localRow){
+        return layers.ground.get(localCol, localRow);
+    }
+
+    public boolean isSolid(int localCol, int localRow){
+        return layers.collision.get(localCol, localRow);
+    }
+
+    public void setTile(int localCol, int localRow, int tileNum){
+        layers.ground.set(localCol, localRow, tileNum);
+        modified = true;
+    }
+
+    public void setSolid(int localCol, int localRow, boolean solid){
+        layers.collision.set(localCol, localRow, solid);
+        modified = true;
+    }
+}
@@ -0,0 +1,17 @@
+package World;
+
+import java.io.IOException;
+
+// Where a ChunkedWorld gets its chunks from. loadChunk and saveChunk are called from the loader thread.
+public interface ChunkSource {
+
+    int getWidth();  // in tiles
+
+    int getHeight(); // in tiles
+
+    Chunk loadChunk(int chunkCol, int chunkRow) throws IOException;
+
+    void saveChunk(Chunk chunk) throws IOException;
+
+    void close() throws IOException;
+}
@@ -0,0 +1,280 @@
+package World;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// A world streamed in chunks around the player. Only chunks within viewRadius (+1 so walking back and forth
+// over a chunk border doesn't thrash) are kept, so memory depends on the view radius, not the world size.
+//
+// Chunks are read on a background loader thread and handed to the game thread, which installs them in update().
+// Lookups never block: a chunk that isn't resident yet reads as solid tile 0. That makes collision depend on how
+// fast the disk is, so recordings and replays (Main.InputReplay) set loadOnCallingThread instead.
+public class ChunkedWorld {
+
+    public interface Listener {
+        void chunkLoaded(Chunk chunk);
+        void chunkEvicted(Chunk chunk);
+    }
+
+    final ChunkSource source;
+    final int viewRadius;
+    public final int width, height;
+    final int chunksAcross, chunksDown;
+
+    private final Map<Long, Chunk> resident = new ConcurrentHashMap<>();
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Chunk> loaded = new ConcurrentLinkedQueue<>();
+    private final ExecutorService loader;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private int centerChunkCol = Integer.MIN_VALUE;
+    private int centerChunkRow = Integer.MIN_VALUE;
+
+    // Load requested chunks right away on the game thread, so they are in on the same tick every run
+    public boolean loadOnCallingThread = false;
+
+    public long chunksLoaded = 0;
+    public long chunksEvicted = 0;
+
+    public ChunkedWorld(ChunkSource source, int viewRadius){
+        this.source = source;
+        this.viewRadius = viewRadius;
+        this.width = source.getWidth();
+        this.height = source.getHeight();
+        this.chunksAcross = (width + Chunk.SIZE - 1) / Chunk.SIZE;
+        this.chunksDown = (height + Chunk.SIZE - 1) / Chunk.SIZE;
+
+        loader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Chunk loader");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    static long key(int chunkCol, int chunkRow){
+        return ((long) chunkCol << 32) | (chunkRow & 0xffffffffL);
+    }
+
+    public void addListener(Listener listener){
+        listeners.add(listener);
+    }
+
+    // Loads the chunks around a tile on the calling thread. Used once at startup so the player doesn't spawn into void.
+    public void preload(int col, int row){
+        int centerCol = Math.floorDiv(col, Chunk.SIZE);
+        int centerRow = Math.floorDiv(row, Chunk.SIZE);
+        for(int chunkRow = centerRow - viewRadius; chunkRow <= centerRow + viewRadius; chunkRow++){
+            for(int chunkCol = centerCol - viewRadius; chunkCol <= centerCol + viewRadius; chunkCol++){
+                if(inWorld(chunkCol, chunkRow) && !resident.containsKey(key(chunkCol, chunkRow))){
+                    try {
+                        install(source.loadChunk(chunkCol, chunkRow));
+                    } catch (IOException e) {
+                        throw new RuntimeException("Failed to load chunk " + chunkCol + "," + chunkRow, e);
+                    }
+                }
+            }
+        }
+        centerChunkCol = centerCol;
+        centerChunkRow = centerRow;
+    }
+
+    // Called every tick on the game thread with the player's tile.
+    public void update(int col, int row){
+
+        // Install whatever the loader finished since last tick
+        Chunk chunk;
+        while((chunk = loaded.poll()) != null){
+            long key = key(chunk.chunkCol, chunk.chunkRow);
+            pending.remove(key);
+            if(withinKeepRadius(chunk.chunkCol, chunk.chunkRow)){
+                install(chunk);
+            }
+        }
+
+        int chunkCol = Math.floorDiv(col, Chunk.SIZE);
+        int chunkRow = Math.floorDiv(row, Chunk.SIZE);
+        if(chunkCol == centerChunkCol && chunkRow == centerChunkRow){
+            return;
+        }
+        centerChunkCol = chunkCol;
+        centerChunkRow = chunkRow;
+
+        evictDistantChunks();
+        requestNearbyChunks();
+    }
+
+    void requestNearbyChunks(){
+        // Nearest rings first, so the chunks the player is about to see arrive before the corners.
+        for(int ring = 0; ring <= viewRadius; ring++){
+            for(int chunkRow = centerChunkRow - ring; chunkRow <= centerChunkRow + ring; chunkRow++){
+                for(int chunkCol = centerChunkCol - ring; chunkCol <= centerChunkCol + ring; chunkCol++){
+                    boolean onRing = Math.max(Math.abs(chunkCol - centerChunkCol), Math.abs(chunkRow - centerChunkRow)) == ring;
+                    if(onRing){
+                        request(chunkCol, chunkRow);
+                    }
+                }
+            }
+        }
+    }
+
+    void request(int chunkCol, int chunkRow){
+        long key = key(chunkCol, chunkRow);
+        if(!inWorld(chunkCol, chunkRow) || resident.containsKey(key) || !pending.add(key)){
+            return;
+        }
+        if(loadOnCallingThread){
+            try {
+                install(source.loadChunk(chunkCol, chunkRow));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load chunk " + chunkCol + "," + chunkRow, e);
+            } finally {
+                pending.remove(key);
+            }
+            return;
+        }
+        loader.execute(() -> {
+            try {
+                loaded.add(source.loadChunk(chunkCol, chunkRow));
+            } catch (IOException e) {
+                System.err.println("Failed to load chunk " + chunkCol + "," + chunkRow + ": " + e.getMessage());
+                pending.remove(key);
+            }
+        });
+    }
+
+    void install(Chunk chunk){
+        resident.put(key(chunk.chunkCol, chunk.chunkRow), chunk);
+        chunksLoaded++;
+        for(Listener listener : listeners){
+            listener.chunkLoaded(chunk);
+        }
+    }
+
+    void evictDistantChunks(){
+        Iterator<Chunk> it = resident.values().iterator();
+        while(it.hasNext()){
+            Chunk chunk = it.next();
+            if(!withinKeepRadius(chunk.chunkCol, chunk.chunkRow)){
+                it.remove();
+                chunksEvicted++;
+                if(chunk.modified && loadOnCallingThread){
+                    save(chunk); // before a reload on this thread can read it back
+                } else if(chunk.modified){
+                    loader.execute(() -> save(chunk));
+                }
+                for(Listener listener : listeners){
+                    listener.chunkEvicted(chunk);
+                }
+            }
+        }
+    }
+
+    boolean save(Chunk chunk){
+        try {
+            source.saveChunk(chunk);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to save chunk " + chunk.chunkCol + "," + chunk.chunkRow + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    boolean withinKeepRadius(int chunkCol, int chunkRow){
+        return Math.abs(chunkCol - centerChunkCol) <= viewRadius + 1 && Math.abs(chunkRow - centerChunkRow) <= viewRadius + 1;
+    }
+
+    boolean inWorld(int chunkCol, int chunkRow){
+        return chunkCol >= 0 && chunkRow >= 0 && chunkCol < chunksAcross && chunkRow < chunksDown;
+    }
+
+    public Chunk getChunk(int chunkCol, int chunkRow){
+        return resident.get(key(chunkCol, chunkRow));
+    }
+
+    Chunk chunkAt(int col, int row){
+        if(col < 0 || row < 0 || col >= width || row >= height){
+            return null;
+        }
+        return resident.get(key(col / Chunk.SIZE, row / Chunk.SIZE));
+    }
+
+    public int getTile(int col, int row){
+        Chunk chunk = chunkAt(col, row);
+        return chunk == null ? 0 : chunk.getTile(col % Chunk.SIZE, row % Chunk.SIZE);
+    }
+
+    // Outside the world and not-yet-loaded chunks are solid, so nothing can walk into them.
+    public boolean isSolid(int col, int row){
+        Chunk chunk = chunkAt(col, row);
+        return chunk == null || chunk.isSolid(col % Chunk.SIZE, row % Chunk.SIZE);
+    }
+
+    // Returns false if the chunk isn't resident, the edit is dropped in that case.
+    public boolean setTile(int col, int row, int tileNum){
+        Chunk chunk = chunkAt(col, row);
+        if(chunk == null){
+            return false;
+        }
+        chunk.setTile(col % Chunk.SIZE, row % Chunk.SIZE, tileNum);
+        return true;
+    }
+
+    public boolean setSolid(int col, int row, boolean solid){
+        Chunk chunk = chunkAt(col, row);
+        if(chunk == null){
+            return false;
+        }
+        chunk.setSolid(col % Chunk.SIZE, row % Chunk.SIZE, solid);
+        return true;
+    }
+
+    public int getResidentChunks(){
+        return resident.size();
+    }
+
+    // Writes back modified resident chunks on the loader thread, or on this one with loadOnCallingThread. Game
+    // thread only: each chunk is copied and marked saved here, so an edit made while the copy is being written
+    // marks the chunk modified again instead of being lost.
+    public void saveModified(){
+        for(Chunk chunk : resident.values()){
+            if(!chunk.modified){
+                continue;
+            }
+            chunk.modified = false;
+            Chunk copy = chunk.copy();
+            if(loadOnCallingThread){
+                saveCopy(chunk, copy);
+            } else {
+                loader.execute(() -> saveCopy(chunk, copy));
+            }
+        }
+    }
+
+    void saveCopy(Chunk chunk, Chunk copy){
+        if(!save(copy)){
+            chunk.modified = true; // try again with the next save or on eviction
+        }
+    }
+
+    // Writes back modified chunks and stops the loader.
+    public void close() throws IOException {
+        saveModified();
+        loader.shutdown();
+        try {
+            loader.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+}
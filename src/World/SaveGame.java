@@ -0,0 +1,677 @@
+package World;
+
+import Entity.EntityStore;
+import Main.Game;
+import Tiles.CollisionLayer;
+import Tiles.MapLayers;
+import Tiles.TileLayer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Saves the game (every tile layer, the collision bits and all entity state) to one file and loads it back.
+//
+// save() runs on the game thread and only copies: the chunks edited since the last save (the whole map the
+// first time) and the EntityStore. Compressing and writing happen on a background thread, which keeps its own
+// copy of the map as the file has it. After the first save only edited chunks are written again, appended to
+// the file with the index pointed at them. The records they replace become garbage, and once garbage would be
+// more than half the file the writer rewrites it whole instead (compaction). Entity state is all written every
+// time, into one of two slots: the new block goes where the block before last was, if it fits. Streamed worlds
+// keep their tiles in the .world file, their saves hold the entities and write back modified resident chunks.
+//
+// Version 1, little endian:
+//   header (80 bytes): magic "LJSV", version, width, height, chunk size, tile layer count, chunks across,
+//     chunks down, game tick (long), NPC random state (long), entity block offset (long), its length, its slot's
+//     capacity, the other entity slot's offset (long, 0 = none) and capacity, reserved
+//   layer table, 32 bytes per tile layer: name (16 bytes ASCII, zero padded), 1 if drawn above entities, reserved
+//   chunk index, chunk rows top to bottom: offset of the record holding the chunk's latest copy (long)
+//   records and entity blocks, anywhere after the index
+// A record is a run of chunks next to each other in one chunk row (a whole row in a full save): first chunk,
+// chunk count, compressed length, CRC32 of the raw data, then the raw data deflate compressed (no zlib header):
+// each tile layer's tiles in the run (u16 row-major), then the run's collision bits row-major in 64 bit words.
+// Records are read in file order, so a chunk written again later overwrites its older copy. An entity block is
+// the raw length, its CRC32, then EntityStore.write() compressed, in a slot with room to spare. The header and
+// index are written last, after the records they point at.
+public class SaveGame {
+
+    public static final int MAGIC = 0x56534A4C; // "LJSV" read as a little endian int
+    public static final int VERSION = 1;
+    static final int HEADER_BYTES = 80;
+    static final int LAYER_ENTRY_BYTES = 32;
+    static final int NAME_BYTES = 16;
+    static final int INDEX_ENTRY_BYTES = 8;
+    static final int RECORD_HEADER_BYTES = 16;
+    static final int ENTITY_HEADER_BYTES = 8;
+
+    final Game game;
+    public final Path path;
+    // Null when streaming
+    final MapLayers layers;
+    final int width, height;
+    final int chunksAcross, chunksDown;
+
+    // Game thread: a bit per chunk edited since the last save
+    final long[] dirty;
+    // Set by the writer when a save failed, the next one copies everything again
+    volatile boolean needsFullSave = true;
+
+    final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Save writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Writer thread (and load(), while the writer is idle): the map as the file has it, and where it all is
+    MapLayers saved;
+    final long[] chunkRecords;      // chunk -> offset of the record with its latest copy
+    final int[] chunkRecordLengths;
+    long entityOffset, spareOffset;
+    int entityLength, entityCapacity, spareCapacity;
+    long fileBytes = 0;
+    FileChannel channel;
+    long position;
+    final ByteBuffer out = ByteBuffer.allocateDirect(1 << 20);
+    ByteBuffer raw = ByteBuffer.allocate(0), packed = ByteBuffer.allocate(0);
+    char[] runTiles = new char[0];
+    long[] runBits = new long[0];
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    final CRC32 crc = new CRC32();
+
+    // What one save() copied, handed to the writer
+    static class Capture {
+        boolean full;
+        long tick, randomState;
+        // full: a copy of every layer; otherwise the edited chunks stacked top to bottom, one every SIZE rows
+        MapLayers tiles;
+        int[] chunks;   // ascending
+        int chunkCount;
+        EntityStore entities;
+    }
+
+    // How a save went, once it's on disk
+    public static class Result {
+        public boolean full, compacted;
+        public int chunks;
+        public long captureNanos, writeNanos;
+        public long rawBytes, bytesWritten, fileBytes;
+
+        @Override
+        public String toString(){
+            return String.format("%s, %d chunks, %d KB raw -> %d KB written (file %d KB), copy %.2f ms, write %.1f ms",
+                    full ? "full" : compacted ? "compacted" : "incremental", chunks, rawBytes / 1024,
+                    bytesWritten / 1024, fileBytes / 1024, captureNanos / 1e6, writeNanos / 1e6);
+        }
+    }
+
+    public SaveGame(Game game, Path path){
+        this.game = game;
+        this.path = path;
+        layers = game.tileManager.layers;
+        width = game.maxWorldCol;
+        height = game.maxWorldRow;
+        chunksAcross = layers == null ? 0 : (width + Chunk.SIZE - 1) / Chunk.SIZE;
+        chunksDown = layers == null ? 0 : (height + Chunk.SIZE - 1) / Chunk.SIZE;
+        int chunkCount = chunksAcross * chunksDown;
+        dirty = new long[(chunkCount + 63) / 64];
+        chunkRecords = new long[chunkCount];
+        chunkRecordLengths = new int[chunkCount];
+        game.tileManager.addEditListener((col, row) -> {
+            int chunk = (row / Chunk.SIZE) * chunksAcross + col / Chunk.SIZE;
+            dirty[chunk >>> 6] |= 1L << chunk;
+        });
+    }
+
+    // Game thread, between ticks. Returns when the state is copied; the future completes once it is on disk.
+    public CompletableFuture<Result> save(){
+        long start = System.nanoTime();
+        Capture capture = capture();
+        long captureNanos = System.nanoTime() - start;
+        if(game.tileManager.world != null){
+            game.tileManager.world.saveModified();
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Result result = write(capture);
+                result.captureNanos = captureNanos;
+                System.out.println("Saved " + path + ": " + result);
+                return result;
+            } catch (IOException e) {
+                needsFullSave = true;
+                System.err.println("Failed to save game " + path + ": " + e.getMessage());
+                throw new RuntimeException("Failed to save game: " + path, e);
+            }
+        }, writer);
+    }
+
+    Capture capture(){
+        Capture capture = new Capture();
+        capture.full = needsFullSave;
+        needsFullSave = false;
+        capture.tick = game.ticks;
+        capture.randomState = game.entitySystem.randomState;
+        capture.entities = new EntityStore(Math.max(1, game.entities.count));
+        capture.entities.copyFrom(game.entities);
+        if(layers == null){
+            capture.chunks = new int[0];
+            return capture;
+        }
+
+        if(capture.full){
+            capture.tiles = new MapLayers(width, height);
+            for(TileLayer layer : layers.getTileLayers()){
+                char[] copy = new char[width * height];
+                layer.buffer().get(0, copy);
+                capture.tiles.addTileLayer(new TileLayer(layer.name, width, height, layer.aboveEntities, CharBuffer.wrap(copy)));
+            }
+            long[] words = new long[CollisionLayer.wordCount(width, height)];
+            layers.collision.buffer().get(0, words);
+            capture.tiles.collision = new CollisionLayer(layers.collision.name, width, height, LongBuffer.wrap(words));
+            Arrays.fill(dirty, 0);
+            return capture;
+        }
+
+        int edited = 0;
+        for(long word : dirty){
+            edited += Long.bitCount(word);
+        }
+        capture.chunks = new int[edited];
+        capture.tiles = new MapLayers(Chunk.SIZE, Math.max(1, edited) * Chunk.SIZE);
+        for(TileLayer layer : layers.getTileLayers()){
+            capture.tiles.addTileLayer(new TileLayer(layer.name, Chunk.SIZE, capture.tiles.height, layer.aboveEntities));
+        }
+        capture.tiles.collision = new CollisionLayer(layers.collision.name, Chunk.SIZE, capture.tiles.height);
+        char[] tiles = new char[Chunk.SIZE * Chunk.SIZE];
+        long[] solid = new long[Chunk.SIZE * Chunk.SIZE / 64];
+        List<TileLayer> from = layers.getTileLayers(), to = capture.tiles.getTileLayers();
+        for(int w = 0; w < dirty.length; w++){
+            long bits = dirty[w];
+            while(bits != 0){
+                int chunk = w * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int col = (chunk % chunksAcross) * Chunk.SIZE, row = (chunk / chunksAcross) * Chunk.SIZE;
+                int cw = Math.min(Chunk.SIZE, width - col), ch = Math.min(Chunk.SIZE, height - row);
+                int k = capture.chunkCount++;
+                for(int l = 0; l < from.size(); l++){
+                    from.get(l).getRegion(col, row, cw, ch, tiles);
+                    to.get(l).setRegion(0, k * Chunk.SIZE, cw, ch, tiles);
+                }
+                layers.collision.getRegionBits(col, row, cw, ch, solid);
+                capture.tiles.collision.setRegionBits(0, k * Chunk.SIZE, cw, ch, solid);
+                capture.chunks[k] = chunk;
+            }
+            dirty[w] = 0;
+        }
+        return capture;
+    }
+
+    // Writer thread.
+    Result write(Capture capture) throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        result.full = capture.full;
+        result.chunks = capture.full ? chunkRecords.length : capture.chunkCount;
+        if(capture.full){
+            saved = capture.tiles;
+        } else if(saved != null){
+            applyEdits(capture);
+        }
+
+        ByteBuffer entities = ByteBuffer.allocate(capture.entities.serializedBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        capture.entities.write(entities);
+        entities.flip();
+        result.rawBytes = entities.remaining();
+        if(saved != null){
+            result.rawBytes += saved.footprintBytes() * result.chunks / chunkRecords.length;
+        }
+
+        // The records this save replaces become garbage, its own records take their place
+        if(!capture.full){
+            long[] kept = chunkRecords.clone();
+            for(int k = 0; k < capture.chunkCount; k++){
+                kept[capture.chunks[k]] = 0;
+            }
+            long live = dataOffset() + recordBytes(kept) + entityCapacity + spareCapacity;
+            long replaced = recordBytes(chunkRecords) - recordBytes(kept);
+            result.compacted = fileBytes - live > live + replaced;
+        }
+
+        if(result.full || result.compacted){
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                this.channel = channel;
+                position = dataOffset();
+                for(int chunkRow = 0; chunkRow < chunksDown; chunkRow++){
+                    writeRecord(chunkRow * chunksAcross, chunksAcross);
+                }
+                // Neither entity slot of the old file exists in the new one
+                entityOffset = 0;
+                entityCapacity = 0;
+                spareOffset = 0;
+                spareCapacity = 0;
+                writeEntities(entities);
+                flush();
+                writeHeaderAndIndex(capture);
+                channel.force(false);
+            } finally {
+                this.channel = null;
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            result.bytesWritten = position;
+        } else {
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+                this.channel = channel;
+                position = channel.size();
+                long appendedFrom = position;
+                // One record per run of edited chunks in a row
+                for(int k = 0; k < capture.chunkCount; ){
+                    int first = capture.chunks[k];
+                    int count = 1;
+                    while(k + count < capture.chunkCount && capture.chunks[k + count] == first + count && (first + count) % chunksAcross != 0){
+                        count++;
+                    }
+                    writeRecord(first, count);
+                    k += count;
+                }
+                writeEntities(entities);
+                flush();
+                channel.force(false);
+                writeHeaderAndIndex(capture);
+                channel.force(false);
+                result.bytesWritten = position - appendedFrom + dataOffset() + (entityOffset < appendedFrom ? entityLength : 0);
+            } finally {
+                this.channel = null;
+            }
+        }
+        result.fileBytes = fileBytes = position;
+        result.writeNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    // Copies the stacked chunks of an incremental capture into the writer's map.
+    void applyEdits(Capture capture){
+        char[] tiles = new char[Chunk.SIZE * Chunk.SIZE];
+        long[] solid = new long[Chunk.SIZE * Chunk.SIZE / 64];
+        List<TileLayer> from = capture.tiles.getTileLayers(), to = saved.getTileLayers();
+        for(int k = 0; k < capture.chunkCount; k++){
+            int chunk = capture.chunks[k];
+            int col = (chunk % chunksAcross) * Chunk.SIZE, row = (chunk / chunksAcross) * Chunk.SIZE;
+            int cw = Math.min(Chunk.SIZE, width - col), ch = Math.min(Chunk.SIZE, height - row);
+            for(int l = 0; l < from.size(); l++){
+                from.get(l).getRegion(0, k * Chunk.SIZE, cw, ch, tiles);
+                to.get(l).setRegion(col, row, cw, ch, tiles);
+            }
+            capture.tiles.collision.getRegionBits(0, k * Chunk.SIZE, cw, ch, solid);
+            saved.collision.setRegionBits(col, row, cw, ch, solid);
+        }
+    }
+
+    // Bytes in the distinct records these offsets point at (0 = none).
+    long recordBytes(long[] offsets){
+        long total = 0;
+        for(int k = 0; k < offsets.length; k++){
+            if(offsets[k] != 0){
+                total += chunkRecordLengths[k];
+            }
+        }
+        return total;
+    }
+
+    long dataOffset(){
+        int layerCount = layers == null ? 0 : layers.getTileLayers().size();
+        return HEADER_BYTES + (long) layerCount * LAYER_ENTRY_BYTES + (long) chunkRecords.length * INDEX_ENTRY_BYTES;
+    }
+
+    // Raw bytes of a run of chunks in one chunk row, w x h tiles
+    int runBytes(int w, int h){
+        return saved.getTileLayers().size() * w * h * 2 + CollisionLayer.wordCount(w, h) * 8;
+    }
+
+    void ensureRunBuffers(int w, int h){
+        if(raw.capacity() < runBytes(w, h)){
+            raw = ByteBuffer.allocate(runBytes(w, h)).order(ByteOrder.LITTLE_ENDIAN);
+            runTiles = new char[w * h];
+            runBits = new long[CollisionLayer.wordCount(w, h)];
+        }
+    }
+
+    void writeRecord(int first, int count) throws IOException {
+        int col = (first % chunksAcross) * Chunk.SIZE, row = (first / chunksAcross) * Chunk.SIZE;
+        int w = Math.min(count * Chunk.SIZE, width - col), h = Math.min(Chunk.SIZE, height - row);
+        ensureRunBuffers(w, h);
+        raw.clear();
+        for(TileLayer layer : saved.getTileLayers()){
+            layer.getRegion(col, row, w, h, runTiles);
+            raw.asCharBuffer().put(runTiles, 0, w * h);
+            raw.position(raw.position() + w * h * 2);
+        }
+        saved.collision.getRegionBits(col, row, w, h, runBits);
+        raw.asLongBuffer().put(runBits, 0, CollisionLayer.wordCount(w, h));
+        raw.position(raw.position() + CollisionLayer.wordCount(w, h) * 8);
+        raw.flip();
+
+        long offset = position + out.position();
+        int length = compress(raw);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(first).putInt(count).putInt(length).putInt(checksum(raw)).flip();
+        put(header);
+        put(packed);
+        for(int chunk = first; chunk < first + count; chunk++){
+            chunkRecords[chunk] = offset;
+            // A chunk's share, so the live bytes add up whichever chunks of a record are still pointed at
+            chunkRecordLengths[chunk] = (RECORD_HEADER_BYTES + length) / count + (chunk == first ? (RECORD_HEADER_BYTES + length) % count : 0);
+        }
+    }
+
+    // Into the spare slot if it fits, else appended in a new slot with a quarter more room. The slot it was in
+    // becomes the spare.
+    void writeEntities(ByteBuffer entities) throws IOException {
+        int length = ENTITY_HEADER_BYTES + compress(entities);
+        ByteBuffer header = ByteBuffer.allocate(ENTITY_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(entities.limit()).putInt(checksum(entities)).flip();
+        long offset;
+        int capacity;
+        if(length <= spareCapacity){
+            offset = spareOffset;
+            capacity = spareCapacity;
+            long at = offset;
+            while(header.hasRemaining()){
+                at += channel.write(header, at);
+            }
+            while(packed.hasRemaining()){
+                at += channel.write(packed, at);
+            }
+        } else {
+            offset = position + out.position();
+            capacity = length + length / 4;
+            put(header);
+            put(packed);
+            put(ByteBuffer.allocate(capacity - length));
+        }
+        spareOffset = entityCapacity == 0 ? 0 : entityOffset;
+        spareCapacity = entityCapacity;
+        entityOffset = offset;
+        entityLength = length;
+        entityCapacity = capacity;
+    }
+
+    int checksum(ByteBuffer data){
+        crc.reset();
+        crc.update(data.duplicate().rewind());
+        return (int) crc.getValue();
+    }
+
+    // Deflates data into packed, flipped for reading. Returns the compressed length.
+    int compress(ByteBuffer data){
+        int bound = data.remaining() + data.remaining() / 16 + 64;
+        if(packed.capacity() < bound){
+            packed = ByteBuffer.allocate(bound);
+        }
+        packed.clear();
+        deflater.reset();
+        deflater.setInput(data.duplicate());
+        deflater.finish();
+        while(!deflater.finished()){
+            deflater.deflate(packed);
+        }
+        packed.flip();
+        return packed.remaining();
+    }
+
+    void put(ByteBuffer data) throws IOException {
+        while(data.hasRemaining()){
+            if(!out.hasRemaining()){
+                flush();
+            }
+            int n = Math.min(out.remaining(), data.remaining());
+            out.put(out.position(), data, data.position(), n);
+            out.position(out.position() + n);
+            data.position(data.position() + n);
+        }
+    }
+
+    void flush() throws IOException {
+        out.flip();
+        while(out.hasRemaining()){
+            position += channel.write(out, position);
+        }
+        out.clear();
+    }
+
+    void writeHeaderAndIndex(Capture capture) throws IOException {
+        List<TileLayer> tileLayers = layers == null ? List.of() : layers.getTileLayers();
+        ByteBuffer header = ByteBuffer.allocate((int) dataOffset()).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(Chunk.SIZE);
+        header.putInt(tileLayers.size()).putInt(chunksAcross).putInt(chunksDown);
+        header.putLong(capture.tick).putLong(capture.randomState);
+        header.putLong(entityOffset).putInt(entityLength).putInt(entityCapacity);
+        header.putLong(spareOffset).putInt(spareCapacity).putInt(0);
+        for(TileLayer layer : tileLayers){
+            byte[] name = layer.name.getBytes(StandardCharsets.US_ASCII);
+            int entry = header.position();
+            header.put(name, 0, Math.min(name.length, NAME_BYTES));
+            header.position(entry + NAME_BYTES);
+            header.putInt(layer.aboveEntities ? 1 : 0);
+            header.position(entry + LAYER_ENTRY_BYTES);
+        }
+        for(long offset : chunkRecords){
+            header.putLong(offset);
+        }
+        header.flip();
+        long at = 0;
+        while(header.hasRemaining()){
+            at += channel.write(header, at);
+        }
+    }
+
+    // Game thread. Waits for saves still being written, then puts the game in the saved state: layers, entities,
+    // tick and the NPCs' random state. The save has to be of the same map (size and tile layers).
+    public void load() throws IOException {
+        waitForWriter();
+        ByteBuffer file;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size() > Integer.MAX_VALUE){
+                throw new IOException("Save file too big: " + path);
+            }
+            file = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while(file.hasRemaining()){
+                if(channel.read(file, file.position()) < 0){
+                    throw new IOException("Unexpected end of save file: " + path);
+                }
+            }
+            file.flip();
+        }
+        if(file.remaining() < HEADER_BYTES || file.getInt() != MAGIC){
+            throw new IOException("Not a save file: " + path);
+        }
+        int version = file.getInt();
+        if(version != VERSION){
+            throw new IOException("Unsupported save file version " + version + ": " + path);
+        }
+        int savedWidth = file.getInt(), savedHeight = file.getInt(), chunkSize = file.getInt();
+        int layerCount = file.getInt(), savedAcross = file.getInt(), savedDown = file.getInt();
+        if(savedWidth != width || savedHeight != height || chunkSize != Chunk.SIZE || savedAcross != chunksAcross || savedDown != chunksDown){
+            throw new IOException("Save is of a " + savedWidth + "x" + savedHeight + " map in " + savedAcross + "x" + savedDown
+                    + " chunks, this one is " + width + "x" + height + " in " + chunksAcross + "x" + chunksDown + ": " + path);
+        }
+        List<TileLayer> tileLayers = layers == null ? List.of() : layers.getTileLayers();
+        if(layerCount != tileLayers.size() || file.limit() < dataOffset()){
+            throw new IOException("Save has " + layerCount + " tile layers, the map has " + tileLayers.size() + ": " + path);
+        }
+        long tick = file.getLong();
+        long randomState = file.getLong();
+        long savedEntityOffset = file.getLong();
+        int savedEntityLength = file.getInt(), savedEntityCapacity = file.getInt();
+        long savedSpareOffset = file.getLong();
+        int savedSpareCapacity = file.getInt();
+        file.getInt();
+
+        byte[] name = new byte[NAME_BYTES];
+        for(TileLayer layer : tileLayers){
+            int entry = file.position();
+            file.get(name);
+            int length = 0;
+            while(length < NAME_BYTES && name[length] != 0){
+                length++;
+            }
+            String savedName = new String(name, 0, length, StandardCharsets.US_ASCII);
+            if(!savedName.equals(layer.name)){
+                throw new IOException("Save has tile layer " + savedName + " where the map has " + layer.name + ": " + path);
+            }
+            file.position(entry + LAYER_ENTRY_BYTES);
+        }
+        for(int chunk = 0; chunk < chunkRecords.length; chunk++){
+            chunkRecords[chunk] = file.getLong();
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            if(layers != null){
+                readRecords(file, inflater);
+            }
+            ByteBuffer header = checkedSlice(file, savedEntityOffset, ENTITY_HEADER_BYTES);
+            ByteBuffer entities = ByteBuffer.allocate(header.getInt()).order(ByteOrder.LITTLE_ENDIAN);
+            int checksum = header.getInt();
+            inflate(inflater, checkedSlice(file, savedEntityOffset + ENTITY_HEADER_BYTES, savedEntityLength - ENTITY_HEADER_BYTES), entities);
+            if(checksum(entities) != checksum){
+                throw new IOException("Entity block is corrupt: " + path);
+            }
+            game.entities.read(entities);
+        } finally {
+            inflater.end();
+        }
+
+        entityOffset = savedEntityOffset;
+        entityLength = savedEntityLength;
+        entityCapacity = savedEntityCapacity;
+        spareOffset = savedSpareOffset;
+        spareCapacity = savedSpareOffset == 0 ? 0 : savedSpareCapacity;
+        fileBytes = file.limit();
+        Arrays.fill(dirty, 0);
+        needsFullSave = false;
+
+        game.ticks = tick;
+        game.entitySystem.randomState = randomState;
+        game.tileManager.layersReplaced();
+    }
+
+    // Decodes every record the index points at into a fresh copy of the map, oldest first, then copies that
+    // over the game's layers.
+    void readRecords(ByteBuffer file, Inflater inflater) throws IOException {
+        saved = new MapLayers(width, height);
+        for(TileLayer layer : layers.getTileLayers()){
+            saved.addTileLayer(new TileLayer(layer.name, width, height, layer.aboveEntities));
+        }
+        saved.collision = new CollisionLayer(layers.collision.name, width, height);
+
+        long[] offsets = chunkRecords.clone();
+        Arrays.sort(offsets);
+        Arrays.fill(chunkRecordLengths, 0);
+        for(int k = 0; k < offsets.length; k++){
+            long offset = offsets[k];
+            if(k > 0 && offset == offsets[k - 1]){
+                continue;
+            }
+            ByteBuffer header = checkedSlice(file, offset, RECORD_HEADER_BYTES);
+            int first = header.getInt(), count = header.getInt(), length = header.getInt(), checksum = header.getInt();
+            if(first < 0 || count < 1 || first + count > chunkRecords.length || first / chunksAcross != (first + count - 1) / chunksAcross){
+                throw new IOException("Record at " + offset + " has a bad chunk run: " + path);
+            }
+            int col = (first % chunksAcross) * Chunk.SIZE, row = (first / chunksAcross) * Chunk.SIZE;
+            int w = Math.min(count * Chunk.SIZE, width - col), h = Math.min(Chunk.SIZE, height - row);
+            ensureRunBuffers(w, h);
+            raw.clear().limit(runBytes(w, h));
+            inflate(inflater, checkedSlice(file, offset + RECORD_HEADER_BYTES, length), raw);
+            if(checksum(raw) != checksum){
+                throw new IOException("Record at " + offset + " is corrupt: " + path);
+            }
+            for(TileLayer layer : saved.getTileLayers()){
+                raw.asCharBuffer().get(runTiles, 0, w * h);
+                raw.position(raw.position() + w * h * 2);
+                layer.setRegion(col, row, w, h, runTiles);
+            }
+            raw.asLongBuffer().get(runBits, 0, CollisionLayer.wordCount(w, h));
+            saved.collision.setRegionBits(col, row, w, h, runBits);
+            for(int chunk = first; chunk < first + count; chunk++){
+                if(chunkRecords[chunk] == offset){
+                    chunkRecordLengths[chunk] = (RECORD_HEADER_BYTES + length) / count + (chunk == first ? (RECORD_HEADER_BYTES + length) % count : 0);
+                }
+            }
+        }
+        for(int chunk = 0; chunk < chunkRecords.length; chunk++){
+            if(chunkRecordLengths[chunk] == 0){
+                throw new IOException("Chunk " + chunk + " isn't in the record the index points at: " + path);
+            }
+        }
+
+        List<TileLayer> from = saved.getTileLayers(), to = layers.getTileLayers();
+        for(int l = 0; l < from.size(); l++){
+            to.get(l).buffer().put(0, from.get(l).buffer(), 0, width * height);
+        }
+        layers.collision.buffer().put(0, saved.collision.buffer(), 0, CollisionLayer.wordCount(width, height));
+    }
+
+    ByteBuffer checkedSlice(ByteBuffer file, long offset, int length) throws IOException {
+        if(offset < dataOffset() || length < 0 || offset + length > file.limit()){
+            throw new IOException("Record at " + offset + " is outside the save file: " + path);
+        }
+        return file.slice((int) offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Inflates compressed into data, which has to come out exactly full. Leaves data flipped for reading.
+    void inflate(Inflater inflater, ByteBuffer compressed, ByteBuffer data) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            while(data.hasRemaining() && !inflater.finished()){
+                if(inflater.inflate(data) == 0 && inflater.needsInput()){
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed data: " + path, e);
+        }
+        if(data.hasRemaining() || !inflater.finished()){
+            throw new IOException("Compressed data has the wrong length: " + path);
+        }
+        data.flip();
+    }
+
+    void waitForWriter(){
+        try {
+            writer.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Waits for the saves still being written and stops the writer.
+    public void close(){
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
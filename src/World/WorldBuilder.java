@@ -0,0 +1,111 @@
+package World;
+
+import Utility.CsvReader;
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Builds .world files for the streaming world.
+//
+//   java World.WorldBuilder csv res/maps/bigmap.csv res/maps/bigmapCollisions.csv bigmap.world
+//   java World.WorldBuilder generate 10000 10000 huge.world [seed]
+public class WorldBuilder {
+
+    // Tile numbers used by the generator, see res/tiles
+    static final int GRASS = 1;
+    static final int GRASS_FLOWERS = 2;
+    static final int EARTH = 17;
+    static final int TREE = 16;
+    static final int WATER = 18;
+
+    public static void main(String[] args) throws IOException {
+        if(args.length >= 4 && args[0].equals("csv")){
+            fromCsv(Path.of(args[1]), Path.of(args[2]), Path.of(args[3]));
+        } else if(args.length >= 4 && args[0].equals("generate")){
+            long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+            generate(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Path.of(args[3]), seed);
+        } else {
+            System.err.println("Usage: WorldBuilder csv <map.csv> <collisions.csv> <out.world>");
+            System.err.println("       WorldBuilder generate <width> <height> <out.world> [seed]");
+            System.exit(1);
+        }
+    }
+
+    public static void fromCsv(Path mapCsv, Path collisionCsv, Path out) throws IOException {
+        int[][] tiles = CsvReader.readGrid(mapCsv);
+        int[][] collisions = CsvReader.readGrid(collisionCsv);
+        int height = tiles.length;
+        int width = tiles[0].length;
+
+        WorldFile.create(out, width, height, chunk -> {
+            for(int localRow = 0; localRow < Chunk.SIZE; localRow++){
+                for(int localCol = 0; localCol < Chunk.SIZE; localCol++){
+                    int col = chunk.chunkCol * Chunk.SIZE + localCol;
+                    int row = chunk.chunkRow * Chunk.SIZE + localRow;
+                    if(col < width && row < height){
+                        chunk.layers.ground.set(localCol, localRow, tiles[row][col]);
+                        chunk.layers.collision.set(localCol, localRow, collisions[row][col] == 1);
+                    } else {
+                        chunk.layers.collision.set(localCol, localRow, true);
+                    }
+                }
+            }
+        });
+        System.out.println("Wrote " + width + "x" + height + " world to " + out);
+    }
+
+    // Grass with lakes, forests and dirt patches from a couple of octaves of value noise.
+    public static void generate(int width, int height, Path out, long seed) throws IOException {
+        long start = System.nanoTime();
+
+        WorldFile.create(out, width, height, chunk -> {
+            for(int localRow = 0; localRow < Chunk.SIZE; localRow++){
+                for(int localCol = 0; localCol < Chunk.SIZE; localCol++){
+                    int col = chunk.chunkCol * Chunk.SIZE + localCol;
+                    int row = chunk.chunkRow * Chunk.SIZE + localRow;
+
+                    boolean edge = col == 0 || row == 0 || col >= width - 1 || row >= height - 1;
+                    double water = noise(col / 24.0, row / 24.0, seed) * 0.7 + noise(col / 7.0, row / 7.0, seed + 1) * 0.3;
+                    double forest = noise(col / 12.0, row / 12.0, seed + 2);
+                    long detail = hash(col, row, seed + 3);
+
+                    int tileNum;
+                    if(edge || water > 0.72){
+                        tileNum = WATER;
+                    } else if(forest > 0.7 && (detail & 3) != 0){
+                        tileNum = TREE;
+                    } else if(water < 0.2){
+                        tileNum = EARTH;
+                    } else {
+                        tileNum = (detail & 7) == 0 ? GRASS_FLOWERS : GRASS;
+                    }
+                    chunk.layers.ground.set(localCol, localRow, tileNum);
+                    chunk.layers.collision.set(localCol, localRow, tileNum == WATER || tileNum == TREE || col >= width || row >= height);
+                }
+            }
+        });
+        System.out.printf("Generated %dx%d world to %s in %.1f s%n", width, height, out, (System.nanoTime() - start) / 1e9);
+    }
+
+    static long hash(int x, int y, long seed){
+        long h = seed * 0x9E3779B97F4A7C15L + x * 0xC2B2AE3D27D4EB4FL + y * 0x165667B19E3779F9L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Smoothly interpolated lattice noise in 0..1
+    static double noise(double x, double y, long seed){
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        double fx = x - x0;
+        double fy = y - y0;
+        fx = fx * fx * (3 - 2 * fx);
+        fy = fy * fy * (3 - 2 * fy);
+        double a = (hash(x0, y0, seed) >>> 11) / (double) (1L << 53);
+        double b = (hash(x0 + 1, y0, seed) >>> 11) / (double) (1L << 53);
+        double c = (hash(x0, y0 + 1, seed) >>> 11) / (double) (1L << 53);
+        double d = (hash(x0 + 1, y0 + 1, seed) >>> 11) / (double) (1L << 53);
+        return (a + (b - a) * fx) + ((c + (d - c) * fx) - (a + (b - a) * fx)) * fy;
+    }
+}
@@ -0,0 +1,175 @@
+package World;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A world on disk, stored chunk by chunk so any chunk can be read with one positional read.
+//
+// Header (32 bytes): magic "LJWD", version, width, height, chunk size, 12 reserved bytes.
+// Then one fixed-size record per chunk, chunk rows top to bottom:
+//   SIZE*SIZE unsigned 16 bit tile numbers, row-major
+//   SIZE*SIZE collision bits, row-major in 64 bit words, 1 = solid
+// Tiles outside the world (in the last row/column of chunks) are stored as solid tile 0.
+public class WorldFile implements ChunkSource {
+
+    public static final int MAGIC = 0x4C4A5744; // "LJWD"
+    public static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int TILE_BYTES = Chunk.SIZE * Chunk.SIZE * 2;
+    static final int COLLISION_BYTES = Chunk.SIZE * Chunk.SIZE / 8;
+    static final int CHUNK_BYTES = TILE_BYTES + COLLISION_BYTES;
+
+    final FileChannel channel;
+    final int width, height;
+    final int chunksAcross, chunksDown;
+
+    // The loader thread is the only reader, but saving can come from shutdown too.
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN));
+
+    public WorldFile(Path path) throws IOException {
+        this(path, false);
+    }
+
+    public WorldFile(Path path, boolean writable) throws IOException {
+        channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        header.flip();
+        if(header.getInt() != MAGIC){
+            throw new IOException("Not a world file: " + path);
+        }
+        int version = header.getInt();
+        if(version != VERSION){
+            throw new IOException("Unsupported world file version " + version + ": " + path);
+        }
+        width = header.getInt();
+        height = header.getInt();
+        int chunkSize = header.getInt();
+        if(chunkSize != Chunk.SIZE){
+            throw new IOException("World file chunk size is " + chunkSize + ", expected " + Chunk.SIZE + ": " + path);
+        }
+        chunksAcross = (width + Chunk.SIZE - 1) / Chunk.SIZE;
+        chunksDown = (height + Chunk.SIZE - 1) / Chunk.SIZE;
+    }
+
+    @Override
+    public int getWidth(){
+        return width;
+    }
+
+    @Override
+    public int getHeight(){
+        return height;
+    }
+
+    long offset(int chunkCol, int chunkRow){
+        return HEADER_BYTES + ((long) chunkRow * chunksAcross + chunkCol) * CHUNK_BYTES;
+    }
+
+    @Override
+    public Chunk loadChunk(int chunkCol, int chunkRow) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        readFully(buffer, offset(chunkCol, chunkRow));
+        buffer.flip();
+
+        Chunk chunk = new Chunk(chunkCol, chunkRow);
+        decode(buffer, chunk);
+        return chunk;
+    }
+
+    @Override
+    public void saveChunk(Chunk chunk) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        encode(chunk, buffer);
+        buffer.flip();
+        long position = offset(chunk.chunkCol, chunk.chunkRow);
+        while(buffer.hasRemaining()){
+            position += channel.write(buffer, position);
+        }
+        chunk.modified = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    void readFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()){
+            int read = channel.read(buffer, position);
+            if(read < 0){
+                throw new IOException("Unexpected end of world file");
+            }
+            position += read;
+        }
+    }
+
+    static void decode(ByteBuffer buffer, Chunk chunk){
+        CharBuffer tiles = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+        tiles.limit(Chunk.SIZE * Chunk.SIZE);
+        chunk.layers.ground.buffer().duplicate().clear().put(tiles);
+        buffer.position(buffer.position() + TILE_BYTES);
+
+        // The collision bytes are the layer's 64 bit words in little endian order.
+        LongBuffer words = chunk.layers.collision.buffer();
+        for(int i = 0; i < COLLISION_BYTES / 8; i++){
+            words.put(i, buffer.getLong());
+        }
+    }
+
+    static void encode(Chunk chunk, ByteBuffer buffer){
+        CharBuffer tiles = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+        tiles.put(chunk.layers.ground.buffer().duplicate().clear());
+        buffer.position(buffer.position() + TILE_BYTES);
+
+        LongBuffer words = chunk.layers.collision.buffer();
+        for(int i = 0; i < COLLISION_BYTES / 8; i++){
+            buffer.putLong(words.get(i));
+        }
+    }
+
+    // Writes a new world file. The generator is asked for one chunk at a time, so the whole world never has to fit in memory.
+    public interface ChunkGenerator {
+        void fill(Chunk chunk);
+    }
+
+    public static void create(Path path, int width, int height, ChunkGenerator generator) throws IOException {
+        try(FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(Chunk.SIZE);
+            header.position(HEADER_BYTES);
+            header.flip();
+            while(header.hasRemaining()){
+                out.write(header);
+            }
+
+            int chunksAcross = (width + Chunk.SIZE - 1) / Chunk.SIZE;
+            int chunksDown = (height + Chunk.SIZE - 1) / Chunk.SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES * chunksAcross).order(ByteOrder.LITTLE_ENDIAN);
+
+            for(int chunkRow = 0; chunkRow < chunksDown; chunkRow++){
+                buffer.clear();
+                for(int chunkCol = 0; chunkCol < chunksAcross; chunkCol++){
+                    Chunk chunk = new Chunk(chunkCol, chunkRow);
+                    generator.fill(chunk);
+                    encode(chunk, buffer);
+                }
+                buffer.flip();
+                while(buffer.hasRemaining()){
+                    out.write(buffer);
+                }
+            }
+        }
+    }
+}